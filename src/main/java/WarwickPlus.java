@@ -23,6 +23,7 @@ import org.apache.commons.cli.*;
 import interfaces.*;
 import screen.*;
 import stores.Stores;
+import structures.HashTableStats;
 import utils.Constants;
 import utils.DisplayImage;
 import utils.LoadData;
@@ -58,6 +59,12 @@ public class WarwickPlus {
         options.addOption(Option.builder("n").argName("number of movies").hasArg()
                                 .desc("The number of movies to load in (and thereby loading in less of the other files too)")
                                 .build());
+        options.addOption(Option.builder().longOpt("ratings-engine").argName("hashed|compressed")
+                                .hasArg().desc("The Ratings store implementation to use (default hashed)")
+                                .build());
+        options.addOption(Option.builder().longOpt("diagnostics")
+                                .desc("Print hash table statistics for each store once loading has finished")
+                                .build());
         options.addOption("h","help", false, "Show this help message");
 
         // Handle input data files.
@@ -67,6 +74,8 @@ public class WarwickPlus {
         String movieMetadataPath = Constants.defaultMovieMetadataPath;
         String ratingsPath       = Constants.defaultRatingsPath;
         Integer numMovies        = null;
+        Stores.RatingsEngine ratingsEngine = Stores.RatingsEngine.HASHED;
+        boolean diagnostics      = false;
 
         CommandLineParser cliParser = new DefaultParser();
         try{
@@ -81,6 +90,18 @@ public class WarwickPlus {
             if (line.hasOption("keywords")) { keywordsPath = line.getOptionValue("keywords"); }
             if (line.hasOption("movies"))   { movieMetadataPath = line.getOptionValue("movies"); }
             if (line.hasOption("ratings"))  { ratingsPath  = line.getOptionValue("ratings"); }
+            if (line.hasOption("diagnostics")) { diagnostics = true; }
+            if (line.hasOption("ratings-engine"))
+            {
+                String optionString = line.getOptionValue("ratings-engine");
+                try{
+                    ratingsEngine = Stores.RatingsEngine.valueOf(optionString.toUpperCase());
+                }
+                catch (IllegalArgumentException e){
+                    System.out.println("Unknown ratings engine \"" + optionString + "\", expected hashed or compressed");
+                    return;
+                }
+            }
             if (line.hasOption("n")) 
             { 
                 String optionString = line.getOptionValue("n");
@@ -103,7 +124,8 @@ public class WarwickPlus {
             return;
         }
 
-        AbstractStores stores = new Stores();
+        Stores stores = new Stores(ratingsEngine);
+        stores.setDiagnosticsEnabled(diagnostics);
         
         start(stores, creditsPath, keywordsPath, movieMetadataPath, ratingsPath, numMovies);
     }
@@ -170,6 +192,11 @@ public class WarwickPlus {
             }
 
             System.out.println("\nFinished Loading...");
+            if (diagnostics(stores)){
+                for (HashTableStats tableStats : ((Stores) stores).getDiagnostics()){
+                    System.out.println(tableStats);
+                }
+            }
             setHomescreen(frame.getContentPane(), stores);
         }
         catch (DataLoadException e){
@@ -187,6 +214,16 @@ public class WarwickPlus {
         
     }
 
+    /**
+     * Checks whether hash table statistics are being collected for the stores
+     * 
+     * @param stores The stores being loaded
+     * @return Whether the diagnostics should be printed
+     */
+    private static boolean diagnostics(AbstractStores stores){
+        return stores instanceof Stores && ((Stores) stores).isDiagnosticsEnabled();
+    }
+
     private static void setHomescreen(Container frame, AbstractStores stores) {
         System.out.println("Home screen");
         frame.setVisible(false);
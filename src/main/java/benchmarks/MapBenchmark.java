@@ -0,0 +1,155 @@
+package benchmarks;
+
+import java.util.Random;
+
+import structures.ChainingHashMap;
+import structures.IntObjectOpenHashMap;
+
+/**
+ * Micro benchmark comparing the chaining hash map (boxed Integer keys) against
+ * the primitive int keyed open addressing map, for add, get and remove at a
+ * range of sizes. Run with "gradle mapBenchmark"
+ */
+public class MapBenchmark {
+    private static final int[] SIZES = { 10_000, 100_000, 1_000_000 };
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int MEASURED_ROUNDS = 5;
+
+    public static void main(String[] args) {
+        System.out.println("Map benchmark (average ns/op over " + MEASURED_ROUNDS + " rounds)");
+        System.out.printf("%-10s %-22s %10s %10s %10s%n", "keys", "map", "add", "get", "remove");
+
+        for (int size : SIZES) {
+            int[] keys = shuffledKeys(size, 42);
+            Object value = new Object();
+
+            // Warm up both implementations so the JIT has compiled the hot paths
+            for (int i = 0; i < WARMUP_ROUNDS; i++) {
+                runChaining(keys, value);
+                runOpen(keys, value);
+            }
+
+            long[] chaining = new long[3];
+            long[] open = new long[3];
+            for (int i = 0; i < MEASURED_ROUNDS; i++) {
+                accumulate(chaining, runChaining(keys, value));
+                accumulate(open, runOpen(keys, value));
+            }
+
+            print(size, "ChainingHashMap", chaining);
+            print(size, "IntObjectOpenHashMap", open);
+        }
+    }
+
+    /**
+     * Function to time add, get and remove of every key on a chaining hash map
+     *
+     * @param keys  the keys to use
+     * @param value the value stored against every key
+     * @return the nanoseconds taken by the add, get and remove phases
+     */
+    private static long[] runChaining(int[] keys, Object value) {
+        ChainingHashMap<Integer, Object> map = new ChainingHashMap<>(2153);
+        long[] times = new long[3];
+        long sink = 0;
+
+        long start = System.nanoTime();
+        for (int key : keys) {
+            map.add(key, value);
+        }
+        times[0] = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int key : keys) {
+            if (map.get(key) != null) {
+                sink++;
+            }
+        }
+        times[1] = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int key : keys) {
+            map.remove(key);
+        }
+        times[2] = System.nanoTime() - start;
+
+        check(sink, keys.length);
+        return times;
+    }
+
+    /**
+     * Function to time add, get and remove of every key on an open addressing map
+     *
+     * @param keys  the keys to use
+     * @param value the value stored against every key
+     * @return the nanoseconds taken by the add, get and remove phases
+     */
+    private static long[] runOpen(int[] keys, Object value) {
+        IntObjectOpenHashMap<Object> map = new IntObjectOpenHashMap<>(2153);
+        long[] times = new long[3];
+        long sink = 0;
+
+        long start = System.nanoTime();
+        for (int key : keys) {
+            map.add(key, value);
+        }
+        times[0] = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int key : keys) {
+            if (map.get(key) != null) {
+                sink++;
+            }
+        }
+        times[1] = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int key : keys) {
+            map.remove(key);
+        }
+        times[2] = System.nanoTime() - start;
+
+        check(sink, keys.length);
+        return times;
+    }
+
+    /**
+     * Function to create the keys 1..size in a random order
+     *
+     * @param size the number of keys
+     * @param seed the seed for the shuffle
+     * @return the shuffled keys
+     */
+    private static int[] shuffledKeys(int size, long seed) {
+        int[] keys = new int[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = i + 1;
+        }
+        Random random = new Random(seed);
+        for (int i = size - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int temp = keys[i];
+            keys[i] = keys[j];
+            keys[j] = temp;
+        }
+        return keys;
+    }
+
+    private static void accumulate(long[] total, long[] times) {
+        for (int i = 0; i < total.length; i++) {
+            total[i] += times[i];
+        }
+    }
+
+    private static void check(long found, int expected) {
+        if (found != expected) {
+            throw new IllegalStateException("Expected " + expected + " keys to be found, found " + found);
+        }
+    }
+
+    private static void print(int size, String name, long[] total) {
+        double perOp = (double) MEASURED_ROUNDS * size;
+        System.out.printf("%-10d %-22s %10.1f %10.1f %10.1f%n", size, name, total[0] / perOp, total[1] / perOp,
+                total[2] / perOp);
+    }
+}
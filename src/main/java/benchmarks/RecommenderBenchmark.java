@@ -0,0 +1,63 @@
+package benchmarks;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import interfaces.IRatings;
+import stores.Stores;
+
+/**
+ * Benchmark of training the matrix factorisation recommender, on synthetic
+ * ratings shaped like MovieLens (see SyntheticRatings). It reports the training
+ * throughput in ratings per second overall and per core, the training error,
+ * and the time of a recommendation query. Run with "gradle
+ * recommenderBenchmark", by default at the scale of MovieLens 1M with 32
+ * factors and 10 epochs. Other scales can be passed as the number of users,
+ * films and ratings, then optionally the number of factors and epochs and
+ * "compressed" to use the compressed store, e.g. --args="6040 3706 1000209 64
+ * 20 compressed"
+ */
+public class RecommenderBenchmark {
+    private static final float LEARNING_RATE = 0.01f;
+    private static final float REGULARISATION = 0.02f;
+    private static final int QUERIES = 1000;
+
+    public static void main(String[] args) {
+        int numUsers = (args.length > 0) ? Integer.parseInt(args[0]) : 6040;
+        int numMovies = (args.length > 1) ? Integer.parseInt(args[1]) : 3706;
+        int numRatings = (args.length > 2) ? Integer.parseInt(args[2]) : 1_000_209;
+        int numFactors = (args.length > 3) ? Integer.parseInt(args[3]) : 32;
+        int numEpochs = (args.length > 4) ? Integer.parseInt(args[4]) : 10;
+        boolean compressed = args.length > 5 && args[5].equals("compressed");
+
+        Stores stores = new Stores(compressed ? Stores.RatingsEngine.COMPRESSED : Stores.RatingsEngine.HASHED);
+        IRatings ratings = stores.getRatings();
+        Random random = new Random(42);
+        long start = System.nanoTime();
+        SyntheticRatings.load(ratings, random, numUsers, numMovies, numRatings);
+        System.out.printf("Recommender benchmark (%s store): %d ratings of %d films by %d users, loaded in %.1f s%n",
+                compressed ? "compressed" : "hashed", ratings.size(), numMovies, numUsers,
+                (System.nanoTime() - start) / 1e9);
+
+        // A short first run, so the timed run is of compiled code
+        ratings.trainRecommender(numFactors, 1, LEARNING_RATE, REGULARISATION);
+
+        start = System.nanoTime();
+        float error = ratings.trainRecommender(numFactors, numEpochs, LEARNING_RATE, REGULARISATION);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        int cores = Runtime.getRuntime().availableProcessors();
+        double throughput = (double) ratings.size() * numEpochs / seconds;
+        System.out.printf("Training:               %8.2f s for %d epochs of %d factors on %d core(s)%n", seconds,
+                numEpochs, numFactors, cores);
+        System.out.printf("Throughput:             %8.2f M ratings/s (%.2f M ratings/s per core)%n", throughput / 1e6,
+                throughput / cores / 1e6);
+        System.out.printf("Training RMSE:          %8.4f%n", error);
+
+        start = System.nanoTime();
+        for (int i = 0; i < QUERIES; i++) {
+            ratings.getRecommendedMovies(random.nextInt(numUsers), 10);
+        }
+        System.out.printf("Top 10 recommendations: %8.1f us per query%n", (System.nanoTime() - start) / 1e3 / QUERIES);
+        System.out.println("Recommended for user 0: " + Arrays.toString(ratings.getRecommendedMovies(0, 10)));
+    }
+}
@@ -0,0 +1,102 @@
+package benchmarks;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Random;
+
+import interfaces.IRatings;
+import stores.Stores;
+
+/**
+ * Benchmark of the item-item similarity precompute, on synthetic ratings shaped
+ * like MovieLens (see SyntheticRatings). It reports the time and memory of
+ * the first full precompute, and the time of an incremental refresh after a
+ * handful of users change a rating. Run with "gradle similarityBenchmark", by default at the scale of
+ * MovieLens 1M. Other scales can be passed as the number of users, films and
+ * ratings, with an optional "compressed" to use the compressed store, e.g.
+ * --args="162541 59047 25000095" for the scale of MovieLens 25M (which needs
+ * the heap of the task raising to around 12g)
+ */
+public class SimilarityBenchmark {
+    private static final int CHANGED_USERS = 10;
+
+    public static void main(String[] args) {
+        int numUsers = (args.length > 0) ? Integer.parseInt(args[0]) : 6040;
+        int numMovies = (args.length > 1) ? Integer.parseInt(args[1]) : 3706;
+        int numRatings = (args.length > 2) ? Integer.parseInt(args[2]) : 1_000_209;
+        boolean compressed = args.length > 3 && args[3].equals("compressed");
+
+        Stores stores = new Stores(compressed ? Stores.RatingsEngine.COMPRESSED : Stores.RatingsEngine.HASHED);
+        IRatings ratings = stores.getRatings();
+        Random random = new Random(42);
+        long start = System.nanoTime();
+        SyntheticRatings.load(ratings, random, numUsers, numMovies, numRatings);
+        System.out.printf("Similarity benchmark (%s store): %d ratings of %d films by %d users, loaded in %.1f s%n",
+                compressed ? "compressed" : "hashed", ratings.size(), numMovies, numUsers,
+                (System.nanoTime() - start) / 1e9);
+
+        long before = usedHeap();
+        resetPeaks();
+        start = System.nanoTime();
+        ratings.refreshSimilarities();
+        double fullSeconds = (System.nanoTime() - start) / 1e9;
+        long peak = peakHeap();
+        long after = usedHeap();
+        System.out.printf("Full precompute:        %8.2f s on %d worker(s)%n", fullSeconds,
+                Runtime.getRuntime().availableProcessors());
+        System.out.printf("Heap held by the index: %8.1f MB%n", (after - before) / 1e6);
+        System.out.printf("Peak heap in precompute:%8.1f MB (%.1f MB before it)%n", peak / 1e6, before / 1e6);
+
+        // A few users change one rating each, so only the films they rate are
+        // worked out again
+        LocalDateTime now = LocalDateTime.now();
+        for (int i = 0; i < CHANGED_USERS; i++) {
+            int user = random.nextInt(numUsers);
+            ratings.set(user, SyntheticRatings.pickMovie(random, numMovies), random.nextInt(11) / 2.0f, now);
+        }
+        start = System.nanoTime();
+        ratings.refreshSimilarities();
+        System.out.printf("Refresh after %d users: %8.2f s%n", CHANGED_USERS, (System.nanoTime() - start) / 1e9);
+
+        int[] similar = ratings.getSimilarMovies(0, 10);
+        System.out.println("Most similar to film 0: " + Arrays.toString(similar));
+    }
+
+    /**
+     * Function to measure the heap in use after a garbage collection
+     *
+     * @return the bytes in use
+     */
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static void resetPeaks() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            pool.resetPeakUsage();
+        }
+    }
+
+    /**
+     * Function to add up the peak use of every heap memory pool since the last
+     * reset. The pools peak at different moments, so this is an upper bound
+     *
+     * @return the bytes
+     */
+    private static long peakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+}
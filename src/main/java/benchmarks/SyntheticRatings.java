@@ -0,0 +1,70 @@
+package benchmarks;
+
+import java.util.Random;
+
+import interfaces.IRatings;
+
+/**
+ * Synthetic ratings shaped like MovieLens (a few very popular films and very
+ * active users, and a long tail of both), shared by the benchmarks. Each film
+ * has a quality and each user a bias, so the ratings have structure for the
+ * similarity and recommender queries to find
+ */
+final class SyntheticRatings {
+    private static final int BATCH_SIZE = 1 << 20;
+
+    private SyntheticRatings() {
+    }
+
+    /**
+     * Function to add synthetic ratings in batches
+     *
+     * @param ratings    the store to add to
+     * @param random     the source of randomness
+     * @param numUsers   the number of users
+     * @param numMovies  the number of films
+     * @param numRatings the number of ratings to generate (duplicates are skipped)
+     */
+    static void load(IRatings ratings, Random random, int numUsers, int numMovies, int numRatings) {
+        float[] quality = new float[numMovies];
+        for (int movie = 0; movie < numMovies; movie++) {
+            quality[movie] = 1.5f + 2.5f * random.nextFloat();
+        }
+        float[] bias = new float[numUsers];
+        for (int user = 0; user < numUsers; user++) {
+            bias[user] = (float) random.nextGaussian() * 0.5f;
+        }
+
+        ratings.ensureCapacity(numRatings, numUsers, numMovies);
+        long epochSecond = 1_000_000_000L;
+        for (int done = 0; done < numRatings; done += BATCH_SIZE) {
+            int length = Math.min(BATCH_SIZE, numRatings - done);
+            int[] userIDs = new int[length];
+            int[] movieIDs = new int[length];
+            float[] values = new float[length];
+            long[] epochSeconds = new long[length];
+            for (int i = 0; i < length; i++) {
+                // Squaring a uniform draw favours low IDs, giving the long tail
+                int user = (int) (numUsers * Math.pow(random.nextDouble(), 2));
+                int movie = pickMovie(random, numMovies);
+                float value = quality[movie] + bias[user] + (float) random.nextGaussian() * 0.7f;
+                userIDs[i] = user;
+                movieIDs[i] = movie;
+                values[i] = Math.round(Math.max(0.5f, Math.min(5.0f, value)) * 2) / 2.0f;
+                epochSeconds[i] = epochSecond++;
+            }
+            ratings.addBatch(userIDs, movieIDs, values, epochSeconds);
+        }
+    }
+
+    /**
+     * Function to pick a film, favouring low IDs even more strongly than users
+     *
+     * @param random    the source of randomness
+     * @param numMovies the number of films
+     * @return the movie ID
+     */
+    static int pickMovie(Random random, int numMovies) {
+        return (int) (numMovies * Math.pow(random.nextDouble(), 3));
+    }
+}
@@ -0,0 +1,246 @@
+package benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+
+import structures.ChainingHashMap;
+import structures.RobinHoodHashMap;
+import utils.Constants;
+
+/**
+ * Benchmark comparing the Robin Hood hash map against the chaining hash map
+ * and the JDK HashMap, all with boxed Integer keys, using the real TMDB ids
+ * from the movies metadata file rather than sequential keys. As well as the
+ * average cost of add, get and remove, it reports the 50th and 99th percentile
+ * get latency (timed in batches, as single gets are shorter than the timer's
+ * resolution) and, for the hand written maps, the longest probe or chain.
+ * Run with "gradle tmdbMapBenchmark", optionally passing the path of a
+ * metadata file with --args
+ */
+public class TmdbMapBenchmark {
+    // Each phase runs over at least this many keys in total, as the sample data
+    // files only hold a few thousand movies
+    private static final int WARMUP_OPERATIONS = 2_000_000;
+    private static final int MEASURED_OPERATIONS = 2_000_000;
+    private static final int LATENCY_BATCH = 8;
+
+    /**
+     * The operations a map under test has to support
+     */
+    private interface MapUnderTest {
+        void add(Integer key, Object value);
+
+        Object get(Integer key);
+
+        void remove(Integer key);
+
+        // Returns the longest probe sequence or chain, or -1 if it is not known.
+        int maxProbeLength();
+    }
+
+    public static void main(String[] args) throws IOException {
+        String path = (args.length > 0) ? args[0] : Constants.defaultMovieMetadataPath;
+        Integer[] keys = loadIds(new File(path));
+        Integer[] lookups = shuffled(keys, 42);
+        Object value = new Object();
+        int warmupRounds = Math.max(5, WARMUP_OPERATIONS / keys.length);
+        int measuredRounds = Math.max(10, MEASURED_OPERATIONS / keys.length);
+
+        System.out.println("TMDB id map benchmark: " + keys.length + " ids from \"" + path + "\" (min "
+                + Arrays.stream(keys).mapToInt(Integer::intValue).min().orElse(0) + ", max "
+                + Arrays.stream(keys).mapToInt(Integer::intValue).max().orElse(0) + ")");
+        System.out.printf("%-18s %10s %10s %10s %10s %10s %10s%n", "map", "add ns", "get ns", "remove ns",
+                "get p50", "get p99", "max probe");
+
+        String[] names = { "RobinHoodHashMap", "ChainingHashMap", "java.util.HashMap" };
+        for (String name : names) {
+            // Warm up so the JIT has compiled the hot paths
+            for (int i = 0; i < warmupRounds; i++) {
+                run(create(name), keys, lookups, value, null);
+            }
+
+            long[] total = new long[3];
+            long[] batchTimes = new long[measuredRounds * (lookups.length / LATENCY_BATCH)];
+            int maxProbe = -1;
+            for (int i = 0; i < measuredRounds; i++) {
+                long[] latencies = new long[lookups.length / LATENCY_BATCH];
+                MapUnderTest map = create(name);
+                long[] times = run(map, keys, lookups, value, latencies);
+                for (int j = 0; j < total.length; j++) {
+                    total[j] += times[j];
+                }
+                System.arraycopy(latencies, 0, batchTimes, i * latencies.length, latencies.length);
+                maxProbe = (int) times[3];
+            }
+
+            Arrays.sort(batchTimes);
+            double perOp = (double) measuredRounds * keys.length;
+            System.out.printf("%-18s %10.1f %10.1f %10.1f %10.1f %10.1f %10s%n", name, total[0] / perOp,
+                    total[1] / perOp, total[2] / perOp, percentile(batchTimes, 0.50), percentile(batchTimes, 0.99),
+                    (maxProbe < 0) ? "-" : String.valueOf(maxProbe));
+        }
+    }
+
+    /**
+     * Function to create an empty map of one of the kinds under test, sized as
+     * the stores size their tables
+     *
+     * @param name the name of the map
+     * @return the map under test
+     */
+    private static MapUnderTest create(String name) {
+        switch (name) {
+            case "RobinHoodHashMap": {
+                RobinHoodHashMap<Integer, Object> map = new RobinHoodHashMap<>(2153);
+                return new MapUnderTest() {
+                    public void add(Integer key, Object value) { map.add(key, value); }
+                    public Object get(Integer key) { return map.get(key); }
+                    public void remove(Integer key) { map.remove(key); }
+                    public int maxProbeLength() { return map.getStats("").getMaxChainLength(); }
+                };
+            }
+            case "ChainingHashMap": {
+                ChainingHashMap<Integer, Object> map = new ChainingHashMap<>(2153);
+                return new MapUnderTest() {
+                    public void add(Integer key, Object value) { map.add(key, value); }
+                    public Object get(Integer key) { return map.get(key); }
+                    public void remove(Integer key) { map.remove(key); }
+                    public int maxProbeLength() { return map.getStats("").getMaxChainLength(); }
+                };
+            }
+            default: {
+                HashMap<Integer, Object> map = new HashMap<>(2153);
+                return new MapUnderTest() {
+                    public void add(Integer key, Object value) { map.putIfAbsent(key, value); }
+                    public Object get(Integer key) { return map.get(key); }
+                    public void remove(Integer key) { map.remove(key); }
+                    public int maxProbeLength() { return -1; }
+                };
+            }
+        }
+    }
+
+    /**
+     * Function to time add, get and remove of every key on a map
+     *
+     * @param map       the empty map to fill
+     * @param keys      the keys to add and remove, in file order
+     * @param lookups   the keys to get, in a random order
+     * @param value     the value stored against every key
+     * @param latencies the array to fill with the time of each batch of gets, or
+     *                  null to skip recording them
+     * @return the nanoseconds taken by the add, get and remove phases, then the
+     *         longest probe after the adds
+     */
+    private static long[] run(MapUnderTest map, Integer[] keys, Integer[] lookups, Object value, long[] latencies) {
+        long[] times = new long[4];
+        long sink = 0;
+
+        long start = System.nanoTime();
+        for (Integer key : keys) {
+            map.add(key, value);
+        }
+        times[0] = System.nanoTime() - start;
+        times[3] = (latencies == null) ? -1 : map.maxProbeLength();
+
+        start = System.nanoTime();
+        int batches = lookups.length / LATENCY_BATCH;
+        for (int batch = 0; batch < batches; batch++) {
+            long batchStart = System.nanoTime();
+            for (int i = batch * LATENCY_BATCH; i < (batch + 1) * LATENCY_BATCH; i++) {
+                if (map.get(lookups[i]) != null) {
+                    sink++;
+                }
+            }
+            if (latencies != null) {
+                latencies[batch] = System.nanoTime() - batchStart;
+            }
+        }
+        for (int i = batches * LATENCY_BATCH; i < lookups.length; i++) {
+            if (map.get(lookups[i]) != null) {
+                sink++;
+            }
+        }
+        times[1] = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (Integer key : keys) {
+            map.remove(key);
+        }
+        times[2] = System.nanoTime() - start;
+
+        if (sink != lookups.length) {
+            throw new IllegalStateException("Expected " + lookups.length + " keys to be found, found " + sink);
+        }
+        return times;
+    }
+
+    /**
+     * Function to read the distinct TMDB ids from a movies metadata file, in file
+     * order
+     *
+     * @param metadataCsvFile the movies metadata file
+     * @return the ids
+     * @throws IOException if the file cannot be read
+     */
+    private static Integer[] loadIds(File metadataCsvFile) throws IOException {
+        CSVFormat csvFormat = CSVFormat.DEFAULT.builder()
+                .setHeader()
+                .setSkipHeaderRecord(true)
+                .build();
+        HashMap<Integer, Boolean> seen = new HashMap<>();
+        Integer[] ids = new Integer[1024];
+        int count = 0;
+        try (CSVParser parser = CSVParser.parse(metadataCsvFile, Charset.forName("UTF-8"), csvFormat)) {
+            for (CSVRecord csvRecord : parser) {
+                Integer id = Integer.valueOf(csvRecord.get("tmdb_id"));
+                if (seen.putIfAbsent(id, Boolean.TRUE) == null) {
+                    if (count == ids.length) {
+                        ids = Arrays.copyOf(ids, count * 2);
+                    }
+                    ids[count++] = id;
+                }
+            }
+        }
+        return Arrays.copyOf(ids, count);
+    }
+
+    /**
+     * Function to shuffle a copy of the keys
+     *
+     * @param keys the keys to shuffle
+     * @param seed the seed for the shuffle
+     * @return the shuffled copy
+     */
+    private static Integer[] shuffled(Integer[] keys, long seed) {
+        Integer[] result = keys.clone();
+        Random random = new Random(seed);
+        for (int i = result.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            Integer temp = result[i];
+            result[i] = result[j];
+            result[j] = temp;
+        }
+        return result;
+    }
+
+    /**
+     * Function to return a percentile of the sorted batch times, per get
+     *
+     * @param sortedBatchTimes the batch times in ascending order
+     * @param fraction         the percentile as a fraction (0.99 for p99)
+     * @return the nanoseconds per get at that percentile
+     */
+    private static double percentile(long[] sortedBatchTimes, double fraction) {
+        int index = (int) Math.min(sortedBatchTimes.length - 1, Math.round(fraction * (sortedBatchTimes.length - 1)));
+        return (double) sortedBatchTimes[index] / LATENCY_BATCH;
+    }
+}
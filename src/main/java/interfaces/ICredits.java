@@ -16,6 +16,7 @@ public interface ICredits{
     public int[] getCastFilms(int castID);
     public int[] getCrewFilms(int crewID);
     public int[] getCastStarsInFilms(int castID);
+    public int[] getSharedCastFilms(int castID, int otherCastID);
 
     public Person[] getMostCastCredits(int numResults);
     public int getNumCastCredits(int castID);
@@ -29,5 +30,7 @@ public interface ICredits{
     public Person[] findCast(String searchTerm);
     public Person[] findCrew(String searchTerm);
 
+    public void ensureCapacity(int numFilms, int numCast, int numCrew);
+
     public int size();
 }
\ No newline at end of file
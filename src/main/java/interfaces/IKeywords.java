@@ -14,6 +14,7 @@ public interface IKeywords{
     public int[] getKeywordIDs();
 
     public int[] getFilmsWithKeyword(int keywordID);
+    public int[] getFilmsWithAllKeywords(int[] keywordIDs);
 
     public Keyword[] getKeywordsForFilm(int filmID);
     public Keyword[] getUnique();
@@ -23,6 +24,7 @@ public interface IKeywords{
     public Keyword[] findKeywords(String searchTerm);
 
     public String toString();
+    public void ensureCapacity(int numFilms);
     public int size();
     
 }
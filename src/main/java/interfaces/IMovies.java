@@ -53,5 +53,7 @@ public interface IMovies {
 
     public int[] findFilms(String searchTerm);
 
+    public void ensureCapacity(int numMovies, int numCollections);
+
     public int size();
 }
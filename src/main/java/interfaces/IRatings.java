@@ -1,24 +1,64 @@
 package interfaces;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 
+import stores.Rating;
+
 public interface IRatings {
+    /**
+     * Adds a rating, unique by its user ID and movie ID. Ratings are stored as a
+     * whole number of half stars, so a rating that is not a multiple of 0.5
+     * between 0 and 5 inclusive is rejected rather than rounded
+     *
+     * @return TRUE if the rating was added, FALSE if the pair is already rated or
+     *         the rating is not a multiple of 0.5 between 0 and 5
+     */
     public boolean add(int userID, int movieID, float rating, LocalDateTime timestamp);
 
+    /**
+     * Adds a rating with its time already in epoch seconds, rejecting the same
+     * ratings as add with a LocalDateTime
+     *
+     * @return TRUE if the rating was added, FALSE otherwise
+     */
+    public boolean add(int userID, int movieID, float rating, long epochSecond);
+    public int addBatch(int[] userIDs, int[] movieIDs, float[] ratings, long[] epochSeconds);
+
     public boolean remove(int userID, int movieID);
 
     public boolean set(int userID, int movieID, float rating, LocalDateTime timestamp);
 
     public float[] getMovieRatings(int movieID);
     public float[] getUserRatings(int userID);
+    public Rating[] getUserTimeline(int userID, LocalDateTime from, LocalDateTime to);
     public float getMovieAverageRating(int movieID);
     public float getUserAverageRating(int userID);
+    public int[] getMovieRatingHistogram(int movieID);
+    public int[] getUserRatingHistogram(int userID);
+    public float getMovieMedianRating(int movieID);
+    public float getMovieRatingPercentile(int movieID, float percentile);
 
     public int[] getMostRatedMovies(int numResults);
     public int[] getMostRatedUsers(int numResults);
     public int getNumRatings(int movieID);
 
     public int[] getTopAverageRatedMovies(int numResults);
+    public void setWeightedRanking(int minRatings, int priorWeight, float priorMean);
+    public int[] getTopWeightedRatedMovies(int numResults);
+
+    public int[] getSimilarMovies(int movieID, int numResults);
+    public void refreshSimilarities();
+    public int[] getSimilarUsers(int userID, int numResults);
+
+    public float trainRecommender(int numFactors, int numEpochs, float learningRate, float regularisation);
+    public float predictRating(int userID, int movieID);
+    public int[] getRecommendedMovies(int userID, int numResults);
+
+    public int[] getMostRatedMoviesBetween(LocalDate start, LocalDate end, int numResults);
+    public float getMovieAverageRatingBetween(int movieID, LocalDate start, LocalDate end);
+
+    public void ensureCapacity(int numRatings, int numUsers, int numMovies);
 
     public int size();
 }
@@ -0,0 +1,15 @@
+package interfaces;
+
+import structures.HashTableStats;
+
+/**
+ * An interface for stores that can report the health of their hash tables.
+ */
+public interface ITableDiagnostics {
+
+    // Switches the collection of hash table statistics on or off for every table in the store.
+    public void setTableStatsEnabled(boolean enabled);
+
+    // Returns a snapshot of the statistics of every table in the store.
+    public HashTableStats[] getTableStats();
+}
@@ -1,9 +1,10 @@
 package stores;
 
+import structures.RoaringBitmap;
+
 public class CastData {
     private Person person;
-    private int[] movies;
-    private int nextFreeMoviePos = 1;
+    private RoaringBitmap movies;
     private int[] moviesTop3;
     private int nextFreeTop3Pos;
     private int totalCredits;
@@ -18,34 +19,20 @@ public class CastData {
      */
     public CastData(Person person, int[] movies, int[] moviesTop3, int totalCredits) {
         this.person = person;
-        this.movies = movies;
+        this.movies = RoaringBitmap.of(movies);
         this.moviesTop3 = moviesTop3;
         this.totalCredits = totalCredits;
         this.nextFreeTop3Pos = moviesTop3.length;
     }
 
     /**
-     * Method to add a given movie ID to a movie array
+     * Method to add a given movie ID to the movie set
      * 
      * @param movieID
      */
     public void addMovie(int movieID) {
-
-        // Check to see if the movieID is already present in array
-        for (int movie : this.movies) {
-            if (movie == movieID) {
-                return;
-            }
-        }
-
-        // If not present, adds the movie to the array
-        if (this.nextFreeMoviePos == this.movies.length) {
-            int[] newMovies = new int[this.movies.length * 2];
-            System.arraycopy(this.movies, 0, newMovies, 0, this.movies.length);
-            this.movies = newMovies;
-        }
-
-        this.movies[this.nextFreeMoviePos++] = movieID;
+        // The set ignores a movie that is already present
+        this.movies.add(movieID);
     }
 
     /**
@@ -81,23 +68,12 @@ public class CastData {
     }
 
     /**
-     * Method to remove a movie from the movie array
+     * Method to remove a movie from the movie set
      * 
      * @param movieID
      */
     public void removeMovie(int movieID) {
-        int[] newMoviesArray = new int[this.movies.length - 1];
-        int index = 0;
-        for (int movie : this.movies) {
-            if (movie == movieID) {
-                continue;
-            } else {
-                newMoviesArray[index++] = movie;
-            }
-        }
-
-        this.movies = newMoviesArray;
-        this.nextFreeMoviePos--;
+        this.movies.remove(movieID);
     }
 
     /**
@@ -124,6 +100,10 @@ public class CastData {
     }
 
     public int[] getMovies() {
+        return this.movies.toArray();
+    }
+
+    public RoaringBitmap getMovieSet() {
         return this.movies;
     }
 
@@ -1,10 +1,10 @@
 package stores;
 
-import structures.CustomArrayList;
+import structures.IntArrayList;
 
 public class Collection {
     private int id;
-    private CustomArrayList<Integer> moveIDs;
+    private IntArrayList moveIDs;
     private String name;
     private String posterPath;
     private String backdropPath;
@@ -14,7 +14,7 @@ public class Collection {
         this.name = name;
         this.posterPath = posterPath;
         this.backdropPath = backdropPath;
-        moveIDs = new CustomArrayList<>();
+        moveIDs = new IntArrayList();
     }
 
     public int getID(){
@@ -34,15 +34,15 @@ public class Collection {
     }
 
     public int[] getMovies(){
-        return this.moveIDs.getAsArrayInt();
+        return this.moveIDs.toArray();
     }
 
-    public void addMovieID(Integer id){
+    public void addMovieID(int id){
         moveIDs.add(id);
     }
 
-    public void removeMovieID(Integer id){
-        moveIDs.remove(id);
+    public void removeMovieID(int id){
+        moveIDs.removeValue(id);
     }
 
 
@@ -0,0 +1,1450 @@
+package stores;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+
+import interfaces.IRatings;
+import structures.*;
+
+/**
+ * Alternative Ratings store that keeps the user x movie rating matrix twice in
+ * compressed sparse row (CSR) form: once by user (rows of movie IDs) and once
+ * by movie (rows of user IDs), with every rating held as a number of half stars
+ * in a byte. Changes go into a small delta buffer first, which is merged into
+ * the compressed rows once it grows past a fraction of their size.
+ *
+ * Only ratings that are a multiple of 0.5 between 0 and 5 can be stored (which
+ * covers all of MovieLens). The timestamp of each rating is kept in epoch
+ * seconds beside its half stars in the user rows and the delta buffer. Each
+ * user row is sorted by time and then by movie ID, so a user's ratings come out
+ * in the order they were made and a window of time is found by binary search;
+ * a (user, movie) pair is looked up in the movie rows, which stay sorted by
+ * user ID. The count and sum of every movie's ratings are also kept by day and
+ * by month in the same TimeBucketIndex the Ratings store uses, for the queries
+ * over a window of time.
+ */
+public class CompressedRatings implements IRatings {
+    private static final int MIN_MERGE_THRESHOLD = 4096;
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final byte REMOVED = -1; // Half star value marking a removed (or missing) rating
+    private static final int NONE = -1;
+    private static final int[] NO_ENTRIES = new int[0];
+
+    Stores stores;
+
+    // Every user and movie ID seen is given a dense ordinal, which indexes all
+    // the arrays below
+    IntIntOpenHashMap userOrdinals;
+    IntIntOpenHashMap movieOrdinals;
+    int[] userIDs;
+    int[] movieIDs;
+    int numUsers;
+    int numMovies;
+
+    // Number and sum of ratings for every user and movie, kept up to date on
+    // every change so no aggregate query needs to read the rows
+    int[] userCounts;
+    float[] userSums;
+    int[] movieCounts;
+    float[] movieSums;
+
+    // Number of ratings of each number of half stars for every user and movie, 11
+    // counts per ordinal (the counts of ordinal o start at o * 11)
+    int[] userHistograms;
+    int[] movieHistograms;
+
+    // Compressed rows by user: the movie IDs, half star ratings and epoch seconds
+    // (or Rating.NO_TIMESTAMP) of user ordinal u are held in
+    // [userOffsets[u], userOffsets[u + 1]), sorted by time and then by movie ID
+    int[] userOffsets;
+    int[] userRowMovies;
+    byte[] userRowRatings;
+    long[] userRowEpochs;
+    int baseUsers;
+
+    // Compressed rows by movie, the transpose of the above, sorted by user ID
+    int[] movieOffsets;
+    int[] movieRowUsers;
+    byte[] movieRowRatings;
+    int baseMovies;
+
+    int baseSize;
+
+    // Delta buffer of changes since the last merge. Each (user, movie) pair has
+    // at most one entry, which overrides whatever the compressed rows hold for
+    // it. Entries are chained per user and per movie so one row can be read
+    // without scanning the whole buffer
+    LongIntOpenHashMap deltaIndex; // Packed <UserID, MovieID> to delta entry
+    int[] deltaUsers;
+    int[] deltaMovies;
+    byte[] deltaRatings;
+    long[] deltaEpochs;
+    int[] deltaNextByUser;
+    int[] deltaNextByMovie;
+    int[] deltaHeadByUser;
+    int[] deltaHeadByMovie;
+    int deltaSize;
+
+    int size;
+
+    // Count and sum of every movie's ratings by day and by month, for the queries
+    // over a window of time. Ratings with no timestamp are left out
+    TimeBucketIndex movieStatsByTime;
+
+    // Most similar films to every film, worked out on the first similarity query
+    ItemSimilarityIndex similarities;
+
+    // MinHash signature of the films every user has rated, for similar users
+    MinHashLshIndex userSignatures;
+
+    // Matrix factorisation model for predictions and recommendations, once trained
+    MatrixFactorization recommender;
+
+    // Settings of the weighted ranking, which by default matches the plain average,
+    // and the ranking itself, kept up to date as ratings change
+    int minRatings;
+    int priorWeight;
+    float priorMean;
+    Leaderboard topWeightedMovies;
+
+    /**
+     * The constructor for the compressed Ratings data store
+     *
+     * @param stores An object storing all the different key stores,
+     *               including itself
+     */
+    public CompressedRatings(Stores stores) {
+        this.stores = stores;
+
+        userOrdinals = new IntIntOpenHashMap(INITIAL_CAPACITY);
+        movieOrdinals = new IntIntOpenHashMap(INITIAL_CAPACITY);
+        userIDs = new int[INITIAL_CAPACITY];
+        movieIDs = new int[INITIAL_CAPACITY];
+        userCounts = new int[INITIAL_CAPACITY];
+        userSums = new float[INITIAL_CAPACITY];
+        movieCounts = new int[INITIAL_CAPACITY];
+        movieSums = new float[INITIAL_CAPACITY];
+        userHistograms = new int[INITIAL_CAPACITY * RatingHistograms.NUM_BINS];
+        movieHistograms = new int[INITIAL_CAPACITY * RatingHistograms.NUM_BINS];
+        deltaHeadByUser = new int[INITIAL_CAPACITY];
+        deltaHeadByMovie = new int[INITIAL_CAPACITY];
+
+        userOffsets = new int[1];
+        userRowMovies = new int[0];
+        userRowRatings = new byte[0];
+        userRowEpochs = new long[0];
+        movieOffsets = new int[1];
+        movieRowUsers = new int[0];
+        movieRowRatings = new byte[0];
+
+        deltaIndex = new LongIntOpenHashMap(MIN_MERGE_THRESHOLD);
+        deltaUsers = new int[MIN_MERGE_THRESHOLD];
+        deltaMovies = new int[MIN_MERGE_THRESHOLD];
+        deltaRatings = new byte[MIN_MERGE_THRESHOLD];
+        deltaEpochs = new long[MIN_MERGE_THRESHOLD];
+        deltaNextByUser = new int[MIN_MERGE_THRESHOLD];
+        deltaNextByMovie = new int[MIN_MERGE_THRESHOLD];
+
+        movieStatsByTime = new TimeBucketIndex();
+        similarities = new ItemSimilarityIndex();
+        userSignatures = new MinHashLshIndex(Ratings.USER_SIGNATURE_BANDS, Ratings.USER_SIGNATURE_ROWS,
+                INITIAL_CAPACITY);
+        recommender = null;
+        size = 0;
+        minRatings = 1;
+        priorWeight = 0;
+        priorMean = 0.0f;
+        topWeightedMovies = new Leaderboard(INITIAL_CAPACITY); // MovieIDs by weighted rating
+    }
+
+    /**
+     * Adds a rating to the data structure. The rating is made unique by its user ID
+     * and its movie ID
+     *
+     * @param userID    The user ID
+     * @param movieID   The movie ID
+     * @param rating    The rating gave to the film by this user (between 0 and 5
+     *                  inclusive, in half stars)
+     * @param timestamp The time at which the rating was made
+     * @return TRUE if the data able to be added, FALSE otherwise
+     */
+    @Override
+    public boolean add(int userid, int movieid, float rating, LocalDateTime timestamp) {
+        return add(userid, movieid, rating, Rating.toEpochSecond(timestamp));
+    }
+
+    /**
+     * Adds a rating to the data structure, with its time already in epoch seconds.
+     * The rating is made unique by its user ID and its movie ID
+     *
+     * @param userID      The user ID
+     * @param movieID     The movie ID
+     * @param rating      The rating gave to the film by this user (between 0 and 5
+     *                    inclusive, in half stars)
+     * @param epochSecond The time at which the rating was made, in seconds since
+     *                    the epoch (UTC)
+     * @return TRUE if the data able to be added, FALSE otherwise
+     */
+    @Override
+    public boolean add(int userid, int movieid, float rating, long epochSecond) {
+        byte halfStars = toHalfStars(rating);
+        if (halfStars == REMOVED || !Rating.isStorable(epochSecond)) { // Rating cannot be represented
+            return false;
+        }
+
+        int userOrdinal = userOrdinal(userid);
+        int movieOrdinal = movieOrdinal(movieid);
+
+        // Same rating already exists, so cant be added
+        if (findRating(userOrdinal, movieOrdinal) != REMOVED) {
+            return false;
+        }
+
+        writeDelta(userOrdinal, movieOrdinal, halfStars, epochSecond);
+        userCounts[userOrdinal]++;
+        userSums[userOrdinal] += rating;
+        movieCounts[movieOrdinal]++;
+        movieSums[movieOrdinal] += rating;
+        userHistograms[userOrdinal * RatingHistograms.NUM_BINS + halfStars]++;
+        movieHistograms[movieOrdinal * RatingHistograms.NUM_BINS + halfStars]++;
+        updateWeightedRanking(movieOrdinal);
+        indexByTime(movieid, epochSecond, rating);
+        similarities.markChanged(userid);
+        userSignatures.add(userid, movieid);
+        this.size++;
+
+        mergeIfFull();
+        return true;
+    }
+
+    /**
+     * Adds a batch of ratings to the data structure, as if each were added in turn
+     * with add. Ratings already go into the delta buffer and are merged into the
+     * compressed rows in bulk, so the batch is simply added in order
+     *
+     * @param userIDs      The user IDs
+     * @param movieIDs     The movie IDs, parallel to the user IDs
+     * @param ratings      The ratings (between 0 and 5 inclusive, in half stars)
+     * @param epochSeconds The times at which the ratings were made, in seconds
+     *                     since the epoch (UTC)
+     * @return The number of ratings added
+     */
+    @Override
+    public int addBatch(int[] userIDs, int[] movieIDs, float[] ratings, long[] epochSeconds) {
+        int length = userIDs.length;
+        if (movieIDs.length != length || ratings.length != length || epochSeconds.length != length) {
+            throw new IllegalArgumentException("The batch arrays must all be the same length");
+        }
+        int numAdded = 0;
+        for (int i = 0; i < length; i++) {
+            if (add(userIDs[i], movieIDs[i], ratings[i], epochSeconds[i])) {
+                numAdded++;
+            }
+        }
+        return numAdded;
+    }
+
+    /**
+     * Removes a given rating, using the user ID and the movie ID as the unique
+     * identifier
+     *
+     * @param userID  The user ID
+     * @param movieID The movie ID
+     * @return TRUE if the data was removed successfully, FALSE otherwise
+     */
+    @Override
+    public boolean remove(int userid, int movieid) {
+        int userOrdinal = userOrdinals.getOrDefault(userid, NONE);
+        int movieOrdinal = movieOrdinals.getOrDefault(movieid, NONE);
+        if (userOrdinal == NONE || movieOrdinal == NONE) {
+            return false;
+        }
+
+        byte current = findRating(userOrdinal, movieOrdinal);
+        if (current == REMOVED) {
+            return false;
+        }
+
+        float oldRating = current / 2.0f;
+        unindexByTime(movieid, findEpochSecond(userOrdinal, movieOrdinal), oldRating);
+        writeDelta(userOrdinal, movieOrdinal, REMOVED, Rating.NO_TIMESTAMP);
+        userCounts[userOrdinal]--;
+        userSums[userOrdinal] = (userCounts[userOrdinal] == 0) ? 0 : userSums[userOrdinal] - oldRating;
+        movieCounts[movieOrdinal]--;
+        movieSums[movieOrdinal] = (movieCounts[movieOrdinal] == 0) ? 0 : movieSums[movieOrdinal] - oldRating;
+        userHistograms[userOrdinal * RatingHistograms.NUM_BINS + current]--;
+        movieHistograms[movieOrdinal * RatingHistograms.NUM_BINS + current]--;
+        updateWeightedRanking(movieOrdinal);
+        similarities.markChanged(userid);
+        userSignatures.remove(userid, movieid, () -> userMovies(userOrdinal));
+        this.size--;
+
+        mergeIfFull();
+        return true;
+    }
+
+    /**
+     * Sets a rating for a given user ID and movie ID. Therefore, should the given
+     * user have already rated the given movie, the new data should overwrite the
+     * existing rating. However, if the given user has not already rated the given
+     * movie, then this rating should be added to the data structure
+     *
+     * @param userID    The user ID
+     * @param movieID   The movie ID
+     * @param rating    The new rating to be given to the film by this user (between
+     *                  0 and 5 inclusive, in half stars)
+     * @param timestamp The time at which the new rating was made
+     * @return TRUE if the data able to be added/updated, FALSE otherwise
+     */
+    @Override
+    public boolean set(int userid, int movieid, float rating, LocalDateTime timestamp) {
+        if (add(userid, movieid, rating, timestamp)) {
+            return true;
+        }
+
+        byte halfStars = toHalfStars(rating);
+        long epochSecond = Rating.toEpochSecond(timestamp);
+        if (halfStars == REMOVED || !Rating.isStorable(epochSecond)) {
+            return false;
+        }
+
+        // The add only fails on an existing rating once the rating is valid, and it
+        // has already created both ordinals
+        int userOrdinal = userOrdinals.getOrDefault(userid, NONE);
+        int movieOrdinal = movieOrdinals.getOrDefault(movieid, NONE);
+        byte oldHalfStars = findRating(userOrdinal, movieOrdinal);
+        float oldRating = oldHalfStars / 2.0f;
+
+        unindexByTime(movieid, findEpochSecond(userOrdinal, movieOrdinal), oldRating);
+        indexByTime(movieid, epochSecond, rating);
+        writeDelta(userOrdinal, movieOrdinal, halfStars, epochSecond);
+        userSums[userOrdinal] -= oldRating;
+        userSums[userOrdinal] += rating;
+        movieSums[movieOrdinal] -= oldRating;
+        movieSums[movieOrdinal] += rating;
+        userHistograms[userOrdinal * RatingHistograms.NUM_BINS + oldHalfStars]--;
+        userHistograms[userOrdinal * RatingHistograms.NUM_BINS + halfStars]++;
+        movieHistograms[movieOrdinal * RatingHistograms.NUM_BINS + oldHalfStars]--;
+        movieHistograms[movieOrdinal * RatingHistograms.NUM_BINS + halfStars]++;
+        updateWeightedRanking(movieOrdinal);
+        similarities.markChanged(userid);
+
+        mergeIfFull();
+        return true;
+    }
+
+    /**
+     * Get all the ratings for a given film
+     *
+     * @param movieID The movie ID
+     * @return An array of ratings. If there are no ratings or the film cannot be
+     *         found in Ratings, then return an empty array
+     */
+    @Override
+    public float[] getMovieRatings(int movieid) {
+        int movieOrdinal = movieOrdinals.getOrDefault(movieid, NONE);
+        if (movieOrdinal == NONE || movieCounts[movieOrdinal] == 0) {
+            return new float[0];
+        }
+
+        float[] result = new float[movieCounts[movieOrdinal]];
+        int index = 0;
+        boolean hasDelta = deltaHeadByMovie[movieOrdinal] != NONE;
+
+        // Compressed row first, skipping any pair the delta buffer overrides
+        if (movieOrdinal < baseMovies) {
+            for (int i = movieOffsets[movieOrdinal]; i < movieOffsets[movieOrdinal + 1]; i++) {
+                if (hasDelta && deltaIndex.getOrDefault(pairKey(movieRowUsers[i], movieid), NONE) != NONE) {
+                    continue;
+                }
+                result[index++] = movieRowRatings[i] / 2.0f;
+            }
+        }
+        // Then the live entries of the delta buffer for this movie
+        for (int entry = deltaHeadByMovie[movieOrdinal]; entry != NONE; entry = deltaNextByMovie[entry]) {
+            if (deltaRatings[entry] != REMOVED) {
+                result[index++] = deltaRatings[entry] / 2.0f;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Get all the ratings for a given user, in the order they were made
+     *
+     * @param userID The user ID
+     * @return An array of ratings, earliest first. If there are no ratings or the
+     *         user cannot be found in Ratings, then return an empty array
+     */
+    @Override
+    public float[] getUserRatings(int userid) {
+        int userOrdinal = userOrdinals.getOrDefault(userid, NONE);
+        if (userOrdinal == NONE || userCounts[userOrdinal] == 0) {
+            return new float[0];
+        }
+
+        int count = userCounts[userOrdinal];
+        byte[] halfStars = new byte[count];
+        userRatingsBetween(userOrdinal, Rating.NO_TIMESTAMP, Long.MAX_VALUE, 0, new int[count], halfStars,
+                new long[count]);
+        float[] result = new float[count];
+        for (int i = 0; i < count; i++) {
+            result[i] = halfStars[i] / 2.0f;
+        }
+        return result;
+    }
+
+    /**
+     * Get the average rating for a given film
+     *
+     * @param movieID The movie ID
+     * @return Produces the average rating for a given film.
+     *         If the film cannot be found in Ratings, but does exist in the Movies
+     *         store, return 0.0f.
+     *         If the film cannot be found in Ratings or Movies stores, return
+     *         -1.0f.
+     */
+    @Override
+    public float getMovieAverageRating(int movieid) {
+        int movieOrdinal = movieOrdinals.getOrDefault(movieid, NONE);
+
+        if (movieOrdinal == NONE || movieCounts[movieOrdinal] == 0) {
+            if (stores.getMovies().getTitle(movieid) == null) {
+                return -1.0f;
+            }
+            return 0.0f;
+        }
+
+        return movieSums[movieOrdinal] / movieCounts[movieOrdinal];
+    }
+
+    /**
+     * Get how many ratings of each number of stars a film has
+     *
+     * @param movieID The movie ID
+     * @return An array of 11 counts, the number of ratings of 0, 0.5, 1, ... 5
+     *         stars in turn. If there are no ratings or the film cannot be found
+     *         in Ratings, then return an empty array
+     */
+    @Override
+    public int[] getMovieRatingHistogram(int movieid) {
+        int movieOrdinal = movieOrdinals.getOrDefault(movieid, NONE);
+        if (movieOrdinal == NONE || movieCounts[movieOrdinal] == 0) {
+            return new int[0];
+        }
+        int from = movieOrdinal * RatingHistograms.NUM_BINS;
+        return Arrays.copyOfRange(movieHistograms, from, from + RatingHistograms.NUM_BINS);
+    }
+
+    /**
+     * Get how many ratings of each number of stars a user has given
+     *
+     * @param userID The user ID
+     * @return An array of 11 counts, the number of ratings of 0, 0.5, 1, ... 5
+     *         stars in turn. If there are no ratings or the user cannot be found
+     *         in Ratings, then return an empty array
+     */
+    @Override
+    public int[] getUserRatingHistogram(int userid) {
+        int userOrdinal = userOrdinals.getOrDefault(userid, NONE);
+        if (userOrdinal == NONE || userCounts[userOrdinal] == 0) {
+            return new int[0];
+        }
+        int from = userOrdinal * RatingHistograms.NUM_BINS;
+        return Arrays.copyOfRange(userHistograms, from, from + RatingHistograms.NUM_BINS);
+    }
+
+    /**
+     * Get the median rating for a given film, read off its histogram
+     *
+     * @param movieID The movie ID
+     * @return Produces the median rating for a given film (the average of the
+     *         middle two when it has an even number of ratings).
+     *         If the film cannot be found in Ratings, but does exist in the Movies
+     *         store, return 0.0f.
+     *         If the film cannot be found in Ratings or Movies stores, return
+     *         -1.0f.
+     */
+    @Override
+    public float getMovieMedianRating(int movieid) {
+        int[] bins = getMovieRatingHistogram(movieid);
+        if (bins.length == 0) {
+            return (stores.getMovies().getTitle(movieid) == null) ? -1.0f : 0.0f;
+        }
+        return RatingHistograms.median(bins, movieCounts[movieOrdinals.getOrDefault(movieid, NONE)]);
+    }
+
+    /**
+     * Get a percentile of the ratings for a given film, read off its histogram
+     *
+     * @param movieID    The movie ID
+     * @param percentile The percentile, between 0 and 100 inclusive
+     * @return Produces the lowest rating that at least the given percentage of the
+     *         film's ratings are at or below.
+     *         If the film cannot be found in Ratings, but does exist in the Movies
+     *         store, return 0.0f.
+     *         If the film cannot be found in Ratings or Movies stores, return
+     *         -1.0f.
+     */
+    @Override
+    public float getMovieRatingPercentile(int movieid, float percentile) {
+        RatingHistograms.checkPercentile(percentile);
+        int[] bins = getMovieRatingHistogram(movieid);
+        if (bins.length == 0) {
+            return (stores.getMovies().getTitle(movieid) == null) ? -1.0f : 0.0f;
+        }
+        return RatingHistograms.percentile(bins, movieCounts[movieOrdinals.getOrDefault(movieid, NONE)], percentile);
+    }
+
+    /**
+     * Get the average rating for a given user
+     *
+     * @param userID The user ID
+     * @return Produces the average rating for a given user. If the user cannot be
+     *         found in Ratings, or there are no rating, return -1.0f
+     */
+    @Override
+    public float getUserAverageRating(int userid) {
+        int userOrdinal = userOrdinals.getOrDefault(userid, NONE);
+
+        if (userOrdinal == NONE || userCounts[userOrdinal] == 0) {
+            return -1.0f;
+        }
+
+        return userSums[userOrdinal] / userCounts[userOrdinal];
+    }
+
+    /**
+     * Gets the top N movies with the most ratings, in order from most to least
+     *
+     * @param num The number of movies that should be returned
+     * @return A sorted array of movie IDs with the most ratings. The array should
+     *         be no larger than num. If there are less than num movies in the
+     *         store, then the array should be the same length as the number of
+     *         movies in Ratings
+     */
+    @Override
+    public int[] getMostRatedMovies(int num) {
+        return topByCount(movieCounts, movieIDs, numMovies, num);
+    }
+
+    /**
+     * Gets the top N users with the most ratings, in order from most to least
+     *
+     * @param num The number of users that should be returned
+     * @return A sorted array of user IDs with the most ratings. The array should be
+     *         no larger than num. If there are less than num users in the store,
+     *         then the array should be the same length as the number of users in
+     *         Ratings
+     */
+    @Override
+    public int[] getMostRatedUsers(int num) {
+        return topByCount(userCounts, userIDs, numUsers, num);
+    }
+
+    /**
+     * Get the number of ratings that a movie has
+     *
+     * @param movieid The movie id to be found
+     * @return The number of ratings the specified movie has.
+     *         If the movie exists in the Movies store, but there are no ratings for
+     *         it, then return 0.
+     *         If the movie does not exist in the Ratings or Movies store, then
+     *         return -1.
+     */
+    @Override
+    public int getNumRatings(int movieid) {
+        int movieOrdinal = movieOrdinals.getOrDefault(movieid, NONE);
+
+        if (movieOrdinal != NONE && movieCounts[movieOrdinal] > 0) {
+            return movieCounts[movieOrdinal];
+        }
+
+        // Getting the title tells you if it exists
+        if (stores.getMovies().getTitle(movieid) != null) {
+            return 0;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Get the highest average rated film IDs, in order of there average rating
+     * (hightst first).
+     *
+     * @param numResults The maximum number of results to be returned
+     * @return An array of the film IDs with the highest average ratings, highest
+     *         first. If there are less than num movies in the store,
+     *         then the array should be the same length as the number of movies in
+     *         Ratings
+     */
+    @Override
+    public int[] getTopAverageRatedMovies(int numResults) {
+        // Keeps the "numResults" movies with the highest averages, scanning ranges of
+        // ordinals in parallel when there are enough movies
+        return ParallelTopK.selectFloat(numMovies, numMovies, numResults, (from, to, topK) -> {
+            for (int ordinal = from; ordinal < to; ordinal++) {
+                if (movieCounts[ordinal] == 0) { // Movie no longer has any ratings
+                    continue;
+                }
+                topK.offer(movieSums[ordinal] / movieCounts[ordinal], movieIDs[ordinal]);
+            }
+        });
+    }
+
+    /**
+     * Sets how getTopWeightedRatedMovies ranks films. Each film is ranked on its
+     * average rating pulled towards a prior mean, as if it also had priorWeight
+     * extra ratings of priorMean, and films with fewer than minRatings ratings are
+     * left out. The ranking is rebuilt once here, and then kept up to date as
+     * ratings change
+     *
+     * @param minRatings  The number of ratings a film needs to be ranked
+     * @param priorWeight The number of ratings the prior mean counts as
+     * @param priorMean   The rating every film is pulled towards
+     */
+    @Override
+    public void setWeightedRanking(int minRatings, int priorWeight, float priorMean) {
+        if (minRatings < 0 || priorWeight < 0) {
+            throw new IllegalArgumentException("The minimum rating count and prior weight cannot be negative");
+        }
+        this.minRatings = minRatings;
+        this.priorWeight = priorWeight;
+        this.priorMean = priorMean;
+
+        topWeightedMovies = new Leaderboard(numMovies);
+        for (int ordinal = 0; ordinal < numMovies; ordinal++) {
+            updateWeightedRanking(ordinal);
+        }
+    }
+
+    /**
+     * Function to bring the weighted ranking of a movie in line with its count and
+     * sum, leaving it out while it has fewer than minRatings ratings (or none)
+     *
+     * @param movieOrdinal the movie ordinal
+     */
+    private void updateWeightedRanking(int movieOrdinal) {
+        int movieCount = movieCounts[movieOrdinal];
+        if (movieCount == 0 || movieCount < minRatings) {
+            topWeightedMovies.remove(movieIDs[movieOrdinal]);
+        } else {
+            topWeightedMovies.update(movieIDs[movieOrdinal],
+                    Ratings.weightedAverage(movieSums[movieOrdinal], movieCount, priorWeight, priorMean));
+        }
+    }
+
+    /**
+     * Get the highest rated film IDs by weighted rating, as set by
+     * setWeightedRanking (highest first)
+     *
+     * @param numResults The maximum number of results to be returned
+     * @return An array of the film IDs with the highest weighted ratings, highest
+     *         first
+     */
+    @Override
+    public int[] getTopWeightedRatedMovies(int numResults) {
+        // The weighted ranking is kept up to date as ratings change, so the top
+        // "numResults" are read straight off it
+        return topWeightedMovies.top(numResults);
+    }
+
+    /**
+     * Get the films most similar to a given film, by the adjusted cosine
+     * similarity of their ratings. Any ratings changed since the last query are
+     * taken in first
+     *
+     * @param movieID    The movie ID
+     * @param numResults The maximum number of results to be returned
+     * @return An array of the most similar film IDs, most similar first. If the
+     *         film has no similar films or cannot be found, then return an empty
+     *         array
+     */
+    @Override
+    public int[] getSimilarMovies(int movieid, int numResults) {
+        if (numResults <= 0) {
+            return new int[0];
+        }
+        similarities.refresh(this::forEachRating, this::forEachRatingOf);
+        return similarities.getSimilar(movieid, numResults);
+    }
+
+    /**
+     * Brings the similar films of every film up to date with the ratings, so the
+     * next getSimilarMovies does not have to
+     */
+    @Override
+    public void refreshSimilarities() {
+        similarities.refresh(this::forEachRating, this::forEachRatingOf);
+    }
+
+    /**
+     * Get the users most similar to a given user, by the overlap of the films
+     * they have rated, estimated from MinHash signatures
+     *
+     * @param userID     The user ID
+     * @param numResults The maximum number of results to be returned
+     * @return An array of the most similar user IDs, most similar first. If the
+     *         user has no ratings, then return an empty array
+     */
+    @Override
+    public int[] getSimilarUsers(int userid, int numResults) {
+        return userSignatures.getSimilar(userid, numResults);
+    }
+
+    /**
+     * Trains a matrix factorisation model on every rating currently held, for
+     * predictRating and getRecommendedMovies. Training is spread over all cores,
+     * which update the model without locking. Ratings changed afterwards are only
+     * taken in by training again
+     *
+     * @param numFactors     The number of latent factors of every user and film
+     * @param numEpochs      The number of passes over the ratings
+     * @param learningRate   The step size of each update
+     * @param regularisation How strongly the model is pulled towards zero
+     * @return The root mean squared error of the model over the ratings
+     * @throws IllegalArgumentException if numFactors is not positive, numEpochs
+     *                                  or regularisation is negative, or
+     *                                  learningRate is not positive
+     */
+    @Override
+    public float trainRecommender(int numFactors, int numEpochs, float learningRate, float regularisation) {
+        recommender = new MatrixFactorization(this::forEachRating, numFactors, numEpochs, learningRate,
+                regularisation);
+        return recommender.getTrainingError();
+    }
+
+    /**
+     * Predicts the rating a user would give a film, from the last trained model
+     *
+     * @param userID  The user ID
+     * @param movieID The movie ID
+     * @return The predicted rating, between 0 and 5. If no model has been
+     *         trained, or the user or film had no ratings when it was, then
+     *         return -1.0f
+     */
+    @Override
+    public float predictRating(int userid, int movieid) {
+        if (recommender == null) {
+            return -1.0f;
+        }
+        return recommender.predict(userid, movieid);
+    }
+
+    /**
+     * Get the films with the highest predicted ratings for a user, from the last
+     * trained model, leaving out the films the user has already rated
+     *
+     * @param userID     The user ID
+     * @param numResults The maximum number of results to be returned
+     * @return An array of movie IDs, highest predicted rating first. If no model
+     *         has been trained, or the user had no ratings when it was, then
+     *         return an empty array
+     */
+    @Override
+    public int[] getRecommendedMovies(int userid, int numResults) {
+        if (recommender == null || numResults <= 0) {
+            return new int[0];
+        }
+        return recommender.recommend(userid, numResults, ratedMovies(userid));
+    }
+
+    /**
+     * Function to return the IDs of every film a user has rated
+     *
+     * @param userid the user ID
+     * @return the movie IDs, or an empty array if the user has no ratings
+     */
+    private int[] ratedMovies(int userid) {
+        int userOrdinal = userOrdinals.getOrDefault(userid, NONE);
+        return (userOrdinal == NONE) ? new int[0] : userMovies(userOrdinal);
+    }
+
+    /**
+     * Function to return the IDs of every film a user has rated
+     *
+     * @param userOrdinal the user ordinal
+     * @return the movie IDs
+     */
+    private int[] userMovies(int userOrdinal) {
+        int[] result = new int[userCounts[userOrdinal]];
+        int index = 0;
+        int userid = userIDs[userOrdinal];
+        boolean hasDelta = deltaHeadByUser[userOrdinal] != NONE;
+        if (userOrdinal < baseUsers) {
+            for (int i = userOffsets[userOrdinal]; i < userOffsets[userOrdinal + 1]; i++) {
+                if (hasDelta && deltaIndex.getOrDefault(pairKey(userid, userRowMovies[i]), NONE) != NONE) {
+                    continue;
+                }
+                result[index++] = userRowMovies[i];
+            }
+        }
+        for (int entry = deltaHeadByUser[userOrdinal]; entry != NONE; entry = deltaNextByUser[entry]) {
+            if (deltaRatings[entry] != REMOVED) {
+                result[index++] = movieIDs[deltaMovies[entry]];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Function to visit every rating, user by user
+     *
+     * @param visitor the visitor to give each rating to
+     */
+    void forEachRating(RatingVisitor visitor) {
+        for (int userOrdinal = 0; userOrdinal < numUsers; userOrdinal++) {
+            forEachRatingOfOrdinal(userOrdinal, visitor);
+        }
+    }
+
+    /**
+     * Function to visit every rating of one user
+     *
+     * @param userid  the user ID
+     * @param visitor the visitor to give each rating to
+     */
+    void forEachRatingOf(int userid, RatingVisitor visitor) {
+        int userOrdinal = userOrdinals.getOrDefault(userid, NONE);
+        if (userOrdinal != NONE) {
+            forEachRatingOfOrdinal(userOrdinal, visitor);
+        }
+    }
+
+    /**
+     * Function to visit the ratings of a user ordinal: the compressed row of the
+     * user minus any pairs the delta buffer overrides, then its live delta entries
+     *
+     * @param userOrdinal the user ordinal
+     * @param visitor     the visitor to give each rating to
+     */
+    private void forEachRatingOfOrdinal(int userOrdinal, RatingVisitor visitor) {
+        int userid = userIDs[userOrdinal];
+        boolean hasDelta = deltaHeadByUser[userOrdinal] != NONE;
+        if (userOrdinal < baseUsers) {
+            for (int i = userOffsets[userOrdinal]; i < userOffsets[userOrdinal + 1]; i++) {
+                if (hasDelta && deltaIndex.getOrDefault(pairKey(userid, userRowMovies[i]), NONE) != NONE) {
+                    continue;
+                }
+                visitor.visit(userid, userRowMovies[i], userRowRatings[i] / 2.0f);
+            }
+        }
+        for (int entry = deltaHeadByUser[userOrdinal]; entry != NONE; entry = deltaNextByUser[entry]) {
+            if (deltaRatings[entry] != REMOVED) {
+                visitor.visit(userid, movieIDs[deltaMovies[entry]], deltaRatings[entry] / 2.0f);
+            }
+        }
+    }
+
+    /**
+     * Get the ratings a user made within a window of time, in the order they were
+     * made. The window is found by binary search over the user's compressed row,
+     * and merged with the user's changes in the delta buffer
+     *
+     * @param userID The user ID
+     * @param from   The start of the window, or null for no start (which also
+     *               takes in ratings with no timestamp)
+     * @param to     The end of the window (inclusive), or null for no end
+     * @return An array of ratings, earliest first. If the user has no ratings in
+     *         the window or cannot be found in Ratings, then return an empty array
+     */
+    @Override
+    public Rating[] getUserTimeline(int userid, LocalDateTime from, LocalDateTime to) {
+        int userOrdinal = userOrdinals.getOrDefault(userid, NONE);
+        if (userOrdinal == NONE || userCounts[userOrdinal] == 0) {
+            return new Rating[0];
+        }
+        // Ratings are held to the second, so a start part way through a second
+        // begins at the next one
+        long start = (from == null) ? Rating.NO_TIMESTAMP
+                : Rating.toEpochSecond(from) + ((from.getNano() > 0) ? 1 : 0);
+        long end = (to == null) ? Long.MAX_VALUE : Rating.toEpochSecond(to);
+        if (start > end) {
+            return new Rating[0];
+        }
+
+        int count = userCounts[userOrdinal];
+        int[] movies = new int[count];
+        byte[] halfStars = new byte[count];
+        long[] epochs = new long[count];
+        int numRatings = userRatingsBetween(userOrdinal, start, end, 0, movies, halfStars, epochs);
+        Rating[] result = new Rating[numRatings];
+        for (int i = 0; i < numRatings; i++) {
+            result[i] = new Rating(userid, movies[i], Rating.pack(halfStars[i], epochs[i]));
+        }
+        return result;
+    }
+
+    /**
+     * Gets the top N movies with the most ratings made between two dates, in order
+     * from most to least
+     *
+     * @param start The first day of the window (UTC)
+     * @param end   The last day of the window (UTC, inclusive)
+     * @param num   The number of movies that should be returned
+     * @return A sorted array of movie IDs with the most ratings in the window. The
+     *         array should be no larger than num, and only holds movies rated in
+     *         the window
+     */
+    @Override
+    public int[] getMostRatedMoviesBetween(LocalDate start, LocalDate end, int num) {
+        if (num <= 0) {
+            return new int[0];
+        }
+
+        // Adds up the counts of every movie over the buckets covering the window,
+        // then offers every <numOfRatings, movieID> pair to a top-K selector
+        IntIntOpenHashMap windowCounts = new IntIntOpenHashMap(64);
+        movieStatsByTime.forEachBucket(start, end, bucket -> {
+            IntIntCursor cursor = bucket.cursor();
+            while (cursor.advance()) {
+                windowCounts.addTo(cursor.getKey(), cursor.getValue());
+            }
+        });
+        return ParallelTopK.selectInt(windowCounts.getCapacity(), windowCounts.getSize(), num,
+                (fromSlot, toSlot, topK) -> {
+                    IntIntCursor cursor = windowCounts.cursor(fromSlot, toSlot);
+                    while (cursor.advance()) {
+                        topK.offer(cursor.getValue(), cursor.getKey());
+                    }
+                });
+    }
+
+    /**
+     * Get the average rating for a given film, of the ratings made between two
+     * dates
+     *
+     * @param movieID The movie ID
+     * @param start   The first day of the window (UTC)
+     * @param end     The last day of the window (UTC, inclusive)
+     * @return Produces the average of the film's ratings in the window.
+     *         If there are no ratings for the film in the window, but the film
+     *         exists in Ratings or the Movies store, return 0.0f.
+     *         If the film cannot be found in Ratings or Movies stores, return
+     *         -1.0f.
+     */
+    @Override
+    public float getMovieAverageRatingBetween(int movieid, LocalDate start, LocalDate end) {
+        // Adds up the count and sum of the movie over the buckets covering the window
+        int[] count = new int[1];
+        float[] sum = new float[1];
+        movieStatsByTime.forEachBucket(start, end, bucket -> {
+            count[0] += bucket.getCount(movieid);
+            sum[0] += bucket.getSum(movieid);
+        });
+
+        if (count[0] == 0) {
+            int movieOrdinal = movieOrdinals.getOrDefault(movieid, NONE);
+            if ((movieOrdinal == NONE || movieCounts[movieOrdinal] == 0)
+                    && stores.getMovies().getTitle(movieid) == null) {
+                return -1.0f;
+            }
+            return 0.0f;
+        }
+        return sum[0] / count[0];
+    }
+
+    /**
+     * Grows the ordinal tables and per-user and per-movie arrays ahead of a bulk
+     * load, so ratings from the given number of users and movies can be added
+     * without any rehashing or copying. The delta buffer is not grown, as it is
+     * merged into the compressed rows every few thousand ratings anyway
+     *
+     * @param numRatings The number of ratings about to be added
+     * @param numUsers   The number of distinct users in those ratings
+     * @param numMovies  The number of distinct movies in those ratings
+     */
+    @Override
+    public void ensureCapacity(int numRatings, int numUsers, int numMovies) {
+        int userLength = this.numUsers + numUsers;
+        userOrdinals.ensureCapacity(userLength);
+        if (userLength > userIDs.length) {
+            userIDs = Arrays.copyOf(userIDs, userLength);
+            userCounts = Arrays.copyOf(userCounts, userLength);
+            userSums = Arrays.copyOf(userSums, userLength);
+            userHistograms = Arrays.copyOf(userHistograms, userLength * RatingHistograms.NUM_BINS);
+            deltaHeadByUser = Arrays.copyOf(deltaHeadByUser, userLength);
+        }
+
+        int movieLength = this.numMovies + numMovies;
+        movieOrdinals.ensureCapacity(movieLength);
+        if (movieLength > movieIDs.length) {
+            movieIDs = Arrays.copyOf(movieIDs, movieLength);
+            movieCounts = Arrays.copyOf(movieCounts, movieLength);
+            movieSums = Arrays.copyOf(movieSums, movieLength);
+            movieHistograms = Arrays.copyOf(movieHistograms, movieLength * RatingHistograms.NUM_BINS);
+            deltaHeadByMovie = Arrays.copyOf(deltaHeadByMovie, movieLength);
+        }
+    }
+
+    /**
+     * Gets the number of ratings in the data structure
+     *
+     * @return The number of ratings in the data structure
+     */
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Merges the delta buffer into the compressed rows. This happens on its own
+     * as the buffer fills, but can be called once loading has finished so every
+     * row is read from the compressed form
+     */
+    public void compact() {
+        if (deltaSize == 0) {
+            return;
+        }
+
+        // Both orientations are rebuilt from the old rows and the delta buffer. The
+        // row lengths are already known from the per ordinal counts
+        int[] newUserOffsets = offsetsFromCounts(userCounts, numUsers);
+        int[] newUserRowMovies = new int[size];
+        byte[] newUserRowRatings = new byte[size];
+        long[] newUserRowEpochs = new long[size];
+        int[] newMovieOffsets = offsetsFromCounts(movieCounts, numMovies);
+        int[] newMovieRowUsers = new int[size];
+        byte[] newMovieRowRatings = new byte[size];
+
+        for (int ordinal = 0; ordinal < numUsers; ordinal++) {
+            userRatingsBetween(ordinal, Rating.NO_TIMESTAMP, Long.MAX_VALUE, newUserOffsets[ordinal],
+                    newUserRowMovies, newUserRowRatings, newUserRowEpochs);
+        }
+        long[] scratch = new long[16];
+        for (int ordinal = 0; ordinal < numMovies; ordinal++) {
+            scratch = mergeMovieRow(ordinal, scratch, newMovieOffsets[ordinal], newMovieRowUsers,
+                    newMovieRowRatings);
+        }
+
+        userOffsets = newUserOffsets;
+        userRowMovies = newUserRowMovies;
+        userRowRatings = newUserRowRatings;
+        userRowEpochs = newUserRowEpochs;
+        baseUsers = numUsers;
+        movieOffsets = newMovieOffsets;
+        movieRowUsers = newMovieRowUsers;
+        movieRowRatings = newMovieRowRatings;
+        baseMovies = numMovies;
+        baseSize = size;
+
+        // Empty the delta buffer, only resetting the chains that were used
+        for (int entry = 0; entry < deltaSize; entry++) {
+            deltaHeadByUser[deltaUsers[entry]] = NONE;
+            deltaHeadByMovie[deltaMovies[entry]] = NONE;
+        }
+        deltaIndex.clear();
+        deltaSize = 0;
+    }
+
+    /**
+     * Function to write one merged movie row into the new compressed arrays: the
+     * old compressed row minus any pairs overridden by the delta buffer, merged
+     * with the live delta entries of the row sorted by user ID
+     *
+     * @param ordinal    the movie ordinal of the row
+     * @param scratch    a reusable buffer for sorting the delta entries
+     * @param write      the position in the new arrays to start writing at
+     * @param newUsers   the new array of user IDs
+     * @param newRatings the new array of half star ratings
+     * @return the scratch buffer (which may have been grown)
+     */
+    private long[] mergeMovieRow(int ordinal, long[] scratch, int write, int[] newUsers, byte[] newRatings) {
+        int movieid = movieIDs[ordinal];
+        int head = deltaHeadByMovie[ordinal];
+
+        // Live delta entries of this row, packed as <user ID, delta entry> so that
+        // sorting them sorts by ID
+        int numDelta = 0;
+        for (int entry = head; entry != NONE; entry = deltaNextByMovie[entry]) {
+            if (deltaRatings[entry] == REMOVED) {
+                continue;
+            }
+            if (numDelta == scratch.length) {
+                scratch = Arrays.copyOf(scratch, scratch.length * 2);
+            }
+            scratch[numDelta++] = ((long) userIDs[deltaUsers[entry]] << 32) | entry;
+        }
+        Arrays.sort(scratch, 0, numDelta);
+
+        int i = 0;
+        int end = 0;
+        if (ordinal < baseMovies) {
+            i = movieOffsets[ordinal];
+            end = movieOffsets[ordinal + 1];
+        }
+
+        int j = 0;
+        while (i < end || j < numDelta) {
+            if (i < end && head != NONE && deltaIndex.getOrDefault(pairKey(movieRowUsers[i], movieid), NONE) != NONE) {
+                i++; // Overridden by the delta buffer
+                continue;
+            }
+            if (j >= numDelta || (i < end && movieRowUsers[i] < (int) (scratch[j] >> 32))) {
+                newUsers[write] = movieRowUsers[i];
+                newRatings[write++] = movieRowRatings[i++];
+            } else {
+                newUsers[write] = (int) (scratch[j] >> 32);
+                newRatings[write++] = deltaRatings[(int) scratch[j++]];
+            }
+        }
+
+        return scratch;
+    }
+
+    /**
+     * Function to write the ratings of a user made within a window of time, in
+     * time order and then by movie ID: the part of the compressed row in the
+     * window, found by binary search, minus any pairs overridden by the delta
+     * buffer, merged with the live delta entries of the user in the window. Used
+     * both to read a user's ratings and to write the user's merged row
+     *
+     * @param userOrdinal the user ordinal
+     * @param from        the first epoch second of the window
+     * @param to          the last epoch second of the window (inclusive)
+     * @param write       the position in the arrays to start writing at
+     * @param movies      the array to write the movie IDs to
+     * @param halfStars   the array to write the half star ratings to
+     * @param epochs      the array to write the epoch seconds to
+     * @return the number of ratings written
+     */
+    private int userRatingsBetween(int userOrdinal, long from, long to, int write, int[] movies, byte[] halfStars,
+            long[] epochs) {
+        int userid = userIDs[userOrdinal];
+        boolean hasDelta = deltaHeadByUser[userOrdinal] != NONE;
+        int[] delta = hasDelta ? userDeltaBetween(userOrdinal, from, to) : NO_ENTRIES;
+
+        int i = 0;
+        int end = 0;
+        if (userOrdinal < baseUsers) {
+            i = firstRatedAtOrAfter(userOrdinal, from);
+            end = (to == Long.MAX_VALUE) ? userOffsets[userOrdinal + 1] : firstRatedAtOrAfter(userOrdinal, to + 1);
+        }
+
+        int start = write;
+        int j = 0;
+        while (i < end || j < delta.length) {
+            if (i < end && hasDelta && deltaIndex.getOrDefault(pairKey(userid, userRowMovies[i]), NONE) != NONE) {
+                i++; // Overridden by the delta buffer
+                continue;
+            }
+            if (j >= delta.length || (i < end && UserTimeline.compare(userRowEpochs[i], userRowMovies[i],
+                    deltaEpochs[delta[j]], movieIDs[deltaMovies[delta[j]]]) < 0)) {
+                movies[write] = userRowMovies[i];
+                halfStars[write] = userRowRatings[i];
+                epochs[write++] = userRowEpochs[i++];
+            } else {
+                int entry = delta[j++];
+                movies[write] = movieIDs[deltaMovies[entry]];
+                halfStars[write] = deltaRatings[entry];
+                epochs[write++] = deltaEpochs[entry];
+            }
+        }
+        return write - start;
+    }
+
+    /**
+     * Function to find, by binary search, the first position of a user's
+     * compressed row rated at or after a time
+     *
+     * @param userOrdinal the user ordinal, which must have a compressed row
+     * @param epochSecond the time in epoch seconds
+     * @return the position, from the start to the end of the row
+     */
+    private int firstRatedAtOrAfter(int userOrdinal, long epochSecond) {
+        int low = userOffsets[userOrdinal];
+        int high = userOffsets[userOrdinal + 1];
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (userRowEpochs[mid] < epochSecond) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Function to return the live delta entries of a user made within a window of
+     * time, sorted by time and then by movie ID
+     *
+     * @param userOrdinal the user ordinal
+     * @param from        the first epoch second of the window
+     * @param to          the last epoch second of the window (inclusive)
+     * @return the delta entries
+     */
+    private int[] userDeltaBetween(int userOrdinal, long from, long to) {
+        IntArrayList entries = new IntArrayList(4);
+        for (int entry = deltaHeadByUser[userOrdinal]; entry != NONE; entry = deltaNextByUser[entry]) {
+            if (deltaRatings[entry] != REMOVED && deltaEpochs[entry] >= from && deltaEpochs[entry] <= to) {
+                entries.add(entry);
+            }
+        }
+
+        // Sorted by movie ID, then stably by time, so equal times stay in movie order
+        int numEntries = entries.size();
+        int[] order = new int[numEntries];
+        long[] keys = new long[numEntries];
+        for (int i = 0; i < numEntries; i++) {
+            order[i] = i;
+            keys[i] = movieIDs[deltaMovies[entries.get(i)]];
+        }
+        Ratings.sortByKey(order, keys);
+        for (int i = 0; i < numEntries; i++) {
+            keys[i] = deltaEpochs[entries.get(i)];
+        }
+        Ratings.sortByKey(order, keys);
+
+        int[] result = new int[numEntries];
+        for (int i = 0; i < numEntries; i++) {
+            result[i] = entries.get(order[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Function to merge the delta buffer once it holds more than a fixed fraction
+     * of the compressed rows, so each merge is paid for by the changes before it
+     */
+    private void mergeIfFull() {
+        if (deltaSize >= Math.max(MIN_MERGE_THRESHOLD, baseSize / 4)) {
+            compact();
+        }
+    }
+
+    /**
+     * Function to find the current half star rating of a (user, movie) pair
+     *
+     * @param userOrdinal  the user ordinal
+     * @param movieOrdinal the movie ordinal
+     * @return the number of half stars, or REMOVED if the user has not rated the
+     *         movie
+     */
+    private byte findRating(int userOrdinal, int movieOrdinal) {
+        int entry = deltaIndex.getOrDefault(pairKey(userIDs[userOrdinal], movieIDs[movieOrdinal]), NONE);
+        if (entry != NONE) {
+            return deltaRatings[entry];
+        }
+
+        // The user rows are in time order, so the pair is found in the movie row,
+        // which is sorted by user ID
+        if (movieOrdinal >= baseMovies) {
+            return REMOVED;
+        }
+        int index = Arrays.binarySearch(movieRowUsers, movieOffsets[movieOrdinal], movieOffsets[movieOrdinal + 1],
+                userIDs[userOrdinal]);
+        return (index >= 0) ? movieRowRatings[index] : REMOVED;
+    }
+
+    /**
+     * Function to find the time of a (user, movie) pair the user has rated. A pair
+     * not in the delta buffer is found by walking the user's compressed row, as
+     * it is in time order rather than movie order
+     *
+     * @param userOrdinal  the user ordinal
+     * @param movieOrdinal the movie ordinal
+     * @return the time in epoch seconds, or Rating.NO_TIMESTAMP
+     */
+    private long findEpochSecond(int userOrdinal, int movieOrdinal) {
+        int entry = deltaIndex.getOrDefault(pairKey(userIDs[userOrdinal], movieIDs[movieOrdinal]), NONE);
+        if (entry != NONE) {
+            return deltaEpochs[entry];
+        }
+
+        if (userOrdinal < baseUsers) {
+            int movieid = movieIDs[movieOrdinal];
+            for (int i = userOffsets[userOrdinal]; i < userOffsets[userOrdinal + 1]; i++) {
+                if (userRowMovies[i] == movieid) {
+                    return userRowEpochs[i];
+                }
+            }
+        }
+        return Rating.NO_TIMESTAMP;
+    }
+
+    /**
+     * Function to add a rating to the time index of its movie, unless it has no
+     * timestamp
+     *
+     * @param movieid     the movie ID
+     * @param epochSecond the time in epoch seconds, or Rating.NO_TIMESTAMP
+     * @param rating      the rating
+     */
+    private void indexByTime(int movieid, long epochSecond, float rating) {
+        if (epochSecond != Rating.NO_TIMESTAMP) {
+            movieStatsByTime.add(epochSecond, movieid, rating);
+        }
+    }
+
+    /**
+     * Function to take a rating back out of the time index of its movie
+     *
+     * @param movieid     the movie ID
+     * @param epochSecond the time it was indexed with, or Rating.NO_TIMESTAMP
+     * @param rating      the rating
+     */
+    private void unindexByTime(int movieid, long epochSecond, float rating) {
+        if (epochSecond != Rating.NO_TIMESTAMP) {
+            movieStatsByTime.remove(epochSecond, movieid, rating);
+        }
+    }
+
+    /**
+     * Function to record a new value for a (user, movie) pair in the delta buffer
+     *
+     * @param userOrdinal  the user ordinal
+     * @param movieOrdinal the movie ordinal
+     * @param halfStars    the new number of half stars, or REMOVED
+     * @param epochSecond  the new time in epoch seconds, or Rating.NO_TIMESTAMP
+     */
+    private void writeDelta(int userOrdinal, int movieOrdinal, byte halfStars, long epochSecond) {
+        long key = pairKey(userIDs[userOrdinal], movieIDs[movieOrdinal]);
+        int entry = deltaIndex.getOrDefault(key, NONE);
+        if (entry != NONE) { // Pair already in the buffer, so just overwrite it
+            deltaRatings[entry] = halfStars;
+            deltaEpochs[entry] = epochSecond;
+            return;
+        }
+
+        if (deltaSize == deltaUsers.length) {
+            int newLength = deltaSize * 2;
+            deltaUsers = Arrays.copyOf(deltaUsers, newLength);
+            deltaMovies = Arrays.copyOf(deltaMovies, newLength);
+            deltaRatings = Arrays.copyOf(deltaRatings, newLength);
+            deltaEpochs = Arrays.copyOf(deltaEpochs, newLength);
+            deltaNextByUser = Arrays.copyOf(deltaNextByUser, newLength);
+            deltaNextByMovie = Arrays.copyOf(deltaNextByMovie, newLength);
+        }
+
+        entry = deltaSize++;
+        deltaUsers[entry] = userOrdinal;
+        deltaMovies[entry] = movieOrdinal;
+        deltaRatings[entry] = halfStars;
+        deltaEpochs[entry] = epochSecond;
+        deltaNextByUser[entry] = deltaHeadByUser[userOrdinal];
+        deltaHeadByUser[userOrdinal] = entry;
+        deltaNextByMovie[entry] = deltaHeadByMovie[movieOrdinal];
+        deltaHeadByMovie[movieOrdinal] = entry;
+        deltaIndex.put(key, entry);
+    }
+
+    /**
+     * Function to return the ordinal of a user, giving it the next free ordinal
+     * if it has not been seen before
+     *
+     * @param userid the user ID
+     * @return the user ordinal
+     */
+    private int userOrdinal(int userid) {
+        int ordinal = userOrdinals.getOrDefault(userid, NONE);
+        if (ordinal != NONE) {
+            return ordinal;
+        }
+
+        if (numUsers == userIDs.length) {
+            int newLength = numUsers * 2;
+            userIDs = Arrays.copyOf(userIDs, newLength);
+            userCounts = Arrays.copyOf(userCounts, newLength);
+            userSums = Arrays.copyOf(userSums, newLength);
+            userHistograms = Arrays.copyOf(userHistograms, newLength * RatingHistograms.NUM_BINS);
+            deltaHeadByUser = Arrays.copyOf(deltaHeadByUser, newLength);
+        }
+        ordinal = numUsers++;
+        userOrdinals.put(userid, ordinal);
+        userIDs[ordinal] = userid;
+        deltaHeadByUser[ordinal] = NONE;
+        return ordinal;
+    }
+
+    /**
+     * Function to return the ordinal of a movie, giving it the next free ordinal
+     * if it has not been seen before
+     *
+     * @param movieid the movie ID
+     * @return the movie ordinal
+     */
+    private int movieOrdinal(int movieid) {
+        int ordinal = movieOrdinals.getOrDefault(movieid, NONE);
+        if (ordinal != NONE) {
+            return ordinal;
+        }
+
+        if (numMovies == movieIDs.length) {
+            int newLength = numMovies * 2;
+            movieIDs = Arrays.copyOf(movieIDs, newLength);
+            movieCounts = Arrays.copyOf(movieCounts, newLength);
+            movieSums = Arrays.copyOf(movieSums, newLength);
+            movieHistograms = Arrays.copyOf(movieHistograms, newLength * RatingHistograms.NUM_BINS);
+            deltaHeadByMovie = Arrays.copyOf(deltaHeadByMovie, newLength);
+        }
+        ordinal = numMovies++;
+        movieOrdinals.put(movieid, ordinal);
+        movieIDs[ordinal] = movieid;
+        deltaHeadByMovie[ordinal] = NONE;
+        return ordinal;
+    }
+
+    /**
+     * Function to find the IDs with the highest counts, most first
+     *
+     * @param counts     the count for every ordinal
+     * @param ids        the ID for every ordinal
+     * @param numEntries the number of ordinals in use
+     * @param num        the maximum number of IDs to return
+     * @return the IDs sorted by descending count
+     */
+    private int[] topByCount(int[] counts, int[] ids, int numEntries, int num) {
+        return ParallelTopK.selectInt(numEntries, numEntries, num, (from, to, topK) -> {
+            for (int ordinal = from; ordinal < to; ordinal++) {
+                if (counts[ordinal] == 0) { // No ratings left for this ID
+                    continue;
+                }
+                topK.offer(counts[ordinal], ids[ordinal]);
+            }
+        });
+    }
+
+    /**
+     * Function to build CSR offsets from the number of entries in each row
+     *
+     * @param counts  the number of entries in each row
+     * @param numRows the number of rows
+     * @return the offsets, with one extra element marking the end of the last row
+     */
+    private static int[] offsetsFromCounts(int[] counts, int numRows) {
+        int[] offsets = new int[numRows + 1];
+        for (int row = 0; row < numRows; row++) {
+            offsets[row + 1] = offsets[row] + counts[row];
+        }
+        return offsets;
+    }
+
+    /**
+     * Function to convert a rating into a whole number of half stars
+     *
+     * @param rating the rating
+     * @return the number of half stars, or REMOVED if the rating is not a multiple
+     *         of 0.5 between 0 and 5
+     */
+    private static byte toHalfStars(float rating) {
+        float halfStars = rating * 2;
+        if (!(halfStars >= 0 && halfStars <= 10) || halfStars != (int) halfStars) {
+            return REMOVED;
+        }
+        return (byte) halfStars;
+    }
+
+    /**
+     * Function to pack a (user, movie) pair into a single key
+     *
+     * @param userid  the user ID
+     * @param movieid the movie ID
+     * @return the packed key
+     */
+    private static long pairKey(int userid, int movieid) {
+        return ((long) userid << 32) | (movieid & 0xFFFFFFFFL);
+    }
+}
@@ -3,13 +3,14 @@ package stores;
 import structures.*;
 
 import interfaces.ICredits;
+import interfaces.ITableDiagnostics;
 
-public class Credits implements ICredits {
+public class Credits implements ICredits, ITableDiagnostics {
     Stores stores;
 
-    ChainingHashMap<Integer, MovieCredits> movieCreditsMap;
-    ChainingHashMap<Integer, CastData> castDataMap;
-    ChainingHashMap<Integer, CrewData> crewDataMap;
+    IntObjectOpenHashMap<MovieCredits> movieCreditsMap;
+    IntObjectOpenHashMap<CastData> castDataMap;
+    IntObjectOpenHashMap<CrewData> crewDataMap;
 
     int size;
 
@@ -23,9 +24,9 @@ public class Credits implements ICredits {
     public Credits(Stores stores) {
         this.stores = stores;
 
-        movieCreditsMap = new ChainingHashMap<>(2153);
-        castDataMap = new ChainingHashMap<>(2153);
-        crewDataMap = new ChainingHashMap<>(2153);
+        movieCreditsMap = new IntObjectOpenHashMap<>(2153);
+        castDataMap = new IntObjectOpenHashMap<>(2153);
+        crewDataMap = new IntObjectOpenHashMap<>(2153);
 
         size = 0;
     }
@@ -217,13 +218,10 @@ public class Credits implements ICredits {
         // Creates an arraylist to easily accumulate new cast people
         CustomArrayList<Person> castList = new CustomArrayList<>();
 
-        // Iterates through the linked list buckets in the cast map to find all the people in it
-        for (int i = 0; i < castDataMap.getCapacity(); i++) {
-            ListElement<Integer, CastData> element = castDataMap.getHead(i);
-            while (element != null) {
-                castList.add(element.getValue().getPerson());
-                element = element.getNext();
-            }
+        // Iterates through the entries in the cast map to find all the people in it
+        IntObjectCursor<CastData> cursor = castDataMap.cursor();
+        while (cursor.advance()) {
+            castList.add(cursor.getValue().getPerson());
         }
         
         return castList.getAsArrayPerson(); // Returns the arraylist as a list of Persons
@@ -240,13 +238,10 @@ public class Credits implements ICredits {
 
         CustomArrayList<Person> crewList = new CustomArrayList<>();
 
-        // Iterates through the linked list buckets in the crew map to find all the people in it
-        for (int i = 0; i < crewDataMap.getCapacity(); i++) {
-            ListElement<Integer, CrewData> element = crewDataMap.getHead(i);
-            while (element != null) {
-                crewList.add(element.getValue().getPerson());
-                element = element.getNext();
-            }
+        // Iterates through the entries in the crew map to find all the people in it
+        IntObjectCursor<CrewData> cursor = crewDataMap.cursor();
+        while (cursor.advance()) {
+            crewList.add(cursor.getValue().getPerson());
         }
 
         return crewList.getAsArrayPerson();
@@ -265,15 +260,12 @@ public class Credits implements ICredits {
 
         CustomArrayList<Person> castList = new CustomArrayList<>();
         
-        // Iterates through the linked list buckets in the cast map to find all the people with the string in their name
-        for (int i = 0; i < castDataMap.getCapacity(); i++) {
-            ListElement<Integer, CastData> element = castDataMap.getHead(i);
-            while (element != null) {
-                Person person = element.getValue().getPerson();
-                if (person.getName().contains(cast)) {
-                    castList.add(person);
-                }
-                element = element.getNext();
+        // Iterates through the entries in the cast map to find all the people with the string in their name
+        IntObjectCursor<CastData> cursor = castDataMap.cursor();
+        while (cursor.advance()) {
+            CastData castData = cursor.getValue();
+            if (castData.getPerson().getName().contains(cast)) {
+                castList.add(castData.getPerson());
             }
         }
 
@@ -293,15 +285,12 @@ public class Credits implements ICredits {
 
         CustomArrayList<Person> crewList = new CustomArrayList<>();
 
-        // Iterates through the linked list buckets in the crew map to find all the people with the string in their name
-        for (int i = 0; i < crewDataMap.getCapacity(); i++) {
-            ListElement<Integer, CrewData> element = crewDataMap.getHead(i);
-            while (element != null) {
-                Person person = element.getValue().getPerson();
-                if (person.getName().contains(crew)) {
-                    crewList.add(person);
-                }
-                element = element.getNext();
+        // Iterates through the entries in the crew map to find all the people with the string in their name
+        IntObjectCursor<CrewData> cursor = crewDataMap.cursor();
+        while (cursor.advance()) {
+            CrewData crewData = cursor.getValue();
+            if (crewData.getPerson().getName().contains(crew)) {
+                crewList.add(crewData.getPerson());
             }
         }
 
@@ -386,6 +375,28 @@ public class Credits implements ICredits {
 
     }
 
+    /**
+     * Get the films that two cast members have both appeared in, by intersecting
+     * their film sets
+     * 
+     * @param castID      The cast ID of the first person
+     * @param otherCastID The cast ID of the second person
+     * @return An array of the film IDs both cast members appear in, in ascending
+     *         order. If either cast member does not exist, or they share no
+     *         films, return an empty array
+     */
+    @Override
+    public int[] getSharedCastFilms(int castID, int otherCastID) {
+        CastData castData = castDataMap.get(castID);
+        CastData otherCastData = castDataMap.get(otherCastID);
+
+        if (castData == null || otherCastData == null) {
+            return new int[0];
+        }
+
+        return RoaringBitmap.and(castData.getMovieSet(), otherCastData.getMovieSet()).toArray();
+    }
+
     /**
      * Get the films that this cast member stars in (in the top 3 cast
      * members/top 3 billing). This is determined by the order field in
@@ -425,33 +436,19 @@ public class Credits implements ICredits {
      */
     @Override
     public Person[] getMostCastCredits(int numResults) {
-        // Creates a minheap with <Integer, KeyValuePair<Integer,Integer>>
-        CustomMinHeap<Integer> minHeap = new CustomMinHeap<>(numResults);
-
-        // Iterates through the cast members in the cast data map to create the heap of max "numResults" elements
-        for (int i = 0; i < castDataMap.getCapacity(); i++) {
-            ListElement<Integer, CastData> element = castDataMap.getHead(i);
-            while (element != null) {
-                // Gets the <totalCredits, castID> as a KVP
-                KeyValuePair<Integer, Integer> elementDetails = new KeyValuePair<>(element.getValue().getTotalCredits(),element.getKey()); 
-                if (!minHeap.isFull()) { // If not full or is empty, add the element!
-                    minHeap.add(elementDetails);
-                } else if (elementDetails.compareTo(minHeap.peek()) > 0) { // Heap full - Compares the numberOfRatings
-                                                                           // of current movie element, with minimum on
-                                                                           // the heap so far
-                    // Pops the minimum and adds the new element if condition is satisfied
-                    minHeap.popRoot();
-                    minHeap.add(elementDetails);
-                }
-                element = element.getNext();
-            }
-        }
-
-        // Gets the cast IDs in descending order
-        int[] topCastIDs = minHeap.getSortedDescendingValues();
+        // Offers every <totalCredits, castID> pair in the cast data map to a top-K
+        // selector, which keeps the highest "numResults" values, and gets the cast IDs
+        // in descending order. Large maps are split into slot ranges scanned in parallel
+        int[] topCastIDs = ParallelTopK.selectInt(castDataMap.getCapacity(), castDataMap.getSize(), numResults,
+                (fromSlot, toSlot, topK) -> {
+                    IntObjectCursor<CastData> cursor = castDataMap.cursor(fromSlot, toSlot);
+                    while (cursor.advance()) {
+                        topK.offer(cursor.getValue().getTotalCredits(), cursor.getKey());
+                    }
+                });
 
         // Declares a person array and iterates through the IDs converting them into person objects 
-        // This is because the heap doesn't deal with generic values to a KVP in the heap -would become more complex to deal with
+        // This is because the selector only deals with primitive IDs
         Person[] topCastPersons = new Person[topCastIDs.length];
         for (int i = 0; i < topCastIDs.length; i++) {
             topCastPersons[i] = castDataMap.get(topCastIDs[i]).getPerson();
@@ -482,6 +479,21 @@ public class Credits implements ICredits {
         return castData.getTotalCredits();
     }
 
+    /**
+     * Grows the data structure ahead of a bulk load, so that the given number of
+     * films and people can be added without any rehashing
+     * 
+     * @param numFilms The number of films about to be added
+     * @param numCast  The number of distinct cast members in those films
+     * @param numCrew  The number of distinct crew members in those films
+     */
+    @Override
+    public void ensureCapacity(int numFilms, int numCast, int numCrew) {
+        movieCreditsMap.ensureCapacity(movieCreditsMap.getSize() + numFilms);
+        castDataMap.ensureCapacity(castDataMap.getSize() + numCast);
+        crewDataMap.ensureCapacity(crewDataMap.getSize() + numCrew);
+    }
+
     /**
      * Gets the number of films stored in this data structure
      * 
@@ -491,4 +503,31 @@ public class Credits implements ICredits {
     public int size() {
         return this.size;
     }
+
+    /**
+     * Switches the collection of hash table statistics on or off for every table
+     * in the store
+     * 
+     * @param enabled Whether to collect statistics
+     */
+    @Override
+    public void setTableStatsEnabled(boolean enabled) {
+        movieCreditsMap.setStatsEnabled(enabled);
+        castDataMap.setStatsEnabled(enabled);
+        crewDataMap.setStatsEnabled(enabled);
+    }
+
+    /**
+     * Gets a snapshot of the health of every hash table in the store
+     * 
+     * @return The statistics of each table
+     */
+    @Override
+    public HashTableStats[] getTableStats() {
+        return new HashTableStats[] {
+                movieCreditsMap.getStats("Credits.movieCredits"),
+                castDataMap.getStats("Credits.cast"),
+                crewDataMap.getStats("Credits.crew")
+        };
+    }
 }
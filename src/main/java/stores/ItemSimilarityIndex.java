@@ -0,0 +1,549 @@
+package stores;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import structures.*;
+
+/**
+ * Item-item collaborative filtering over the ratings of a store: for every film,
+ * the films most similar to it by the adjusted cosine similarity of their
+ * ratings (each rating less the average of its user, compared over the users
+ * who rated both films). Only films with a positive similarity over at least
+ * MIN_CO_RATERS users are kept, up to NUM_NEIGHBOURS per film, so a lookup is a
+ * read of a precomputed list.
+ *
+ * The first refresh copies every rating into rows by film and by user, which
+ * costs a sort of all R ratings' IDs (O(R log R)), then works out the row of
+ * similarities of each film with sparse dot products against every film
+ * sharing a rater, split over films on the fork-join pool. The rows are kept
+ * between refreshes (about 16 bytes per rating), and the users whose ratings
+ * change are tracked. A later refresh re-reads only those users' ratings from
+ * the store and patches their rows, and the rows of the films they rate or
+ * stopped rating, in place, then works out only those films again. Every other
+ * film keeps its row as it is: all its raters are unchanged users, whose
+ * ratings and averages are the same as before, so each of its similarities
+ * (which only involve its own raters) is the same as well.
+ *
+ * Refreshes run on the calling thread, so the first similarity query after a
+ * change pays for it: patching costs the changed users' ratings times the
+ * length of the film rows they touch, and working out the affected films
+ * costs, for each, the ratings of all of its raters
+ */
+final class ItemSimilarityIndex {
+    static final int NUM_NEIGHBOURS = 50;
+    static final int MIN_CO_RATERS = 3;
+    private static final int ROWS_PER_TASK = 64;
+    private static final int NONE = -1;
+
+    private IntObjectOpenHashMap<int[]> neighbours; // MovieID -> its most similar films
+    private RoaringBitmap changedUsers;
+    private RatingRows ratings; // Null until the first refresh
+
+    /**
+     * Constructor for the index, which is empty until the first refresh
+     */
+    ItemSimilarityIndex() {
+        this.neighbours = new IntObjectOpenHashMap<>(2153);
+        this.changedUsers = new RoaringBitmap();
+        this.ratings = null;
+    }
+
+    /**
+     * Function to record that one of a user's ratings has been added, set or
+     * removed, so the next refresh takes in their ratings again
+     *
+     * @param userid the user ID
+     */
+    void markChanged(int userid) {
+        if (ratings != null) { // Before the first refresh everything is worked out anyway
+            changedUsers.add(userid);
+        }
+    }
+
+    /**
+     * Function to return the films most similar to a film, as of the last refresh
+     *
+     * @param movieid    the movie ID
+     * @param numResults the maximum number of films to return
+     * @return the movie IDs, most similar first, or an empty array if the film has
+     *         no neighbours or numResults is not positive
+     */
+    int[] getSimilar(int movieid, int numResults) {
+        int[] row = neighbours.get(movieid);
+        if (row == null || numResults <= 0) {
+            return new int[0];
+        }
+        return Arrays.copyOf(row, Math.min(numResults, row.length));
+    }
+
+    /**
+     * Function to bring the index up to date with the ratings of a store, doing
+     * nothing if no rating has changed since the last refresh
+     *
+     * @param source     the ratings of the store, read in full on the first refresh
+     * @param userSource the ratings of each user, read for the changed users on
+     *                   later refreshes
+     */
+    void refresh(RatingVisitor.Source source, RatingVisitor.UserSource userSource) {
+        if (ratings == null) {
+            rebuild(source);
+            return;
+        }
+        if (changedUsers.isEmpty()) {
+            return;
+        }
+
+        // A film is changed if it was rated or unrated, or if any of its raters
+        // changed (as that moves the average every rating of theirs is taken from)
+        IntArrayList affected = new IntArrayList();
+        for (int userid : changedUsers.toArray()) {
+            ratings.patchUser(userid, userSource, affected);
+        }
+        changedUsers = new RoaringBitmap();
+
+        boolean[] changed = new boolean[ratings.numMovies];
+        IntArrayList changedRows = new IntArrayList();
+        for (int i = 0; i < affected.size(); i++) {
+            int movie = affected.get(i);
+            if (!changed[movie]) {
+                changed[movie] = true;
+                changedRows.add(movie);
+            }
+        }
+        int[] movies = changedRows.toArray();
+        store(ratings, movies, computeRows(ratings, movies));
+    }
+
+    /**
+     * Function to copy every rating into rows and work out the neighbours of
+     * every film
+     *
+     * @param source the ratings of the store
+     */
+    private void rebuild(RatingVisitor.Source source) {
+        ratings = new RatingRows(source);
+        int[] movies = new int[ratings.numMovies];
+        for (int movie = 0; movie < movies.length; movie++) {
+            movies[movie] = movie;
+        }
+        int[][] results = computeRows(ratings, movies);
+
+        neighbours = new IntObjectOpenHashMap<>(Math.max(movies.length, 2153));
+        store(ratings, movies, results);
+        changedUsers = new RoaringBitmap();
+    }
+
+    /**
+     * Function to work out the neighbours of some films in parallel
+     *
+     * @param ratings the rows of the ratings
+     * @param rows    the movie ordinals to work out
+     * @return the neighbour IDs of each row, in the same order as the rows
+     */
+    private static int[][] computeRows(RatingRows ratings, int[] rows) {
+        int[][] results = new int[rows.length][];
+        if (rows.length > 0) {
+            // Each task allocates accumulators as long as the number of films, so rows are
+            // only split finely enough to keep every worker busy
+            int grain = Math.max(ROWS_PER_TASK, rows.length / (ForkJoinPool.getCommonPoolParallelism() * 8));
+            ForkJoinPool.commonPool().invoke(new RowTask(ratings, rows, results, grain, 0, rows.length));
+        }
+        return results;
+    }
+
+    /**
+     * Function to work out the neighbours of one film: a dot product of its
+     * adjusted ratings with those of every film sharing a rater, accumulated one
+     * rater at a time
+     *
+     * @param ratings the rows of the ratings
+     * @param movie   the movie ordinal
+     * @param scratch the accumulators of the calling task, all zero (and left
+     *                that way)
+     * @return the neighbour IDs, most similar first
+     */
+    private static int[] computeRow(RatingRows ratings, int movie, Scratch scratch) {
+        double[] dot = scratch.dot;
+        double[] norm = scratch.norm;
+        double[] otherNorm = scratch.otherNorm;
+        int[] coRaters = scratch.coRaters;
+        int[] touched = scratch.touched;
+        int numTouched = 0;
+
+        int[] raters = ratings.movieUsers[movie];
+        float[] raterValues = ratings.movieValues[movie];
+        int numRaters = ratings.movieLengths[movie];
+        for (int k = 0; k < numRaters; k++) {
+            double value = raterValues[k];
+            int[] others = ratings.userMovies[raters[k]];
+            float[] otherValues = ratings.userValues[raters[k]];
+            for (int l = 0; l < others.length; l++) {
+                int other = others[l];
+                if (other == movie) {
+                    continue;
+                }
+                if (coRaters[other]++ == 0) {
+                    touched[numTouched++] = other;
+                }
+                double otherValue = otherValues[l];
+                dot[other] += value * otherValue;
+                norm[other] += value * value;
+                otherNorm[other] += otherValue * otherValue;
+            }
+        }
+
+        FloatTopK topK = new FloatTopK(NUM_NEIGHBOURS);
+        for (int t = 0; t < numTouched; t++) {
+            int other = touched[t];
+            if (coRaters[other] >= MIN_CO_RATERS && dot[other] > 0) {
+                topK.offer((float) (dot[other] / Math.sqrt(norm[other] * otherNorm[other])),
+                        ratings.movieIDs[other]);
+            }
+            dot[other] = 0;
+            norm[other] = 0;
+            otherNorm[other] = 0;
+            coRaters[other] = 0;
+        }
+        return topK.getSortedDescendingIds();
+    }
+
+    /**
+     * Function to put the neighbours of worked out rows into the index, leaving
+     * out films with none
+     *
+     * @param ratings the rows of the ratings
+     * @param rows    the movie ordinals
+     * @param results the neighbour IDs of each row
+     */
+    private void store(RatingRows ratings, int[] rows, int[][] results) {
+        for (int i = 0; i < rows.length; i++) {
+            int movieid = ratings.movieIDs[rows[i]];
+            neighbours.remove(movieid);
+            if (results[i].length > 0) {
+                neighbours.add(movieid, results[i]);
+            }
+        }
+    }
+
+    /**
+     * The accumulators of one task for working out a row, indexed by movie ordinal
+     */
+    private static final class Scratch {
+        final double[] dot;
+        final double[] norm;
+        final double[] otherNorm;
+        final int[] coRaters;
+        final int[] touched;
+
+        Scratch(int numMovies) {
+            this.dot = new double[numMovies];
+            this.norm = new double[numMovies];
+            this.otherNorm = new double[numMovies];
+            this.coRaters = new int[numMovies];
+            this.touched = new int[numMovies];
+        }
+    }
+
+    /**
+     * Task working out the neighbours of a range of rows, split in half on the
+     * fork-join pool until each range is at most the grain size
+     */
+    private static class RowTask extends RecursiveAction {
+        private final RatingRows ratings;
+        private final int[] rows;
+        private final int[][] results;
+        private final int grain;
+        private final int from;
+        private final int to;
+
+        RowTask(RatingRows ratings, int[] rows, int[][] results, int grain, int from, int to) {
+            this.ratings = ratings;
+            this.rows = rows;
+            this.results = results;
+            this.grain = grain;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= grain) {
+                Scratch scratch = new Scratch(ratings.numMovies);
+                for (int i = from; i < to; i++) {
+                    results[i] = computeRow(ratings, rows[i], scratch);
+                }
+                return;
+            }
+            // Split the range in half, and work out both halves as separate tasks
+            int middle = (from + to) >>> 1;
+            invokeAll(new RowTask(ratings, rows, results, grain, from, middle),
+                    new RowTask(ratings, rows, results, grain, middle, to));
+        }
+    }
+
+    /**
+     * Every rating in rows by film and by user, with each rating less the average
+     * of its user. The rows are built from a full copy of the ratings with
+     * ordinals in ID order, and then patched a user at a time as ratings change,
+     * with new users and films given the next ordinals. A film's row is kept
+     * sorted by user ID, so its raters are always summed in the same order and
+     * the similarities do not depend on the order ratings were added in
+     */
+    private static final class RatingRows {
+        private static final int INITIAL_ROW_CAPACITY = 4;
+
+        final IntIntOpenHashMap userOrdinals;
+        final IntIntOpenHashMap movieOrdinals;
+        int[] userIDs;
+        int numUsers;
+        int[] movieIDs;
+        int numMovies;
+
+        // Row of each user ordinal: the movie ordinals and adjusted ratings
+        int[][] userMovies;
+        float[][] userValues;
+
+        // Row of each movie ordinal: the user ordinals (by ascending user ID) and
+        // adjusted ratings, in the first movieLengths[m] places of the arrays
+        int[][] movieUsers;
+        float[][] movieValues;
+        int[] movieLengths;
+
+        RatingRows(RatingVisitor.Source source) {
+            IntArrayList users = new IntArrayList();
+            IntArrayList movies = new IntArrayList();
+            IntArrayList halfStars = new IntArrayList();
+            source.forEachRating((userid, movieid, rating) -> {
+                users.add(userid);
+                movies.add(movieid);
+                halfStars.add(Math.round(rating * 2));
+            });
+            int numRatings = users.size();
+
+            this.userIDs = distinctSorted(users);
+            this.numUsers = userIDs.length;
+            this.movieIDs = distinctSorted(movies);
+            this.numMovies = movieIDs.length;
+            this.userOrdinals = ordinalsOf(userIDs);
+            this.movieOrdinals = ordinalsOf(movieIDs);
+
+            // User averages and row lengths
+            int[] ratingUsers = new int[numRatings];
+            int[] ratingMovies = new int[numRatings];
+            long[] halfStarSums = new long[numUsers];
+            int[] userCounts = new int[numUsers];
+            this.movieLengths = new int[numMovies];
+            for (int i = 0; i < numRatings; i++) {
+                int user = userOrdinals.getOrDefault(users.get(i), NONE);
+                int movie = movieOrdinals.getOrDefault(movies.get(i), NONE);
+                ratingUsers[i] = user;
+                ratingMovies[i] = movie;
+                halfStarSums[user] += halfStars.get(i);
+                userCounts[user]++;
+                movieLengths[movie]++;
+            }
+
+            this.userMovies = new int[numUsers][];
+            this.userValues = new float[numUsers][];
+            for (int user = 0; user < numUsers; user++) {
+                userMovies[user] = new int[userCounts[user]];
+                userValues[user] = new float[userCounts[user]];
+            }
+            int[] write = new int[numUsers];
+            for (int i = 0; i < numRatings; i++) {
+                int user = ratingUsers[i];
+                userMovies[user][write[user]] = ratingMovies[i];
+                userValues[user][write[user]++] = adjusted(halfStars.get(i), halfStarSums[user], userCounts[user]);
+            }
+
+            // Filled user by user, so every film's raters come out in ascending order
+            this.movieUsers = new int[numMovies][];
+            this.movieValues = new float[numMovies][];
+            for (int movie = 0; movie < numMovies; movie++) {
+                movieUsers[movie] = new int[movieLengths[movie]];
+                movieValues[movie] = new float[movieLengths[movie]];
+            }
+            write = new int[numMovies];
+            for (int user = 0; user < numUsers; user++) {
+                for (int k = 0; k < userMovies[user].length; k++) {
+                    int movie = userMovies[user][k];
+                    movieUsers[movie][write[movie]] = user;
+                    movieValues[movie][write[movie]++] = userValues[user][k];
+                }
+            }
+        }
+
+        /**
+         * Function to read a user's ratings from the store again and patch their
+         * row, and their place in the rows of the films they rate or stopped
+         * rating
+         *
+         * @param userid   the user ID
+         * @param source   the ratings of each user
+         * @param affected collects the movie ordinals whose rows were patched
+         */
+        void patchUser(int userid, RatingVisitor.UserSource source, IntArrayList affected) {
+            IntArrayList movies = new IntArrayList();
+            IntArrayList halfStars = new IntArrayList();
+            source.forEachRatingOf(userid, (user, movieid, rating) -> {
+                movies.add(movieOrdinalOf(movieid));
+                halfStars.add(Math.round(rating * 2));
+            });
+            int user = userOrdinals.getOrDefault(userid, NONE);
+            if (user == NONE) {
+                if (movies.size() == 0) {
+                    return;
+                }
+                user = addUser(userid);
+            }
+
+            // Takes the user out of the rows of the films they no longer rate
+            int[] newMovies = movies.toArray();
+            int[] sortedMovies = newMovies.clone();
+            Arrays.sort(sortedMovies);
+            for (int movie : userMovies[user]) {
+                affected.add(movie);
+                if (Arrays.binarySearch(sortedMovies, movie) < 0) {
+                    removeRater(movie, user);
+                }
+            }
+
+            // Then sets their adjusted ratings, which all move with their average
+            long halfStarSum = 0;
+            for (int i = 0; i < halfStars.size(); i++) {
+                halfStarSum += halfStars.get(i);
+            }
+            float[] newValues = new float[newMovies.length];
+            for (int i = 0; i < newMovies.length; i++) {
+                newValues[i] = adjusted(halfStars.get(i), halfStarSum, newMovies.length);
+                setRater(newMovies[i], user, newValues[i]);
+                affected.add(newMovies[i]);
+            }
+            userMovies[user] = newMovies;
+            userValues[user] = newValues;
+        }
+
+        /**
+         * Function to find where a user is, or would go, in the row of a film
+         *
+         * @param movie the movie ordinal
+         * @param user  the user ordinal
+         * @return the position of the user, or (-(insertion point) - 1) if the
+         *         user does not rate the film
+         */
+        private int findRater(int movie, int user) {
+            int[] raters = movieUsers[movie];
+            int userid = userIDs[user];
+            int low = 0;
+            int high = movieLengths[movie] - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int midID = userIDs[raters[mid]];
+                if (midID < userid) {
+                    low = mid + 1;
+                } else if (midID > userid) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -(low + 1);
+        }
+
+        private void removeRater(int movie, int user) {
+            int index = findRater(movie, user);
+            int length = movieLengths[movie];
+            System.arraycopy(movieUsers[movie], index + 1, movieUsers[movie], index, length - index - 1);
+            System.arraycopy(movieValues[movie], index + 1, movieValues[movie], index, length - index - 1);
+            movieLengths[movie]--;
+        }
+
+        private void setRater(int movie, int user, float value) {
+            int index = findRater(movie, user);
+            if (index >= 0) {
+                movieValues[movie][index] = value;
+                return;
+            }
+            index = -(index + 1);
+            int length = movieLengths[movie];
+            if (length == movieUsers[movie].length) {
+                int newLength = Math.max(INITIAL_ROW_CAPACITY, length * 2);
+                movieUsers[movie] = Arrays.copyOf(movieUsers[movie], newLength);
+                movieValues[movie] = Arrays.copyOf(movieValues[movie], newLength);
+            }
+            System.arraycopy(movieUsers[movie], index, movieUsers[movie], index + 1, length - index);
+            System.arraycopy(movieValues[movie], index, movieValues[movie], index + 1, length - index);
+            movieUsers[movie][index] = user;
+            movieValues[movie][index] = value;
+            movieLengths[movie]++;
+        }
+
+        private int addUser(int userid) {
+            if (numUsers == userIDs.length) {
+                int newLength = Math.max(16, numUsers * 2);
+                userIDs = Arrays.copyOf(userIDs, newLength);
+                userMovies = Arrays.copyOf(userMovies, newLength);
+                userValues = Arrays.copyOf(userValues, newLength);
+            }
+            userIDs[numUsers] = userid;
+            userMovies[numUsers] = new int[0];
+            userValues[numUsers] = new float[0];
+            userOrdinals.put(userid, numUsers);
+            return numUsers++;
+        }
+
+        private int movieOrdinalOf(int movieid) {
+            int movie = movieOrdinals.getOrDefault(movieid, NONE);
+            if (movie != NONE) {
+                return movie;
+            }
+            if (numMovies == movieIDs.length) {
+                int newLength = Math.max(16, numMovies * 2);
+                movieIDs = Arrays.copyOf(movieIDs, newLength);
+                movieUsers = Arrays.copyOf(movieUsers, newLength);
+                movieValues = Arrays.copyOf(movieValues, newLength);
+                movieLengths = Arrays.copyOf(movieLengths, newLength);
+            }
+            movieIDs[numMovies] = movieid;
+            movieUsers[numMovies] = new int[INITIAL_ROW_CAPACITY];
+            movieValues[numMovies] = new float[INITIAL_ROW_CAPACITY];
+            movieOrdinals.put(movieid, numMovies);
+            return numMovies++;
+        }
+
+        /**
+         * Function to take the average of its user off a rating
+         *
+         * @param halfStars   the rating in half stars
+         * @param halfStarSum the sum of the user's ratings in half stars
+         * @param numRatings  the number of ratings of the user
+         * @return the adjusted rating
+         */
+        private static float adjusted(int halfStars, long halfStarSum, int numRatings) {
+            double average = halfStarSum / (2.0 * numRatings);
+            return (float) (halfStars / 2.0 - average);
+        }
+
+        private static int[] distinctSorted(IntArrayList values) {
+            int[] sorted = values.toArray();
+            Arrays.sort(sorted);
+            int count = 0;
+            for (int i = 0; i < sorted.length; i++) {
+                if (i == 0 || sorted[i] != sorted[i - 1]) {
+                    sorted[count++] = sorted[i];
+                }
+            }
+            return Arrays.copyOf(sorted, count);
+        }
+
+        private static IntIntOpenHashMap ordinalsOf(int[] ids) {
+            IntIntOpenHashMap ordinals = new IntIntOpenHashMap(Math.max(ids.length, 16));
+            for (int ordinal = 0; ordinal < ids.length; ordinal++) {
+                ordinals.put(ids[ordinal], ordinal);
+            }
+            return ordinals;
+        }
+    }
+}
@@ -2,7 +2,9 @@ package stores;
 
 import interfaces.IKeywords;
 import interfaces.AbstractStores;
+import structures.IntObjectOpenHashMap;
 import structures.MyArrayList;
+import structures.RoaringBitmap;
 
 public class Keywords implements IKeywords{
     AbstractStores stores;
@@ -10,17 +12,20 @@ public class Keywords implements IKeywords{
     MyArrayList<Integer> id;
     MyArrayList<Keyword[]> keywords;
     MyArrayList<Keyword> unique;
+    IntObjectOpenHashMap<RoaringBitmap> filmsByKeyword; // Inverted index of keyword ID to its films
 
     Keywords(AbstractStores stores) {
         this.stores = stores;
         id = new MyArrayList<>();
         keywords = new MyArrayList<>();
         unique = new MyArrayList<>();
+        filmsByKeyword = new IntObjectOpenHashMap<>();
     }
 
     @Override
     public boolean add(int filmID, Keyword keyword) {
         boolean result = true;
+        indexFilm(keyword.getID(), filmID);
 
         for (int i = 0; i < this.id.size(); i++) {
             if(this.id.get(i) == filmID) {
@@ -56,6 +61,9 @@ public class Keywords implements IKeywords{
     @Override
     public boolean add(int id, Keyword[] keywords) {
         boolean result = true;
+        for (Keyword keyword : keywords) {
+            indexFilm(keyword.getID(), id);
+        }
 
         for (int i = 0; i < this.id.size(); i++) {
             if (this.id.get(i) == id) {
@@ -92,6 +100,11 @@ public class Keywords implements IKeywords{
     @Override
     public boolean remove(int id) {
         int index = this.id.indexOf(id);
+        if (index >= 0) {
+            for (Keyword keyword : this.keywords.get(index)) {
+                unindexFilm(keyword.getID(), id);
+            }
+        }
         boolean result = this.id.remove(id);
         result &= this.keywords.remove(this.keywords.get(index));
         return result;
@@ -120,6 +133,15 @@ public class Keywords implements IKeywords{
                     }
 
                     this.keywords.set(i, tmp);
+
+                    // The film stays in the keyword's set if it still has the keyword
+                    boolean stillTagged = false;
+                    for (Keyword keyword : tmp) {
+                        stillTagged |= keyword.getID() == keywordID;
+                    }
+                    if (!stillTagged) {
+                        unindexFilm(keywordID, id);
+                    }
                 }
                 return true;
             }
@@ -149,21 +171,52 @@ public class Keywords implements IKeywords{
 
     @Override
     public int[] getFilmsWithKeyword(int keywordID) {
-        MyArrayList<Integer> tmp = new MyArrayList<>();
-        for (int i = 0; i < this.id.size(); i++) {
-            for (int j = 0; j < this.keywords.get(i).length; j++) {
-                if (keywordID == this.keywords.get(i)[j].getID()) {
-                    tmp.add(this.id.get(i));
-                    break;
-                }
-            }
+        // Read straight from the inverted index rather than scanning every film
+        RoaringBitmap films = filmsByKeyword.get(keywordID);
+        return (films == null) ? new int[0] : films.toArray();
+    }
+
+    @Override
+    public int[] getFilmsWithAllKeywords(int[] keywordIDs) {
+        if (keywordIDs.length == 0) {
+            return new int[0];
+        }
+        // Intersects the films of each keyword in turn, stopping early once nothing is left
+        RoaringBitmap result = filmsByKeyword.get(keywordIDs[0]);
+        for (int i = 1; i < keywordIDs.length && result != null && !result.isEmpty(); i++) {
+            RoaringBitmap films = filmsByKeyword.get(keywordIDs[i]);
+            result = (films == null) ? null : RoaringBitmap.and(result, films);
         }
+        return (result == null) ? new int[0] : result.toArray();
+    }
 
-        int[] result = new int[tmp.size()];
-        for (int i = 0; i < result.length; i++) {
-            result[i] = tmp.get(i);
+    /**
+     * Adds a film to the set of films with a keyword
+     * 
+     * @param keywordID The keyword ID
+     * @param filmID    The film ID
+     */
+    private void indexFilm(int keywordID, int filmID) {
+        RoaringBitmap films = filmsByKeyword.get(keywordID);
+        if (films == null) {
+            films = new RoaringBitmap();
+            filmsByKeyword.add(keywordID, films);
+        }
+        films.add(filmID);
+    }
+
+    /**
+     * Removes a film from the set of films with a keyword, dropping the set once
+     * it is empty
+     * 
+     * @param keywordID The keyword ID
+     * @param filmID    The film ID
+     */
+    private void unindexFilm(int keywordID, int filmID) {
+        RoaringBitmap films = filmsByKeyword.get(keywordID);
+        if (films != null && films.remove(filmID) && films.isEmpty()) {
+            filmsByKeyword.remove(keywordID);
         }
-        return result;
     }
 
     @Override
@@ -187,6 +240,12 @@ public class Keywords implements IKeywords{
         return uniqueKeyword;
     }
 
+    @Override
+    public void ensureCapacity(int numFilms) {
+        id.ensureCapacity(id.size() + numFilms);
+        keywords.ensureCapacity(keywords.size() + numFilms);
+    }
+
     @Override
     public int size() {
         return keywords.size();
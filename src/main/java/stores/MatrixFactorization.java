@@ -0,0 +1,309 @@
+package stores;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import structures.*;
+
+/**
+ * A latent factor model of the ratings of a store, for predicting the rating a
+ * user would give a film and recommending the films they would rate highest.
+ * A rating is predicted as the average of all ratings, plus a bias for the user
+ * and one for the film, plus the dot product of a vector of factors for each
+ * (biased matrix factorisation).
+ *
+ * The model is trained by stochastic gradient descent over a copy of the
+ * ratings taken when training starts, in an order shuffled once. Each epoch is
+ * split over the fork-join pool and the workers update the shared factors
+ * without any locking (Hogwild): as most pairs of ratings share neither a user
+ * nor a film, the updates rarely collide, and a collision only loses part of
+ * one small step. The factors are held in flat float arrays indexed by dense
+ * user and film ordinals, numFactors per ordinal. Changes to the ratings after
+ * training are not taken in until the model is trained again
+ */
+final class MatrixFactorization {
+    private static final int MIN_RATINGS_PER_TASK = 1 << 14;
+    private static final int SCORE_BLOCK = 256; // Films scored together by the top-N kernel
+    private static final float INITIAL_SCALE = 0.1f;
+    private static final int NONE = -1;
+
+    private final int numFactors;
+    private final IntIntOpenHashMap userOrdinals;
+    private final IntIntOpenHashMap movieOrdinals;
+    private final int[] movieIDs;
+    private final int numMovies;
+    private final float globalMean;
+    private final float[] userBiases;
+    private final float[] movieBiases;
+    private final float[] userFactors; // numFactors per user ordinal
+    private final float[] movieFactors; // numFactors per movie ordinal
+    private final float trainingError;
+
+    /**
+     * Constructor training a model on every rating of a store
+     *
+     * @param source         the ratings of the store
+     * @param numFactors     the length of the factor vectors
+     * @param numEpochs      the number of passes over the ratings
+     * @param learningRate   the step size of each update
+     * @param regularisation how strongly the biases and factors are pulled
+     *                       towards zero
+     * @throws IllegalArgumentException if there are no factors, the number of
+     *                                  epochs is negative, the learning rate is
+     *                                  not positive or the regularisation is
+     *                                  negative
+     */
+    MatrixFactorization(RatingVisitor.Source source, int numFactors, int numEpochs, float learningRate,
+            float regularisation) {
+        if (numFactors < 1 || numEpochs < 0 || !(learningRate > 0) || !(regularisation >= 0)) {
+            throw new IllegalArgumentException(
+                    "There must be at least one factor, a positive learning rate and no negative settings");
+        }
+        this.numFactors = numFactors;
+
+        // Copies the ratings, giving every user and film an ordinal the first time
+        // it is seen
+        IntArrayList users = new IntArrayList();
+        IntArrayList movies = new IntArrayList();
+        FloatArrayList values = new FloatArrayList();
+        IntIntOpenHashMap userMap = new IntIntOpenHashMap(2153);
+        IntIntOpenHashMap movieMap = new IntIntOpenHashMap(2153);
+        IntArrayList movieList = new IntArrayList();
+        double[] sum = new double[1];
+        source.forEachRating((userid, movieid, rating) -> {
+            int user = userMap.getOrDefault(userid, NONE);
+            if (user == NONE) {
+                user = userMap.getSize();
+                userMap.put(userid, user);
+            }
+            int movie = movieMap.getOrDefault(movieid, NONE);
+            if (movie == NONE) {
+                movie = movieList.size();
+                movieMap.put(movieid, movie);
+                movieList.add(movieid);
+            }
+            users.add(user);
+            movies.add(movie);
+            values.add(rating);
+            sum[0] += rating;
+        });
+        int numRatings = values.size();
+        int numUsers = userMap.getSize();
+        this.userOrdinals = userMap;
+        this.movieOrdinals = movieMap;
+        this.movieIDs = movieList.toArray();
+        this.numMovies = movieIDs.length;
+        this.globalMean = (numRatings == 0) ? 0 : (float) (sum[0] / numRatings);
+
+        // Ratings in a shuffled order, so no epoch walks one user or film at a time
+        int[] ratingUsers = users.toArray();
+        int[] ratingMovies = movies.toArray();
+        float[] ratingValues = values.toArray();
+        Random random = new Random(42);
+        for (int i = numRatings - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int user = ratingUsers[i];
+            ratingUsers[i] = ratingUsers[j];
+            ratingUsers[j] = user;
+            int movie = ratingMovies[i];
+            ratingMovies[i] = ratingMovies[j];
+            ratingMovies[j] = movie;
+            float value = ratingValues[i];
+            ratingValues[i] = ratingValues[j];
+            ratingValues[j] = value;
+        }
+
+        this.userBiases = new float[numUsers];
+        this.movieBiases = new float[numMovies];
+        this.userFactors = randomFactors(random, numUsers * numFactors);
+        this.movieFactors = randomFactors(random, numMovies * numFactors);
+
+        int grain = Math.max(MIN_RATINGS_PER_TASK, numRatings / ForkJoinPool.getCommonPoolParallelism());
+        for (int epoch = 0; epoch < numEpochs && numRatings > 0; epoch++) {
+            ForkJoinPool.commonPool().invoke(new EpochTask(ratingUsers, ratingMovies, ratingValues, learningRate,
+                    regularisation, grain, 0, numRatings));
+        }
+
+        double squaredError = 0;
+        for (int i = 0; i < numRatings; i++) {
+            float error = ratingValues[i] - predictOrdinals(ratingUsers[i], ratingMovies[i]);
+            squaredError += error * error;
+        }
+        this.trainingError = (numRatings == 0) ? 0 : (float) Math.sqrt(squaredError / numRatings);
+    }
+
+    /**
+     * Function to return the root mean squared error of the model over the
+     * ratings it was trained on
+     *
+     * @return the training error
+     */
+    float getTrainingError() {
+        return trainingError;
+    }
+
+    /**
+     * Function to predict the rating a user would give a film
+     *
+     * @param userid  the user ID
+     * @param movieid the movie ID
+     * @return the predicted rating, clamped to between 0 and 5, or -1.0f if the
+     *         user or the film had no ratings to train on
+     */
+    float predict(int userid, int movieid) {
+        int user = userOrdinals.getOrDefault(userid, NONE);
+        int movie = movieOrdinals.getOrDefault(movieid, NONE);
+        if (user == NONE || movie == NONE) {
+            return -1.0f;
+        }
+        return Math.max(0.0f, Math.min(5.0f, predictOrdinals(user, movie)));
+    }
+
+    /**
+     * Function to find the films with the highest predicted ratings for a user,
+     * leaving out the films they have already rated. Films are scored a block at
+     * a time against a local copy of the user's factors, and the blocks are split
+     * over threads for large catalogues
+     *
+     * @param userid the user ID
+     * @param n      the maximum number of films to return
+     * @param rated  the IDs of the films the user has rated
+     * @return the movie IDs, highest predicted rating first, or an empty array if
+     *         the user had no ratings to train on or n is not positive
+     */
+    int[] recommend(int userid, int n, int[] rated) {
+        int user = userOrdinals.getOrDefault(userid, NONE);
+        if (user == NONE || n <= 0) {
+            return new int[0];
+        }
+        boolean[] excluded = new boolean[numMovies];
+        for (int movieid : rated) {
+            int movie = movieOrdinals.getOrDefault(movieid, NONE);
+            if (movie != NONE) {
+                excluded[movie] = true;
+            }
+        }
+        float[] factors = Arrays.copyOfRange(userFactors, user * numFactors, (user + 1) * numFactors);
+
+        // The global mean and user bias are the same for every film, so only the
+        // film bias and dot product decide the order
+        return ParallelTopK.selectFloat(numMovies, numMovies, n, (from, to, topK) -> {
+            float[] scores = new float[SCORE_BLOCK];
+            for (int start = from; start < to; start += SCORE_BLOCK) {
+                int end = Math.min(start + SCORE_BLOCK, to);
+                for (int movie = start; movie < end; movie++) {
+                    int base = movie * numFactors;
+                    float score = movieBiases[movie];
+                    for (int f = 0; f < numFactors; f++) {
+                        score += factors[f] * movieFactors[base + f];
+                    }
+                    scores[movie - start] = score;
+                }
+                for (int movie = start; movie < end; movie++) {
+                    if (!excluded[movie]) {
+                        topK.offer(scores[movie - start], movieIDs[movie]);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Function to predict a rating from the model, without clamping
+     *
+     * @param user  the user ordinal
+     * @param movie the movie ordinal
+     * @return the predicted rating
+     */
+    private float predictOrdinals(int user, int movie) {
+        float prediction = globalMean + userBiases[user] + movieBiases[movie];
+        int userBase = user * numFactors;
+        int movieBase = movie * numFactors;
+        for (int f = 0; f < numFactors; f++) {
+            prediction += userFactors[userBase + f] * movieFactors[movieBase + f];
+        }
+        return prediction;
+    }
+
+    /**
+     * Function to take one gradient step on a single rating
+     *
+     * @param user           the user ordinal
+     * @param movie          the movie ordinal
+     * @param rating         the rating
+     * @param learningRate   the step size
+     * @param regularisation the pull towards zero
+     */
+    private void step(int user, int movie, float rating, float learningRate, float regularisation) {
+        float error = rating - predictOrdinals(user, movie);
+        userBiases[user] += learningRate * (error - regularisation * userBiases[user]);
+        movieBiases[movie] += learningRate * (error - regularisation * movieBiases[movie]);
+        int userBase = user * numFactors;
+        int movieBase = movie * numFactors;
+        for (int f = 0; f < numFactors; f++) {
+            float userFactor = userFactors[userBase + f];
+            float movieFactor = movieFactors[movieBase + f];
+            userFactors[userBase + f] += learningRate * (error * movieFactor - regularisation * userFactor);
+            movieFactors[movieBase + f] += learningRate * (error * userFactor - regularisation * movieFactor);
+        }
+    }
+
+    /**
+     * Function to create factors drawn uniformly from a small range around zero
+     *
+     * @param random the source of randomness
+     * @param length the number of factors
+     * @return the factors
+     */
+    private static float[] randomFactors(Random random, int length) {
+        float[] factors = new float[length];
+        for (int i = 0; i < length; i++) {
+            factors[i] = (random.nextFloat() - 0.5f) * INITIAL_SCALE;
+        }
+        return factors;
+    }
+
+    /**
+     * Task taking a gradient step on each of a range of ratings, split in half on
+     * the fork-join pool until each range is at most the grain size. Tasks update
+     * the shared factors without locking
+     */
+    private class EpochTask extends RecursiveAction {
+        private final int[] users;
+        private final int[] movies;
+        private final float[] ratings;
+        private final float learningRate;
+        private final float regularisation;
+        private final int grain;
+        private final int from;
+        private final int to;
+
+        EpochTask(int[] users, int[] movies, float[] ratings, float learningRate, float regularisation, int grain,
+                int from, int to) {
+            this.users = users;
+            this.movies = movies;
+            this.ratings = ratings;
+            this.learningRate = learningRate;
+            this.regularisation = regularisation;
+            this.grain = grain;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= grain) {
+                for (int i = from; i < to; i++) {
+                    step(users[i], movies[i], ratings[i], learningRate, regularisation);
+                }
+                return;
+            }
+            // Split the range in half, and step through both halves as separate tasks
+            int middle = (from + to) >>> 1;
+            invokeAll(new EpochTask(users, movies, ratings, learningRate, regularisation, grain, from, middle),
+                    new EpochTask(users, movies, ratings, learningRate, regularisation, grain, middle, to));
+        }
+    }
+}
@@ -3,15 +3,17 @@ package stores;
 import java.time.LocalDate;
 
 import interfaces.IMovies;
-import structures.ChainingHashMap;
-import structures.CustomArrayList;
-import structures.ListElement;
+import interfaces.ITableDiagnostics;
+import structures.HashTableStats;
+import structures.IntArrayList;
+import structures.IntObjectCursor;
+import structures.IntObjectOpenHashMap;
 
-public class Movies implements IMovies {
+public class Movies implements IMovies, ITableDiagnostics {
     Stores stores;
 
-    ChainingHashMap<Integer, Movie> hashMap;
-    ChainingHashMap<Integer, Collection> collectionsMap;
+    IntObjectOpenHashMap<Movie> hashMap;
+    IntObjectOpenHashMap<Collection> collectionsMap;
 
     /**
      * The constructor for the Movies data store. This is where you should
@@ -23,8 +25,8 @@ public class Movies implements IMovies {
     public Movies(Stores stores) {
         this.stores = stores;
 
-        hashMap = new ChainingHashMap<>(2153);
-        collectionsMap = new ChainingHashMap<>(2153);
+        hashMap = new IntObjectOpenHashMap<>(2153);
+        collectionsMap = new IntObjectOpenHashMap<>(2153);
     }
 
     /**
@@ -94,24 +96,21 @@ public class Movies implements IMovies {
     @Override
     public int[] getAllIDsReleasedInRange(LocalDate start, LocalDate end) {
         // Creates an integer arraylist to easily add new values to an id List
-        CustomArrayList<Integer> idList = new CustomArrayList<>();
-
-        // Iterates through the whole movie hash map, each linked list bucket is
-        // searched for movieID's which have movies released within the time range
-        for (int i = 0; i < hashMap.getCapacity(); i++) {
-            ListElement<Integer, Movie> element = hashMap.getHead(i);
-            while (element != null) {
-                if (element.getValue().getRelease() != null) {
-                    if (element.getValue().getRelease().isBefore(end)
-                            && element.getValue().getRelease().isAfter(start)) {
-                        idList.add(element.getKey()); // Adds the movieID to the accumulating arraylist
-                    }
+        IntArrayList idList = new IntArrayList();
+
+        // Iterates through every entry of the movie hash map, searching for movieID's
+        // which have movies released within the time range
+        IntObjectCursor<Movie> cursor = hashMap.cursor();
+        while (cursor.advance()) {
+            Movie movie = cursor.getValue();
+            if (movie.getRelease() != null) {
+                if (movie.getRelease().isBefore(end) && movie.getRelease().isAfter(start)) {
+                    idList.add(cursor.getKey()); // Adds the movieID to the accumulating arraylist
                 }
-                element = element.getNext();
             }
         }
         // Returns the arraylist as an array of primitive integer values
-        return (idList.getAsArrayInt());
+        return (idList.toArray());
     }
 
     /**
@@ -769,6 +768,19 @@ public class Movies implements IMovies {
 
     }
 
+    /**
+     * Grows the data structure ahead of a bulk load, so that the given number of
+     * movies and collections can be added without any rehashing
+     * 
+     * @param numMovies      The number of movies about to be added
+     * @param numCollections The number of collections about to be added
+     */
+    @Override
+    public void ensureCapacity(int numMovies, int numCollections) {
+        hashMap.ensureCapacity(hashMap.getSize() + numMovies);
+        collectionsMap.ensureCapacity(collectionsMap.getSize() + numCollections);
+    }
+
     /**
      * States the number of movies stored in the data structure
      * 
@@ -791,22 +803,45 @@ public class Movies implements IMovies {
     @Override
     public int[] findFilms(String searchTerm) {
 
-        CustomArrayList<Integer> idList = new CustomArrayList<>();
-
-        // Iterate through all the linked list buckets in the movies map, check each
-        // movie's attributes to see if it contains the search term
-        for (int i = 0; i < hashMap.getCapacity(); i++) {
-            ListElement<Integer, Movie> element = hashMap.getHead(i);
-            while (element != null) {
-                if (element.getValue().getTitle().contains(searchTerm)
-                        || element.getValue().getOrginalTitle().contains(searchTerm) ||
-                        element.getValue().getOverview().contains(searchTerm)) {
-                    idList.add(element.getKey());
-                }
-                element = element.getNext();
+        IntArrayList idList = new IntArrayList();
+
+        // Iterate through all the entries in the movies map, check each movie's
+        // attributes to see if it contains the search term
+        IntObjectCursor<Movie> cursor = hashMap.cursor();
+        while (cursor.advance()) {
+            Movie movie = cursor.getValue();
+            if (movie.getTitle().contains(searchTerm)
+                    || movie.getOrginalTitle().contains(searchTerm) ||
+                    movie.getOverview().contains(searchTerm)) {
+                idList.add(cursor.getKey());
             }
         }
 
-        return (idList.getAsArrayInt());
+        return (idList.toArray());
+    }
+
+    /**
+     * Switches the collection of hash table statistics on or off for every table
+     * in the store
+     * 
+     * @param enabled Whether to collect statistics
+     */
+    @Override
+    public void setTableStatsEnabled(boolean enabled) {
+        hashMap.setStatsEnabled(enabled);
+        collectionsMap.setStatsEnabled(enabled);
+    }
+
+    /**
+     * Gets a snapshot of the health of every hash table in the store
+     * 
+     * @return The statistics of each table
+     */
+    @Override
+    public HashTableStats[] getTableStats() {
+        return new HashTableStats[] {
+                hashMap.getStats("Movies.movies"),
+                collectionsMap.getStats("Movies.collections")
+        };
     }
 }
@@ -1,18 +1,56 @@
 package stores;
 
 import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 
+/**
+ * A single rating, and the compact form the Ratings store keeps it in. The
+ * store holds each rating as one packed long: the timestamp in epoch seconds
+ * (UTC) in the top 56 bits, and the rating as a number of half stars in the low
+ * 8 bits. A Rating object, and its LocalDateTime, are only made when a caller
+ * asks for one
+ *
+ * The timestamp gets 56 bits rather than an int, as an int of epoch seconds
+ * ends in 2038, and 56 bits covers every year LocalDateTime can hold
+ */
 public class Rating {
+    static final long MAX_EPOCH_SECOND = (1L << 55) - 1;
+    static final long NO_TIMESTAMP = -(1L << 55); // Below LocalDateTime.MIN, stands for a null timestamp
+    static final byte INVALID = -1; // Half star value of a rating that cannot be stored
+
     private int userID;
     private int movieID;
-    private float rating;
-    private LocalDateTime timestamp;
+    private long packed;
 
+    /**
+     * Constructor for a rating, packing it into the form the store keeps it in.
+     * Any fraction of a second in the timestamp is dropped
+     *
+     * @param userID    The user ID
+     * @param movieID   The movie ID
+     * @param rating    The rating, a multiple of 0.5 between 0 and 5
+     * @param timestamp The time of the rating, which may be null
+     * @throws IllegalArgumentException if the rating or timestamp cannot be stored
+     */
     public Rating(int userID, int movieID, float rating, LocalDateTime timestamp){
         this.userID = userID;
         this.movieID = movieID;
-        this.rating = rating;
-        this.timestamp = timestamp;
+        if (!updateRating(rating, timestamp)) {
+            throw new IllegalArgumentException("The rating must be a multiple of 0.5 between 0 and 5, and the timestamp storable");
+        }
+    }
+
+    /**
+     * Constructor for a rating already in the packed form
+     *
+     * @param userID  The user ID
+     * @param movieID The movie ID
+     * @param packed  The packed rating
+     */
+    Rating(int userID, int movieID, long packed){
+        this.userID = userID;
+        this.movieID = movieID;
+        this.packed = packed;
     }
 
     public int getUserID(){
@@ -22,18 +60,117 @@ public class Rating {
     public int getMovieID(){
         return movieID;
     }
-    
+
     public float getRating(){
-        return rating;
+        return ratingOf(packed);
     }
 
     public LocalDateTime getTimestamp(){
-        return timestamp;
+        return toTimestamp(epochSecondOf(packed));
     }
 
+    /**
+     * Updates the rating and its timestamp, dropping any fraction of a second
+     *
+     * @param newRating    The new rating, a multiple of 0.5 between 0 and 5
+     * @param newTimestamp The new time of the rating, which may be null
+     * @return TRUE if the rating was updated, FALSE if it cannot be stored (the
+     *         rating is left unchanged)
+     */
     public boolean updateRating(float newRating, LocalDateTime newTimestamp){
-        this.rating = newRating;
-        this.timestamp = newTimestamp;
+        byte halfStars = toHalfStars(newRating);
+        long epochSecond = toEpochSecond(newTimestamp);
+        if (halfStars == INVALID || !isStorable(epochSecond)) {
+            return false;
+        }
+        this.packed = pack(halfStars, epochSecond);
         return true;
-    } 
+    }
+
+    /**
+     * Packs a rating into the form the store keeps it in
+     *
+     * @param halfStars   The rating as a number of half stars (0 to 10)
+     * @param epochSecond The time of the rating in epoch seconds, or NO_TIMESTAMP
+     * @return The packed rating
+     */
+    static long pack(byte halfStars, long epochSecond) {
+        return (epochSecond << 8) | halfStars;
+    }
+
+    /**
+     * Gets the rating held in a packed rating
+     *
+     * @param packed The packed rating
+     * @return The rating, between 0 and 5
+     */
+    static float ratingOf(long packed) {
+        return halfStarsOf(packed) / 2.0f;
+    }
+
+    /**
+     * Gets the number of half stars held in a packed rating
+     *
+     * @param packed The packed rating
+     * @return The rating as a number of half stars (0 to 10)
+     */
+    static int halfStarsOf(long packed) {
+        return (int) (packed & 0xFF);
+    }
+
+    /**
+     * Gets the timestamp held in a packed rating
+     *
+     * @param packed The packed rating
+     * @return The time of the rating in epoch seconds, or NO_TIMESTAMP
+     */
+    static long epochSecondOf(long packed) {
+        return packed >> 8;
+    }
+
+    /**
+     * Converts a rating to a number of half stars
+     *
+     * @param rating The rating
+     * @return The number of half stars, or INVALID if the rating is not a multiple
+     *         of 0.5 between 0 and 5
+     */
+    static byte toHalfStars(float rating) {
+        float halfStars = rating * 2;
+        if (!(halfStars >= 0 && halfStars <= 10) || halfStars != (int) halfStars) {
+            return INVALID;
+        }
+        return (byte) halfStars;
+    }
+
+    /**
+     * Converts a timestamp to epoch seconds (UTC), dropping any fraction of a
+     * second
+     *
+     * @param timestamp The timestamp, which may be null
+     * @return The epoch seconds, or NO_TIMESTAMP if the timestamp is null
+     */
+    static long toEpochSecond(LocalDateTime timestamp) {
+        return (timestamp == null) ? NO_TIMESTAMP : timestamp.toEpochSecond(ZoneOffset.UTC);
+    }
+
+    /**
+     * Converts epoch seconds (UTC) back to a timestamp
+     *
+     * @param epochSecond The epoch seconds, or NO_TIMESTAMP
+     * @return The timestamp, or null for NO_TIMESTAMP
+     */
+    static LocalDateTime toTimestamp(long epochSecond) {
+        return (epochSecond == NO_TIMESTAMP) ? null : LocalDateTime.ofEpochSecond(epochSecond, 0, ZoneOffset.UTC);
+    }
+
+    /**
+     * Checks whether a timestamp in epoch seconds fits in a packed rating
+     *
+     * @param epochSecond The epoch seconds
+     * @return TRUE if it can be stored, FALSE otherwise
+     */
+    static boolean isStorable(long epochSecond) {
+        return epochSecond >= NO_TIMESTAMP && epochSecond <= MAX_EPOCH_SECOND;
+    }
 }
@@ -0,0 +1,75 @@
+package stores;
+
+/**
+ * Helpers for reading the median and percentiles off a half-star rating
+ * histogram (the number of ratings of 0, 0.5, 1, ... 5 stars), shared by both
+ * Ratings stores. Each is a walk over the 11 bins, however many ratings there
+ * are
+ */
+final class RatingHistograms {
+    static final int NUM_BINS = 11; // 0 to 10 half stars
+
+    private RatingHistograms() {
+    }
+
+    /**
+     * Gets the median of the ratings in a histogram, averaging the middle two
+     * ratings when there is an even number
+     *
+     * @param bins  The number of ratings of each number of half stars
+     * @param total The number of ratings in the histogram (above zero)
+     * @return The median rating
+     */
+    static float median(int[] bins, int total) {
+        float lower = ratingAtRank(bins, (total + 1) / 2);
+        if ((total & 1) == 1) {
+            return lower;
+        }
+        return (lower + ratingAtRank(bins, total / 2 + 1)) / 2.0f;
+    }
+
+    /**
+     * Gets a percentile of the ratings in a histogram, by the nearest rank method:
+     * the lowest rating at least the given percentage of ratings are at or below
+     *
+     * @param bins       The number of ratings of each number of half stars
+     * @param total      The number of ratings in the histogram (above zero)
+     * @param percentile The percentile, between 0 and 100 inclusive
+     * @return The rating at that percentile
+     */
+    static float percentile(int[] bins, int total, float percentile) {
+        checkPercentile(percentile);
+        int rank = (int) Math.ceil(percentile / 100.0 * total);
+        return ratingAtRank(bins, Math.max(rank, 1));
+    }
+
+    /**
+     * Checks that a percentile is between 0 and 100 inclusive
+     *
+     * @param percentile The percentile
+     * @throws IllegalArgumentException if it is not
+     */
+    static void checkPercentile(float percentile) {
+        if (!(percentile >= 0 && percentile <= 100)) {
+            throw new IllegalArgumentException("The percentile must be between 0 and 100");
+        }
+    }
+
+    /**
+     * Gets the rating at a rank of a histogram, counting from the lowest rating
+     *
+     * @param bins The number of ratings of each number of half stars
+     * @param rank The rank, from 1 to the number of ratings
+     * @return The rating at that rank
+     */
+    private static float ratingAtRank(int[] bins, int rank) {
+        int seen = 0;
+        for (int halfStars = 0; halfStars < NUM_BINS; halfStars++) {
+            seen += bins[halfStars];
+            if (seen >= rank) {
+                return halfStars / 2.0f;
+            }
+        }
+        return (NUM_BINS - 1) / 2.0f;
+    }
+}
@@ -0,0 +1,33 @@
+package stores;
+
+/**
+ * An interface for taking in the ratings of a store one at a time, used by the
+ * engines that work over a copy of every rating (the similar films index and
+ * the recommender).
+ */
+@FunctionalInterface
+interface RatingVisitor {
+
+    // Takes in the rating a user gave a film.
+    void visit(int userid, int movieid, float rating);
+
+    /**
+     * An interface for a store that can visit every one of its ratings.
+     */
+    @FunctionalInterface
+    interface Source {
+
+        // Calls the visitor once for every rating in the store.
+        void forEachRating(RatingVisitor visitor);
+    }
+
+    /**
+     * An interface for a store that can visit the ratings of one user.
+     */
+    @FunctionalInterface
+    interface UserSource {
+
+        // Calls the visitor once for every rating of a user, if they have any.
+        void forEachRatingOf(int userid, RatingVisitor visitor);
+    }
+}
@@ -1,17 +1,40 @@
 package stores;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.Arrays;
 
 import interfaces.IRatings;
+import interfaces.ITableDiagnostics;
 import structures.*;
 
-public class Ratings implements IRatings {
+public class Ratings implements IRatings, ITableDiagnostics {
+    // Shape of the user signatures: 32 bands of 2 rows make users with more than
+    // about a fifth of their films in common likely to be found (the threshold is
+    // about (1/32)^(1/2), or 0.18)
+    static final int USER_SIGNATURE_BANDS = 32;
+    static final int USER_SIGNATURE_ROWS = 2;
+
     Stores stores;
 
-    ChainingHashMap<Integer, ChainingHashMap<Integer, Rating>> userMap;
-    ChainingHashMap<Integer, ChainingHashMap<Integer, Rating>> movieMap;
-    ChainingHashMap<Integer, Statistics> movieStatsMap;
-    ChainingHashMap<Integer, Statistics> userStatsMap;
+    IntObjectOpenHashMap<IntLongOpenHashMap> userMap;
+    IntObjectOpenHashMap<IntLongOpenHashMap> movieMap;
+    IntObjectOpenHashMap<UserTimeline> timelines;
+    OffHeapAggregateTable movieStatsMap;
+    OffHeapAggregateTable userStatsMap;
+    Leaderboard mostRatedMovies;
+    Leaderboard mostRatedUsers;
+    Leaderboard topAverageMovies;
+    Leaderboard topWeightedMovies;
+    TimeBucketIndex movieStatsByTime;
+    ItemSimilarityIndex similarities;
+    MinHashLshIndex userSignatures;
+    MatrixFactorization recommender;
+
+    // Settings of the weighted ranking, which by default matches the plain average
+    int minRatings;
+    int priorWeight;
+    float priorMean;
 
     int size;
 
@@ -26,14 +49,48 @@ public class Ratings implements IRatings {
         this.stores = stores;
 
         // Following two maps map the userID/movieID to a hashmap of the other ID to the
-        // rating composed of both ID's
-        userMap = new ChainingHashMap<>(2153); // <UserID, HashMap<MovieID,Rating>>
-        movieMap = new ChainingHashMap<>(2153); // <MovieID, HashMap<UserID,Rating>>
-
-        // Followign two maps are the user and movie ID's to their statistic objects
-        // which contain the average ratings and num of ratings for O(1) retrieval
-        userStatsMap = new ChainingHashMap<>(2153); // <UserID, Statistics>
-        movieStatsMap = new ChainingHashMap<>(2153); // <MovieID, Statistics>
+        // rating composed of both ID's, packed into a long (see Rating) rather than
+        // held as an object
+        userMap = new IntObjectOpenHashMap<>(2153); // <UserID, HashMap<MovieID,packed Rating>>
+        movieMap = new IntObjectOpenHashMap<>(2153); // <MovieID, HashMap<UserID,packed Rating>>
+
+        // Following map holds the ratings of every user again, sorted by time, for the
+        // timeline query and for listing a user's ratings in the order they were made
+        timelines = new IntObjectOpenHashMap<>(2153); // <UserID, packed Ratings by time>
+
+        // Following two tables hold the number and sum of the ratings of every user and
+        // movie for O(1) retrieval of the averages, and how many ratings of each number
+        // of half stars they have, for the distribution, median and percentile queries.
+        // They are kept off-heap in fixed-width slots, so there is no per-user or
+        // per-movie object for the garbage collector
+        userStatsMap = new OffHeapAggregateTable(RatingHistograms.NUM_BINS, 2153); // <UserID, (count, sum, 11 counts)>
+        movieStatsMap = new OffHeapAggregateTable(RatingHistograms.NUM_BINS, 2153); // <MovieID, (count, sum, 11 counts)>
+
+        // Following three rankings are kept in step with the statistics tables on every
+        // add, set and remove, so the top-K queries read them off rather than scanning
+        mostRatedMovies = new Leaderboard(2153); // MovieIDs by number of ratings
+        mostRatedUsers = new Leaderboard(2153); // UserIDs by number of ratings
+        topAverageMovies = new Leaderboard(2153); // MovieIDs by average rating
+        topWeightedMovies = new Leaderboard(2153); // MovieIDs by weighted rating
+        minRatings = 1;
+        priorWeight = 0;
+        priorMean = 0.0f;
+
+        // Following index holds the number and sum of the ratings of every movie per
+        // day and per month, for the queries over a window of time
+        movieStatsByTime = new TimeBucketIndex();
+
+        // Following index holds the most similar films to every film, worked out on
+        // the first similarity query and then only again for the films a change affects
+        similarities = new ItemSimilarityIndex();
+
+        // Following index holds a MinHash signature of the films every user has rated,
+        // bucketed by band for the approximate similar user query
+        userSignatures = new MinHashLshIndex(USER_SIGNATURE_BANDS, USER_SIGNATURE_ROWS, 2153);
+
+        // Following model predicts ratings and recommends films, and is only created
+        // when first trained
+        recommender = null;
         size = 0;
     }
 
@@ -44,40 +101,67 @@ public class Ratings implements IRatings {
      * @param userID    The user ID
      * @param movieID   The movie ID
      * @param rating    The rating gave to the film by this user (betweenb 0 and 5
-     *                  inclusive)
+     *                  inclusive, in half stars)
      * @param timestamp The time at which the rating was made
      * @return TRUE if the data able to be added, FALSE otherwise
      */
     @Override
     public boolean add(int userid, int movieid, float rating, LocalDateTime timestamp) {
+        return add(userid, movieid, rating, Rating.toEpochSecond(timestamp));
+    }
 
-        Rating ratingObj = new Rating(userid, movieid, rating, timestamp);
+    /**
+     * Adds a rating to the data structure, with its time already in epoch seconds
+     * so no LocalDateTime is needed. The rating is made unique by its user ID and
+     * its movie ID
+     * 
+     * @param userID      The user ID
+     * @param movieID     The movie ID
+     * @param rating      The rating gave to the film by this user (between 0 and 5
+     *                    inclusive, in half stars)
+     * @param epochSecond The time at which the rating was made, in seconds since
+     *                    the epoch (UTC)
+     * @return TRUE if the data able to be added, FALSE otherwise
+     */
+    @Override
+    public boolean add(int userid, int movieid, float rating, long epochSecond) {
+
+        byte halfStars = Rating.toHalfStars(rating);
+        if (halfStars == Rating.INVALID || !Rating.isStorable(epochSecond)) {
+            return false; // Rating cannot be represented
+        }
+        long packed = Rating.pack(halfStars, epochSecond);
 
         // If the userMap is null at the userID (there is no current ratings for the user)
-        // then add a new (null) rating map and initialise the user in the stats map
-        if (userMap.get(userid) == null) {
-            ChainingHashMap<Integer, Rating> movieToRatingMap = new ChainingHashMap<>(2153);
+        // then add a new (empty) rating map. The user enters the stats table with its first rating.
+        // The nested maps start small, as most users and movies only have a handful of ratings
+        IntLongOpenHashMap movieToRatingMap = userMap.get(userid);
+        if (movieToRatingMap == null) {
+            movieToRatingMap = new IntLongOpenHashMap();
             userMap.add(userid, movieToRatingMap);
-
-            userStatsMap.add(userid, new Statistics()); // Adding a new statistics element for this user
         }
 
         // If the movieMap is null at the movieID (there is no current ratings for the movie)
-        // then add a new (null) rating map and initalise the movie in the stats map
-        if (movieMap.get(movieid) == null) {
-            ChainingHashMap<Integer, Rating> userToRatingMap = new ChainingHashMap<>(2153);
+        // then add a new (empty) rating map
+        IntLongOpenHashMap userToRatingMap = movieMap.get(movieid);
+        if (userToRatingMap == null) {
+            userToRatingMap = new IntLongOpenHashMap();
             movieMap.add(movieid, userToRatingMap);
-
-            movieStatsMap.add(movieid, new Statistics()); // Adding a new statistics element for this movie
         }
 
         // Populates (or adds new ratings to) the ratings hashmaps for both the user and
-        // the movie, and likewise the statistics maps for both
+        // the movie, and likewise the statistics tables for both
         // The condition of the if statement will be false if rating already exists in
         // the tables, since the add functions return false in this case
-        if (userMap.get(userid).add(movieid, ratingObj) && movieMap.get(movieid).add(userid, ratingObj)) {
-            userStatsMap.get(userid).addRating(rating);
-            movieStatsMap.get(movieid).addRating(rating);
+        if (movieToRatingMap.add(movieid, packed) && userToRatingMap.add(userid, packed)) {
+            float quantized = Rating.ratingOf(packed);
+            userStatsMap.add(userid, quantized, halfStars);
+            movieStatsMap.add(movieid, quantized, halfStars);
+            timelineOf(userid).add(movieid, packed);
+            updateLeaderboards(userid, movieid);
+            indexByTime(movieid, packed);
+            similarities.markChanged(userid);
+            userSignatures.add(userid, movieid);
             this.size++;
             return true;
         }
@@ -86,6 +170,117 @@ public class Ratings implements IRatings {
 
     }
 
+    /**
+     * Adds a batch of ratings to the data structure, as if each were added in turn
+     * with add: a rating that cannot be represented, or whose user and movie
+     * already have a rating (in the store or earlier in the batch), is skipped.
+     * The batch is sorted by user and then by movie, so each user and movie is
+     * looked up once per batch rather than once per rating
+     * 
+     * @param userIDs      The user IDs
+     * @param movieIDs     The movie IDs, parallel to the user IDs
+     * @param ratings      The ratings (between 0 and 5 inclusive, in half stars)
+     * @param epochSeconds The times at which the ratings were made, in seconds
+     *                     since the epoch (UTC)
+     * @return The number of ratings added
+     */
+    @Override
+    public int addBatch(int[] userIDs, int[] movieIDs, float[] ratings, long[] epochSeconds) {
+        int length = userIDs.length;
+        if (movieIDs.length != length || ratings.length != length || epochSeconds.length != length) {
+            throw new IllegalArgumentException("The batch arrays must all be the same length");
+        }
+
+        // Packs every rating that can be represented, keeping the positions of those
+        int[] order = new int[length];
+        long[] packed = new long[length];
+        int numValid = 0;
+        for (int i = 0; i < length; i++) {
+            byte halfStars = Rating.toHalfStars(ratings[i]);
+            if (halfStars != Rating.INVALID && Rating.isStorable(epochSeconds[i])) {
+                packed[i] = Rating.pack(halfStars, epochSeconds[i]);
+                order[numValid++] = i;
+            }
+        }
+        order = Arrays.copyOf(order, numValid);
+
+        // First pass, by user: one lookup of each user's map and stats. A rating is
+        // accepted once its movie is not yet in the user's map, so the first of any
+        // duplicate pairs wins (the sort keeps batch order within a pair)
+        long[] keys = new long[length];
+        for (int i : order) {
+            keys[i] = pairKey(userIDs[i], movieIDs[i]);
+        }
+        sortByKey(order, keys);
+        int numAccepted = 0;
+        int[] bins = new int[RatingHistograms.NUM_BINS];
+        for (int start = 0; start < order.length;) {
+            int userid = userIDs[order[start]];
+            IntLongOpenHashMap movieToRatingMap = userMap.get(userid);
+            if (movieToRatingMap == null) {
+                movieToRatingMap = new IntLongOpenHashMap();
+                userMap.add(userid, movieToRatingMap);
+            }
+
+            int userStart = numAccepted;
+            int count = 0;
+            float sum = 0;
+            Arrays.fill(bins, 0);
+            int end = start;
+            for (; end < order.length && userIDs[order[end]] == userid; end++) {
+                int i = order[end];
+                if (movieToRatingMap.add(movieIDs[i], packed[i])) {
+                    bins[Rating.halfStarsOf(packed[i])]++;
+                    userSignatures.add(userid, movieIDs[i]);
+                    order[numAccepted++] = i;
+                    count++;
+                    sum += Rating.ratingOf(packed[i]);
+                }
+            }
+            if (count > 0) {
+                userStatsMap.merge(userid, count, sum, bins);
+                updateUserLeaderboard(userid);
+                addToTimeline(userid, Arrays.copyOfRange(order, userStart, numAccepted), movieIDs, packed, keys);
+            }
+            start = end;
+        }
+        order = Arrays.copyOf(order, numAccepted);
+
+        // Second pass, by movie, over only the accepted ratings
+        for (int i : order) {
+            keys[i] = pairKey(movieIDs[i], userIDs[i]);
+        }
+        sortByKey(order, keys);
+        for (int start = 0; start < order.length;) {
+            int movieid = movieIDs[order[start]];
+            IntLongOpenHashMap userToRatingMap = movieMap.get(movieid);
+            if (userToRatingMap == null) {
+                userToRatingMap = new IntLongOpenHashMap();
+                movieMap.add(movieid, userToRatingMap);
+            }
+
+            int count = 0;
+            float sum = 0;
+            Arrays.fill(bins, 0);
+            int end = start;
+            for (; end < order.length && movieIDs[order[end]] == movieid; end++) {
+                int i = order[end];
+                userToRatingMap.add(userIDs[i], packed[i]);
+                bins[Rating.halfStarsOf(packed[i])]++;
+                indexByTime(movieid, packed[i]);
+                similarities.markChanged(userIDs[i]);
+                count++;
+                sum += Rating.ratingOf(packed[i]);
+            }
+            movieStatsMap.merge(movieid, count, sum, bins);
+            updateMovieLeaderboards(movieid);
+            start = end;
+        }
+
+        this.size += numAccepted;
+        return numAccepted;
+    }
+
     /**
      * Removes a given rating, using the user ID and the movie ID as the unique
      * identifier
@@ -96,22 +291,43 @@ public class Ratings implements IRatings {
      */
     @Override
     public boolean remove(int userid, int movieid) {
-        ChainingHashMap<Integer,Rating> userToRatingMap = userMap.get(userid);
-        ChainingHashMap<Integer,Rating> movieToRatingMap = movieMap.get(movieid);
+        IntLongOpenHashMap userToRatingMap = userMap.get(userid);
+        IntLongOpenHashMap movieToRatingMap = movieMap.get(movieid);
 
         // If ratings don't exist for the movie or the user, then return false
         if (userToRatingMap == null || movieToRatingMap == null) {
             return false;
-        } else if (userToRatingMap.remove(movieid) && movieToRatingMap.remove(userid)) { // Check if the removal returns true
-            // Then removes from the stats maps too
-            userStatsMap.remove(userid);
-            movieStatsMap.remove(movieid);
-            this.size--;
-            return true;
         }
 
-        return false; // If ratings not found, then return fase
-        
+        if (!userToRatingMap.containsKey(movieid)) {
+            return false; // If ratings not found, then return fase
+        }
+        long packed = userToRatingMap.getOrDefault(movieid, 0);
+        float rating = Rating.ratingOf(packed);
+
+        userToRatingMap.remove(movieid);
+        movieToRatingMap.remove(userid);
+
+        // Then takes the rating out of the stats for both. A user or movie left with
+        // no ratings is removed entirely, so it is treated as not found from then on
+        // (the stats tables drop a key themselves once its count reaches zero)
+        if (timelines.get(userid).remove(movieid, packed) == 0) {
+            timelines.remove(userid);
+        }
+        if (userStatsMap.remove(userid, rating, Rating.halfStarsOf(packed)) == 0) {
+            userMap.remove(userid);
+        }
+
+        if (movieStatsMap.remove(movieid, rating, Rating.halfStarsOf(packed)) == 0) {
+            movieMap.remove(movieid);
+        }
+        updateLeaderboards(userid, movieid);
+        unindexByTime(movieid, packed);
+        similarities.markChanged(userid);
+        userSignatures.remove(userid, movieid, userToRatingMap::getKeysAsInt);
+
+        this.size--;
+        return true;
     }
 
     /**
@@ -123,7 +339,7 @@ public class Ratings implements IRatings {
      * @param userID    The user ID
      * @param movieID   The movie ID
      * @param rating    The new rating to be given to the film by this user (between
-     *                  0 and 5 inclusive)
+     *                  0 and 5 inclusive, in half stars)
      * @param timestamp The time at which the new rating was made
      * @return TRUE if the data able to be added/updated, FALSE otherwise
      */
@@ -134,13 +350,44 @@ public class Ratings implements IRatings {
             return true;
         }
 
-        Rating ratingObj = userMap.get(userid).get(movieid); // Creates rating object
-        userStatsMap.get(userid).updateRating(ratingObj.getRating(), rating); // Update the stats for the user
-        movieStatsMap.get(movieid).updateRating(ratingObj.getRating(), rating); // Update the stats for the movie
+        byte halfStars = Rating.toHalfStars(rating);
+        long epochSecond = Rating.toEpochSecond(timestamp);
+        if (halfStars == Rating.INVALID || !Rating.isStorable(epochSecond)) {
+            return false; // The add failed because the rating cannot be represented
+        }
+        long packed = Rating.pack(halfStars, epochSecond);
+
+        IntLongOpenHashMap movieToRatingMap = userMap.get(userid);
+        long oldPacked = movieToRatingMap.getOrDefault(movieid, 0);
+        float oldRating = Rating.ratingOf(oldPacked);
+        int oldHalfStars = Rating.halfStarsOf(oldPacked);
+        userStatsMap.update(userid, oldRating, Rating.ratingOf(packed), oldHalfStars, halfStars); // Update the stats for the user
+        movieStatsMap.update(movieid, oldRating, Rating.ratingOf(packed), oldHalfStars, halfStars); // Update the stats for the movie
+        updateLeaderboards(userid, movieid);
+        unindexByTime(movieid, oldPacked); // The rating moves to the buckets of its new time
+        indexByTime(movieid, packed);
+        timelines.get(userid).replace(movieid, oldPacked, packed); // And to its new place in the timeline
+        similarities.markChanged(userid);
+
+        // Overwrites the packed rating in both the user and movie maps
+        return movieToRatingMap.replace(movieid, packed) && movieMap.get(movieid).replace(userid, packed);
 
-        return (movieMap.get(movieid).get(userid).updateRating(rating, timestamp)
-                && ratingObj.updateRating(rating, timestamp)); // Updates the ratings in user and movie maps
+    }
 
+    /**
+     * Gets a single rating, building the Rating (and its timestamp) from the
+     * compact form it is stored in
+     * 
+     * @param userID  The user ID
+     * @param movieID The movie ID
+     * @return The rating, or null if the user has not rated the film
+     */
+    public Rating getRating(int userid, int movieid) {
+        IntLongOpenHashMap movieToRatingMap = userMap.get(userid);
+        if (movieToRatingMap == null || !movieToRatingMap.containsKey(movieid)) {
+            return null;
+        }
+        return new Rating(userid, movieid, movieToRatingMap.getOrDefault(movieid, 0));
     }
 
     /**
@@ -153,56 +400,67 @@ public class Ratings implements IRatings {
     @Override
     public float[] getMovieRatings(int movieid) {
 
-        ChainingHashMap<Integer, Rating> movieToRatingMap = movieMap.get(movieid);
+        IntLongOpenHashMap movieToRatingMap = movieMap.get(movieid);
 
         // Checks if there are no ratings for the movie, or movie doesn't exist
         if (movieToRatingMap == null) {
             return new float[0];
         }
 
-        CustomArrayList<Float> ratingList = new CustomArrayList<>();
+        FloatArrayList ratingList = new FloatArrayList(movieToRatingMap.getSize());
         // Iterates through the rating map corresponding to the movieID, and compiles
         // the user ratings into one list
-        for (int i = 0; i < movieToRatingMap.getCapacity(); i++) {
-            ListElement<Integer, Rating> element = movieToRatingMap.getHead(i);
-            while (element != null) {
-                ratingList.add(element.getValue().getRating());
-                element = element.getNext();
-            }
+        IntLongCursor cursor = movieToRatingMap.cursor();
+        while (cursor.advance()) {
+            ratingList.add(Rating.ratingOf(cursor.getValue()));
         }
 
-        return ratingList.getAsArrayFloat();
+        return ratingList.toArray();
     }
 
     /**
-     * Get all the ratings for a given user
+     * Get all the ratings for a given user, in the order they were made
      * 
      * @param userID The user ID
-     * @return An array of ratings. If there are no ratings or the user cannot be
-     *         found in Ratings, then return an empty array
+     * @return An array of ratings, earliest first. If there are no ratings or the
+     *         user cannot be found in Ratings, then return an empty array
      */
     @Override
     public float[] getUserRatings(int userid) {
 
-        ChainingHashMap<Integer, Rating> userToRatingMap = userMap.get(userid);
+        UserTimeline timeline = timelines.get(userid);
 
         // Checks if there are no ratings for the user, or user doesn't exist
-        if (userToRatingMap == null) {
+        if (timeline == null) {
             return new float[0];
         }
+        return timeline.ratings();
+    }
 
-        CustomArrayList<Float> ratingList = new CustomArrayList<>();
-        // Iterates through the rating map corresponding to the userID, and compiles the
-        // mpvie ratings into one list
-        for (int i = 0; i < userToRatingMap.getCapacity(); i++) { // capacity, because items could be spread out
-            ListElement<Integer, Rating> element = userToRatingMap.getHead(i);
-            while (element != null) {
-                ratingList.add(element.getValue().getRating());
-                element = element.getNext();
-            }
+    /**
+     * Get the ratings a user made within a window of time, in the order they were
+     * made. The window is found by binary search over the user's timeline, so only
+     * the ratings in it are visited
+     * 
+     * @param userID The user ID
+     * @param from   The start of the window, or null for no start (which also
+     *               takes in ratings with no timestamp)
+     * @param to     The end of the window (inclusive), or null for no end
+     * @return An array of ratings, earliest first. If the user has no ratings in
+     *         the window or cannot be found in Ratings, then return an empty array
+     */
+    @Override
+    public Rating[] getUserTimeline(int userid, LocalDateTime from, LocalDateTime to) {
+        UserTimeline timeline = timelines.get(userid);
+        if (timeline == null) {
+            return new Rating[0];
         }
-
-        return ratingList.getAsArrayFloat();
+        // Ratings are held to the second, so a start part way through a second
+        // begins at the next one
+        long start = (from == null) ? Rating.NO_TIMESTAMP
+                : Rating.toEpochSecond(from) + ((from.getNano() > 0) ? 1 : 0);
+        long end = (to == null) ? Long.MAX_VALUE : Rating.toEpochSecond(to);
+        return timeline.between(userid, start, end);
     }
 
     /**
@@ -226,7 +484,7 @@ public class Ratings implements IRatings {
             return 0.0f;
         }
 
-        return movieStatsMap.get(movieid).getAverageRating();
+        return movieStatsMap.getAverage(movieid);
     }
 
     /**
@@ -244,7 +502,79 @@ public class Ratings implements IRatings {
             return -1.0f;
         }
 
-        return userStatsMap.get(userid).getAverageRating();
+        return userStatsMap.getAverage(userid);
+    }
+
+    /**
+     * Get how many ratings of each number of stars a film has
+     * 
+     * @param movieID The movie ID
+     * @return An array of 11 counts, the number of ratings of 0, 0.5, 1, ... 5
+     *         stars in turn. If there are no ratings or the film cannot be found
+     *         in Ratings, then return an empty array
+     */
+    @Override
+    public int[] getMovieRatingHistogram(int movieid) {
+        int[] bins = new int[RatingHistograms.NUM_BINS];
+        return (movieStatsMap.getBins(movieid, bins) == 0) ? new int[0] : bins;
+    }
+
+    /**
+     * Get how many ratings of each number of stars a user has given
+     * 
+     * @param userID The user ID
+     * @return An array of 11 counts, the number of ratings of 0, 0.5, 1, ... 5
+     *         stars in turn. If there are no ratings or the user cannot be found
+     *         in Ratings, then return an empty array
+     */
+    @Override
+    public int[] getUserRatingHistogram(int userid) {
+        int[] bins = new int[RatingHistograms.NUM_BINS];
+        return (userStatsMap.getBins(userid, bins) == 0) ? new int[0] : bins;
+    }
+
+    /**
+     * Get the median rating for a given film, read off its histogram
+     * 
+     * @param movieID The movie ID
+     * @return Produces the median rating for a given film (the average of the
+     *         middle two when it has an even number of ratings).
+     *         If the film cannot be found in Ratings, but does exist in the Movies
+     *         store, return 0.0f.
+     *         If the film cannot be found in Ratings or Movies stores, return
+     *         -1.0f.
+     */
+    @Override
+    public float getMovieMedianRating(int movieid) {
+        int[] bins = new int[RatingHistograms.NUM_BINS];
+        int total = movieStatsMap.getBins(movieid, bins);
+        if (total == 0) {
+            return (stores.getMovies().getTitle(movieid) == null) ? -1.0f : 0.0f;
+        }
+        return RatingHistograms.median(bins, total);
+    }
+
+    /**
+     * Get a percentile of the ratings for a given film, read off its histogram
+     * 
+     * @param movieID    The movie ID
+     * @param percentile The percentile, between 0 and 100 inclusive
+     * @return Produces the lowest rating that at least the given percentage of the
+     *         film's ratings are at or below.
+     *         If the film cannot be found in Ratings, but does exist in the Movies
+     *         store, return 0.0f.
+     *         If the film cannot be found in Ratings or Movies stores, return
+     *         -1.0f.
+     */
+    @Override
+    public float getMovieRatingPercentile(int movieid, float percentile) {
+        RatingHistograms.checkPercentile(percentile);
+        int[] bins = new int[RatingHistograms.NUM_BINS];
+        int total = movieStatsMap.getBins(movieid, bins);
+        if (total == 0) {
+            return (stores.getMovies().getTitle(movieid) == null) ? -1.0f : 0.0f;
+        }
+        return RatingHistograms.percentile(bins, total, percentile);
     }
 
     /**
@@ -259,34 +589,9 @@ public class Ratings implements IRatings {
      */
     @Override
     public int[] getMostRatedMovies(int num) {
-        // Creates a minheap with each "node" being KeyValuePair<Integer (numOfRatings), Integer (movieID)>
-        CustomMinHeap<Integer> minHeap = new CustomMinHeap<>(num);
-
-        // Iterates through the movies statistics map which maps every movie to a
-        // statistics object (which includes the num of ratings and average rating)
-        // Builds a min heap of "num" values as it iterates along containing the highest
-        // "num" values
-        for (int i = 0; i < movieStatsMap.getCapacity(); i++) {
-            ListElement<Integer, Statistics> element = movieStatsMap.getHead(i); // Gets the head in case there are
-                                                                                 // multiple elements in this bucket
-
-            while (element != null) {
-                KeyValuePair<Integer, Integer> elementDetails = new KeyValuePair<>(element.getValue().getNumOfRatings(),
-                        element.getKey()); // Gets the <numOfRatings, movieID> as a KVP
-                if (!minHeap.isFull()) { // If not full or is empty, add the element!
-                    minHeap.add(elementDetails);
-                } else if (elementDetails.compareTo(minHeap.peek()) > 0) { // Heap full - Compares the numberOfRatings
-                                                                           // of current movie element, with minimum on
-                                                                           // the heap so far
-                    // Pops the minimum and adds the new element if condition is satisfied
-                    minHeap.popRoot();
-                    minHeap.add(elementDetails);
-                }
-                element = element.getNext();
-            }
-        }
-
-        return minHeap.getSortedDescendingValues(); // Returns the sorted values in descending order of the heap
+        // The ranking of movies by their number of ratings is kept up to date as ratings
+        // change, so the top "num" are read straight off it
+        return mostRatedMovies.top(num); // Returns the IDs in descending order of their number of ratings
     }
 
     /**
@@ -300,32 +605,9 @@ public class Ratings implements IRatings {
      */
     @Override
     public int[] getMostRatedUsers(int num) {
-        // Creates a minheap with each "node" being KeyValuePair<Integer (numOfRatings),Integer (userID)>
-        CustomMinHeap<Integer> minHeap = new CustomMinHeap<>(num);
-
-        // Iterates through the user statistics map which maps every user to a
-        // statistics object (which includes the num of ratings and average rating)
-        // Builds a min heap of "num" values as it iterates along containing the highest "num" values
-        for (int i = 0; i < userStatsMap.getCapacity(); i++) {
-            ListElement<Integer, Statistics> element = userStatsMap.getHead(i);
-
-            while (element != null) {
-                KeyValuePair<Integer, Integer> elementDetails = new KeyValuePair<>(element.getValue().getNumOfRatings(),
-                        element.getKey()); // Gets the <numOfRatings, userID> as a KVP
-                if (!minHeap.isFull()) { // If not full or is empty, add the element!
-                    minHeap.add(elementDetails);
-                } else if (elementDetails.compareTo(minHeap.peek()) > 0) { // Heap full - Compares the numberOfRatings
-                                                                           // of current user element, with minimum on
-                                                                           // the heap so far
-                    // Pops the minimum and adds the new element if condition is satisfied
-                    minHeap.popRoot();
-                    minHeap.add(elementDetails);
-                }
-                element = element.getNext();
-            }
-        }
-
-        return minHeap.getSortedDescendingValues(); // Returns the sorted values in descending order of the heap
+        // The ranking of users by their number of ratings is kept up to date as ratings
+        // change, so the top "num" are read straight off it
+        return mostRatedUsers.top(num); // Returns the IDs in descending order of their number of ratings
     }
 
     /**
@@ -351,7 +633,7 @@ public class Ratings implements IRatings {
         // Can be the case that there may be a movie not in the movies store, but in the ratings structure... (according to tests)
         // Following checks if the movieID has ratings in the ratings store
         if (movieMap.get(movieid) != null) {
-            return movieStatsMap.get(movieid).getNumOfRatings();
+            return movieStatsMap.getCount(movieid);
         }
 
         return -1;
@@ -369,32 +651,467 @@ public class Ratings implements IRatings {
      */
     @Override
     public int[] getTopAverageRatedMovies(int numResults) {
-        // Creates a minheap with each "node" being KeyValuePair<Integer (numOfRatings), sInteger (movieID)>
-        CustomMinHeap<Float> minHeap = new CustomMinHeap<>(numResults);
-
-        // Iterates through the movies statistics map which maps every movie to a
-        // statistics object (which includes the num of ratings and average rating)
-        // Builds a min heap of "numResults" values as it iterates along containing the highest "numResults" values
-        for (int i = 0; i < movieStatsMap.getCapacity(); i++) {
-            ListElement<Integer, Statistics> element = movieStatsMap.getHead(i);
-
-            while (element != null) {
-                KeyValuePair<Float, Integer> elementDetails = new KeyValuePair<>(element.getValue().getAverageRating(),
-                        element.getKey()); // Gets the <averageRating, movieID> as a KVP
-                if (!minHeap.isFull()) { // If not full or is empty, add the element!
-                    minHeap.add(elementDetails);
-                } else if (elementDetails.compareTo(minHeap.peek()) > 0) { // Heap full - Compares the averateRating of
-                                                                           // current movie element, with minimum on the
-                                                                           // heap so far
-                    // Pops the minimum and adds the new element if condition is satisfied
-                    minHeap.popRoot();
-                    minHeap.add(elementDetails);
+        // The ranking of movies by their average rating is kept up to date as ratings
+        // change, so the top "numResults" are read straight off it
+        return topAverageMovies.top(numResults); // Returns the IDs in descending order of their average rating
+    }
+
+    /**
+     * Brings the rankings of a user and a movie in line with their statistics,
+     * after one of their ratings has been added, set or removed. A user or movie
+     * left with no ratings is taken out of the rankings
+     * 
+     * @param userid  The user ID
+     * @param movieid The movie ID
+     */
+    private void updateLeaderboards(int userid, int movieid) {
+        updateUserLeaderboard(userid);
+        updateMovieLeaderboards(movieid);
+    }
+
+    /**
+     * Brings the ranking of a user in line with its statistics
+     * 
+     * @param userid The user ID
+     */
+    private void updateUserLeaderboard(int userid) {
+        int userCount = userStatsMap.getCount(userid);
+        if (userCount == 0) {
+            mostRatedUsers.remove(userid);
+        } else {
+            mostRatedUsers.update(userid, userCount);
+        }
+    }
+
+    /**
+     * Brings the rankings of a movie in line with its statistics
+     * 
+     * @param movieid The movie ID
+     */
+    private void updateMovieLeaderboards(int movieid) {
+        int movieCount = movieStatsMap.getCount(movieid);
+        if (movieCount == 0) {
+            mostRatedMovies.remove(movieid);
+            topAverageMovies.remove(movieid);
+        } else {
+            mostRatedMovies.update(movieid, movieCount);
+            topAverageMovies.update(movieid, movieStatsMap.getAverage(movieid));
+        }
+
+        if (movieCount == 0 || movieCount < minRatings) {
+            topWeightedMovies.remove(movieid);
+        } else {
+            topWeightedMovies.update(movieid,
+                    weightedAverage(movieStatsMap.getSum(movieid), movieCount, priorWeight, priorMean));
+        }
+    }
+
+    /**
+     * Sets how getTopWeightedRatedMovies ranks films. Each film is ranked on its
+     * average rating pulled towards a prior mean, as if it also had priorWeight
+     * extra ratings of priorMean (the IMDb weighted rating), so a film with few
+     * ratings cannot outrank well rated films on a single high rating. Films with
+     * fewer than minRatings ratings are left out altogether. The ranking is
+     * rebuilt once here, and then kept up to date as ratings change
+     * 
+     * @param minRatings  The number of ratings a film needs to be ranked
+     * @param priorWeight The number of ratings the prior mean counts as
+     * @param priorMean   The rating every film is pulled towards, usually the
+     *                    average of all ratings
+     */
+    @Override
+    public void setWeightedRanking(int minRatings, int priorWeight, float priorMean) {
+        if (minRatings < 0 || priorWeight < 0) {
+            throw new IllegalArgumentException("The minimum rating count and prior weight cannot be negative");
+        }
+        this.minRatings = minRatings;
+        this.priorWeight = priorWeight;
+        this.priorMean = priorMean;
+
+        topWeightedMovies = new Leaderboard(movieStatsMap.getSize());
+        OffHeapAggregateTable.Cursor cursor = movieStatsMap.cursor();
+        while (cursor.advance()) {
+            if (cursor.getCount() >= minRatings) {
+                topWeightedMovies.update(cursor.getKey(),
+                        weightedAverage(cursor.getSum(), cursor.getCount(), priorWeight, priorMean));
+            }
+        }
+    }
+
+    /**
+     * Get the highest rated film IDs by weighted rating, as set by
+     * setWeightedRanking (highest first). Until that is called, this is the same
+     * as getTopAverageRatedMovies
+     * 
+     * @param numResults The maximum number of results to be returned
+     * @return An array of the film IDs with the highest weighted ratings, highest
+     *         first. If there are less than num films with enough ratings, then the
+     *         array should be the same length as the number of such films
+     */
+    @Override
+    public int[] getTopWeightedRatedMovies(int numResults) {
+        // The weighted ranking is kept up to date as ratings change, so the top
+        // "numResults" are read straight off it
+        return topWeightedMovies.top(numResults);
+    }
+
+    /**
+     * Get the films most similar to a given film, by the adjusted cosine
+     * similarity of their ratings (each rating less its user's average rating,
+     * compared over the users who rated both films). Only films sharing at least
+     * 3 raters and with a positive similarity count, and at most 50 are kept per
+     * film. Any ratings changed since the last query are taken in first
+     * 
+     * @param movieID    The movie ID
+     * @param numResults The maximum number of results to be returned
+     * @return An array of the most similar film IDs, most similar first. If the
+     *         film has no similar films or cannot be found, then return an empty
+     *         array
+     */
+    @Override
+    public int[] getSimilarMovies(int movieid, int numResults) {
+        if (numResults <= 0) {
+            return new int[0];
+        }
+        similarities.refresh(this::forEachRating, this::forEachRatingOf);
+        return similarities.getSimilar(movieid, numResults);
+    }
+
+    /**
+     * Brings the similar films of every film up to date with the ratings, so the
+     * next getSimilarMovies does not have to. The first call works out every film;
+     * later calls only work out again the films affected by the ratings changed
+     * since
+     */
+    @Override
+    public void refreshSimilarities() {
+        similarities.refresh(this::forEachRating, this::forEachRatingOf);
+    }
+
+    /**
+     * Get the users most similar to a given user, by the overlap of the films
+     * they have rated (the Jaccard similarity of the two sets of films). This is
+     * approximate: the similarity is estimated from MinHash signatures, and only
+     * users likely to be similar (sharing a band of the signature) are compared
+     * 
+     * @param userID     The user ID
+     * @param numResults The maximum number of results to be returned
+     * @return An array of the most similar user IDs, most similar first. If the
+     *         user has no ratings, then return an empty array
+     */
+    @Override
+    public int[] getSimilarUsers(int userid, int numResults) {
+        return userSignatures.getSimilar(userid, numResults);
+    }
+
+    /**
+     * Trains a matrix factorisation model on every rating currently held, for
+     * predictRating and getRecommendedMovies. Training is spread over all cores,
+     * which update the model without locking. Ratings changed afterwards are only
+     * taken in by training again
+     * 
+     * @param numFactors     The number of latent factors of every user and film
+     * @param numEpochs      The number of passes over the ratings
+     * @param learningRate   The step size of each update
+     * @param regularisation How strongly the model is pulled towards zero
+     * @return The root mean squared error of the model over the ratings
+     * @throws IllegalArgumentException if numFactors is not positive, numEpochs
+     *                                  or regularisation is negative, or
+     *                                  learningRate is not positive
+     */
+    @Override
+    public float trainRecommender(int numFactors, int numEpochs, float learningRate, float regularisation) {
+        recommender = new MatrixFactorization(this::forEachRating, numFactors, numEpochs, learningRate,
+                regularisation);
+        return recommender.getTrainingError();
+    }
+
+    /**
+     * Predicts the rating a user would give a film, from the last trained model
+     * 
+     * @param userID  The user ID
+     * @param movieID The movie ID
+     * @return The predicted rating, between 0 and 5. If no model has been
+     *         trained, or the user or film had no ratings when it was, then
+     *         return -1.0f
+     */
+    @Override
+    public float predictRating(int userid, int movieid) {
+        if (recommender == null) {
+            return -1.0f;
+        }
+        return recommender.predict(userid, movieid);
+    }
+
+    /**
+     * Get the films with the highest predicted ratings for a user, from the last
+     * trained model, leaving out the films the user has already rated
+     * 
+     * @param userID     The user ID
+     * @param numResults The maximum number of results to be returned
+     * @return An array of movie IDs, highest predicted rating first. If no model
+     *         has been trained, or the user had no ratings when it was, then
+     *         return an empty array
+     */
+    @Override
+    public int[] getRecommendedMovies(int userid, int numResults) {
+        if (recommender == null || numResults <= 0) {
+            return new int[0];
+        }
+        return recommender.recommend(userid, numResults, ratedMovies(userid));
+    }
+
+    /**
+     * Gets the IDs of every film a user has rated
+     * 
+     * @param userID The user ID
+     * @return The movie IDs, or an empty array if the user has no ratings
+     */
+    private int[] ratedMovies(int userid) {
+        IntLongOpenHashMap userToRatingMap = userMap.get(userid);
+        return (userToRatingMap == null) ? new int[0] : userToRatingMap.getKeysAsInt();
+    }
+
+    /**
+     * Visits every rating in the data structure, user by user
+     * 
+     * @param visitor The visitor to give each rating to
+     */
+    void forEachRating(RatingVisitor visitor) {
+        IntObjectCursor<IntLongOpenHashMap> users = userMap.cursor();
+        while (users.advance()) {
+            int userid = users.getKey();
+            IntLongCursor ratings = users.getValue().cursor();
+            while (ratings.advance()) {
+                visitor.visit(userid, ratings.getKey(), Rating.ratingOf(ratings.getValue()));
+            }
+        }
+    }
+
+    /**
+     * Visits every rating of one user
+     * 
+     * @param userid  The user ID
+     * @param visitor The visitor to give each rating to
+     */
+    void forEachRatingOf(int userid, RatingVisitor visitor) {
+        IntLongOpenHashMap movieToRatingMap = userMap.get(userid);
+        if (movieToRatingMap == null) {
+            return;
+        }
+        IntLongCursor ratings = movieToRatingMap.cursor();
+        while (ratings.advance()) {
+            visitor.visit(userid, ratings.getKey(), Rating.ratingOf(ratings.getValue()));
+        }
+    }
+
+    /**
+     * Packs two IDs into one key that sorts by the first ID, then the second
+     * 
+     * @param first  The ID to sort on first
+     * @param second The ID to sort on second
+     * @return The packed key
+     */
+    private static long pairKey(int first, int second) {
+        return ((long) first << 32) | (second & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Sorts positions by the keys at those positions, keeping positions with equal
+     * keys in their current order (a merge sort)
+     * 
+     * @param order The positions to sort
+     * @param keys  The key of each position
+     */
+    static void sortByKey(int[] order, long[] keys) {
+        int[] from = order;
+        int[] to = new int[order.length];
+        for (int width = 1; width < order.length; width <<= 1) {
+            for (int low = 0; low < order.length; low += width << 1) {
+                int mid = Math.min(low + width, order.length);
+                int high = Math.min(low + (width << 1), order.length);
+                int left = low;
+                int right = mid;
+                for (int out = low; out < high; out++) {
+                    if (right >= high || (left < mid && keys[from[left]] <= keys[from[right]])) {
+                        to[out] = from[left++];
+                    } else {
+                        to[out] = from[right++];
+                    }
                 }
-                element = element.getNext();
             }
+            int[] swap = from;
+            from = to;
+            to = swap;
+        }
+        if (from != order) {
+            System.arraycopy(from, 0, order, 0, order.length);
+        }
+    }
+
+    /**
+     * Works out a weighted rating: the average of a film's ratings together with
+     * priorWeight ratings of priorMean
+     * 
+     * @param sum         The sum of the film's ratings
+     * @param count       The number of the film's ratings
+     * @param priorWeight The number of ratings the prior mean counts as
+     * @param priorMean   The prior mean
+     * @return The weighted rating
+     */
+    static float weightedAverage(float sum, int count, int priorWeight, float priorMean) {
+        return (sum + priorWeight * priorMean) / (count + priorWeight);
+    }
+
+    /**
+     * Gets the top N movies with the most ratings made between two dates, in order
+     * from most to least
+     * 
+     * @param start The first day of the window (UTC)
+     * @param end   The last day of the window (UTC, inclusive)
+     * @param num   The number of movies that should be returned
+     * @return A sorted array of movie IDs with the most ratings in the window. The
+     *         array should be no larger than num, and only holds movies rated in
+     *         the window
+     */
+    @Override
+    public int[] getMostRatedMoviesBetween(LocalDate start, LocalDate end, int num) {
+        if (num <= 0) {
+            return new int[0];
+        }
+
+        // Adds up the counts of every movie over the buckets covering the window in an
+        // on-heap map, then offers every <numOfRatings, movieID> pair to a top-K selector
+        IntIntOpenHashMap windowCounts = new IntIntOpenHashMap(64);
+        movieStatsByTime.forEachBucket(start, end, bucket -> {
+            IntIntCursor cursor = bucket.cursor();
+            while (cursor.advance()) {
+                windowCounts.addTo(cursor.getKey(), cursor.getValue());
+            }
+        });
+        return ParallelTopK.selectInt(windowCounts.getCapacity(), windowCounts.getSize(), num,
+                (fromSlot, toSlot, topK) -> {
+                    IntIntCursor cursor = windowCounts.cursor(fromSlot, toSlot);
+                    while (cursor.advance()) {
+                        topK.offer(cursor.getValue(), cursor.getKey());
+                    }
+                }); // Returns the IDs in descending order of their number of ratings
+    }
+
+    /**
+     * Get the average rating for a given film, of the ratings made between two
+     * dates
+     * 
+     * @param movieID The movie ID
+     * @param start   The first day of the window (UTC)
+     * @param end     The last day of the window (UTC, inclusive)
+     * @return Produces the average of the film's ratings in the window.
+     *         If there are no ratings for the film in the window, but the film
+     *         exists in Ratings or the Movies store, return 0.0f.
+     *         If the film cannot be found in Ratings or Movies stores, return
+     *         -1.0f.
+     */
+    @Override
+    public float getMovieAverageRatingBetween(int movieid, LocalDate start, LocalDate end) {
+        // Adds up the count and sum of the movie over the buckets covering the window
+        int[] count = new int[1];
+        float[] sum = new float[1];
+        movieStatsByTime.forEachBucket(start, end, bucket -> {
+            count[0] += bucket.getCount(movieid);
+            sum[0] += bucket.getSum(movieid);
+        });
+
+        if (count[0] == 0) {
+            if (movieMap.get(movieid) == null && stores.getMovies().getTitle(movieid) == null) {
+                return -1.0f;
+            }
+            return 0.0f;
+        }
+        return sum[0] / count[0];
+    }
+
+    /**
+     * Gets the timeline of a user, creating an empty one if the user has none
+     * 
+     * @param userid The user ID
+     * @return The timeline
+     */
+    private UserTimeline timelineOf(int userid) {
+        UserTimeline timeline = timelines.get(userid);
+        if (timeline == null) {
+            timeline = new UserTimeline();
+            timelines.add(userid, timeline);
+        }
+        return timeline;
+    }
+
+    /**
+     * Adds the ratings a batch accepted for one user to their timeline, in one
+     * merge. The positions come in movie order, so a stable sort by time leaves
+     * them ordered by time and then by movie, as the timeline is
+     * 
+     * @param userid   The user ID
+     * @param accepted The positions in the batch of the user's accepted ratings
+     * @param movieIDs The movie IDs of the batch
+     * @param packed   The packed ratings of the batch
+     * @param keys     Scratch keys, one per position of the batch
+     */
+    private void addToTimeline(int userid, int[] accepted, int[] movieIDs, long[] packed, long[] keys) {
+        for (int i : accepted) {
+            keys[i] = Rating.epochSecondOf(packed[i]);
+        }
+        sortByKey(accepted, keys);
+        int[] newMovies = new int[accepted.length];
+        long[] newPacked = new long[accepted.length];
+        for (int j = 0; j < accepted.length; j++) {
+            newMovies[j] = movieIDs[accepted[j]];
+            newPacked[j] = packed[accepted[j]];
+        }
+        timelineOf(userid).addAll(newMovies, newPacked);
+    }
+
+    /**
+     * Adds a rating to the time index of its movie, unless it has no timestamp
+     * 
+     * @param movieid The movie ID
+     * @param packed  The packed rating
+     */
+    private void indexByTime(int movieid, long packed) {
+        long epochSecond = Rating.epochSecondOf(packed);
+        if (epochSecond != Rating.NO_TIMESTAMP) {
+            movieStatsByTime.add(epochSecond, movieid, Rating.ratingOf(packed));
+        }
+    }
+
+    /**
+     * Takes a rating back out of the time index of its movie
+     * 
+     * @param movieid The movie ID
+     * @param packed  The packed rating, as it was indexed
+     */
+    private void unindexByTime(int movieid, long packed) {
+        long epochSecond = Rating.epochSecondOf(packed);
+        if (epochSecond != Rating.NO_TIMESTAMP) {
+            movieStatsByTime.remove(epochSecond, movieid, Rating.ratingOf(packed));
         }
+    }
 
-        return minHeap.getSortedDescendingValues(); // Returns the sorted values in descending order of the heap
+    /**
+     * Grows the data structure ahead of a bulk load, so that ratings from the
+     * given number of users and movies can be added without any rehashing of the
+     * user and movie tables
+     * 
+     * @param numRatings The number of ratings about to be added
+     * @param numUsers   The number of distinct users in those ratings
+     * @param numMovies  The number of distinct movies in those ratings
+     */
+    @Override
+    public void ensureCapacity(int numRatings, int numUsers, int numMovies) {
+        userMap.ensureCapacity(userMap.getSize() + numUsers);
+        userStatsMap.ensureCapacity(userStatsMap.getSize() + numUsers);
+        timelines.ensureCapacity(timelines.getSize() + numUsers);
+        movieMap.ensureCapacity(movieMap.getSize() + numMovies);
+        movieStatsMap.ensureCapacity(movieStatsMap.getSize() + numMovies);
     }
 
     /**
@@ -406,4 +1123,33 @@ public class Ratings implements IRatings {
     public int size() {
         return this.size; // Size is updated whenever a rating is added or removed
     }
+
+    /**
+     * Switches the collection of hash table statistics on or off for every table
+     * in the store
+     * 
+     * @param enabled Whether to collect statistics
+     */
+    @Override
+    public void setTableStatsEnabled(boolean enabled) {
+        userMap.setStatsEnabled(enabled);
+        movieMap.setStatsEnabled(enabled);
+        userStatsMap.setStatsEnabled(enabled);
+        movieStatsMap.setStatsEnabled(enabled);
+    }
+
+    /**
+     * Gets a snapshot of the health of every hash table in the store
+     * 
+     * @return The statistics of each table
+     */
+    @Override
+    public HashTableStats[] getTableStats() {
+        return new HashTableStats[] {
+                userMap.getStats("Ratings.users"),
+                movieMap.getStats("Ratings.movies"),
+                userStatsMap.getStats("Ratings.userStats"),
+                movieStatsMap.getStats("Ratings.movieStats")
+        };
+    }
 }
@@ -1,12 +1,62 @@
 package stores;
 
 import interfaces.*;
+import structures.HashTableStats;
 
 public class Stores extends AbstractStores{
+    // The implementations of the Ratings store that can be chosen between
+    public enum RatingsEngine {HASHED, COMPRESSED}
+
+    private boolean diagnosticsEnabled = false;
+
     public Stores(){
+        this(RatingsEngine.HASHED);
+    }
+
+    public Stores(RatingsEngine ratingsEngine){
         credits  = new Credits(this);
         keywords = new Keywords(this);
         movies   = new Movies(this);
-        ratings  = new Ratings(this);
+        ratings  = (ratingsEngine == RatingsEngine.COMPRESSED) ? new CompressedRatings(this) : new Ratings(this);
+    }
+
+    /**
+     * Switches the collection of hash table statistics on or off in every store
+     * that has hash tables. Best switched on before loading, so the rehashes
+     * during loading are counted
+     * 
+     * @param enabled Whether to collect statistics
+     */
+    public void setDiagnosticsEnabled(boolean enabled){
+        diagnosticsEnabled = enabled;
+        for (Object store : new Object[]{credits, keywords, movies, ratings}){
+            if (store instanceof ITableDiagnostics){
+                ((ITableDiagnostics) store).setTableStatsEnabled(enabled);
+            }
+        }
+    }
+
+    public boolean isDiagnosticsEnabled(){
+        return diagnosticsEnabled;
+    }
+
+    /**
+     * Gets a snapshot of the health of the hash tables in every store, so
+     * capacities can be tuned from real data
+     * 
+     * @return The statistics of each table, grouped by store
+     */
+    public HashTableStats[] getDiagnostics(){
+        HashTableStats[] all = new HashTableStats[0];
+        for (Object store : new Object[]{credits, keywords, movies, ratings}){
+            if (store instanceof ITableDiagnostics){
+                HashTableStats[] tableStats = ((ITableDiagnostics) store).getTableStats();
+                HashTableStats[] combined = new HashTableStats[all.length + tableStats.length];
+                System.arraycopy(all, 0, combined, 0, all.length);
+                System.arraycopy(tableStats, 0, combined, all.length, tableStats.length);
+                all = combined;
+            }
+        }
+        return all;
     }
 }
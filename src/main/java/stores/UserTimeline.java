@@ -0,0 +1,201 @@
+package stores;
+
+import java.util.Arrays;
+
+/**
+ * The ratings of one user in time order, for the Ratings store. Each rating is
+ * held as its packed form (see Rating) in one primitive array and its movie ID
+ * in a parallel one, sorted by timestamp and then by movie ID, so a window of
+ * time is found by binary search. Ratings without a timestamp sort first
+ */
+final class UserTimeline {
+    private static final int INITIAL_CAPACITY = 4;
+
+    private long[] packed;
+    private int[] movies;
+    private int size;
+
+    /**
+     * Constructor for an empty timeline
+     */
+    UserTimeline() {
+        this.packed = new long[INITIAL_CAPACITY];
+        this.movies = new int[INITIAL_CAPACITY];
+        this.size = 0;
+    }
+
+    /**
+     * Adds a rating in its place in time order
+     *
+     * @param movieid The movie ID
+     * @param rating  The packed rating
+     */
+    void add(int movieid, long rating) {
+        ensureCapacity(size + 1);
+        int index = insertionPoint(Rating.epochSecondOf(rating), movieid);
+        System.arraycopy(packed, index, packed, index + 1, size - index);
+        System.arraycopy(movies, index, movies, index + 1, size - index);
+        packed[index] = rating;
+        movies[index] = movieid;
+        size++;
+    }
+
+    /**
+     * Adds a run of ratings, merging them into place from the back so each
+     * rating already held moves at most once
+     *
+     * @param newMovies The movie IDs, sorted by timestamp and then by movie ID
+     * @param newPacked The packed ratings, parallel to the movie IDs
+     */
+    void addAll(int[] newMovies, long[] newPacked) {
+        ensureCapacity(size + newMovies.length);
+        int held = size - 1;
+        int added = newMovies.length - 1;
+        for (int out = size + newMovies.length - 1; added >= 0; out--) {
+            if (held >= 0 && compare(Rating.epochSecondOf(packed[held]), movies[held],
+                    Rating.epochSecondOf(newPacked[added]), newMovies[added]) > 0) {
+                packed[out] = packed[held];
+                movies[out] = movies[held];
+                held--;
+            } else {
+                packed[out] = newPacked[added];
+                movies[out] = newMovies[added];
+                added--;
+            }
+        }
+        size += newMovies.length;
+    }
+
+    /**
+     * Removes a rating
+     *
+     * @param movieid The movie ID
+     * @param rating  The packed rating, as held
+     * @return The number of ratings left
+     */
+    int remove(int movieid, long rating) {
+        int index = insertionPoint(Rating.epochSecondOf(rating), movieid);
+        System.arraycopy(packed, index + 1, packed, index, size - index - 1);
+        System.arraycopy(movies, index + 1, movies, index, size - index - 1);
+        size--;
+        return size;
+    }
+
+    /**
+     * Replaces a rating. If its timestamp has changed, it is moved to its new
+     * place, shifting only the ratings between its old and new places
+     *
+     * @param movieid   The movie ID
+     * @param oldRating The packed rating, as held
+     * @param newRating The new packed rating
+     */
+    void replace(int movieid, long oldRating, long newRating) {
+        long oldEpochSecond = Rating.epochSecondOf(oldRating);
+        long newEpochSecond = Rating.epochSecondOf(newRating);
+        int from = insertionPoint(oldEpochSecond, movieid);
+        int to = from;
+        if (newEpochSecond > oldEpochSecond) {
+            // Later ratings up to the new place move back by one
+            while (to + 1 < size
+                    && compare(Rating.epochSecondOf(packed[to + 1]), movies[to + 1], newEpochSecond, movieid) < 0) {
+                to++;
+            }
+            System.arraycopy(packed, from + 1, packed, from, to - from);
+            System.arraycopy(movies, from + 1, movies, from, to - from);
+        } else if (newEpochSecond < oldEpochSecond) {
+            // Earlier ratings down to the new place move forward by one
+            while (to > 0 && compare(Rating.epochSecondOf(packed[to - 1]), movies[to - 1], newEpochSecond, movieid) > 0) {
+                to--;
+            }
+            System.arraycopy(packed, to, packed, to + 1, from - to);
+            System.arraycopy(movies, to, movies, to + 1, from - to);
+        }
+        packed[to] = newRating;
+        movies[to] = movieid;
+    }
+
+    /**
+     * Gets the ratings made within a window of time, in time order
+     *
+     * @param userid The user ID the timeline belongs to
+     * @param from   The first epoch second of the window
+     * @param to     The last epoch second of the window (inclusive)
+     * @return The ratings, earliest first
+     */
+    Rating[] between(int userid, long from, long to) {
+        if (from > to) {
+            return new Rating[0];
+        }
+        int start = insertionPoint(from, Integer.MIN_VALUE);
+        int end = (to == Long.MAX_VALUE) ? size : insertionPoint(to + 1, Integer.MIN_VALUE);
+        Rating[] result = new Rating[end - start];
+        for (int i = start; i < end; i++) {
+            result[i - start] = new Rating(userid, movies[i], packed[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Gets every rating, in time order
+     *
+     * @return The ratings, between 0 and 5, earliest first
+     */
+    float[] ratings() {
+        float[] result = new float[size];
+        for (int i = 0; i < size; i++) {
+            result[i] = Rating.ratingOf(packed[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Finds, by binary search, the first position whose rating sorts at or after
+     * a timestamp and movie ID
+     *
+     * @param epochSecond The timestamp in epoch seconds
+     * @param movieid     The movie ID
+     * @return The position, from 0 to the number of ratings
+     */
+    private int insertionPoint(long epochSecond, int movieid) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compare(Rating.epochSecondOf(packed[mid]), movies[mid], epochSecond, movieid) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Compares two ratings by timestamp, then by movie ID
+     *
+     * @param firstEpochSecond  The timestamp of the first rating
+     * @param firstMovie        The movie ID of the first rating
+     * @param secondEpochSecond The timestamp of the second rating
+     * @param secondMovie       The movie ID of the second rating
+     * @return Below zero if the first sorts earlier, zero if equal, above zero
+     *         otherwise
+     */
+    static int compare(long firstEpochSecond, int firstMovie, long secondEpochSecond, int secondMovie) {
+        int byTime = Long.compare(firstEpochSecond, secondEpochSecond);
+        return (byTime != 0) ? byTime : Integer.compare(firstMovie, secondMovie);
+    }
+
+    /**
+     * Grows the arrays, doubling them, until they hold at least a number of
+     * ratings
+     *
+     * @param capacity The number of ratings
+     */
+    private void ensureCapacity(int capacity) {
+        if (capacity > packed.length) {
+            int newLength = Math.max(capacity, packed.length * 2);
+            packed = Arrays.copyOf(packed, newLength);
+            movies = Arrays.copyOf(movies, newLength);
+        }
+    }
+}
@@ -1,32 +1,86 @@
 package structures;
 
+import java.util.Arrays;
+import java.util.function.BiConsumer;
+
 /**
  * 
  * My implementation of a hash map making use of separate chaining and linked
  * lists
+ * 
+ * Buckets are only given a linked list once something is added to them. The
+ * map can optionally rehash incrementally: when the load factor is exceeded
+ * the new table is allocated, but the entries are moved across a few at a
+ * time by the following add/get/remove calls, with lookups checking both
+ * tables until the move is finished. Each call moves at most
+ * MIGRATE_ENTRIES_PER_OPERATION (8) entries and steps past at most
+ * MIGRATE_BUCKETS_PER_OPERATION (16) old buckets, empty or not, on top of its
+ * own work, however long the chains are: a chain longer than what is left of
+ * the step is moved from its head, and the rest of it stays in the old table
+ * for the next call. The only work left in the triggering add is allocating
+ * the (empty) new bucket array
+ * 
+ * Alongside the buckets, every list element is also held in a dense entry
+ * array and knows its own position in it, so a removal can swap the last entry
+ * into the gap in constant time, and the keys and entries can be iterated
+ * (getKeysAsInt, keyIterator, forEachEntry, cursor) in time proportional to
+ * the size without visiting empty buckets
+ * 
+ * Health statistics (chain lengths, rehashes and probes per get) can be
+ * switched on with setStatsEnabled, and read with getStats
  */
 public class ChainingHashMap<K, V> {
+    private static final int MIGRATE_ENTRIES_PER_OPERATION = 8;
+    private static final int MIGRATE_BUCKETS_PER_OPERATION = 16;
+    private static final int INITIAL_ENTRIES_CAPACITY = 16;
+
     private LinkedList<K, V>[] table;
-    private CustomArrayList<K> keys;
+    private ListElement<K, V>[] entries; // Entries 0..size-1 are the live elements
     private int capacity;
     private int size;
     private double lf;
 
+    // Only used while an incremental rehash is in progress. Buckets of the old
+    // table below migrateIndex have already been moved to the new table, and the
+    // bucket at migrateIndex may have been moved in part
+    private final boolean incrementalRehash;
+    private LinkedList<K, V>[] oldTable;
+    private int oldCapacity;
+    private int migrateIndex;
+
+    // Only counted while stats are enabled
+    private boolean statsEnabled;
+    private long rehashCount;
+    private long rehashNanos;
+    private long getCount;
+    private long getProbeCount;
+
     /**
      * Constructor for the hash map
      * 
      * @param capacity the capacity requested
      */
-    @SuppressWarnings("unchecked")
     public ChainingHashMap(int capacity) {
+        this(capacity, false);
+    }
+
+    /**
+     * Constructor for the hash map
+     * 
+     * @param capacity          the capacity requested
+     * @param incrementalRehash whether to spread rehashing over the following
+     *                          operations rather than doing it all at once
+     */
+    @SuppressWarnings("unchecked")
+    public ChainingHashMap(int capacity, boolean incrementalRehash) {
+        // Buckets start empty (null), and are given a linked list on first use
         table = new LinkedList[capacity];
-        // Initialise a running arraylist of the current keys in the hash table (so
+        // Initialise the dense array of the current entries in the hash table (so
         // returning all the ID's is quicker)
-        keys = new CustomArrayList<>();
+        entries = new ListElement[INITIAL_ENTRIES_CAPACITY];
         this.capacity = capacity;
         this.size = 0;
-        // Initialise the table by setting all the buckets as empty linked lists
-        initTable(this.table, this.capacity);
+        this.incrementalRehash = incrementalRehash;
         // Update/initialise the load factor
         updateLF();
     }
@@ -42,6 +96,7 @@ public class ChainingHashMap<K, V> {
      *         already exist in the table, false if it does
      */
     public boolean add(K key, V value) {
+        migrateStep();
         // If the load factor for this separate chaining hash map is above 1.5, the
         // table will be rehashed
         if (lf > 1.5) {
@@ -51,14 +106,20 @@ public class ChainingHashMap<K, V> {
         int hashCode = key.hashCode();
         int location = Math.abs(hashCode) % capacity;
 
-        // If the location already has the same key, return false, if it doesn't, add
-        // the key and the value to the linked list at the location
-        if (table[location].find(key) == null) {
-            table[location].add(key, value);
+        // If the location already has the same key (in either table while
+        // rehashing), return false, if it doesn't, add the key and the value to the
+        // linked list at the location
+        if (find(table, location, key) == null && findInOldTable(key) == null) {
+            ListElement<K, V> element = new ListElement<>(key, value);
+            bucket(table, location).addElement(element);
+            // Add the element to the end of the dense entry array
+            if (size == entries.length) {
+                entries = Arrays.copyOf(entries, entries.length * 2);
+            }
+            element.setIndex(size);
+            entries[size] = element;
             this.size++;
             updateLF();
-            // Add the key to the key arraylist
-            keys.add(key);
             return true;
         } else {
             return false;
@@ -73,13 +134,29 @@ public class ChainingHashMap<K, V> {
      *         is not present to remove
      */
     public boolean remove(K key) {
+        migrateStep();
         int hashCode = key.hashCode();
         int location = Math.abs(hashCode) % capacity;
-        if (table[location].remove(key)) {
+        ListElement<K, V> removed = (table[location] == null) ? null : table[location].removeElement(key);
+
+        // While rehashing, the key may not have been moved to the new table yet
+        if (removed == null && oldTable != null) {
+            int oldLocation = Math.abs(hashCode) % oldCapacity;
+            if (oldLocation >= migrateIndex && oldTable[oldLocation] != null) {
+                removed = oldTable[oldLocation].removeElement(key);
+            }
+        }
+
+        if (removed != null) {
+            // Move the last entry into the removed element's position, so the entry
+            // array stays dense without shifting anything
+            int index = removed.getIndex();
+            ListElement<K, V> last = entries[size - 1];
+            entries[index] = last;
+            last.setIndex(index);
+            entries[size - 1] = null;
             this.size--;
             updateLF();
-            // Remove the key from the key arraylist
-            keys.remove(key);
             return true;
         }
         return false;
@@ -92,9 +169,53 @@ public class ChainingHashMap<K, V> {
      * @return the object value to be returned
      */
     public V get(K key) {
+        migrateStep();
         int hashCode = key.hashCode();
         int location = Math.abs(hashCode) % capacity;
-        return table[location].find(key);
+        V value = find(table, location, key);
+        if (value == null) {
+            value = findInOldTable(key);
+        }
+        if (statsEnabled) {
+            getCount++;
+            getProbeCount += countProbes(key);
+        }
+        return value;
+    }
+
+    /**
+     * Function to switch the collection of health statistics on or off. The
+     * counts collected so far are kept
+     * 
+     * @param enabled whether to collect statistics
+     */
+    public void setStatsEnabled(boolean enabled) {
+        this.statsEnabled = enabled;
+    }
+
+    /**
+     * Function to return a snapshot of the health of the hash table. The chain
+     * lengths are measured now, the rehash and get counts are those collected
+     * while stats were enabled
+     * 
+     * @param name the name of the table, for reports
+     * @return the statistics of the table
+     */
+    public HashTableStats getStats(String name) {
+        finishRehash();
+        int[] histogram = new int[HashTableStats.HISTOGRAM_BUCKETS];
+        int maxChainLength = 0;
+        for (int i = 0; i < capacity; i++) {
+            int length = 0;
+            if (table[i] != null) {
+                for (ListElement<K, V> current = table[i].head; current != null; current = current.getNext()) {
+                    length++;
+                }
+            }
+            maxChainLength = HashTableStats.record(histogram, length, maxChainLength);
+        }
+        return new HashTableStats(name, capacity, size, histogram, maxChainLength, rehashCount, rehashNanos,
+                getCount, getProbeCount);
     }
 
     /**
@@ -106,7 +227,28 @@ public class ChainingHashMap<K, V> {
      *         location
      */
     public ListElement<K, V> getHead(int index) {
-        return table[index].head;
+        // Iterating buckets needs every entry in the one table
+        finishRehash();
+        return (table[index] == null) ? null : table[index].head;
+    }
+
+    /**
+     * Function to copy an integer keyed hash table into an immutable,
+     * read-optimised map for tables that will no longer be changed. It is static
+     * so that only integer keyed maps can be passed in. The values are shared, and
+     * later changes to the map are not seen by the copy
+     * 
+     * @param map the hash table to copy
+     * @return a frozen map holding the same keys and values
+     */
+    public static <V> FrozenIntMap<V> freeze(ChainingHashMap<Integer, V> map) {
+        int[] keys = new int[map.size];
+        Object[] values = new Object[map.size];
+        for (int i = 0; i < map.size; i++) {
+            keys[i] = map.entries[i].getKey();
+            values[i] = map.entries[i].getValue();
+        }
+        return new FrozenIntMap<>(keys, values);
     }
 
     /**
@@ -115,21 +257,150 @@ public class ChainingHashMap<K, V> {
      * @return an integer array representing the keys stored
      */
     public int[] getKeysAsInt() {
-        return keys.getAsArrayInt();
+        int[] result = new int[size];
+        for (int i = 0; i < size; i++) {
+            result[i] = (Integer) entries[i].getKey();
+        }
+        return result;
+    }
+
+    /**
+     * Function to return an iterator over the keys stored in the hash table as
+     * integers, reading them straight from the entry array rather than copying
+     * them. The map must not be changed while the iterator is in use
+     * 
+     * @return an integer iterator over the keys stored
+     */
+    public IntIterator keyIterator() {
+        return new IntIterator() {
+            private int index = 0;
+
+            @Override
+            public boolean hasNext() {
+                return index < size;
+            }
+
+            @Override
+            public int nextInt() {
+                return (Integer) entries[index++].getKey();
+            }
+        };
     }
 
     /**
-     * Function to initialise the hash table
+     * Function to perform an action on every key and value stored in the hash
+     * table, visiting them through the entry array rather than the buckets. The
+     * map must not be changed by the action
      * 
-     * @param tableInit     the table to initialise
-     * @param tableCapacity the table capacity to intialise to
+     * @param action the action to perform on each key and value
      */
-    private void initTable(LinkedList<K, V>[] tableInit, int tableCapacity) {
-        for (int i = 0; i < tableCapacity; i++) {
-            tableInit[i] = new LinkedList<>();
+    public void forEachEntry(BiConsumer<? super K, ? super V> action) {
+        for (int i = 0; i < size; i++) {
+            action.accept(entries[i].getKey(), entries[i].getValue());
         }
     }
 
+    /**
+     * Function to return a cursor over the entries stored in the hash table,
+     * stepping through the entry array rather than the buckets. The map must not
+     * be changed while the cursor is in use
+     * 
+     * @return a cursor positioned before the first entry
+     */
+    public EntryCursor<K, V> cursor() {
+        return new EntryCursor<K, V>() {
+            private int index = -1;
+
+            @Override
+            public boolean advance() {
+                return ++index < size;
+            }
+
+            @Override
+            public K getKey() {
+                return entries[index].getKey();
+            }
+
+            @Override
+            public V getValue() {
+                return entries[index].getValue();
+            }
+        };
+    }
+
+    /**
+     * Function to return the bucket at an index, giving it an empty linked list
+     * if it has not been used yet
+     * 
+     * @param tableOf the table the bucket belongs to
+     * @param index   the index of the bucket
+     * @return the linked list of the bucket
+     */
+    private LinkedList<K, V> bucket(LinkedList<K, V>[] tableOf, int index) {
+        if (tableOf[index] == null) {
+            tableOf[index] = new LinkedList<>();
+        }
+        return tableOf[index];
+    }
+
+    /**
+     * Function to find the value of a key in one bucket of a table
+     * 
+     * @param tableOf the table to look in
+     * @param index   the index of the bucket
+     * @param key     the key to find
+     * @return the value, or null if the key is not in the bucket
+     */
+    private V find(LinkedList<K, V>[] tableOf, int index, K key) {
+        return (tableOf[index] == null) ? null : tableOf[index].find(key);
+    }
+
+    /**
+     * Function to count the list elements a get of a key checks, in the new table
+     * and then (while rehashing) the old one
+     * 
+     * @param key the key being looked up
+     * @return the number of list elements checked
+     */
+    private int countProbes(K key) {
+        int probes = 0;
+        int location = Math.abs(key.hashCode()) % capacity;
+        for (ListElement<K, V> current = (table[location] == null) ? null : table[location].head; current != null; current = current.getNext()) {
+            probes++;
+            if (current.getKey().equals(key)) {
+                return probes;
+            }
+        }
+        if (oldTable != null) {
+            int oldLocation = Math.abs(key.hashCode()) % oldCapacity;
+            if (oldLocation >= migrateIndex && oldTable[oldLocation] != null) {
+                for (ListElement<K, V> current = oldTable[oldLocation].head; current != null; current = current.getNext()) {
+                    probes++;
+                    if (current.getKey().equals(key)) {
+                        return probes;
+                    }
+                }
+            }
+        }
+        return probes;
+    }
+
+    /**
+     * Function to find the value of a key that has not yet been moved out of the
+     * old table during an incremental rehash
+     * 
+     * @param key the key to find
+     * @return the value, or null if there is no rehash in progress or the key is
+     *         not in the old table
+     */
+    private V findInOldTable(K key) {
+        if (oldTable == null) {
+            return null;
+        }
+        int oldLocation = Math.abs(key.hashCode()) % oldCapacity;
+        return (oldLocation >= migrateIndex) ? find(oldTable, oldLocation, key) : null;
+    }
+
     /**
      * Function to update the load factor
      */
@@ -143,6 +414,8 @@ public class ChainingHashMap<K, V> {
      * @return capacity of the hash table
      */
     public int getCapacity() {
+        // Callers use the capacity to iterate buckets, which needs a single table
+        finishRehash();
         return capacity;
     }
 
@@ -156,9 +429,42 @@ public class ChainingHashMap<K, V> {
     }
 
     /**
-     * Function to rehash the hash table
+     * Function to rehash the hash table. In incremental mode this only swaps in
+     * the new (empty) table, and the entries are moved by migrateStep()
      */
     private void rehash() {
+        // A rehash cannot start while one is running, so finish that first
+        finishRehash();
+        long start = statsEnabled ? System.nanoTime() : 0;
+
+        int newCapacity = nextCapacity();
+
+        // Create the new table, its buckets are given linked lists as they are used
+        @SuppressWarnings("unchecked")
+        LinkedList<K, V>[] newTable = new LinkedList[newCapacity];
+
+        this.oldTable = this.table;
+        this.oldCapacity = this.capacity;
+        this.migrateIndex = 0;
+        this.capacity = newCapacity;
+        this.table = newTable;
+        updateLF();
+
+        if (!incrementalRehash) {
+            finishRehash();
+        }
+        if (statsEnabled) {
+            rehashCount++;
+            rehashNanos += System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * Function to work out the capacity of the table after a rehash
+     * 
+     * @return the new capacity
+     */
+    private int nextCapacity() {
 
         int[] calculatedPrimes = new int[]{4307, 8623, 17257, 34537, 69091, 138193, 276401, 552811, 1105657, 2211329, 4422677};
 
@@ -178,26 +484,104 @@ public class ChainingHashMap<K, V> {
             }
         }
 
-        // Create the new table, and initialise
-        @SuppressWarnings("unchecked")
-        LinkedList<K, V>[] newTable = new LinkedList[newCapacity];
-        initTable(newTable, newCapacity);
+        return newCapacity;
+    }
+
+    /**
+     * Function to move the next few entries of the old table across to the new
+     * table, if a rehash is in progress: at most MIGRATE_ENTRIES_PER_OPERATION
+     * entries, from at most MIGRATE_BUCKETS_PER_OPERATION buckets
+     */
+    private void migrateStep() {
+        if (oldTable == null) {
+            return;
+        }
+        long start = statsEnabled ? System.nanoTime() : 0;
+        int entriesLeft = MIGRATE_ENTRIES_PER_OPERATION;
+        int bucketsLeft = MIGRATE_BUCKETS_PER_OPERATION;
+        while (migrateIndex < oldCapacity && entriesLeft > 0 && bucketsLeft > 0) {
+            LinkedList<K, V> bucket = oldTable[migrateIndex];
+            if (bucket != null) {
+                // Moves entries off the head of the chain, and leaves any the step has
+                // no room for in the old bucket for the next step
+                while (bucket.head != null && entriesLeft > 0) {
+                    ListElement<K, V> currentNode = bucket.head;
+                    bucket.head = currentNode.getNext();
+                    moveToTable(currentNode);
+                    entriesLeft--;
+                }
+                if (bucket.head != null) {
+                    break;
+                }
+                oldTable[migrateIndex] = null;
+            }
+            migrateIndex++;
+            bucketsLeft--;
+        }
+        releaseOldTableIfMoved();
+        if (statsEnabled) {
+            // The time spent moving buckets incrementally also counts as rehashing
+            rehashNanos += System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * Function to move every remaining bucket of the old table across to the new
+     * table, if a rehash is in progress
+     */
+    private void finishRehash() {
+        if (oldTable == null) {
+            return;
+        }
+        migrateBuckets(oldCapacity);
+    }
 
-        // Rehash the elements in the original table to the new table
-        int newLocation = 0;
-        for (LinkedList<K, V> element : table) {
+    /**
+     * Function to move the old table's buckets up to (not including) an index
+     * across to the new table. The list elements themselves are relinked rather
+     * than copied
+     * 
+     * @param end the index to stop at
+     */
+    private void migrateBuckets(int end) {
+        for (; migrateIndex < end; migrateIndex++) {
+            LinkedList<K, V> element = oldTable[migrateIndex];
+            if (element == null) {
+                continue;
+            }
             ListElement<K, V> currentNode = element.head;
             while (currentNode != null) {
-                int hashCode = currentNode.getKey().hashCode();
-                newLocation = Math.abs(hashCode) % newCapacity;
-                newTable[newLocation].add(currentNode.getKey(), currentNode.getValue());
-                currentNode = currentNode.getNext();
+                ListElement<K, V> nextNode = currentNode.getNext();
+                moveToTable(currentNode);
+                currentNode = nextNode;
             }
+            oldTable[migrateIndex] = null;
         }
+        releaseOldTableIfMoved();
+    }
 
-        this.capacity = newCapacity;
-        this.table = newTable;
+    /**
+     * Function to link a list element from the old table into its bucket of the
+     * new table
+     * 
+     * @param currentNode the list element to move
+     */
+    private void moveToTable(ListElement<K, V> currentNode) {
+        int newLocation = Math.abs(currentNode.getKey().hashCode()) % capacity;
+        LinkedList<K, V> newBucket = bucket(table, newLocation);
+        currentNode.setNext(newBucket.head);
+        newBucket.head = currentNode;
+    }
 
+    /**
+     * Function to let go of the old table once every bucket has moved
+     */
+    private void releaseOldTableIfMoved() {
+        if (migrateIndex >= oldCapacity) {
+            oldTable = null;
+            oldCapacity = 0;
+            migrateIndex = 0;
+        }
     }
 
 
@@ -0,0 +1,503 @@
+package structures;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+/**
+ *
+ * My implementation of a thread safe hash map making use of separate chaining,
+ * with the same API as ChainingHashMap (apart from getHead, as the buckets can
+ * change under the caller). The integer key listings are static and only take
+ * integer keyed maps, so other key types are turned away at compile time.
+ *
+ * Reads take no locks: bucket heads are held in an AtomicReferenceArray and the
+ * chain links are volatile, so a get always sees a consistent chain. An add into
+ * an empty bucket publishes the new head with a compare-and-set, and any other
+ * add or remove locks the head node of its own bucket only, so threads working
+ * on different buckets never wait for each other.
+ *
+ * Resizing is cooperative, in the style of ConcurrentHashMap: the thread that
+ * crosses the load factor creates the new table, and every thread that then
+ * writes into the map claims a stride of old buckets and moves them across.
+ * Each moved bucket is replaced by a forwarding node pointing at the new table,
+ * so readers and writers that meet one simply carry on in the new table. The
+ * entries of a moved bucket are copied rather than relinked, so a reader still
+ * walking the old chain is never cut off
+ */
+public class ConcurrentChainingHashMap<K, V> {
+    private static final double MAX_LOAD_FACTOR = 0.75;
+    private static final int MAX_CAPACITY = 1 << 30;
+    private static final int MIN_TRANSFER_STRIDE = 16;
+    private static final int MOVED = -1; // Hash of forwarding nodes, real hashes are never negative
+
+    private volatile Table<K, V> table;
+    private final LongAdder size = new LongAdder();
+
+    /**
+     * Constructor for the hash map
+     *
+     * @param capacity the capacity requested (rounded up to a power of two)
+     */
+    public ConcurrentChainingHashMap(int capacity) {
+        this.table = new Table<>(tableSizeFor(capacity));
+    }
+
+    /**
+     * Function to add a key and value to the hash table, if the key is not
+     * already present
+     *
+     * @param key   the key to add (cannot be null)
+     * @param value the value to add (cannot be null)
+     * @return a boolean represeting a successful addition if the key doesn't
+     *         already exist in the table, false if it does
+     */
+    public boolean add(K key, V value) {
+        if (key == null || value == null) {
+            throw new IllegalArgumentException("Null keys and values cannot be stored in the hash map");
+        }
+        int hash = spread(key.hashCode());
+        Table<K, V> tab = table;
+
+        while (true) {
+            AtomicReferenceArray<Node<K, V>> bins = tab.bins;
+            int index = hash & (bins.length() - 1);
+            Node<K, V> head = bins.get(index);
+
+            if (head == null) {
+                // Empty bucket, publish the new node as its head without locking
+                if (bins.compareAndSet(index, null, new Node<>(hash, key, value, null))) {
+                    break;
+                }
+            } else if (head.hash == MOVED) {
+                // The bucket has been moved by a resize, help finish it and carry on in
+                // the new table
+                transfer(tab);
+                tab = ((ForwardingNode<K, V>) head).nextTable;
+            } else {
+                synchronized (head) {
+                    // Only go ahead if the head was not changed before the lock was taken
+                    if (bins.get(index) == head) {
+                        Node<K, V> current = head;
+                        while (true) {
+                            if (current.hash == hash && current.key.equals(key)) {
+                                return false;
+                            }
+                            if (current.next == null) {
+                                current.next = new Node<>(hash, key, value, null);
+                                break;
+                            }
+                            current = current.next;
+                        }
+                        break;
+                    }
+                }
+            }
+        }
+
+        size.increment();
+        resizeIfNeeded();
+        return true;
+    }
+
+    /**
+     * Function to remove a key and its value from the hash table
+     *
+     * @param key the key to be removed
+     * @return a boolean value representing if the removal was a success, or the key
+     *         is not present to remove
+     */
+    public boolean remove(K key) {
+        int hash = spread(key.hashCode());
+        Table<K, V> tab = table;
+
+        while (true) {
+            AtomicReferenceArray<Node<K, V>> bins = tab.bins;
+            int index = hash & (bins.length() - 1);
+            Node<K, V> head = bins.get(index);
+
+            if (head == null) {
+                return false;
+            } else if (head.hash == MOVED) {
+                transfer(tab);
+                tab = ((ForwardingNode<K, V>) head).nextTable;
+            } else {
+                synchronized (head) {
+                    if (bins.get(index) == head) {
+                        Node<K, V> previous = null;
+                        for (Node<K, V> current = head; current != null; current = current.next) {
+                            if (current.hash == hash && current.key.equals(key)) {
+                                // Unlink the node, readers already past it are unaffected
+                                if (previous == null) {
+                                    bins.set(index, current.next);
+                                } else {
+                                    previous.next = current.next;
+                                }
+                                size.decrement();
+                                return true;
+                            }
+                            previous = current;
+                        }
+                        return false;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Function to return the value associated with a key from the hash table,
+     * without taking any locks
+     *
+     * @param key the key of the value to be returned
+     * @return the object value to be returned, null if the key is not present
+     */
+    public V get(K key) {
+        int hash = spread(key.hashCode());
+        AtomicReferenceArray<Node<K, V>> bins = table.bins;
+
+        while (true) {
+            Node<K, V> current = bins.get(hash & (bins.length() - 1));
+            if (current != null && current.hash == MOVED) {
+                bins = ((ForwardingNode<K, V>) current).nextTable.bins;
+                continue;
+            }
+            for (; current != null; current = current.next) {
+                if (current.hash == hash && current.key.equals(key)) {
+                    return current.value;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Function to return all the keys stored in an integer keyed hash table. Keys
+     * added or removed while this runs may or may not be included
+     *
+     * @param map the hash table to list the keys of
+     * @return an integer array representing the keys stored
+     */
+    public static <V> int[] getKeysAsInt(ConcurrentChainingHashMap<Integer, V> map) {
+        IntArrayList keys = new IntArrayList(map.getSize());
+        Traverser<Integer, V> traverser = new Traverser<>(map.table);
+        for (Node<Integer, V> node = traverser.advance(); node != null; node = traverser.advance()) {
+            keys.add(node.key);
+        }
+        return keys.toArray();
+    }
+
+    /**
+     * Function to return an iterator over the keys stored in an integer keyed
+     * hash table. Keys added or removed while it is in use may or may not be seen
+     *
+     * @param map the hash table to iterate the keys of
+     * @return an integer iterator over the keys stored
+     */
+    public static <V> IntIterator keyIterator(ConcurrentChainingHashMap<Integer, V> map) {
+        Traverser<Integer, V> traverser = new Traverser<>(map.table);
+        return new IntIterator() {
+            private Node<Integer, V> next = traverser.advance();
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public int nextInt() {
+                int key = next.key;
+                next = traverser.advance();
+                return key;
+            }
+        };
+    }
+
+    /**
+     * Function to perform an action on every key and value stored in the hash
+     * table. Entries added or removed while this runs may or may not be visited
+     *
+     * @param action the action to perform on each key and value
+     */
+    public void forEachEntry(BiConsumer<? super K, ? super V> action) {
+        Traverser<K, V> traverser = new Traverser<>(table);
+        for (Node<K, V> node = traverser.advance(); node != null; node = traverser.advance()) {
+            action.accept(node.key, node.value);
+        }
+    }
+
+    /**
+     * Function to return a cursor over the entries stored in the hash table.
+     * Entries added or removed while it is in use may or may not be seen
+     *
+     * @return a cursor positioned before the first entry
+     */
+    public EntryCursor<K, V> cursor() {
+        Traverser<K, V> traverser = new Traverser<>(table);
+        return new EntryCursor<K, V>() {
+            private Node<K, V> current;
+
+            @Override
+            public boolean advance() {
+                current = traverser.advance();
+                return current != null;
+            }
+
+            @Override
+            public K getKey() {
+                return current.key;
+            }
+
+            @Override
+            public V getValue() {
+                return current.value;
+            }
+        };
+    }
+
+    /**
+     * Function to return the capacity of the hash table
+     *
+     * @return capacity of the hash table
+     */
+    public int getCapacity() {
+        return table.bins.length();
+    }
+
+    /**
+     * Function to return the size of the hash table
+     *
+     * @return size of the hash table
+     */
+    public int getSize() {
+        return (int) size.sum();
+    }
+
+    /**
+     * Function to start a resize once the load factor is exceeded, and help with
+     * it. A resize is only ever started on the published table, so the previous
+     * resize has always finished first
+     */
+    private void resizeIfNeeded() {
+        Table<K, V> tab = table;
+        int capacity = tab.bins.length();
+        if (capacity >= MAX_CAPACITY || size.sum() < (long) (capacity * MAX_LOAD_FACTOR)) {
+            return;
+        }
+        if (tab.resize.get() == null) {
+            tab.resize.compareAndSet(null, new Resize<>(capacity));
+        }
+        transfer(tab);
+    }
+
+    /**
+     * Function to help move the buckets of a table that is being resized. Strides
+     * of buckets are claimed from the top down, and whichever thread moves the
+     * last bucket publishes the new table
+     *
+     * @param tab the table being resized
+     */
+    private void transfer(Table<K, V> tab) {
+        Resize<K, V> resize = tab.resize.get();
+        int capacity = tab.bins.length();
+        int stride = Math.max(MIN_TRANSFER_STRIDE, capacity / (8 * Runtime.getRuntime().availableProcessors()));
+
+        while (true) {
+            int end = resize.transferIndex.get();
+            if (end <= 0) {
+                return; // Every bucket has been claimed
+            }
+            int start = Math.max(end - stride, 0);
+            if (!resize.transferIndex.compareAndSet(end, start)) {
+                continue; // Another thread claimed this stride first
+            }
+            for (int index = end - 1; index >= start; index--) {
+                moveBucket(tab.bins, resize, index, capacity);
+            }
+            if (resize.movedBuckets.addAndGet(end - start) == capacity) {
+                table = resize.forwardingNode.nextTable;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Function to copy one bucket into the new table, splitting it between the
+     * bucket at the same index and the one a capacity above it, then leave a
+     * forwarding node in its place
+     *
+     * @param bins     the buckets of the old table
+     * @param resize   the resize in progress
+     * @param index    the index of the bucket to move
+     * @param capacity the capacity of the old table
+     */
+    private void moveBucket(AtomicReferenceArray<Node<K, V>> bins, Resize<K, V> resize, int index, int capacity) {
+        AtomicReferenceArray<Node<K, V>> newBins = resize.forwardingNode.nextTable.bins;
+        while (true) {
+            Node<K, V> head = bins.get(index);
+            if (head == null) {
+                if (bins.compareAndSet(index, null, resize.forwardingNode)) {
+                    return;
+                }
+                continue; // An add got there first
+            }
+            synchronized (head) {
+                if (bins.get(index) == head) {
+                    Node<K, V> lowHead = null;
+                    Node<K, V> highHead = null;
+                    for (Node<K, V> current = head; current != null; current = current.next) {
+                        if ((current.hash & capacity) == 0) {
+                            lowHead = new Node<>(current.hash, current.key, current.value, lowHead);
+                        } else {
+                            highHead = new Node<>(current.hash, current.key, current.value, highHead);
+                        }
+                    }
+                    newBins.set(index, lowHead);
+                    newBins.set(index + capacity, highHead);
+                    bins.set(index, resize.forwardingNode);
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Function to spread the higher bits of a hash code into the lower ones (which
+     * pick the bucket) and clear the sign bit
+     *
+     * @param hashCode the hash code of a key
+     * @return the hash to use
+     */
+    private static int spread(int hashCode) {
+        return (hashCode ^ (hashCode >>> 16)) & 0x7fffffff;
+    }
+
+    /**
+     * Function to find the smallest power of two at least the requested capacity
+     *
+     * @param capacity the capacity requested
+     * @return the capacity to use
+     */
+    private static int tableSizeFor(int capacity) {
+        int tableSize = 2;
+        while (tableSize < capacity && tableSize < MAX_CAPACITY) {
+            tableSize <<= 1;
+        }
+        return tableSize;
+    }
+
+    /**
+     * A node of a bucket's chain
+     */
+    private static class Node<K, V> {
+        final int hash;
+        final K key;
+        final V value;
+        volatile Node<K, V> next;
+
+        Node(int hash, K key, V value, Node<K, V> next) {
+            this.hash = hash;
+            this.key = key;
+            this.value = value;
+            this.next = next;
+        }
+    }
+
+    /**
+     * A node left in a moved bucket, pointing at the table it was moved to
+     */
+    private static final class ForwardingNode<K, V> extends Node<K, V> {
+        final Table<K, V> nextTable;
+
+        ForwardingNode(Table<K, V> nextTable) {
+            super(MOVED, null, null, null);
+            this.nextTable = nextTable;
+        }
+    }
+
+    /**
+     * An array of buckets, along with the resize of it (null until one starts,
+     * and never cleared, so a table can only be resized once)
+     */
+    private static final class Table<K, V> {
+        final AtomicReferenceArray<Node<K, V>> bins;
+        final AtomicReference<Resize<K, V>> resize = new AtomicReference<>();
+
+        Table(int capacity) {
+            this.bins = new AtomicReferenceArray<>(capacity);
+        }
+    }
+
+    /**
+     * The shared state of a resize: the forwarding node to the new table, the
+     * next stride of buckets to claim, and how many buckets have been moved
+     */
+    private static final class Resize<K, V> {
+        final ForwardingNode<K, V> forwardingNode;
+        final AtomicInteger transferIndex;
+        final AtomicInteger movedBuckets = new AtomicInteger();
+
+        Resize(int capacity) {
+            this.forwardingNode = new ForwardingNode<>(new Table<>(capacity * 2));
+            this.transferIndex = new AtomicInteger(capacity);
+        }
+    }
+
+    /**
+     * Walks every node of a table, following forwarding nodes into the buckets
+     * they were split into, so a traversal during a resize still sees every
+     * entry exactly once
+     */
+    private static final class Traverser<K, V> {
+        private final AtomicReferenceArray<Node<K, V>> baseBins;
+        private int baseIndex = 0;
+        private Node<K, V> current = null;
+        // Buckets of newer tables still to visit, as (bins, index) pairs
+        private ArrayDeque<Object> pending = null;
+
+        Traverser(Table<K, V> table) {
+            this.baseBins = table.bins;
+        }
+
+        /**
+         * Function to move onto the next node
+         *
+         * @return the next node, or null once every node has been visited
+         */
+        @SuppressWarnings("unchecked")
+        Node<K, V> advance() {
+            Node<K, V> next = (current == null) ? null : current.next;
+            while (next == null) {
+                AtomicReferenceArray<Node<K, V>> bins;
+                int index;
+                if (pending != null && !pending.isEmpty()) {
+                    bins = (AtomicReferenceArray<Node<K, V>>) pending.pop();
+                    index = (Integer) pending.pop();
+                } else if (baseIndex < baseBins.length()) {
+                    bins = baseBins;
+                    index = baseIndex++;
+                } else {
+                    return current = null;
+                }
+
+                next = bins.get(index);
+                if (next != null && next.hash == MOVED) {
+                    // Visit both halves the bucket was split into instead
+                    AtomicReferenceArray<Node<K, V>> newBins = ((ForwardingNode<K, V>) next).nextTable.bins;
+                    if (pending == null) {
+                        pending = new ArrayDeque<>();
+                    }
+                    pending.push(index + bins.length());
+                    pending.push(newBins);
+                    pending.push(index);
+                    pending.push(newBins);
+                    next = null;
+                }
+            }
+            return current = next;
+        }
+    }
+}
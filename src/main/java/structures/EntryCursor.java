@@ -0,0 +1,16 @@
+package structures;
+
+/**
+ * An interface for stepping through the entries of a map one at a time.
+ */
+public interface EntryCursor<K, V> {
+
+    // Moves onto the next entry, returns true if there is one and false once every entry has been visited.
+    public boolean advance();
+
+    // Returns the key of the current entry. Only valid after advance() has returned true.
+    public K getKey();
+
+    // Returns the value of the current entry. Only valid after advance() has returned true.
+    public V getValue();
+}
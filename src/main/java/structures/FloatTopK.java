@@ -0,0 +1,139 @@
+package structures;
+
+/**
+ * 
+ * My implementation of a top-K selector over primitive float scores, for
+ * finding the IDs with the K highest scores. The candidates are kept in a
+ * minimum heap held in two parallel arrays (score and ID), so offering a
+ * candidate never allocates anything. Equal scores are broken by the lower ID
+ * ranking higher, so the result does not depend on the order the candidates
+ * are offered in
+ */
+public class FloatTopK {
+    private final float[] scores;
+    private final int[] ids;
+    private int size;
+
+    /**
+     * Constructor for the selector
+     * 
+     * @param k the maximum number of IDs to keep (anything below 0 is treated as 0)
+     */
+    public FloatTopK(int k) {
+        int capacity = Math.max(k, 0);
+        this.scores = new float[capacity];
+        this.ids = new int[capacity];
+        this.size = 0;
+    }
+
+    /**
+     * Function to offer a candidate to the selector. It is kept if there is still
+     * room, or if it ranks above the lowest ranked candidate currently kept (which
+     * is then dropped)
+     * 
+     * @param score the score of the candidate
+     * @param id    the ID of the candidate
+     */
+    public void offer(float score, int id) {
+        if (size < scores.length) {
+            // Add to the end of the heap and move it up to its place
+            int index = size++;
+            while (index > 0) {
+                int parent = (index - 1) >>> 1;
+                if (!ranksBelow(score, id, scores[parent], ids[parent])) {
+                    break;
+                }
+                scores[index] = scores[parent];
+                ids[index] = ids[parent];
+                index = parent;
+            }
+            scores[index] = score;
+            ids[index] = id;
+        } else if (size > 0 && ranksBelow(scores[0], ids[0], score, id)) {
+            // Replace the root (the lowest ranked candidate kept) and move it down
+            siftDown(score, id, size);
+        }
+    }
+
+    /**
+     * Function to offer every candidate kept by another selector to this one
+     * 
+     * @param other the selector to merge in
+     */
+    public void merge(FloatTopK other) {
+        for (int i = 0; i < other.size; i++) {
+            offer(other.scores[i], other.ids[i]);
+        }
+    }
+
+    /**
+     * Function to return the number of candidates currently kept
+     * 
+     * @return the number of candidates kept
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Function to create a sorted array of the IDs kept, highest score first. This
+     * empties the selector
+     * 
+     * @return the IDs in descending order of score
+     */
+    public int[] getSortedDescendingIds() {
+        int[] sortedArray = new int[size];
+        // Repeatedly take the root (the lowest ranked) and fill the array from the
+        // right
+        for (int i = sortedArray.length - 1; i >= 0; i--) {
+            sortedArray[i] = ids[0];
+            size--;
+            if (size > 0) {
+                siftDown(scores[size], ids[size], size);
+            }
+        }
+        return sortedArray;
+    }
+
+    /**
+     * Function to place a candidate at the root and move it down the heap until
+     * both its children rank above it
+     * 
+     * @param score    the score of the candidate
+     * @param id       the ID of the candidate
+     * @param heapSize the number of elements in the heap
+     */
+    private void siftDown(float score, int id, int heapSize) {
+        int index = 0;
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= heapSize) {
+                break;
+            }
+            // Pick the lower ranked of the two children
+            if (child + 1 < heapSize && ranksBelow(scores[child + 1], ids[child + 1], scores[child], ids[child])) {
+                child++;
+            }
+            if (!ranksBelow(scores[child], ids[child], score, id)) {
+                break;
+            }
+            scores[index] = scores[child];
+            ids[index] = ids[child];
+            index = child;
+        }
+        scores[index] = score;
+        ids[index] = id;
+    }
+
+    /**
+     * Function to check whether one candidate ranks below another: a lower score,
+     * or an equal score with a higher ID (scores are compared as by Float.compare)
+     * 
+     * @return a boolean representing whether the first candidate ranks below the
+     *         second
+     */
+    private static boolean ranksBelow(float scoreA, int idA, float scoreB, int idB) {
+        int compare = Float.compare(scoreA, scoreB);
+        return compare < 0 || (compare == 0 && idA > idB);
+    }
+}
@@ -0,0 +1,154 @@
+package structures;
+
+import java.util.Arrays;
+
+/**
+ *
+ * An immutable map from primitive integers to values, for tables that are
+ * only read once they have been loaded. The keys are sorted and then stored in
+ * Eytzinger (breadth first binary tree) order: the root of the search at index
+ * 1, and the children of index i at 2i and 2i + 1. A lookup is still a binary
+ * search, but it always moves forward through the array, and the first few
+ * levels of every search share the same few cache lines, rather than jumping
+ * between both ends of a sorted array
+ *
+ * Built with ChainingHashMap.freeze(map), and the values themselves are shared
+ * with the map it was built from. Lookups cost about the same as the chaining
+ * map at tens of thousands of keys, with no list nodes to keep alive; a flat
+ * open addressing table (IntObjectOpenHashMap) is still around three times
+ * faster, so the stores, which already use those, are not frozen
+ */
+public class FrozenIntMap<V> {
+    private final int[] keys; // keys[0] is unused, the tree starts at index 1
+    private final Object[] values;
+    private final int size;
+
+    /**
+     * Constructor for the frozen map
+     *
+     * @param unsortedKeys the keys, which must be distinct (the array is sorted in
+     *                     place)
+     * @param valuesOf     the values, parallel to the keys (reordered with them)
+     */
+    FrozenIntMap(int[] unsortedKeys, Object[] valuesOf) {
+        this.size = unsortedKeys.length;
+        sortByKey(unsortedKeys, valuesOf);
+        this.keys = new int[size + 1];
+        this.values = new Object[size + 1];
+        layout(unsortedKeys, valuesOf, 0, 1);
+    }
+
+    /**
+     * Function to return the value associated with a key
+     *
+     * @param key the key of the value to be returned
+     * @return the value, or null if the key is not present
+     */
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        int index = findIndex(key);
+        return (index == 0) ? null : (V) values[index];
+    }
+
+    /**
+     * Function to check whether a key is present in the map
+     *
+     * @param key the key to look for
+     * @return a boolean representing whether the key is present
+     */
+    public boolean containsKey(int key) {
+        return findIndex(key) != 0;
+    }
+
+    /**
+     * Function to return all the keys stored in the map, in ascending order
+     *
+     * @return an integer array representing the keys stored
+     */
+    public int[] getKeysAsInt() {
+        int[] result = new int[size];
+        int index = 0;
+        // An in-order walk of the implicit tree: go as far left as possible, then up
+        // past every ancestor the walk came from the right of
+        int node = 1;
+        while (index < size) {
+            while (node <= size) {
+                node <<= 1;
+            }
+            node >>>= Integer.numberOfTrailingZeros(~node) + 1;
+            result[index++] = keys[node];
+            node = (node << 1) + 1;
+        }
+        return result;
+    }
+
+    /**
+     * Function to return the number of entries in the map
+     *
+     * @return size of the map
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Function to find the tree index holding a key
+     *
+     * @param key the key to look for
+     * @return the index, or 0 if the key is not present
+     */
+    private int findIndex(int key) {
+        // Walk down without comparing for equality, so the loop has no unpredictable
+        // branch: each step goes right exactly when the node is smaller than the key
+        int index = 1;
+        while (index <= size) {
+            index = (index << 1) + (keys[index] < key ? 1 : 0);
+        }
+        // The walk went right past every node smaller than the key and left at the
+        // smallest node not smaller, which is the last left turn. Undo the right
+        // turns after it (trailing 1 bits) and that left turn itself
+        index >>>= Integer.numberOfTrailingZeros(~index) + 1;
+        return (index != 0 && keys[index] == key) ? index : 0;
+    }
+
+    /**
+     * Function to copy a sorted array into the tree, by an in-order walk of the
+     * tree consuming the sorted keys in turn
+     *
+     * @param sortedKeys   the keys in ascending order
+     * @param sortedValues the values, parallel to the keys
+     * @param next         the position of the next sorted key to place
+     * @param index        the tree index to fill
+     * @return the position of the next sorted key after this subtree
+     */
+    private int layout(int[] sortedKeys, Object[] sortedValues, int next, int index) {
+        if (index > size) {
+            return next;
+        }
+        next = layout(sortedKeys, sortedValues, next, index << 1);
+        keys[index] = sortedKeys[next];
+        values[index] = sortedValues[next];
+        next++;
+        return layout(sortedKeys, sortedValues, next, (index << 1) + 1);
+    }
+
+    /**
+     * Function to sort the keys, moving the values with them
+     *
+     * @param keysOf   the keys to sort
+     * @param valuesOf the values, parallel to the keys
+     */
+    private static void sortByKey(int[] keysOf, Object[] valuesOf) {
+        // Sort the positions by key, then apply the order to both arrays
+        long[] packed = new long[keysOf.length];
+        for (int i = 0; i < keysOf.length; i++) {
+            packed[i] = ((long) keysOf[i] << 32) | i;
+        }
+        Arrays.sort(packed);
+        Object[] valuesCopy = valuesOf.clone();
+        for (int i = 0; i < packed.length; i++) {
+            keysOf[i] = (int) (packed[i] >> 32);
+            valuesOf[i] = valuesCopy[(int) packed[i]];
+        }
+    }
+}
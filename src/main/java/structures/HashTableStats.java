@@ -0,0 +1,125 @@
+package structures;
+
+/**
+ *
+ * A snapshot of the health of one hash table, used to tune initial capacities
+ * from real data. For a chaining table a "chain" is the linked list of a bucket,
+ * and the histogram counts buckets by the length of their list. For an open
+ * addressing table it is the probe sequence of an entry, and the histogram
+ * counts entries by how many slots a lookup of them has to check
+ */
+public class HashTableStats {
+    // Chains at least this long are counted together in the last histogram bucket
+    public static final int HISTOGRAM_BUCKETS = 16;
+
+    private final String name;
+    private final int capacity;
+    private final int size;
+    private final int[] chainLengthHistogram;
+    private final int maxChainLength;
+    private final long rehashCount;
+    private final long rehashNanos;
+    private final long getCount;
+    private final long getProbeCount;
+
+    /**
+     * Constructor for the snapshot
+     *
+     * @param name                 the name of the table, for reports
+     * @param capacity             the number of buckets or slots
+     * @param size                 the number of entries
+     * @param chainLengthHistogram the number of chains of each length
+     * @param maxChainLength       the longest chain
+     * @param rehashCount          the number of rehashes (resizes) so far
+     * @param rehashNanos          the total time spent rehashing, in nanoseconds
+     * @param getCount             the number of gets counted
+     * @param getProbeCount        the number of entries or slots those gets checked
+     */
+    public HashTableStats(String name, int capacity, int size, int[] chainLengthHistogram, int maxChainLength,
+            long rehashCount, long rehashNanos, long getCount, long getProbeCount) {
+        this.name = name;
+        this.capacity = capacity;
+        this.size = size;
+        this.chainLengthHistogram = chainLengthHistogram;
+        this.maxChainLength = maxChainLength;
+        this.rehashCount = rehashCount;
+        this.rehashNanos = rehashNanos;
+        this.getCount = getCount;
+        this.getProbeCount = getProbeCount;
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    public int getCapacity() {
+        return this.capacity;
+    }
+
+    public int getSize() {
+        return this.size;
+    }
+
+    public double getLoadFactor() {
+        return (capacity == 0) ? 0 : (double) size / capacity;
+    }
+
+    public int[] getChainLengthHistogram() {
+        return this.chainLengthHistogram.clone();
+    }
+
+    public int getMaxChainLength() {
+        return this.maxChainLength;
+    }
+
+    public long getRehashCount() {
+        return this.rehashCount;
+    }
+
+    public long getRehashNanos() {
+        return this.rehashNanos;
+    }
+
+    public long getGetCount() {
+        return this.getCount;
+    }
+
+    /**
+     * Function to return the average number of entries or slots checked per get
+     *
+     * @return the average probes per get, 0 if no gets have been counted
+     */
+    public double getAverageProbesPerGet() {
+        return (getCount == 0) ? 0 : (double) getProbeCount / getCount;
+    }
+
+    /**
+     * Function to add a chain length to a histogram, and return the new longest
+     * chain
+     *
+     * @param histogram      the histogram to add to
+     * @param length         the length of the chain
+     * @param maxChainLength the longest chain so far
+     * @return the longest chain including this one
+     */
+    static int record(int[] histogram, int length, int maxChainLength) {
+        histogram[Math.min(length, HISTOGRAM_BUCKETS - 1)]++;
+        return Math.max(length, maxChainLength);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format("%s: size %d, capacity %d, load %.2f, max chain %d, rehashes %d (%.3f ms), avg probes/get %.2f%n",
+                name, size, capacity, getLoadFactor(), maxChainLength, rehashCount, rehashNanos / 1e6,
+                getAverageProbesPerGet()));
+        builder.append("  chain lengths:");
+        for (int length = 0; length < chainLengthHistogram.length; length++) {
+            if (chainLengthHistogram[length] > 0) {
+                String label = (length == HISTOGRAM_BUCKETS - 1) ? length + "+" : String.valueOf(length);
+                builder.append(' ').append(label).append('=').append(chainLengthHistogram[length]);
+            }
+        }
+        return builder.toString();
+    }
+}
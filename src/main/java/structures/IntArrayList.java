@@ -0,0 +1,103 @@
+package structures;
+
+import java.util.Arrays;
+
+/**
+ * 
+ * My implementation of a growable list of primitive integers, so IDs can be
+ * accumulated without boxing each one into an Integer
+ */
+public class IntArrayList {
+    private static final int DEFAULT_CAPACITY = 8;
+
+    private int[] array;
+    private int size;
+
+    /**
+     * Constructor for the list with a small default capacity
+     */
+    public IntArrayList() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor for the list
+     * 
+     * @param initialCapacity the number of elements expected, so no resizing is
+     *                        needed until it is exceeded
+     */
+    public IntArrayList(int initialCapacity) {
+        this.array = new int[Math.max(initialCapacity, 1)];
+        this.size = 0;
+    }
+
+    /**
+     * Function to add a value to the end of the list, doubling the array if it is
+     * full
+     * 
+     * @param value the value to add
+     */
+    public void add(int value) {
+        if (size == array.length) {
+            array = Arrays.copyOf(array, array.length * 2);
+        }
+        array[size++] = value;
+    }
+
+    /**
+     * Function to return the value at a position in the list
+     * 
+     * @param index the position of the value
+     * @return the value at the position
+     */
+    public int get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " is out of bounds for size " + size);
+        }
+        return array[index];
+    }
+
+    /**
+     * Function to remove the first occurrence of a value from the list, shifting
+     * the later values down
+     * 
+     * @param value the value to remove
+     * @return a boolean representing whether the value was found and removed
+     */
+    public boolean removeValue(int value) {
+        for (int i = 0; i < size; i++) {
+            if (array[i] == value) {
+                System.arraycopy(array, i + 1, array, i, size - i - 1);
+                size--;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Function to return the number of values in the list
+     * 
+     * @return the size of the list
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Function to empty the list, keeping its current capacity
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Function to return the values in the list as an array of exactly the list's
+     * size
+     * 
+     * @return an array of integers
+     */
+    public int[] toArray() {
+        return Arrays.copyOf(array, size);
+    }
+}
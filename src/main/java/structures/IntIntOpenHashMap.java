@@ -0,0 +1,262 @@
+package structures;
+
+/**
+ *
+ * My implementation of a hash map from primitive integers to primitive
+ * integers, making use of open addressing with linear probing. Mainly used to
+ * map ids onto dense ordinals, so entries are never removed
+ */
+public class IntIntOpenHashMap {
+    private static final double MAX_LOAD_FACTOR = 0.75;
+
+    private int[] keys;
+    private int[] values;
+    private boolean[] used;
+    private int capacity; // Always a power of two, so the index can be masked
+    private int mask;
+    private int shift;
+    private int size;
+    private int resizeThreshold;
+
+    /**
+     * Constructor for the hash map
+     *
+     * @param expectedSize the number of entries expected, used to size the table
+     *                     so that no resizing is needed until it is exceeded
+     */
+    public IntIntOpenHashMap(int expectedSize) {
+        allocate(tableSizeFor(expectedSize));
+        this.size = 0;
+    }
+
+    /**
+     * Function to add a key and value to the table, or overwrite the value if the
+     * key is already present
+     *
+     * @param key   the integer key
+     * @param value the integer value
+     */
+    public void put(int key, int value) {
+        if (size >= resizeThreshold) {
+            resize(capacity * 2);
+        }
+
+        int slot = hash(key);
+        while (used[slot]) {
+            if (keys[slot] == key) {
+                values[slot] = value;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        used[slot] = true;
+        keys[slot] = key;
+        values[slot] = value;
+        size++;
+    }
+
+    /**
+     * Function to add an amount to the value of a key, inserting the key with
+     * the amount as its value if it is not already present
+     *
+     * @param key    the integer key
+     * @param amount the amount to add
+     * @return the value of the key after the addition
+     */
+    public int addTo(int key, int amount) {
+        if (size >= resizeThreshold) {
+            resize(capacity * 2);
+        }
+
+        int slot = hash(key);
+        while (used[slot]) {
+            if (keys[slot] == key) {
+                values[slot] += amount;
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        used[slot] = true;
+        keys[slot] = key;
+        values[slot] = amount;
+        size++;
+        return amount;
+    }
+
+    /**
+     * Function to return the value associated with a key
+     *
+     * @param key          the key of the value to be returned
+     * @param missingValue the value to return if the key is not present
+     * @return the value, or missingValue if the key is not present
+     */
+    public int getOrDefault(int key, int missingValue) {
+        int slot = hash(key);
+        while (used[slot]) {
+            if (keys[slot] == key) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return missingValue;
+    }
+
+    /**
+     * Function to check whether a key is present in the table
+     *
+     * @param key the key to look for
+     * @return a boolean representing whether the key is present
+     */
+    public boolean containsKey(int key) {
+        int slot = hash(key);
+        while (used[slot]) {
+            if (keys[slot] == key) {
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * Function to grow the table ahead of a bulk load, so that the given number
+     * of entries can be added without any resizing. Never shrinks the table
+     *
+     * @param expectedSize the number of entries expected
+     */
+    public void ensureCapacity(int expectedSize) {
+        int needed = tableSizeFor(expectedSize);
+        if (needed > capacity) {
+            resize(needed);
+        }
+    }
+
+    /**
+     * Function to return a cursor over the entries stored in a range of slots, so
+     * the table can be split into segments and scanned in parallel. The table
+     * must not be changed while the cursor is in use
+     *
+     * @param fromSlot the first slot of the range
+     * @param toSlot   the slot after the last slot of the range
+     * @return a cursor positioned before the first entry in the range
+     */
+    public IntIntCursor cursor(int fromSlot, int toSlot) {
+        return new IntIntCursor() {
+            private int slot = fromSlot - 1;
+
+            @Override
+            public boolean advance() {
+                slot++;
+                while (slot < toSlot && !used[slot]) {
+                    slot++;
+                }
+                return slot < toSlot;
+            }
+
+            @Override
+            public int getKey() {
+                return keys[slot];
+            }
+
+            @Override
+            public int getValue() {
+                return values[slot];
+            }
+        };
+    }
+
+    /**
+     * Function to return a cursor over every entry stored in the table. The table
+     * must not be changed while the cursor is in use
+     *
+     * @return a cursor positioned before the first entry
+     */
+    public IntIntCursor cursor() {
+        return cursor(0, capacity);
+    }
+
+    /**
+     * Function to return the capacity (number of slots) of the table
+     *
+     * @return capacity of the table
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Function to return the number of entries in the table
+     *
+     * @return size of the table
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Function to compute the home slot of a key (Fibonacci hashing)
+     *
+     * @param key the key to hash
+     * @return the home slot of the key
+     */
+    private int hash(int key) {
+        return (key * 0x9E3779B9) >>> shift;
+    }
+
+    /**
+     * Function to resize the table and reinsert every entry
+     *
+     * @param newCapacity the new capacity (a power of two)
+     */
+    private void resize(int newCapacity) {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        boolean[] oldUsed = used;
+        allocate(newCapacity);
+
+        for (int i = 0; i < oldUsed.length; i++) {
+            if (oldUsed[i]) {
+                int slot = hash(oldKeys[i]);
+                while (used[slot]) {
+                    slot = (slot + 1) & mask;
+                }
+                used[slot] = true;
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    /**
+     * Function to allocate empty arrays of a given capacity
+     *
+     * @param newCapacity the capacity (a power of two)
+     */
+    private void allocate(int newCapacity) {
+        this.keys = new int[newCapacity];
+        this.values = new int[newCapacity];
+        this.used = new boolean[newCapacity];
+        this.capacity = newCapacity;
+        this.mask = newCapacity - 1;
+        this.shift = 32 - Integer.numberOfTrailingZeros(newCapacity);
+        this.resizeThreshold = (int) (newCapacity * MAX_LOAD_FACTOR);
+    }
+
+    /**
+     * Function to find the smallest power of two capacity that holds the expected
+     * number of entries below the maximum load factor
+     *
+     * @param expectedSize the number of entries expected
+     * @return the capacity to use
+     */
+    private static int tableSizeFor(int expectedSize) {
+        int needed = (int) Math.ceil(Math.max(expectedSize, 1) / MAX_LOAD_FACTOR);
+        int tableSize = 2;
+        while (tableSize < needed) {
+            tableSize <<= 1;
+        }
+        return tableSize;
+    }
+}
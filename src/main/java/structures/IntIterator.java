@@ -0,0 +1,13 @@
+package structures;
+
+/**
+ * An interface for iterating over primitive integers without boxing them.
+ */
+public interface IntIterator {
+
+    // Returns true when there is another integer to return.
+    public boolean hasNext();
+
+    // Returns the next integer. Only valid when hasNext() is true.
+    public int nextInt();
+}
@@ -0,0 +1,17 @@
+package structures;
+
+/**
+ * An interface for stepping through the entries of a map from primitive
+ * integers to primitive longs one at a time, without boxing either.
+ */
+public interface IntLongCursor {
+
+    // Moves onto the next entry, returns true if there is one and false once every entry has been visited.
+    public boolean advance();
+
+    // Returns the key of the current entry. Only valid after advance() has returned true.
+    public int getKey();
+
+    // Returns the value of the current entry. Only valid after advance() has returned true.
+    public long getValue();
+}
@@ -0,0 +1,287 @@
+package structures;
+
+/**
+ *
+ * My implementation of a hash map from primitive integers to primitive longs,
+ * making use of open addressing with linear probing. Used where a few fields
+ * can be packed into one long, so an entry costs twelve bytes of array space
+ * and no objects at all
+ *
+ * Like IntObjectOpenHashMap, removal uses backward shift deletion and the
+ * table shrinks when enough entries are removed
+ */
+public class IntLongOpenHashMap {
+    private static final int DEFAULT_EXPECTED_SIZE = 8;
+    private static final double MAX_LOAD_FACTOR = 0.75;
+
+    private int[] keys;
+    private long[] values;
+    private boolean[] used; // Every long is a valid value, so empty slots are marked separately
+    private int capacity; // Always a power of two, so the index can be masked
+    private int mask;
+    private int shift;
+    private int size;
+    private int resizeThreshold;
+    private final int minCapacity; // The table never shrinks below its initial capacity
+
+    /**
+     * Constructor for the hash map with a small default size
+     */
+    public IntLongOpenHashMap() {
+        this(DEFAULT_EXPECTED_SIZE);
+    }
+
+    /**
+     * Constructor for the hash map
+     *
+     * @param expectedSize the number of entries expected, used to size the table
+     *                     so that no resizing is needed until it is exceeded
+     */
+    public IntLongOpenHashMap(int expectedSize) {
+        allocate(tableSizeFor(expectedSize));
+        this.minCapacity = capacity;
+        this.size = 0;
+    }
+
+    /**
+     * Function to add a key and value to the table, if the key is not already
+     * present
+     *
+     * @param key   the integer key
+     * @param value the long value
+     * @return a boolean representing a successful addition if the key doesn't
+     *         already exist in the table, false if it does
+     */
+    public boolean add(int key, long value) {
+        if (size >= resizeThreshold) {
+            resize(capacity * 2);
+        }
+
+        int slot = hash(key);
+        while (used[slot]) {
+            if (keys[slot] == key) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        used[slot] = true;
+        keys[slot] = key;
+        values[slot] = value;
+        size++;
+        return true;
+    }
+
+    /**
+     * Function to overwrite the value of a key already in the table
+     *
+     * @param key   the integer key
+     * @param value the new long value
+     * @return a boolean representing whether the key was present to be updated
+     */
+    public boolean replace(int key, long value) {
+        int slot = findSlot(key);
+        if (slot == -1) {
+            return false;
+        }
+        values[slot] = value;
+        return true;
+    }
+
+    /**
+     * Function to remove a key and its value from the table. Uses backward shift
+     * deletion, so no tombstones are left behind and probe sequences stay short
+     *
+     * @param key the key to be removed
+     * @return a boolean value representing if the removal was a success, or the key
+     *         is not present to remove
+     */
+    public boolean remove(int key) {
+        int slot = findSlot(key);
+        if (slot == -1) {
+            return false;
+        }
+
+        // Shift any following entries of the same probe run back into the gap, as
+        // long as doing so does not move them before their home slot
+        int gap = slot;
+        int next = (gap + 1) & mask;
+        while (used[next]) {
+            int home = hash(keys[next]);
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                keys[gap] = keys[next];
+                values[gap] = values[next];
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        used[gap] = false;
+        size--;
+
+        // Halve the table once it is a quarter as full as the resize threshold
+        if (size < resizeThreshold / 4 && capacity > minCapacity) {
+            resize(capacity / 2);
+        }
+        return true;
+    }
+
+    /**
+     * Function to return the value associated with a key
+     *
+     * @param key          the key of the value to be returned
+     * @param missingValue the value to return if the key is not present
+     * @return the value, or missingValue if the key is not present
+     */
+    public long getOrDefault(int key, long missingValue) {
+        int slot = findSlot(key);
+        return (slot == -1) ? missingValue : values[slot];
+    }
+
+    /**
+     * Function to check whether a key is present in the table
+     *
+     * @param key the key to look for
+     * @return a boolean representing whether the key is present
+     */
+    public boolean containsKey(int key) {
+        return findSlot(key) != -1;
+    }
+
+    /**
+     * Function to return all the keys stored in the table
+     *
+     * @return an integer array representing the keys stored
+     */
+    public int[] getKeysAsInt() {
+        int[] result = new int[size];
+        int index = 0;
+        for (int slot = 0; slot < capacity; slot++) {
+            if (used[slot]) {
+                result[index++] = keys[slot];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Function to return a cursor over the entries stored in the table. The map
+     * must not be changed while the cursor is in use
+     *
+     * @return a cursor positioned before the first entry
+     */
+    public IntLongCursor cursor() {
+        return new IntLongCursor() {
+            private int slot = -1;
+
+            @Override
+            public boolean advance() {
+                slot++;
+                while (slot < capacity && !used[slot]) {
+                    slot++;
+                }
+                return slot < capacity;
+            }
+
+            @Override
+            public int getKey() {
+                return keys[slot];
+            }
+
+            @Override
+            public long getValue() {
+                return values[slot];
+            }
+        };
+    }
+
+    /**
+     * Function to return the number of entries in the table
+     *
+     * @return size of the table
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Function to find the slot holding a key
+     *
+     * @param key the key to look for
+     * @return the slot index, or -1 if the key is not present
+     */
+    private int findSlot(int key) {
+        int slot = hash(key);
+        while (used[slot]) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Function to compute the home slot of a key, using Fibonacci hashing
+     *
+     * @param key the key to hash
+     * @return the home slot of the key
+     */
+    private int hash(int key) {
+        return (key * 0x9E3779B9) >>> shift;
+    }
+
+    /**
+     * Function to resize the table and reinsert every entry
+     *
+     * @param newCapacity the new capacity (a power of two)
+     */
+    private void resize(int newCapacity) {
+        int[] oldKeys = keys;
+        long[] oldValues = values;
+        boolean[] oldUsed = used;
+        allocate(newCapacity);
+
+        for (int i = 0; i < oldUsed.length; i++) {
+            if (oldUsed[i]) {
+                int slot = hash(oldKeys[i]);
+                while (used[slot]) {
+                    slot = (slot + 1) & mask;
+                }
+                used[slot] = true;
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    /**
+     * Function to allocate empty arrays of a given capacity
+     *
+     * @param newCapacity the capacity (a power of two)
+     */
+    private void allocate(int newCapacity) {
+        this.keys = new int[newCapacity];
+        this.values = new long[newCapacity];
+        this.used = new boolean[newCapacity];
+        this.capacity = newCapacity;
+        this.mask = newCapacity - 1;
+        this.shift = 32 - Integer.numberOfTrailingZeros(newCapacity);
+        this.resizeThreshold = (int) (newCapacity * MAX_LOAD_FACTOR);
+    }
+
+    /**
+     * Function to find the smallest power of two capacity that holds the expected
+     * number of entries below the maximum load factor
+     *
+     * @param expectedSize the number of entries expected
+     * @return the capacity to use
+     */
+    private static int tableSizeFor(int expectedSize) {
+        int needed = (int) Math.ceil(Math.max(expectedSize, 1) / MAX_LOAD_FACTOR);
+        int tableSize = 2;
+        while (tableSize < needed) {
+            tableSize <<= 1;
+        }
+        return tableSize;
+    }
+}
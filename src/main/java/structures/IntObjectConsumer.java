@@ -0,0 +1,12 @@
+package structures;
+
+/**
+ * An interface for an action taking a primitive integer key and its value, so
+ * entries can be visited without boxing the keys.
+ */
+@FunctionalInterface
+public interface IntObjectConsumer<V> {
+
+    // Performs the action on one key and its value.
+    public void accept(int key, V value);
+}
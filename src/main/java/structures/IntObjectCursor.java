@@ -0,0 +1,17 @@
+package structures;
+
+/**
+ * An interface for stepping through the entries of a map with primitive integer
+ * keys one at a time, without boxing the keys.
+ */
+public interface IntObjectCursor<V> {
+
+    // Moves onto the next entry, returns true if there is one and false once every entry has been visited.
+    public boolean advance();
+
+    // Returns the key of the current entry. Only valid after advance() has returned true.
+    public int getKey();
+
+    // Returns the value of the current entry. Only valid after advance() has returned true.
+    public V getValue();
+}
@@ -0,0 +1,432 @@
+package structures;
+
+/**
+ *
+ * My implementation of a hash map keyed by primitive integers, making use of
+ * open addressing with linear probing. Keys and values are held in parallel
+ * arrays, so there is no boxing of keys and no node object per entry
+ * 
+ * The table also shrinks when enough entries are removed, so the number of
+ * slots stays proportional to the number of entries and a full iteration
+ * (forEachEntry, cursor, keyIterator) costs O(size) rather than depending on
+ * how large the table has been in the past
+ *
+ * Health statistics (probe lengths, resizes and probes per get) can be
+ * switched on with setStatsEnabled, and read with getStats
+ */
+public class IntObjectOpenHashMap<V> {
+    private static final int DEFAULT_EXPECTED_SIZE = 8;
+    private static final double MAX_LOAD_FACTOR = 0.75;
+
+    private int[] keys;
+    private Object[] values; // A null value marks an empty slot
+    private int capacity; // Always a power of two, so the index can be masked
+    private int mask;
+    private int shift;
+    private int size;
+    private int resizeThreshold;
+    private final int minCapacity; // The table never shrinks below its initial capacity
+
+    // Only counted while stats are enabled
+    private boolean statsEnabled;
+    private long resizeCount;
+    private long resizeNanos;
+    private long getCount;
+    private long getProbeCount;
+
+    /**
+     * Constructor for the hash map with a small default size
+     */
+    public IntObjectOpenHashMap() {
+        this(DEFAULT_EXPECTED_SIZE);
+    }
+
+    /**
+     * Constructor for the hash map
+     *
+     * @param expectedSize the number of entries expected, used to size the table
+     *                     so that no resizing is needed until it is exceeded
+     */
+    public IntObjectOpenHashMap(int expectedSize) {
+        allocate(tableSizeFor(expectedSize));
+        this.minCapacity = capacity;
+        this.size = 0;
+    }
+
+    /**
+     * Function to add a key and value to the table, if the key is not already
+     * present
+     *
+     * @param key   the integer key
+     * @param value the value to be added (cannot be null)
+     * @return a boolean representing a successful addition if the key doesn't
+     *         already exist in the table, false if it does
+     */
+    public boolean add(int key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Null values cannot be stored in the hash map");
+        }
+        if (size >= resizeThreshold) {
+            resize(capacity * 2);
+        }
+
+        // Linear probe from the home slot until either the key or an empty slot is
+        // found
+        int slot = hash(key);
+        while (values[slot] != null) {
+            if (keys[slot] == key) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        keys[slot] = key;
+        values[slot] = value;
+        size++;
+        return true;
+    }
+
+    /**
+     * Function to remove a key and its value from the table. Uses backward shift
+     * deletion, so no tombstones are left behind and probe sequences stay short
+     *
+     * @param key the key to be removed
+     * @return a boolean value representing if the removal was a success, or the key
+     *         is not present to remove
+     */
+    public boolean remove(int key) {
+        int slot = findSlot(key);
+        if (slot == -1) {
+            return false;
+        }
+
+        // Shift any following entries of the same probe run back into the gap, as
+        // long as doing so does not move them before their home slot
+        int gap = slot;
+        int next = (gap + 1) & mask;
+        while (values[next] != null) {
+            int home = hash(keys[next]);
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                keys[gap] = keys[next];
+                values[gap] = values[next];
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        values[gap] = null;
+        size--;
+
+        // Halve the table once it is a quarter as full as the resize threshold
+        if (size < resizeThreshold / 4 && capacity > minCapacity) {
+            resize(capacity / 2);
+        }
+        return true;
+    }
+
+    /**
+     * Function to return the value associated with a key
+     *
+     * @param key the key of the value to be returned
+     * @return the value, or null if the key is not present
+     */
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        if (statsEnabled) {
+            getCount++;
+            getProbeCount += countProbes(key);
+        }
+        int slot = findSlot(key);
+        if (slot == -1) {
+            return null;
+        }
+        return (V) values[slot];
+    }
+
+    /**
+     * Function to check whether a key is present in the table
+     *
+     * @param key the key to look for
+     * @return a boolean representing whether the key is present
+     */
+    public boolean containsKey(int key) {
+        return findSlot(key) != -1;
+    }
+
+    /**
+     * Function to perform an action on every key and value stored in the table.
+     * The map must not be changed by the action
+     *
+     * @param action the action to perform on each key and value
+     */
+    @SuppressWarnings("unchecked")
+    public void forEachEntry(IntObjectConsumer<? super V> action) {
+        for (int slot = 0; slot < capacity; slot++) {
+            if (values[slot] != null) {
+                action.accept(keys[slot], (V) values[slot]);
+            }
+        }
+    }
+
+    /**
+     * Function to return a cursor over the entries stored in the table. The map
+     * must not be changed while the cursor is in use
+     *
+     * @return a cursor positioned before the first entry
+     */
+    public IntObjectCursor<V> cursor() {
+        return cursor(0, capacity);
+    }
+
+    /**
+     * Function to return a cursor over the entries stored in a range of slots, so
+     * the table can be split into segments and scanned in parallel. The map must
+     * not be changed while the cursor is in use
+     *
+     * @param fromSlot the first slot of the range
+     * @param toSlot   the slot after the last slot of the range
+     * @return a cursor positioned before the first entry in the range
+     */
+    public IntObjectCursor<V> cursor(int fromSlot, int toSlot) {
+        return new IntObjectCursor<V>() {
+            private int slot = fromSlot - 1;
+
+            @Override
+            public boolean advance() {
+                slot = nextUsedSlot(slot + 1, toSlot);
+                return slot < toSlot;
+            }
+
+            @Override
+            public int getKey() {
+                return keys[slot];
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public V getValue() {
+                return (V) values[slot];
+            }
+        };
+    }
+
+    /**
+     * Function to return all the keys stored in the table
+     *
+     * @return an integer array representing the keys stored
+     */
+    public int[] getKeysAsInt() {
+        int[] result = new int[size];
+        int index = 0;
+        for (int slot = 0; slot < capacity; slot++) {
+            if (values[slot] != null) {
+                result[index++] = keys[slot];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Function to return an iterator over the keys stored in the table, reading
+     * them straight from the key array rather than copying them. The map must not
+     * be changed while the iterator is in use
+     *
+     * @return an integer iterator over the keys stored
+     */
+    public IntIterator keyIterator() {
+        return new IntIterator() {
+            private int slot = nextUsedSlot(0, capacity);
+
+            @Override
+            public boolean hasNext() {
+                return slot < capacity;
+            }
+
+            @Override
+            public int nextInt() {
+                int key = keys[slot];
+                slot = nextUsedSlot(slot + 1, capacity);
+                return key;
+            }
+        };
+    }
+
+    /**
+     * Function to grow the table ahead of a bulk load, so that the given number
+     * of entries can be added without any resizing. Never shrinks the table
+     *
+     * @param expectedSize the number of entries expected
+     */
+    public void ensureCapacity(int expectedSize) {
+        int needed = tableSizeFor(expectedSize);
+        if (needed > capacity) {
+            resize(needed);
+        }
+    }
+
+    /**
+     * Function to return the capacity (number of slots) of the table
+     *
+     * @return capacity of the table
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Function to return the number of entries in the table
+     *
+     * @return size of the table
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Function to switch the collection of health statistics on or off. The
+     * counts collected so far are kept
+     *
+     * @param enabled whether to collect statistics
+     */
+    public void setStatsEnabled(boolean enabled) {
+        this.statsEnabled = enabled;
+    }
+
+    /**
+     * Function to return a snapshot of the health of the table. Each entry's
+     * probe length (the slots a lookup of it checks) is measured now, the resize
+     * and get counts are those collected while stats were enabled
+     *
+     * @param name the name of the table, for reports
+     * @return the statistics of the table
+     */
+    public HashTableStats getStats(String name) {
+        int[] histogram = new int[HashTableStats.HISTOGRAM_BUCKETS];
+        int maxProbeLength = 0;
+        for (int slot = 0; slot < capacity; slot++) {
+            if (values[slot] != null) {
+                int probeLength = ((slot - hash(keys[slot])) & mask) + 1;
+                maxProbeLength = HashTableStats.record(histogram, probeLength, maxProbeLength);
+            }
+        }
+        return new HashTableStats(name, capacity, size, histogram, maxProbeLength, resizeCount, resizeNanos,
+                getCount, getProbeCount);
+    }
+
+    /**
+     * Function to count the slots a get of a key checks (up to and including the
+     * key's slot, or the empty slot that ends the search)
+     *
+     * @param key the key being looked up
+     * @return the number of slots checked
+     */
+    private int countProbes(int key) {
+        int probes = 1;
+        int slot = hash(key);
+        while (values[slot] != null && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+            probes++;
+        }
+        return probes;
+    }
+
+    /**
+     * Function to find the slot holding a key
+     *
+     * @param key the key to look for
+     * @return the slot index, or -1 if the key is not present
+     */
+    private int findSlot(int key) {
+        int slot = hash(key);
+        while (values[slot] != null) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Function to find the first slot in use at or after a given slot
+     *
+     * @param from the slot to start looking from
+     * @param to   the slot to stop looking at
+     * @return the slot index, or "to" if there is no slot in use before it
+     */
+    private int nextUsedSlot(int from, int to) {
+        while (from < to && values[from] == null) {
+            from++;
+        }
+        return from;
+    }
+
+    /**
+     * Function to compute the home slot of a key. Uses Fibonacci hashing so that
+     * sequential ids (which is what most of the data uses) are spread across the
+     * table rather than forming one long run
+     *
+     * @param key the key to hash
+     * @return the home slot of the key
+     */
+    private int hash(int key) {
+        return (key * 0x9E3779B9) >>> shift;
+    }
+
+    /**
+     * Function to resize the table and reinsert every entry
+     *
+     * @param newCapacity the new capacity (a power of two)
+     */
+    private void resize(int newCapacity) {
+        long start = statsEnabled ? System.nanoTime() : 0;
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(newCapacity);
+
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != null) {
+                int slot = hash(oldKeys[i]);
+                while (values[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+
+        if (statsEnabled) {
+            resizeCount++;
+            resizeNanos += System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * Function to allocate empty key and value arrays of a given capacity
+     *
+     * @param newCapacity the capacity (a power of two)
+     */
+    private void allocate(int newCapacity) {
+        this.keys = new int[newCapacity];
+        this.values = new Object[newCapacity];
+        this.capacity = newCapacity;
+        this.mask = newCapacity - 1;
+        this.shift = 32 - Integer.numberOfTrailingZeros(newCapacity);
+        this.resizeThreshold = (int) (newCapacity * MAX_LOAD_FACTOR);
+    }
+
+    /**
+     * Function to find the smallest power of two capacity that holds the expected
+     * number of entries below the maximum load factor
+     *
+     * @param expectedSize the number of entries expected
+     * @return the capacity to use
+     */
+    private static int tableSizeFor(int expectedSize) {
+        int needed = (int) Math.ceil(Math.max(expectedSize, 1) / MAX_LOAD_FACTOR);
+        int tableSize = 2;
+        while (tableSize < needed) {
+            tableSize <<= 1;
+        }
+        return tableSize;
+    }
+}
@@ -0,0 +1,277 @@
+package structures;
+
+import java.util.Arrays;
+
+/**
+ *
+ * A ranking of IDs by score that is kept up to date as scores change, so the K
+ * highest ranked IDs can be read off in O(K) rather than found by scanning
+ * every candidate. Ranked in the same order as IntTopK and FloatTopK: by
+ * descending score, with equal scores broken by the lower ID ranking higher
+ *
+ * The entries are kept in a treap (a binary search tree on (score, ID) which
+ * is also a heap on a per-node priority, keeping it balanced in expectation)
+ * held in parallel arrays, with freed nodes reused. Each ID's current score is
+ * kept in a hash map, so an ID can be found in the tree without knowing its
+ * score. Changing a score is O(log n)
+ */
+public class Leaderboard {
+    private static final int NIL = 0; // Node 0 is never used, so it can stand for no child
+
+    private int[] ids;
+    private double[] scores; // A double holds every int count and float average exactly
+    private int[] priorities;
+    private int[] left;
+    private int[] right;
+    private int root;
+    private int nextNode; // The next node never yet used
+    private int freeList; // Freed nodes, linked through their right child
+    private final IntLongOpenHashMap scoreOf; // ID -> bits of its current score
+
+    /**
+     * Constructor for the leaderboard
+     *
+     * @param expectedSize the number of IDs expected, used to size the arrays
+     */
+    public Leaderboard(int expectedSize) {
+        int capacity = Math.max(expectedSize, 1) + 1;
+        this.ids = new int[capacity];
+        this.scores = new double[capacity];
+        this.priorities = new int[capacity];
+        this.left = new int[capacity];
+        this.right = new int[capacity];
+        this.root = NIL;
+        this.nextNode = 1;
+        this.freeList = NIL;
+        this.scoreOf = new IntLongOpenHashMap(expectedSize);
+    }
+
+    /**
+     * Function to set the score of an ID, adding it to the ranking if it is not
+     * already ranked
+     *
+     * @param id    the ID
+     * @param score the new score of the ID
+     */
+    public void update(int id, double score) {
+        long bits = Double.doubleToLongBits(score);
+        if (scoreOf.containsKey(id)) {
+            long oldBits = scoreOf.getOrDefault(id, 0);
+            if (oldBits == bits) {
+                return;
+            }
+            root = delete(root, Double.longBitsToDouble(oldBits), id);
+            scoreOf.replace(id, bits);
+        } else {
+            scoreOf.add(id, bits);
+        }
+        root = insert(root, newNode(id, score));
+    }
+
+    /**
+     * Function to take an ID out of the ranking
+     *
+     * @param id the ID to remove
+     * @return a boolean representing whether the ID was ranked
+     */
+    public boolean remove(int id) {
+        if (!scoreOf.containsKey(id)) {
+            return false;
+        }
+        root = delete(root, Double.longBitsToDouble(scoreOf.getOrDefault(id, 0)), id);
+        scoreOf.remove(id);
+        return true;
+    }
+
+    /**
+     * Function to return the K highest ranked IDs
+     *
+     * @param k the maximum number of IDs to return
+     * @return the IDs sorted by descending score, or an empty array if k is not
+     *         positive
+     */
+    public int[] top(int k) {
+        if (k <= 0) {
+            return new int[0];
+        }
+        int[] result = new int[Math.min(k, scoreOf.getSize())];
+
+        // In-order walk from the highest ranked node, stopping once the result is full
+        int[] stack = new int[64];
+        int depth = 0;
+        int node = root;
+        int count = 0;
+        while (count < result.length) {
+            while (node != NIL) {
+                if (depth == stack.length) {
+                    stack = Arrays.copyOf(stack, depth * 2);
+                }
+                stack[depth++] = node;
+                node = left[node];
+            }
+            node = stack[--depth];
+            result[count++] = ids[node];
+            node = right[node];
+        }
+        return result;
+    }
+
+    /**
+     * Function to return the number of IDs ranked
+     *
+     * @return size of the ranking
+     */
+    public int getSize() {
+        return scoreOf.getSize();
+    }
+
+    /**
+     * Function to insert a node into a subtree
+     *
+     * @param subtree the root of the subtree
+     * @param node    the node to insert
+     * @return the new root of the subtree
+     */
+    private int insert(int subtree, int node) {
+        if (subtree == NIL) {
+            return node;
+        }
+        if (ranksAbove(scores[node], ids[node], scores[subtree], ids[subtree])) {
+            left[subtree] = insert(left[subtree], node);
+            if (priorities[left[subtree]] > priorities[subtree]) {
+                subtree = rotateRight(subtree);
+            }
+        } else {
+            right[subtree] = insert(right[subtree], node);
+            if (priorities[right[subtree]] > priorities[subtree]) {
+                subtree = rotateLeft(subtree);
+            }
+        }
+        return subtree;
+    }
+
+    /**
+     * Function to delete the node holding a score and ID from a subtree
+     *
+     * @param subtree the root of the subtree
+     * @param score   the score of the node
+     * @param id      the ID of the node
+     * @return the new root of the subtree
+     */
+    private int delete(int subtree, double score, int id) {
+        if (subtree == NIL) {
+            return NIL;
+        }
+        if (ids[subtree] == id && scores[subtree] == score) {
+            // Rotate the node down until it has at most one child, then splice it out
+            if (left[subtree] == NIL || right[subtree] == NIL) {
+                int child = (left[subtree] == NIL) ? right[subtree] : left[subtree];
+                freeNode(subtree);
+                return child;
+            }
+            if (priorities[left[subtree]] > priorities[right[subtree]]) {
+                subtree = rotateRight(subtree);
+                right[subtree] = delete(right[subtree], score, id);
+            } else {
+                subtree = rotateLeft(subtree);
+                left[subtree] = delete(left[subtree], score, id);
+            }
+        } else if (ranksAbove(score, id, scores[subtree], ids[subtree])) {
+            left[subtree] = delete(left[subtree], score, id);
+        } else {
+            right[subtree] = delete(right[subtree], score, id);
+        }
+        return subtree;
+    }
+
+    /**
+     * Function to rotate a subtree right, lifting its left child
+     *
+     * @param node the root of the subtree
+     * @return the new root of the subtree
+     */
+    private int rotateRight(int node) {
+        int child = left[node];
+        left[node] = right[child];
+        right[child] = node;
+        return child;
+    }
+
+    /**
+     * Function to rotate a subtree left, lifting its right child
+     *
+     * @param node the root of the subtree
+     * @return the new root of the subtree
+     */
+    private int rotateLeft(int node) {
+        int child = right[node];
+        right[node] = left[child];
+        left[child] = node;
+        return child;
+    }
+
+    /**
+     * Function to take a node for a new entry, reusing a freed one if there is one
+     *
+     * @param id    the ID of the entry
+     * @param score the score of the entry
+     * @return the node
+     */
+    private int newNode(int id, double score) {
+        int node;
+        if (freeList != NIL) {
+            node = freeList;
+            freeList = right[node];
+        } else {
+            if (nextNode == ids.length) {
+                grow(ids.length * 2);
+            }
+            node = nextNode++;
+        }
+        ids[node] = id;
+        scores[node] = score;
+        // Mixing the ID gives a priority unrelated to the score order, which is all
+        // the balancing needs
+        priorities[node] = (id * 0x9E3779B9) ^ ((id * 0x9E3779B9) >>> 16);
+        left[node] = NIL;
+        right[node] = NIL;
+        return node;
+    }
+
+    /**
+     * Function to put a node back on the free list
+     *
+     * @param node the node to free
+     */
+    private void freeNode(int node) {
+        left[node] = NIL;
+        right[node] = freeList;
+        freeList = node;
+    }
+
+    /**
+     * Function to grow the node arrays
+     *
+     * @param newCapacity the new number of nodes
+     */
+    private void grow(int newCapacity) {
+        ids = Arrays.copyOf(ids, newCapacity);
+        scores = Arrays.copyOf(scores, newCapacity);
+        priorities = Arrays.copyOf(priorities, newCapacity);
+        left = Arrays.copyOf(left, newCapacity);
+        right = Arrays.copyOf(right, newCapacity);
+    }
+
+    /**
+     * Function to compare two entries by the ranking order
+     *
+     * @param score      the score of the first entry
+     * @param id         the ID of the first entry
+     * @param otherScore the score of the second entry
+     * @param otherId    the ID of the second entry
+     * @return a boolean representing whether the first entry ranks higher
+     */
+    private static boolean ranksAbove(double score, int id, double otherScore, int otherId) {
+        return score > otherScore || (score == otherScore && id < otherId);
+    }
+}
@@ -19,17 +19,22 @@ public class LinkedList<K,V> {
      * @return a boolean value representing a successful addition
      */
     public boolean add(K key, V value) {
-        ListElement<K,V> temp = new ListElement<>(key,value);
-        // If there is already an element in the list, set the element's pointer to the current head
-        if (this.head != null) {
-            temp.setNext(this.head);
-        }
-        // Then set the element as the new head
-        this.head = temp;
-
+        addElement(new ListElement<>(key,value));
         return true;
     }
 
+    /**
+     * Function to add an already created list element to the linked list
+     * 
+     * @param element the list element to add
+     */
+    void addElement(ListElement<K,V> element) {
+        // Set the element's pointer to the current head (null if the list is empty)
+        element.setNext(this.head);
+        // Then set the element as the new head
+        this.head = element;
+    }
+
     /**
      * Function to remove a list element from a linked list
      * 
@@ -37,11 +42,21 @@ public class LinkedList<K,V> {
      * @return a boolean value representing a successful or unsuccessful removal (if key not found)
      */
     public boolean remove(K key) {
+        return removeElement(key) != null;
+    }
+
+    /**
+     * Function to remove a list element from a linked list and return it
+     * 
+     * @param key the key of the element to be removed
+     * @return the removed list element, null if the key is not found
+     */
+    ListElement<K,V> removeElement(K key) {
         ListElement<K,V> current = this.head;
         // Previous node is initialised as null, so if the key is found, the previous node can point past the key to "remove" it
         ListElement<K,V> previous = null;
 
-        // Searches for the list element with the key, then changes the pointers to remove it, and sets it to null
+        // Searches for the list element with the key, then changes the pointers to remove it
         while (current != null) {
             if (current.getKey().equals(key)) {
                 if (previous == null) {
@@ -51,15 +66,15 @@ public class LinkedList<K,V> {
                     previous.setNext(current.getNext());
                 }
                 current.setNext(null);
-                return true;
+                return current;
             }
 
             previous = current;
             current = current.getNext();
         }
 
-        // Returns false if the element cannot be found with the specified key
-        return false;
+        // Returns null if the element cannot be found with the specified key
+        return null;
     }
 
     /**
@@ -4,6 +4,7 @@ public class ListElement<K,V> {
     private K key;
     private V value;
     private ListElement<K,V> next;
+    private int index; // Position of the element in its hash map's dense entry array
 
     public ListElement(K key, V value){
         this.key = key;
@@ -27,4 +28,12 @@ public class ListElement<K,V> {
     public void setNext(ListElement<K,V> nextElem) {
         this.next = nextElem;
     }
+
+    int getIndex() {
+        return this.index;
+    }
+
+    void setIndex(int index) {
+        this.index = index;
+    }
 }
@@ -0,0 +1,165 @@
+package structures;
+
+import java.util.Arrays;
+
+/**
+ *
+ * My implementation of a hash map from primitive longs to primitive integers,
+ * making use of open addressing with linear probing. Used for composite keys
+ * such as a (user ID, movie ID) pair packed into one long. Entries are only
+ * ever removed all at once, through clear()
+ */
+public class LongIntOpenHashMap {
+    private static final double MAX_LOAD_FACTOR = 0.75;
+
+    private long[] keys;
+    private int[] values;
+    private boolean[] used;
+    private int capacity; // Always a power of two, so the index can be masked
+    private int mask;
+    private int shift;
+    private int size;
+    private int resizeThreshold;
+
+    /**
+     * Constructor for the hash map
+     *
+     * @param expectedSize the number of entries expected, used to size the table
+     *                     so that no resizing is needed until it is exceeded
+     */
+    public LongIntOpenHashMap(int expectedSize) {
+        allocate(tableSizeFor(expectedSize));
+        this.size = 0;
+    }
+
+    /**
+     * Function to add a key and value to the table, or overwrite the value if the
+     * key is already present
+     *
+     * @param key   the long key
+     * @param value the integer value
+     */
+    public void put(long key, int value) {
+        if (size >= resizeThreshold) {
+            resize(capacity * 2);
+        }
+
+        int slot = hash(key);
+        while (used[slot]) {
+            if (keys[slot] == key) {
+                values[slot] = value;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        used[slot] = true;
+        keys[slot] = key;
+        values[slot] = value;
+        size++;
+    }
+
+    /**
+     * Function to return the value associated with a key
+     *
+     * @param key          the key of the value to be returned
+     * @param missingValue the value to return if the key is not present
+     * @return the value, or missingValue if the key is not present
+     */
+    public int getOrDefault(long key, int missingValue) {
+        int slot = hash(key);
+        while (used[slot]) {
+            if (keys[slot] == key) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return missingValue;
+    }
+
+    /**
+     * Function to remove every entry, keeping the current capacity
+     */
+    public void clear() {
+        if (size == 0) {
+            return;
+        }
+        Arrays.fill(used, false);
+        size = 0;
+    }
+
+    /**
+     * Function to return the number of entries in the table
+     *
+     * @return size of the table
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Function to compute the home slot of a key (Fibonacci hashing on the full
+     * 64 bits, so both halves of a packed pair affect the slot)
+     *
+     * @param key the key to hash
+     * @return the home slot of the key
+     */
+    private int hash(long key) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> shift);
+    }
+
+    /**
+     * Function to resize the table and reinsert every entry
+     *
+     * @param newCapacity the new capacity (a power of two)
+     */
+    private void resize(int newCapacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        boolean[] oldUsed = used;
+        allocate(newCapacity);
+
+        for (int i = 0; i < oldUsed.length; i++) {
+            if (oldUsed[i]) {
+                int slot = hash(oldKeys[i]);
+                while (used[slot]) {
+                    slot = (slot + 1) & mask;
+                }
+                used[slot] = true;
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    /**
+     * Function to allocate empty arrays of a given capacity
+     *
+     * @param newCapacity the capacity (a power of two)
+     */
+    private void allocate(int newCapacity) {
+        this.keys = new long[newCapacity];
+        this.values = new int[newCapacity];
+        this.used = new boolean[newCapacity];
+        this.capacity = newCapacity;
+        this.mask = newCapacity - 1;
+        this.shift = 64 - Integer.numberOfTrailingZeros(newCapacity);
+        this.resizeThreshold = (int) (newCapacity * MAX_LOAD_FACTOR);
+    }
+
+    /**
+     * Function to find the smallest power of two capacity that holds the expected
+     * number of entries below the maximum load factor
+     *
+     * @param expectedSize the number of entries expected
+     * @return the capacity to use
+     */
+    private static int tableSizeFor(int expectedSize) {
+        int needed = (int) Math.ceil(Math.max(expectedSize, 1) / MAX_LOAD_FACTOR);
+        int tableSize = 2;
+        while (tableSize < needed) {
+            tableSize <<= 1;
+        }
+        return tableSize;
+    }
+}
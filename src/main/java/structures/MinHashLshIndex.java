@@ -0,0 +1,378 @@
+package structures;
+
+import java.util.Arrays;
+import java.util.function.Supplier;
+
+/**
+ *
+ * My implementation of an index for finding, for a set of integers, the sets
+ * with the highest Jaccard similarity to it (the size of their intersection
+ * over the size of their union), approximately and without comparing it with
+ * every other set. Each set keyed by an ID is summarised by a MinHash
+ * signature: for each of a fixed number of hash functions, the lowest hash of
+ * any element of the set. Two sets agree on a hash function with a probability
+ * equal to their Jaccard similarity, so the fraction of the signature two sets
+ * share estimates it
+ *
+ * The signatures are split into bands of a few rows, and the sets are bucketed
+ * by each band (locality sensitive hashing), so the candidates for a query are
+ * the sets sharing a whole band with it: likely for similar sets and unlikely
+ * for dissimilar ones. Each bucket is a doubly linked list through arrays
+ * indexed by (ordinal, band), so a set moves between buckets in O(1) as its
+ * signature changes. Adding an element only lowers the signature, so it costs
+ * one pass over the hash functions. Removing an element only needs the whole
+ * set again when the element was the minimum of some hash function
+ */
+public class MinHashLshIndex {
+    private static final int NONE = -1;
+    private static final int EMPTY = Integer.MAX_VALUE; // Signature value of a set with no elements
+    private static final int MAX_BUCKET_SCAN = 128; // Candidates taken from each band's bucket, at most
+
+    private final int numBands;
+    private final int rowsPerBand;
+    private final int numHashes;
+    private final int[] seeds;
+
+    // Every ID seen is given a dense ordinal, which indexes all the arrays below
+    private final IntIntOpenHashMap ordinals;
+    private int[] ids;
+    private int numOrdinals;
+    private int size; // The number of IDs with a non-empty set
+
+    private int[] signatures; // numHashes per ordinal
+    private boolean[] indexed; // Whether the ordinal is in the buckets (its set is not empty)
+
+    // Bucket lists, with one node per (ordinal, band) at ordinal * numBands + band
+    private final IntLongOpenHashMap[] heads; // Per band, band key -> first node of its bucket
+    private int[] bandKeys;
+    private int[] next;
+    private int[] previous;
+
+    // Marks of the candidates already scored by the current query
+    private int[] seen;
+    private int queryMark;
+
+    /**
+     * Constructor for the index
+     *
+     * @param numBands     the number of bands (at most 64). More bands find more of
+     *                     the less similar sets
+     * @param rowsPerBand  the number of hash functions in each band. More rows
+     *                     leave out more of the less similar sets
+     * @param expectedSize the number of IDs expected, used to size the arrays
+     */
+    public MinHashLshIndex(int numBands, int rowsPerBand, int expectedSize) {
+        if (numBands < 1 || numBands > 64 || rowsPerBand < 1) {
+            throw new IllegalArgumentException("There must be between 1 and 64 bands of at least one row");
+        }
+        this.numBands = numBands;
+        this.rowsPerBand = rowsPerBand;
+        this.numHashes = numBands * rowsPerBand;
+
+        // Fixed seeds, so a set has the same signature every run
+        this.seeds = new int[numHashes];
+        long state = 0x5DEECE66DL;
+        for (int i = 0; i < numHashes; i++) {
+            state += 0x9E3779B97F4A7C15L;
+            long z = (state ^ (state >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            seeds[i] = (int) (z ^ (z >>> 31));
+        }
+
+        int capacity = Math.max(expectedSize, 1);
+        this.ordinals = new IntIntOpenHashMap(capacity);
+        this.ids = new int[capacity];
+        this.signatures = new int[capacity * numHashes];
+        this.indexed = new boolean[capacity];
+        this.bandKeys = new int[capacity * numBands];
+        this.next = new int[capacity * numBands];
+        this.previous = new int[capacity * numBands];
+        this.seen = new int[capacity];
+        this.heads = new IntLongOpenHashMap[numBands];
+        for (int band = 0; band < numBands; band++) {
+            heads[band] = new IntLongOpenHashMap(capacity);
+        }
+        this.numOrdinals = 0;
+        this.size = 0;
+        this.queryMark = 0;
+    }
+
+    /**
+     * Function to add an element to the set of an ID, creating the set if the ID
+     * has none. Adding an element already in the set changes nothing
+     *
+     * @param id      the ID of the set
+     * @param element the element to add
+     */
+    public void add(int id, int element) {
+        int ordinal = ordinalOf(id);
+        int base = ordinal * numHashes;
+        long changedBands = 0;
+        for (int i = 0; i < numHashes; i++) {
+            int hash = hash(element, i);
+            if (hash < signatures[base + i]) {
+                signatures[base + i] = hash;
+                changedBands |= 1L << (i / rowsPerBand);
+            }
+        }
+
+        if (!indexed[ordinal]) {
+            // Every band goes into a bucket for the first time
+            indexed[ordinal] = true;
+            size++;
+            for (int band = 0; band < numBands; band++) {
+                link(ordinal * numBands + band, band, bandKey(ordinal, band));
+            }
+        } else {
+            rebucket(ordinal, changedBands);
+        }
+    }
+
+    /**
+     * Function to remove an element from the set of an ID. If the element was the
+     * lowest hash of any hash function, the signature is worked out again from
+     * the elements left, which are only asked for in that case
+     *
+     * @param id        the ID of the set
+     * @param element   the element removed
+     * @param remaining gives the elements left in the set once the element is
+     *                  removed
+     */
+    public void remove(int id, int element, Supplier<int[]> remaining) {
+        int ordinal = ordinals.getOrDefault(id, NONE);
+        if (ordinal == NONE || !indexed[ordinal]) {
+            return;
+        }
+        int base = ordinal * numHashes;
+        boolean affected = false;
+        for (int i = 0; i < numHashes && !affected; i++) {
+            affected = signatures[base + i] == hash(element, i);
+        }
+        if (!affected) {
+            return; // Every minimum came from another element, so still holds
+        }
+
+        int[] elements = remaining.get();
+        if (elements.length == 0) {
+            // The set is now empty, so the ID leaves every bucket
+            for (int band = 0; band < numBands; band++) {
+                unlink(ordinal * numBands + band, band);
+            }
+            Arrays.fill(signatures, base, base + numHashes, EMPTY);
+            indexed[ordinal] = false;
+            size--;
+            return;
+        }
+
+        long changedBands = 0;
+        for (int i = 0; i < numHashes; i++) {
+            int min = EMPTY;
+            for (int value : elements) {
+                min = Math.min(min, hash(value, i));
+            }
+            if (min != signatures[base + i]) {
+                signatures[base + i] = min;
+                changedBands |= 1L << (i / rowsPerBand);
+            }
+        }
+        rebucket(ordinal, changedBands);
+    }
+
+    /**
+     * Function to find the IDs whose sets are most similar to the set of an ID,
+     * out of those sharing at least one band with it. Each is scored by the
+     * fraction of the signature it shares, with equal scores broken by the lower
+     * ID ranking higher
+     *
+     * @param id the ID of the set to compare with
+     * @param n  the maximum number of IDs to return
+     * @return the IDs, most similar first (never including the ID itself), or an
+     *         empty array if the ID has no set or n is not positive
+     */
+    public int[] getSimilar(int id, int n) {
+        int ordinal = ordinals.getOrDefault(id, NONE);
+        if (n <= 0 || ordinal == NONE || !indexed[ordinal]) {
+            return new int[0];
+        }
+
+        if (++queryMark == Integer.MAX_VALUE) { // Start the marks again before they wrap
+            Arrays.fill(seen, 0);
+            queryMark = 1;
+        }
+        seen[ordinal] = queryMark;
+
+        FloatTopK topK = new FloatTopK(n);
+        for (int band = 0; band < numBands; band++) {
+            int node = (int) heads[band].getOrDefault(bandKeys[ordinal * numBands + band], NONE);
+            for (int scanned = 0; node != NONE && scanned < MAX_BUCKET_SCAN; scanned++) {
+                int candidate = node / numBands;
+                if (seen[candidate] != queryMark) {
+                    seen[candidate] = queryMark;
+                    topK.offer(estimateSimilarity(ordinal, candidate), ids[candidate]);
+                }
+                node = next[node];
+            }
+        }
+        return topK.getSortedDescendingIds();
+    }
+
+    /**
+     * Function to return the number of IDs with a non-empty set
+     *
+     * @return size of the index
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Function to estimate the Jaccard similarity of the sets of two ordinals, as
+     * the fraction of their signatures they share
+     *
+     * @param first  the first ordinal
+     * @param second the second ordinal
+     * @return the estimated similarity, between 0 and 1
+     */
+    private float estimateSimilarity(int first, int second) {
+        int firstBase = first * numHashes;
+        int secondBase = second * numHashes;
+        int matches = 0;
+        for (int i = 0; i < numHashes; i++) {
+            if (signatures[firstBase + i] == signatures[secondBase + i]) {
+                matches++;
+            }
+        }
+        return (float) matches / numHashes;
+    }
+
+    /**
+     * Function to move an ordinal to the buckets of its changed bands
+     *
+     * @param ordinal      the ordinal
+     * @param changedBands a bit for every band whose rows have changed
+     */
+    private void rebucket(int ordinal, long changedBands) {
+        for (int band = 0; band < numBands; band++) {
+            if ((changedBands & (1L << band)) != 0) {
+                int node = ordinal * numBands + band;
+                unlink(node, band);
+                link(node, band, bandKey(ordinal, band));
+            }
+        }
+    }
+
+    /**
+     * Function to put a node at the front of a bucket
+     *
+     * @param node the node
+     * @param band the band of the node
+     * @param key  the band key of the bucket
+     */
+    private void link(int node, int band, int key) {
+        int head = (int) heads[band].getOrDefault(key, NONE);
+        bandKeys[node] = key;
+        next[node] = head;
+        previous[node] = NONE;
+        if (head == NONE) {
+            heads[band].add(key, node);
+        } else {
+            previous[head] = node;
+            heads[band].replace(key, node);
+        }
+    }
+
+    /**
+     * Function to take a node out of its bucket, dropping the bucket once empty
+     *
+     * @param node the node
+     * @param band the band of the node
+     */
+    private void unlink(int node, int band) {
+        int before = previous[node];
+        int after = next[node];
+        if (before != NONE) {
+            next[before] = after;
+        } else if (after != NONE) {
+            heads[band].replace(bandKeys[node], after);
+        } else {
+            heads[band].remove(bandKeys[node]);
+        }
+        if (after != NONE) {
+            previous[after] = before;
+        }
+    }
+
+    /**
+     * Function to hash the rows of one band of an ordinal's signature into the key
+     * of its bucket. Different rows can share a key, which only adds candidates
+     * that then score lower
+     *
+     * @param ordinal the ordinal
+     * @param band    the band
+     * @return the band key
+     */
+    private int bandKey(int ordinal, int band) {
+        int base = ordinal * numHashes + band * rowsPerBand;
+        int key = 0x811C9DC5;
+        for (int row = 0; row < rowsPerBand; row++) {
+            key = (key ^ signatures[base + row]) * 0x01000193;
+        }
+        return mix(key);
+    }
+
+    /**
+     * Function to compute one of the hash functions of an element
+     *
+     * @param element the element
+     * @param i       the index of the hash function
+     * @return the hash
+     */
+    private int hash(int element, int i) {
+        return mix(element ^ seeds[i]);
+    }
+
+    /**
+     * Function to scramble the bits of an integer (the MurmurHash3 finaliser)
+     *
+     * @param value the integer
+     * @return the scrambled integer
+     */
+    private static int mix(int value) {
+        value ^= value >>> 16;
+        value *= 0x85EBCA6B;
+        value ^= value >>> 13;
+        value *= 0xC2B2AE35;
+        value ^= value >>> 16;
+        return value;
+    }
+
+    /**
+     * Function to return the ordinal of an ID, giving it the next free ordinal
+     * (with an empty signature) if it has not been seen before
+     *
+     * @param id the ID
+     * @return the ordinal
+     */
+    private int ordinalOf(int id) {
+        int ordinal = ordinals.getOrDefault(id, NONE);
+        if (ordinal != NONE) {
+            return ordinal;
+        }
+
+        if (numOrdinals == ids.length) {
+            int newLength = numOrdinals * 2;
+            ids = Arrays.copyOf(ids, newLength);
+            signatures = Arrays.copyOf(signatures, newLength * numHashes);
+            indexed = Arrays.copyOf(indexed, newLength);
+            bandKeys = Arrays.copyOf(bandKeys, newLength * numBands);
+            next = Arrays.copyOf(next, newLength * numBands);
+            previous = Arrays.copyOf(previous, newLength * numBands);
+            seen = Arrays.copyOf(seen, newLength);
+        }
+        ordinal = numOrdinals++;
+        ordinals.put(id, ordinal);
+        ids[ordinal] = id;
+        Arrays.fill(signatures, ordinal * numHashes, (ordinal + 1) * numHashes, EMPTY);
+        return ordinal;
+    }
+}
@@ -33,6 +33,17 @@ public class MyArrayList<E> implements IList<E> {
         }
     }
 
+    public void ensureCapacity(int minCapacity) {
+        if (minCapacity > this.capacity) {
+            this.capacity = minCapacity;
+            Object[] tmp = new Object[this.capacity];
+            for (int i = 0; i < this.size; i++) {
+                tmp[i] = this.array[i];
+            }
+            this.array = tmp;
+        }
+    }
+
     public boolean contains(E element) {
         for (int i = 0; i < size; i++) {
             if (element.equals(this.array[i])) {return true;}
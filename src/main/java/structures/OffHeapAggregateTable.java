@@ -0,0 +1,670 @@
+package structures;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ *
+ * My implementation of a table of running aggregates (a count and a sum) keyed
+ * by primitive integers, held outside the Java heap in a direct ByteBuffer.
+ * Each slot is a fixed-width record of the key, the count and the sum, placed
+ * with open addressing and linear probing, so the table costs one buffer no
+ * matter how many keys it holds and the garbage collector never has to trace
+ * its entries
+ *
+ * A table can also keep a histogram of each key's values, as a count per bin
+ * stored in the same slot after the sum, so a value is added to the count,
+ * the sum and its bin with one probe. The count is then the total over the
+ * bins. In a table with bins, every value should be added and removed with its
+ * bin
+ *
+ * A key is present exactly while its count is above zero: the first add of a
+ * key inserts it, and the remove that takes its count back to zero deletes it.
+ * Deletion uses backward shifting, so no tombstones are left behind
+ *
+ * The off-heap memory is freed when the table (and so its buffer) is garbage
+ * collected. Resizing allocates a new buffer and drops the old one
+ */
+public class OffHeapAggregateTable {
+    private static final double MAX_LOAD_FACTOR = 0.75;
+
+    // Layout of one slot, in bytes
+    private static final int KEY_OFFSET = 0;
+    private static final int COUNT_OFFSET = 4;
+    private static final int SUM_OFFSET = 8;
+    private static final int BINS_OFFSET = 12; // Followed by one int per bin
+    private static final int NO_BIN = -1;
+
+    private final int numBins;
+    private final int slotBytes;
+
+    private ByteBuffer slots;
+    private int capacity; // Always a power of two, so the index can be masked
+    private int mask;
+    private int shift;
+    private int size;
+    private int resizeThreshold;
+    private final int minCapacity; // The table never shrinks below its initial capacity
+
+    // Only counted while stats are enabled
+    private boolean statsEnabled;
+    private long resizeCount;
+    private long resizeNanos;
+    private long getCount;
+    private long getProbeCount;
+
+    /**
+     * A cursor over the entries of the table, read straight from the buffer
+     */
+    public interface Cursor {
+
+        // Moves to the next entry, returning false once there are none left.
+        public boolean advance();
+
+        public int getKey();
+
+        public int getCount();
+
+        public float getSum();
+
+        // Returns the sum divided by the count.
+        public float getAverage();
+    }
+
+    /**
+     * Constructor for the table, without histograms
+     *
+     * @param expectedSize the number of keys expected, used to size the table so
+     *                     that no resizing is needed until it is exceeded
+     */
+    public OffHeapAggregateTable(int expectedSize) {
+        this(0, expectedSize);
+    }
+
+    /**
+     * Constructor for the table, keeping a histogram of each key's values
+     *
+     * @param numBins      the number of bins in every histogram
+     * @param expectedSize the number of keys expected, used to size the table so
+     *                     that no resizing is needed until it is exceeded
+     */
+    public OffHeapAggregateTable(int numBins, int expectedSize) {
+        this.numBins = numBins;
+        this.slotBytes = BINS_OFFSET + numBins * 4;
+        allocate(tableSizeFor(expectedSize));
+        this.minCapacity = capacity;
+        this.size = 0;
+    }
+
+    /**
+     * Function to add a value to the aggregate of a key, inserting the key if it
+     * is not already present
+     *
+     * @param key   the integer key
+     * @param value the value to add to the sum
+     * @return the count of the key after the addition
+     */
+    public int add(int key, float value) {
+        return merge(key, 1, value, NO_BIN, null);
+    }
+
+    /**
+     * Function to add a value to the aggregate of a key and count it in a bin of
+     * the key's histogram, inserting the key if it is not already present
+     *
+     * @param key   the integer key
+     * @param value the value to add to the sum
+     * @param bin   the bin of the value
+     * @return the count of the key after the addition
+     */
+    public int add(int key, float value, int bin) {
+        return merge(key, 1, value, bin, null);
+    }
+
+    /**
+     * Function to add a whole aggregate (such as an entry of another table) to
+     * the aggregate of a key, inserting the key if it is not already present
+     *
+     * @param key   the integer key
+     * @param count the count to add, which must be above zero
+     * @param sum   the sum to add
+     * @return the count of the key after the addition
+     */
+    public int merge(int key, int count, float sum) {
+        return merge(key, count, sum, NO_BIN, null);
+    }
+
+    /**
+     * Function to add a whole aggregate and histogram to those of a key,
+     * inserting the key if it is not already present
+     *
+     * @param key   the integer key
+     * @param count the count to add, which must be above zero
+     * @param sum   the sum to add
+     * @param bins  the count to add to each bin, which add up to the count
+     * @return the count of the key after the addition
+     */
+    public int merge(int key, int count, float sum, int[] bins) {
+        return merge(key, count, sum, NO_BIN, bins);
+    }
+
+    /**
+     * Function to add to the aggregate of a key, and to its histogram either one
+     * value in a bin or a count per bin
+     *
+     * @param key   the integer key
+     * @param count the count to add, which must be above zero
+     * @param sum   the sum to add
+     * @param bin   the bin to count one value in, or NO_BIN
+     * @param bins  the count to add to each bin, or null
+     * @return the count of the key after the addition
+     */
+    private int merge(int key, int count, float sum, int bin, int[] bins) {
+        int slot = findSlot(key);
+        if (slot == -1) {
+            if (size >= resizeThreshold) {
+                resize(capacity * 2);
+            }
+            slot = hash(key);
+            while (countAt(slot) != 0) {
+                slot = (slot + 1) & mask;
+            }
+            int offset = slot * slotBytes;
+            slots.putInt(offset + KEY_OFFSET, key);
+            slots.putInt(offset + COUNT_OFFSET, count);
+            slots.putFloat(offset + SUM_OFFSET, sum);
+            for (int i = 0; i < numBins; i++) {
+                slots.putInt(offset + BINS_OFFSET + i * 4, 0); // A deleted key may have left counts behind
+            }
+            addToBins(offset, bin, bins);
+            size++;
+            return count;
+        }
+
+        int offset = slot * slotBytes;
+        int newCount = slots.getInt(offset + COUNT_OFFSET) + count;
+        slots.putInt(offset + COUNT_OFFSET, newCount);
+        slots.putFloat(offset + SUM_OFFSET, slots.getFloat(offset + SUM_OFFSET) + sum);
+        addToBins(offset, bin, bins);
+        return newCount;
+    }
+
+    /**
+     * Function to add to the bins of a slot, either one value in a bin or a count
+     * per bin
+     *
+     * @param offset the offset of the slot
+     * @param bin    the bin to count one value in, or NO_BIN
+     * @param bins   the count to add to each bin, or null
+     */
+    private void addToBins(int offset, int bin, int[] bins) {
+        if (bin != NO_BIN) {
+            int binOffset = offset + BINS_OFFSET + bin * 4;
+            slots.putInt(binOffset, slots.getInt(binOffset) + 1);
+        } else if (bins != null) {
+            for (int i = 0; i < numBins; i++) {
+                int binOffset = offset + BINS_OFFSET + i * 4;
+                slots.putInt(binOffset, slots.getInt(binOffset) + bins[i]);
+            }
+        }
+    }
+
+    /**
+     * Function to take a value out of the aggregate of a key, deleting the key
+     * once its count reaches zero
+     *
+     * @param key   the integer key
+     * @param value the value to subtract from the sum
+     * @return the count of the key after the removal, or -1 if the key is not
+     *         present
+     */
+    public int remove(int key, float value) {
+        return remove(key, value, NO_BIN);
+    }
+
+    /**
+     * Function to take a value out of the aggregate of a key and out of a bin of
+     * its histogram, deleting the key once its count reaches zero
+     *
+     * @param key   the integer key
+     * @param value the value to subtract from the sum
+     * @param bin   the bin the value was counted in
+     * @return the count of the key after the removal, or -1 if the key is not
+     *         present
+     */
+    public int remove(int key, float value, int bin) {
+        int slot = findSlot(key);
+        if (slot == -1) {
+            return -1;
+        }
+
+        int offset = slot * slotBytes;
+        int count = slots.getInt(offset + COUNT_OFFSET) - 1;
+        if (count > 0) {
+            slots.putInt(offset + COUNT_OFFSET, count);
+            slots.putFloat(offset + SUM_OFFSET, slots.getFloat(offset + SUM_OFFSET) - value);
+            if (bin != NO_BIN) {
+                int binOffset = offset + BINS_OFFSET + bin * 4;
+                slots.putInt(binOffset, slots.getInt(binOffset) - 1);
+            }
+            return count;
+        }
+
+        deleteSlot(slot);
+        return 0;
+    }
+
+    /**
+     * Function to replace one value in the aggregate of a key with another,
+     * leaving the count unchanged
+     *
+     * @param key      the integer key
+     * @param oldValue the value to subtract from the sum
+     * @param newValue the value to add to the sum
+     * @return a boolean representing whether the key was present
+     */
+    public boolean update(int key, float oldValue, float newValue) {
+        return update(key, oldValue, newValue, NO_BIN, NO_BIN);
+    }
+
+    /**
+     * Function to replace one value in the aggregate of a key with another, and
+     * move it between the bins of its histogram, leaving the count unchanged
+     *
+     * @param key      the integer key
+     * @param oldValue the value to subtract from the sum
+     * @param newValue the value to add to the sum
+     * @param oldBin   the bin the old value was counted in
+     * @param newBin   the bin to count the new value in
+     * @return a boolean representing whether the key was present
+     */
+    public boolean update(int key, float oldValue, float newValue, int oldBin, int newBin) {
+        int slot = findSlot(key);
+        if (slot == -1) {
+            return false;
+        }
+        int offset = slot * slotBytes;
+        float sum = slots.getFloat(offset + SUM_OFFSET);
+        sum -= oldValue;
+        sum += newValue;
+        slots.putFloat(offset + SUM_OFFSET, sum);
+        if (oldBin != newBin) {
+            int oldOffset = offset + BINS_OFFSET + oldBin * 4;
+            int newOffset = offset + BINS_OFFSET + newBin * 4;
+            slots.putInt(oldOffset, slots.getInt(oldOffset) - 1);
+            slots.putInt(newOffset, slots.getInt(newOffset) + 1);
+        }
+        return true;
+    }
+
+    /**
+     * Function to return the count of a key
+     *
+     * @param key the key to look for
+     * @return the number of values added to the key, 0 if it is not present
+     */
+    public int getCount(int key) {
+        int slot = lookup(key);
+        return (slot == -1) ? 0 : countAt(slot);
+    }
+
+    /**
+     * Function to return the sum of a key
+     *
+     * @param key the key to look for
+     * @return the sum of the values added to the key, 0 if it is not present
+     */
+    public float getSum(int key) {
+        int slot = lookup(key);
+        return (slot == -1) ? 0 : sumAt(slot);
+    }
+
+    /**
+     * Function to return the average of a key
+     *
+     * @param key the key to look for
+     * @return the sum divided by the count, or NaN if the key is not present
+     */
+    public float getAverage(int key) {
+        int slot = lookup(key);
+        return (slot == -1) ? Float.NaN : sumAt(slot) / countAt(slot);
+    }
+
+    /**
+     * Function to copy the histogram of a key into an array
+     *
+     * @param key  the key to look for
+     * @param bins the array to fill, of at least the number of bins (left
+     *             untouched if the key is not present)
+     * @return the count of the key, 0 if it is not present
+     */
+    public int getBins(int key, int[] bins) {
+        int slot = lookup(key);
+        if (slot == -1) {
+            return 0;
+        }
+        int offset = slot * slotBytes + BINS_OFFSET;
+        for (int i = 0; i < numBins; i++) {
+            bins[i] = slots.getInt(offset + i * 4);
+        }
+        return countAt(slot);
+    }
+
+    /**
+     * Function to return the number of bins in every histogram
+     *
+     * @return the number of bins, 0 if the table keeps no histograms
+     */
+    public int getNumBins() {
+        return numBins;
+    }
+
+    /**
+     * Function to check whether a key is present in the table
+     *
+     * @param key the key to look for
+     * @return a boolean representing whether the key is present
+     */
+    public boolean containsKey(int key) {
+        return findSlot(key) != -1;
+    }
+
+    /**
+     * Function to return a cursor over the entries stored in a range of slots, so
+     * the table can be split into segments and scanned in parallel. The table
+     * must not be changed while the cursor is in use
+     *
+     * @param fromSlot the first slot of the range
+     * @param toSlot   the slot after the last slot of the range
+     * @return a cursor positioned before the first entry in the range
+     */
+    public Cursor cursor(int fromSlot, int toSlot) {
+        return new Cursor() {
+            private int slot = fromSlot - 1;
+
+            @Override
+            public boolean advance() {
+                slot++;
+                while (slot < toSlot && countAt(slot) == 0) {
+                    slot++;
+                }
+                return slot < toSlot;
+            }
+
+            @Override
+            public int getKey() {
+                return slots.getInt(slot * slotBytes + KEY_OFFSET);
+            }
+
+            @Override
+            public int getCount() {
+                return countAt(slot);
+            }
+
+            @Override
+            public float getSum() {
+                return sumAt(slot);
+            }
+
+            @Override
+            public float getAverage() {
+                return sumAt(slot) / countAt(slot);
+            }
+        };
+    }
+
+    /**
+     * Function to return a cursor over every entry stored in the table. The table
+     * must not be changed while the cursor is in use
+     *
+     * @return a cursor positioned before the first entry
+     */
+    public Cursor cursor() {
+        return cursor(0, capacity);
+    }
+
+    /**
+     * Function to grow the table ahead of a bulk load, so that the given number
+     * of entries can be added without any resizing. Never shrinks the table
+     *
+     * @param expectedSize the number of entries expected
+     */
+    public void ensureCapacity(int expectedSize) {
+        int needed = tableSizeFor(expectedSize);
+        if (needed > capacity) {
+            resize(needed);
+        }
+    }
+
+    /**
+     * Function to return the capacity (number of slots) of the table
+     *
+     * @return capacity of the table
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Function to return the number of keys in the table
+     *
+     * @return size of the table
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Function to return the number of bytes of off-heap memory the table holds
+     *
+     * @return the size of the buffer in bytes
+     */
+    public long getOffHeapBytes() {
+        return (long) capacity * slotBytes;
+    }
+
+    /**
+     * Function to switch the collection of health statistics on or off. The
+     * counts collected so far are kept
+     *
+     * @param enabled whether to collect statistics
+     */
+    public void setStatsEnabled(boolean enabled) {
+        this.statsEnabled = enabled;
+    }
+
+    /**
+     * Function to return a snapshot of the health of the table, measuring each
+     * entry's probe length as IntObjectOpenHashMap does
+     *
+     * @param name the name of the table, for reports
+     * @return the statistics of the table
+     */
+    public HashTableStats getStats(String name) {
+        int[] histogram = new int[HashTableStats.HISTOGRAM_BUCKETS];
+        int maxProbeLength = 0;
+        for (int slot = 0; slot < capacity; slot++) {
+            if (countAt(slot) != 0) {
+                int probeLength = ((slot - hash(keyAt(slot))) & mask) + 1;
+                maxProbeLength = HashTableStats.record(histogram, probeLength, maxProbeLength);
+            }
+        }
+        return new HashTableStats(name, capacity, size, histogram, maxProbeLength, resizeCount, resizeNanos,
+                getCount, getProbeCount);
+    }
+
+    /**
+     * Function to find the slot of a key for a read, counting the probes when
+     * stats are enabled
+     *
+     * @param key the key to look for
+     * @return the slot index, or -1 if the key is not present
+     */
+    private int lookup(int key) {
+        if (!statsEnabled) {
+            return findSlot(key);
+        }
+        getCount++;
+        int probes = 1;
+        int slot = hash(key);
+        while (countAt(slot) != 0) {
+            if (keyAt(slot) == key) {
+                getProbeCount += probes;
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+            probes++;
+        }
+        getProbeCount += probes;
+        return -1;
+    }
+
+    /**
+     * Function to find the slot holding a key
+     *
+     * @param key the key to look for
+     * @return the slot index, or -1 if the key is not present
+     */
+    private int findSlot(int key) {
+        int slot = hash(key);
+        while (countAt(slot) != 0) {
+            if (keyAt(slot) == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Function to empty a slot, shifting any following entries of the same probe
+     * run back into the gap as long as that does not move them before their home
+     * slot
+     *
+     * @param slot the slot to empty
+     */
+    private void deleteSlot(int slot) {
+        int gap = slot;
+        int next = (gap + 1) & mask;
+        while (countAt(next) != 0) {
+            int home = hash(keyAt(next));
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                copySlot(next, gap);
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        slots.putInt(gap * slotBytes + COUNT_OFFSET, 0);
+        size--;
+
+        // Halve the table once it is a quarter as full as the resize threshold
+        if (size < resizeThreshold / 4 && capacity > minCapacity) {
+            resize(capacity / 2);
+        }
+    }
+
+    private int keyAt(int slot) {
+        return slots.getInt(slot * slotBytes + KEY_OFFSET);
+    }
+
+    private int countAt(int slot) {
+        return slots.getInt(slot * slotBytes + COUNT_OFFSET);
+    }
+
+    private float sumAt(int slot) {
+        return slots.getFloat(slot * slotBytes + SUM_OFFSET);
+    }
+
+    /**
+     * Function to copy the record in one slot over another
+     *
+     * @param from the slot to copy
+     * @param to   the slot to overwrite
+     */
+    private void copySlot(int from, int to) {
+        copyRecord(slots, from * slotBytes, to * slotBytes);
+    }
+
+    /**
+     * Function to copy a whole slot record, including any bins, into the buffer
+     * of the table
+     *
+     * @param source     the buffer holding the record
+     * @param fromOffset the offset of the record in the source buffer
+     * @param toOffset   the offset to copy it to
+     */
+    private void copyRecord(ByteBuffer source, int fromOffset, int toOffset) {
+        // Every field is 4 bytes wide, so the record is copied an int at a time
+        for (int i = 0; i < slotBytes; i += 4) {
+            slots.putInt(toOffset + i, source.getInt(fromOffset + i));
+        }
+    }
+
+    /**
+     * Function to compute the home slot of a key (Fibonacci hashing)
+     *
+     * @param key the key to hash
+     * @return the home slot of the key
+     */
+    private int hash(int key) {
+        return (key * 0x9E3779B9) >>> shift;
+    }
+
+    /**
+     * Function to resize the table and reinsert every entry into a new buffer
+     *
+     * @param newCapacity the new capacity (a power of two)
+     */
+    private void resize(int newCapacity) {
+        long start = statsEnabled ? System.nanoTime() : 0;
+        ByteBuffer oldSlots = slots;
+        int oldCapacity = capacity;
+        allocate(newCapacity);
+
+        for (int i = 0; i < oldCapacity; i++) {
+            int oldOffset = i * slotBytes;
+            if (oldSlots.getInt(oldOffset + COUNT_OFFSET) != 0) {
+                int slot = hash(oldSlots.getInt(oldOffset + KEY_OFFSET));
+                while (countAt(slot) != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                copyRecord(oldSlots, oldOffset, slot * slotBytes);
+            }
+        }
+
+        if (statsEnabled) {
+            resizeCount++;
+            resizeNanos += System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * Function to allocate an empty buffer of a given capacity. Direct buffers
+     * start zeroed, so every slot starts with a count of 0 (empty)
+     *
+     * @param newCapacity the capacity (a power of two)
+     */
+    private void allocate(int newCapacity) {
+        this.slots = ByteBuffer.allocateDirect(newCapacity * slotBytes).order(ByteOrder.nativeOrder());
+        this.capacity = newCapacity;
+        this.mask = newCapacity - 1;
+        this.shift = 32 - Integer.numberOfTrailingZeros(newCapacity);
+        this.resizeThreshold = (int) (newCapacity * MAX_LOAD_FACTOR);
+    }
+
+    /**
+     * Function to find the smallest power of two capacity that holds the expected
+     * number of keys below the maximum load factor
+     *
+     * @param expectedSize the number of keys expected
+     * @return the capacity to use
+     */
+    private static int tableSizeFor(int expectedSize) {
+        int needed = (int) Math.ceil(Math.max(expectedSize, 1) / MAX_LOAD_FACTOR);
+        int tableSize = 2;
+        while (tableSize < needed) {
+            tableSize <<= 1;
+        }
+        return tableSize;
+    }
+}
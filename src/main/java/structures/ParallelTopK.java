@@ -0,0 +1,204 @@
+package structures;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ *
+ * Helper for running a top-K selection over a range of indexes (hash table
+ * slots or dense ordinals) in parallel. The range is split in half
+ * recursively on a fork-join pool (the caller's own pool when it runs on a
+ * fork-join worker, otherwise the common pool) until each segment is no larger
+ * than SEGMENT_SIZE, each segment fills its own selector, and the selectors are
+ * merged on the way back up. IntTopK and FloatTopK order candidates by score
+ * then ID, so the merged result is exactly the one a single sequential pass
+ * would give. Selectors offer at most one candidate per index, so each
+ * segment's selector is only sized to its segment rather than to K, and a large
+ * K does not cost a K-sized selector for every segment. Below
+ * PARALLEL_THRESHOLD entries, or when the pool only has one worker, the whole
+ * range is scanned on the calling thread, as splitting would cost more than it
+ * saves
+ */
+public final class ParallelTopK {
+    public static final int PARALLEL_THRESHOLD = 1 << 16;
+    private static final int SEGMENT_SIZE = 1 << 13;
+
+    /**
+     * An interface for offering every candidate in a range of indexes to an
+     * integer scored selector.
+     */
+    @FunctionalInterface
+    public interface IntRangeSelector {
+
+        // Offers the candidates at indexes from (inclusive) to to (exclusive) to the selector.
+        public void select(int from, int to, IntTopK topK);
+    }
+
+    /**
+     * An interface for offering every candidate in a range of indexes to a float
+     * scored selector.
+     */
+    @FunctionalInterface
+    public interface FloatRangeSelector {
+
+        // Offers the candidates at indexes from (inclusive) to to (exclusive) to the selector.
+        public void select(int from, int to, FloatTopK topK);
+    }
+
+    private ParallelTopK() {
+    }
+
+    /**
+     * Function to find the IDs with the K highest integer scores over a range of
+     * indexes
+     *
+     * @param rangeSize  the number of indexes (0 to rangeSize - 1) to scan
+     * @param numEntries the number of candidates in the range, used to decide
+     *                   whether to run in parallel and to size the selector
+     * @param k          the maximum number of IDs to return
+     * @param selector   the function offering the candidates in a sub-range
+     * @return the IDs sorted by descending score
+     */
+    public static int[] selectInt(int rangeSize, int numEntries, int k, IntRangeSelector selector) {
+        if (k <= 0) {
+            return new int[0];
+        }
+        IntTopK topK;
+        if (!runInParallel(numEntries)) {
+            topK = new IntTopK(Math.min(k, numEntries));
+            selector.select(0, rangeSize, topK);
+        } else {
+            topK = pool().invoke(new IntSegmentTask(0, rangeSize, k, selector));
+        }
+        return topK.getSortedDescendingIds();
+    }
+
+    /**
+     * Function to find the IDs with the K highest float scores over a range of
+     * indexes
+     *
+     * @param rangeSize  the number of indexes (0 to rangeSize - 1) to scan
+     * @param numEntries the number of candidates in the range, used to decide
+     *                   whether to run in parallel and to size the selector
+     * @param k          the maximum number of IDs to return
+     * @param selector   the function offering the candidates in a sub-range
+     * @return the IDs sorted by descending score
+     */
+    public static int[] selectFloat(int rangeSize, int numEntries, int k, FloatRangeSelector selector) {
+        if (k <= 0) {
+            return new int[0];
+        }
+        FloatTopK topK;
+        if (!runInParallel(numEntries)) {
+            topK = new FloatTopK(Math.min(k, numEntries));
+            selector.select(0, rangeSize, topK);
+        } else {
+            topK = pool().invoke(new FloatSegmentTask(0, rangeSize, k, selector));
+        }
+        return topK.getSortedDescendingIds();
+    }
+
+    /**
+     * Function to decide whether a scan is worth splitting across threads
+     *
+     * @param numEntries the number of candidates to scan
+     * @return a boolean representing whether to run the scan in parallel
+     */
+    private static boolean runInParallel(int numEntries) {
+        return numEntries >= PARALLEL_THRESHOLD && pool().getParallelism() > 1;
+    }
+
+    /**
+     * Function to get the pool to split a scan across: the pool the calling
+     * thread works for, if any, so a caller can run the scan on a pool of its
+     * own, otherwise the common pool
+     *
+     * @return the fork-join pool to run the segment tasks on
+     */
+    private static ForkJoinPool pool() {
+        return ForkJoinTask.inForkJoinPool() ? ForkJoinTask.getPool() : ForkJoinPool.commonPool();
+    }
+
+    /**
+     * Task selecting the top K of one segment of an integer scored range
+     */
+    @SuppressWarnings("serial")
+    private static class IntSegmentTask extends RecursiveTask<IntTopK> {
+        private final int from;
+        private final int to;
+        private final int k;
+        private final IntRangeSelector selector;
+
+        IntSegmentTask(int from, int to, int k, IntRangeSelector selector) {
+            this.from = from;
+            this.to = to;
+            this.k = k;
+            this.selector = selector;
+        }
+
+        @Override
+        protected IntTopK compute() {
+            if (to - from <= SEGMENT_SIZE) {
+                IntTopK topK = new IntTopK(Math.min(k, to - from));
+                selector.select(from, to, topK);
+                return topK;
+            }
+            // Split the segment in half, scan the left half on another worker
+            int middle = (from + to) >>> 1;
+            IntSegmentTask left = new IntSegmentTask(from, middle, k, selector);
+            left.fork();
+            IntTopK right = new IntSegmentTask(middle, to, k, selector).compute();
+            IntTopK leftTopK = left.join();
+            // The halves each hold at most half the segment, so only a K larger than
+            // a half needs a bigger selector to merge into
+            IntTopK topK = (k <= (to - middle)) ? right : new IntTopK(Math.min(k, to - from));
+            if (topK != right) {
+                topK.merge(right);
+            }
+            topK.merge(leftTopK);
+            return topK;
+        }
+    }
+
+    /**
+     * Task selecting the top K of one segment of a float scored range
+     */
+    @SuppressWarnings("serial")
+    private static class FloatSegmentTask extends RecursiveTask<FloatTopK> {
+        private final int from;
+        private final int to;
+        private final int k;
+        private final FloatRangeSelector selector;
+
+        FloatSegmentTask(int from, int to, int k, FloatRangeSelector selector) {
+            this.from = from;
+            this.to = to;
+            this.k = k;
+            this.selector = selector;
+        }
+
+        @Override
+        protected FloatTopK compute() {
+            if (to - from <= SEGMENT_SIZE) {
+                FloatTopK topK = new FloatTopK(Math.min(k, to - from));
+                selector.select(from, to, topK);
+                return topK;
+            }
+            // Split the segment in half, scan the left half on another worker
+            int middle = (from + to) >>> 1;
+            FloatSegmentTask left = new FloatSegmentTask(from, middle, k, selector);
+            left.fork();
+            FloatTopK right = new FloatSegmentTask(middle, to, k, selector).compute();
+            FloatTopK leftTopK = left.join();
+            // The halves each hold at most half the segment, so only a K larger than
+            // a half needs a bigger selector to merge into
+            FloatTopK topK = (k <= (to - middle)) ? right : new FloatTopK(Math.min(k, to - from));
+            if (topK != right) {
+                topK.merge(right);
+            }
+            topK.merge(leftTopK);
+            return topK;
+        }
+    }
+}
@@ -0,0 +1,783 @@
+package structures;
+
+import java.util.Arrays;
+
+/**
+ *
+ * My implementation of a compressed set of integers in the style of Roaring
+ * bitmaps, for posting lists (the films of a person or a keyword) that need
+ * fast set operations
+ *
+ * Each integer is split into its high 16 bits, which select a container, and
+ * its low 16 bits, which are stored in it. The containers are kept sorted by
+ * their high bits, and each one uses whichever of three forms suits the
+ * values it holds:
+ * - an array container, a sorted char[] of the values, for up to
+ * ARRAY_MAX_SIZE values
+ * - a bitmap container, a fixed 8KB long[] with one bit per possible value,
+ * for denser containers
+ * - a run container, sorted (start, length - 1) pairs, for values that form
+ * long consecutive runs. Only made by runOptimize()
+ *
+ * and, or and andNot work a container at a time, skipping every container
+ * whose high bits are not in both (or either) sets, and combine two bitmaps
+ * a word at a time. andCardinality counts an intersection without building
+ * it
+ */
+public class RoaringBitmap {
+    // Above this many values a bitmap container (8KB) is smaller than an array
+    private static final int ARRAY_MAX_SIZE = 4096;
+    private static final int BITMAP_WORDS = 1 << 10; // 65536 bits
+
+    private char[] highKeys;
+    private Container[] containers;
+    private int numContainers;
+
+    /**
+     * Constructor for an empty bitmap
+     */
+    public RoaringBitmap() {
+        // Most posting lists only span one container, so start with room for one
+        this.highKeys = new char[1];
+        this.containers = new Container[1];
+        this.numContainers = 0;
+    }
+
+    /**
+     * Function to create a bitmap holding the given values
+     *
+     * @param values the values to add, in any order and with any duplicates
+     * @return the bitmap
+     */
+    public static RoaringBitmap of(int... values) {
+        RoaringBitmap bitmap = new RoaringBitmap();
+        for (int value : values) {
+            bitmap.add(value);
+        }
+        return bitmap;
+    }
+
+    /**
+     * Function to add a value to the set
+     *
+     * @param value the value to add
+     * @return a boolean representing whether the value was added, false if it was
+     *         already present
+     */
+    public boolean add(int value) {
+        char high = (char) (value >>> 16);
+        int index = findContainer(high);
+        if (index < 0) {
+            index = -index - 1;
+            insertContainer(index, high, new ArrayContainer());
+        }
+        Container container = containers[index];
+        int before = container.cardinality();
+        container = container.add((char) value);
+        containers[index] = container;
+        return container.cardinality() > before;
+    }
+
+    /**
+     * Function to remove a value from the set
+     *
+     * @param value the value to remove
+     * @return a boolean representing whether the value was removed, false if it
+     *         was not present
+     */
+    public boolean remove(int value) {
+        int index = findContainer((char) (value >>> 16));
+        if (index < 0) {
+            return false;
+        }
+        Container container = containers[index];
+        int before = container.cardinality();
+        container = container.remove((char) value);
+        if (container.cardinality() == before) {
+            return false;
+        }
+        if (container.cardinality() == 0) {
+            removeContainer(index);
+        } else {
+            containers[index] = container;
+        }
+        return true;
+    }
+
+    /**
+     * Function to check whether a value is in the set
+     *
+     * @param value the value to look for
+     * @return a boolean representing whether the value is present
+     */
+    public boolean contains(int value) {
+        int index = findContainer((char) (value >>> 16));
+        return index >= 0 && containers[index].contains((char) value);
+    }
+
+    /**
+     * Function to return the number of values in the set
+     *
+     * @return the cardinality of the set
+     */
+    public int getCardinality() {
+        int cardinality = 0;
+        for (int i = 0; i < numContainers; i++) {
+            cardinality += containers[i].cardinality();
+        }
+        return cardinality;
+    }
+
+    /**
+     * Function to check whether the set is empty
+     *
+     * @return a boolean representing whether the set has no values
+     */
+    public boolean isEmpty() {
+        return numContainers == 0;
+    }
+
+    /**
+     * Function to return the values in the set
+     *
+     * @return the values, in ascending (unsigned) order
+     */
+    public int[] toArray() {
+        int[] result = new int[getCardinality()];
+        int position = 0;
+        for (int i = 0; i < numContainers; i++) {
+            position = containers[i].copyTo(result, position, highKeys[i] << 16);
+        }
+        return result;
+    }
+
+    /**
+     * Function to convert every container that would be smaller as runs of
+     * consecutive values into a run container. Best called once a set has been
+     * built, as later additions convert a run container back
+     */
+    public void runOptimize() {
+        for (int i = 0; i < numContainers; i++) {
+            containers[i] = containers[i].runOptimize();
+        }
+    }
+
+    /**
+     * Function to return the intersection of two sets
+     *
+     * @param a the first set
+     * @param b the second set
+     * @return a new set of the values in both
+     */
+    public static RoaringBitmap and(RoaringBitmap a, RoaringBitmap b) {
+        RoaringBitmap result = new RoaringBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < a.numContainers && j < b.numContainers) {
+            if (a.highKeys[i] < b.highKeys[j]) {
+                i++;
+            } else if (a.highKeys[i] > b.highKeys[j]) {
+                j++;
+            } else {
+                Container container = a.containers[i].and(b.containers[j]);
+                if (container.cardinality() > 0) {
+                    result.appendContainer(a.highKeys[i], container);
+                }
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Function to return the number of values in both of two sets, without
+     * building the intersection
+     *
+     * @param a the first set
+     * @param b the second set
+     * @return the cardinality of the intersection
+     */
+    public static int andCardinality(RoaringBitmap a, RoaringBitmap b) {
+        int cardinality = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.numContainers && j < b.numContainers) {
+            if (a.highKeys[i] < b.highKeys[j]) {
+                i++;
+            } else if (a.highKeys[i] > b.highKeys[j]) {
+                j++;
+            } else {
+                cardinality += a.containers[i].andCardinality(b.containers[j]);
+                i++;
+                j++;
+            }
+        }
+        return cardinality;
+    }
+
+    /**
+     * Function to return the union of two sets
+     *
+     * @param a the first set
+     * @param b the second set
+     * @return a new set of the values in either
+     */
+    public static RoaringBitmap or(RoaringBitmap a, RoaringBitmap b) {
+        RoaringBitmap result = new RoaringBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < a.numContainers || j < b.numContainers) {
+            if (j == b.numContainers || (i < a.numContainers && a.highKeys[i] < b.highKeys[j])) {
+                result.appendContainer(a.highKeys[i], a.containers[i].copy());
+                i++;
+            } else if (i == a.numContainers || a.highKeys[i] > b.highKeys[j]) {
+                result.appendContainer(b.highKeys[j], b.containers[j].copy());
+                j++;
+            } else {
+                result.appendContainer(a.highKeys[i], a.containers[i].or(b.containers[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Function to return the difference of two sets
+     *
+     * @param a the set to take values from
+     * @param b the set of values to leave out
+     * @return a new set of the values in a but not in b
+     */
+    public static RoaringBitmap andNot(RoaringBitmap a, RoaringBitmap b) {
+        RoaringBitmap result = new RoaringBitmap();
+        int j = 0;
+        for (int i = 0; i < a.numContainers; i++) {
+            while (j < b.numContainers && b.highKeys[j] < a.highKeys[i]) {
+                j++;
+            }
+            Container container = (j < b.numContainers && b.highKeys[j] == a.highKeys[i])
+                    ? a.containers[i].andNot(b.containers[j])
+                    : a.containers[i].copy();
+            if (container.cardinality() > 0) {
+                result.appendContainer(a.highKeys[i], container);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Function to find the container for some high bits
+     *
+     * @param high the high 16 bits
+     * @return the index of the container, or (-(insertion point) - 1) if there is
+     *         none
+     */
+    private int findContainer(char high) {
+        return Arrays.binarySearch(highKeys, 0, numContainers, high);
+    }
+
+    private void insertContainer(int index, char high, Container container) {
+        ensureContainerCapacity();
+        System.arraycopy(highKeys, index, highKeys, index + 1, numContainers - index);
+        System.arraycopy(containers, index, containers, index + 1, numContainers - index);
+        highKeys[index] = high;
+        containers[index] = container;
+        numContainers++;
+    }
+
+    private void appendContainer(char high, Container container) {
+        ensureContainerCapacity();
+        highKeys[numContainers] = high;
+        containers[numContainers] = container;
+        numContainers++;
+    }
+
+    private void removeContainer(int index) {
+        System.arraycopy(highKeys, index + 1, highKeys, index, numContainers - index - 1);
+        System.arraycopy(containers, index + 1, containers, index, numContainers - index - 1);
+        numContainers--;
+        containers[numContainers] = null;
+    }
+
+    private void ensureContainerCapacity() {
+        if (numContainers == highKeys.length) {
+            highKeys = Arrays.copyOf(highKeys, numContainers * 2);
+            containers = Arrays.copyOf(containers, numContainers * 2);
+        }
+    }
+
+    /**
+     * The values of one container, all sharing the same high 16 bits. Operations
+     * that change the values return the container to use from then on, which is
+     * a different form if the old one no longer suits the values
+     */
+    private abstract static class Container {
+        abstract int cardinality();
+
+        abstract boolean contains(char value);
+
+        abstract Container add(char value);
+
+        abstract Container remove(char value);
+
+        // Copies the values, each ORed with the high bits, into an array from a position, returning the next position.
+        abstract int copyTo(int[] array, int position, int high);
+
+        abstract Container copy();
+
+        abstract BitmapContainer toBitmap();
+
+        abstract Container runOptimize();
+
+        Container and(Container other) {
+            if (this instanceof ArrayContainer) {
+                return ((ArrayContainer) this).filter(other, true);
+            }
+            if (other instanceof ArrayContainer) {
+                return ((ArrayContainer) other).filter(this, true);
+            }
+            return toBitmap().andBitmap(other.toBitmap());
+        }
+
+        int andCardinality(Container other) {
+            if (this instanceof ArrayContainer) {
+                return ((ArrayContainer) this).countIn(other);
+            }
+            if (other instanceof ArrayContainer) {
+                return ((ArrayContainer) other).countIn(this);
+            }
+            return toBitmap().andCardinalityBitmap(other.toBitmap());
+        }
+
+        Container or(Container other) {
+            if (this instanceof ArrayContainer && other instanceof ArrayContainer) {
+                return ((ArrayContainer) this).orArray((ArrayContainer) other);
+            }
+            return toBitmap().orBitmap(other.toBitmap());
+        }
+
+        Container andNot(Container other) {
+            if (this instanceof ArrayContainer) {
+                return ((ArrayContainer) this).filter(other, false);
+            }
+            return toBitmap().andNotBitmap(other.toBitmap());
+        }
+    }
+
+    /**
+     * A container holding its values as a sorted array
+     */
+    private static final class ArrayContainer extends Container {
+        private char[] values;
+        private int cardinality;
+
+        ArrayContainer() {
+            this(new char[2], 0);
+        }
+
+        ArrayContainer(char[] values, int cardinality) {
+            this.values = values;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        boolean contains(char value) {
+            return Arrays.binarySearch(values, 0, cardinality, value) >= 0;
+        }
+
+        @Override
+        Container add(char value) {
+            int index = Arrays.binarySearch(values, 0, cardinality, value);
+            if (index >= 0) {
+                return this;
+            }
+            if (cardinality == ARRAY_MAX_SIZE) {
+                return toBitmap().add(value);
+            }
+            index = -index - 1;
+            if (cardinality == values.length) {
+                values = Arrays.copyOf(values, Math.min(cardinality * 2, ARRAY_MAX_SIZE));
+            }
+            System.arraycopy(values, index, values, index + 1, cardinality - index);
+            values[index] = value;
+            cardinality++;
+            return this;
+        }
+
+        @Override
+        Container remove(char value) {
+            int index = Arrays.binarySearch(values, 0, cardinality, value);
+            if (index >= 0) {
+                System.arraycopy(values, index + 1, values, index, cardinality - index - 1);
+                cardinality--;
+            }
+            return this;
+        }
+
+        @Override
+        int copyTo(int[] array, int position, int high) {
+            for (int i = 0; i < cardinality; i++) {
+                array[position++] = high | values[i];
+            }
+            return position;
+        }
+
+        @Override
+        Container copy() {
+            return new ArrayContainer(Arrays.copyOf(values, Math.max(cardinality, 1)), cardinality);
+        }
+
+        @Override
+        BitmapContainer toBitmap() {
+            BitmapContainer bitmap = new BitmapContainer();
+            for (int i = 0; i < cardinality; i++) {
+                bitmap.set(values[i]);
+            }
+            return bitmap;
+        }
+
+        @Override
+        Container runOptimize() {
+            RunContainer runs = RunContainer.fromSorted(values, cardinality);
+            return (runs.sizeInBytes() < 2 * cardinality) ? runs : this;
+        }
+
+        /**
+         * Function to keep the values of this container that are (or are not) in
+         * another
+         *
+         * @param other the container to check each value against
+         * @param keep  true to keep the values in the other container, false to
+         *              keep those not in it
+         * @return a new array container of the kept values
+         */
+        ArrayContainer filter(Container other, boolean keep) {
+            char[] kept = new char[Math.max(cardinality, 1)];
+            int count = 0;
+            for (int i = 0; i < cardinality; i++) {
+                if (other.contains(values[i]) == keep) {
+                    kept[count++] = values[i];
+                }
+            }
+            return new ArrayContainer(kept, count);
+        }
+
+        int countIn(Container other) {
+            int count = 0;
+            for (int i = 0; i < cardinality; i++) {
+                if (other.contains(values[i])) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        Container orArray(ArrayContainer other) {
+            if (cardinality + other.cardinality > ARRAY_MAX_SIZE) {
+                return toBitmap().orBitmap(other.toBitmap());
+            }
+            char[] merged = new char[Math.max(cardinality + other.cardinality, 1)];
+            int i = 0;
+            int j = 0;
+            int count = 0;
+            while (i < cardinality && j < other.cardinality) {
+                char a = values[i];
+                char b = other.values[j];
+                if (a <= b) {
+                    merged[count++] = a;
+                    i++;
+                    if (a == b) {
+                        j++;
+                    }
+                } else {
+                    merged[count++] = b;
+                    j++;
+                }
+            }
+            while (i < cardinality) {
+                merged[count++] = values[i++];
+            }
+            while (j < other.cardinality) {
+                merged[count++] = other.values[j++];
+            }
+            return new ArrayContainer(merged, count);
+        }
+    }
+
+    /**
+     * A container holding one bit for every possible value
+     */
+    private static final class BitmapContainer extends Container {
+        private final long[] words;
+        private int cardinality;
+
+        BitmapContainer() {
+            this(new long[BITMAP_WORDS], 0);
+        }
+
+        BitmapContainer(long[] words, int cardinality) {
+            this.words = words;
+            this.cardinality = cardinality;
+        }
+
+        void set(char value) {
+            long before = words[value >>> 6];
+            words[value >>> 6] = before | (1L << value);
+            if (before != words[value >>> 6]) {
+                cardinality++;
+            }
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        boolean contains(char value) {
+            return (words[value >>> 6] & (1L << value)) != 0;
+        }
+
+        @Override
+        Container add(char value) {
+            set(value);
+            return this;
+        }
+
+        @Override
+        Container remove(char value) {
+            if (contains(value)) {
+                words[value >>> 6] &= ~(1L << value);
+                cardinality--;
+                if (cardinality <= ARRAY_MAX_SIZE) {
+                    return toArrayContainer();
+                }
+            }
+            return this;
+        }
+
+        @Override
+        int copyTo(int[] array, int position, int high) {
+            for (int word = 0; word < BITMAP_WORDS; word++) {
+                long bits = words[word];
+                while (bits != 0) {
+                    array[position++] = high | (word << 6) | Long.numberOfTrailingZeros(bits);
+                    bits &= bits - 1;
+                }
+            }
+            return position;
+        }
+
+        @Override
+        Container copy() {
+            return new BitmapContainer(words.clone(), cardinality);
+        }
+
+        @Override
+        BitmapContainer toBitmap() {
+            return this;
+        }
+
+        @Override
+        Container runOptimize() {
+            char[] sorted = new char[cardinality];
+            int count = 0;
+            for (int word = 0; word < BITMAP_WORDS; word++) {
+                long bits = words[word];
+                while (bits != 0) {
+                    sorted[count++] = (char) ((word << 6) | Long.numberOfTrailingZeros(bits));
+                    bits &= bits - 1;
+                }
+            }
+            RunContainer runs = RunContainer.fromSorted(sorted, cardinality);
+            return (runs.sizeInBytes() < BITMAP_WORDS * 8) ? runs : this;
+        }
+
+        /**
+         * Function to turn a result into the smaller of the two forms
+         *
+         * @return an array container if there are few enough values, otherwise
+         *         this container
+         */
+        Container shrink() {
+            return (cardinality <= ARRAY_MAX_SIZE) ? toArrayContainer() : this;
+        }
+
+        ArrayContainer toArrayContainer() {
+            char[] values = new char[Math.max(cardinality, 1)];
+            int count = 0;
+            for (int word = 0; word < BITMAP_WORDS; word++) {
+                long bits = words[word];
+                while (bits != 0) {
+                    values[count++] = (char) ((word << 6) | Long.numberOfTrailingZeros(bits));
+                    bits &= bits - 1;
+                }
+            }
+            return new ArrayContainer(values, count);
+        }
+
+        Container andBitmap(BitmapContainer other) {
+            long[] result = new long[BITMAP_WORDS];
+            int count = 0;
+            for (int i = 0; i < BITMAP_WORDS; i++) {
+                result[i] = words[i] & other.words[i];
+                count += Long.bitCount(result[i]);
+            }
+            return new BitmapContainer(result, count).shrink();
+        }
+
+        int andCardinalityBitmap(BitmapContainer other) {
+            int count = 0;
+            for (int i = 0; i < BITMAP_WORDS; i++) {
+                count += Long.bitCount(words[i] & other.words[i]);
+            }
+            return count;
+        }
+
+        Container orBitmap(BitmapContainer other) {
+            long[] result = new long[BITMAP_WORDS];
+            int count = 0;
+            for (int i = 0; i < BITMAP_WORDS; i++) {
+                result[i] = words[i] | other.words[i];
+                count += Long.bitCount(result[i]);
+            }
+            return new BitmapContainer(result, count).shrink();
+        }
+
+        Container andNotBitmap(BitmapContainer other) {
+            long[] result = new long[BITMAP_WORDS];
+            int count = 0;
+            for (int i = 0; i < BITMAP_WORDS; i++) {
+                result[i] = words[i] & ~other.words[i];
+                count += Long.bitCount(result[i]);
+            }
+            return new BitmapContainer(result, count).shrink();
+        }
+    }
+
+    /**
+     * A container holding its values as runs of consecutive values. Each run is
+     * stored as its first value and its length minus one. Changing the values
+     * turns it back into an array or bitmap container
+     */
+    private static final class RunContainer extends Container {
+        private final char[] runs; // start, length - 1, start, length - 1, ...
+        private final int numRuns;
+        private final int cardinality;
+
+        RunContainer(char[] runs, int numRuns, int cardinality) {
+            this.runs = runs;
+            this.numRuns = numRuns;
+            this.cardinality = cardinality;
+        }
+
+        static RunContainer fromSorted(char[] sorted, int count) {
+            char[] runs = new char[2];
+            int numRuns = 0;
+            int i = 0;
+            while (i < count) {
+                int start = sorted[i];
+                int end = start;
+                while (i + 1 < count && sorted[i + 1] == end + 1) {
+                    end++;
+                    i++;
+                }
+                i++;
+                if (2 * numRuns + 2 > runs.length) {
+                    runs = Arrays.copyOf(runs, runs.length * 2);
+                }
+                runs[2 * numRuns] = (char) start;
+                runs[2 * numRuns + 1] = (char) (end - start);
+                numRuns++;
+            }
+            return new RunContainer(Arrays.copyOf(runs, 2 * numRuns), numRuns, count);
+        }
+
+        int sizeInBytes() {
+            return 4 * numRuns;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        boolean contains(char value) {
+            // Binary search for the last run starting at or before the value
+            int low = 0;
+            int high = numRuns - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                if (runs[2 * middle] <= value) {
+                    low = middle + 1;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            return high >= 0 && value - runs[2 * high] <= runs[2 * high + 1];
+        }
+
+        @Override
+        Container add(char value) {
+            return contains(value) ? this : expand().add(value);
+        }
+
+        @Override
+        Container remove(char value) {
+            return contains(value) ? expand().remove(value) : this;
+        }
+
+        @Override
+        int copyTo(int[] array, int position, int high) {
+            for (int run = 0; run < numRuns; run++) {
+                int start = runs[2 * run];
+                int end = start + runs[2 * run + 1];
+                for (int value = start; value <= end; value++) {
+                    array[position++] = high | value;
+                }
+            }
+            return position;
+        }
+
+        @Override
+        Container copy() {
+            return this; // Immutable, so it can be shared
+        }
+
+        @Override
+        BitmapContainer toBitmap() {
+            BitmapContainer bitmap = new BitmapContainer();
+            for (int run = 0; run < numRuns; run++) {
+                int start = runs[2 * run];
+                int end = start + runs[2 * run + 1];
+                for (int value = start; value <= end; value++) {
+                    bitmap.set((char) value);
+                }
+            }
+            return bitmap;
+        }
+
+        @Override
+        Container runOptimize() {
+            return this;
+        }
+
+        /**
+         * Function to return the values as a changeable container
+         *
+         * @return an array container if there are few enough values, otherwise a
+         *         bitmap container
+         */
+        Container expand() {
+            return toBitmap().shrink();
+        }
+    }
+}
@@ -0,0 +1,382 @@
+package structures;
+
+import java.util.function.BiConsumer;
+
+/**
+ *
+ * My implementation of a hash map making use of open addressing with Robin
+ * Hood hashing, as an alternative to the separate chaining of ChainingHashMap
+ * with the same add/get/remove interface
+ *
+ * Every entry remembers how far it sits from its home slot (its probe
+ * distance). An insert that meets an entry closer to home than itself takes
+ * that slot and carries the displaced entry on, so no entry is ever much
+ * further from home than the rest, and a lookup can stop as soon as it meets
+ * an entry closer to home than the key would be. Removal shifts the following
+ * entries of the run back one slot rather than leaving a tombstone. Together
+ * these keep the spread of probe lengths small even at a load factor of 0.9,
+ * so the slowest lookups stay close to the average
+ *
+ * Probe distances are also bounded: if an insert has to carry an entry
+ * further than MAX_PROBE_DISTANCE slots the table is grown early, rather than
+ * waiting for the load factor to be reached
+ *
+ * Health statistics (probe lengths, resizes and probes per get) can be
+ * switched on with setStatsEnabled, and read with getStats
+ */
+public class RobinHoodHashMap<K, V> {
+    private static final double MAX_LOAD_FACTOR = 0.9;
+    private static final int MAX_PROBE_DISTANCE = 32;
+
+    private Object[] keys; // A null key marks an empty slot
+    private Object[] values;
+    private int[] hashes; // The spread hash of each key, so it is only computed once
+    private int capacity; // Always a power of two, so the index can be masked
+    private int mask;
+    private int shift;
+    private int size;
+    private int resizeThreshold;
+
+    // Only counted while stats are enabled
+    private boolean statsEnabled;
+    private long resizeCount;
+    private long resizeNanos;
+    private long getCount;
+    private long getProbeCount;
+
+    /**
+     * Constructor for the hash map
+     *
+     * @param expectedSize the number of entries expected, used to size the table
+     *                     so that no resizing is needed until it is exceeded
+     */
+    public RobinHoodHashMap(int expectedSize) {
+        int needed = (int) Math.ceil(Math.max(expectedSize, 1) / MAX_LOAD_FACTOR);
+        int tableSize = 2;
+        while (tableSize < needed) {
+            tableSize <<= 1;
+        }
+        allocate(tableSize);
+        this.size = 0;
+    }
+
+    /**
+     * Function to add a key and value to the table, if the key is not already
+     * present
+     *
+     * @param key   the key (cannot be null)
+     * @param value the value to be added
+     * @return a boolean representing a successful addition if the key doesn't
+     *         already exist in the table, false if it does
+     */
+    public boolean add(K key, V value) {
+        if (key == null) {
+            throw new IllegalArgumentException("Null keys cannot be stored in the hash map");
+        }
+        int hash = spread(key.hashCode());
+        if (findSlot(key, hash) != -1) {
+            return false;
+        }
+        if (size >= resizeThreshold) {
+            resize(capacity * 2);
+        }
+        if (insert(key, value, hash) > MAX_PROBE_DISTANCE && size >= capacity / 4) {
+            // A run has grown too long for its load, so spread it over a larger table
+            resize(capacity * 2);
+        }
+        size++;
+        return true;
+    }
+
+    /**
+     * Function to remove a key and its value from the table, shifting the rest of
+     * its run back by one slot
+     *
+     * @param key the key to be removed
+     * @return a boolean value representing if the removal was a success, or the key
+     *         is not present to remove
+     */
+    public boolean remove(K key) {
+        int slot = findSlot(key, spread(key.hashCode()));
+        if (slot == -1) {
+            return false;
+        }
+
+        // Every following entry that is not in its home slot moves back one slot,
+        // the run ends at an empty slot or an entry already at home
+        int next = (slot + 1) & mask;
+        while (keys[next] != null && distance(next) > 0) {
+            keys[slot] = keys[next];
+            values[slot] = values[next];
+            hashes[slot] = hashes[next];
+            slot = next;
+            next = (next + 1) & mask;
+        }
+        keys[slot] = null;
+        values[slot] = null;
+        size--;
+        return true;
+    }
+
+    /**
+     * Function to return the value associated with a key
+     *
+     * @param key the key of the value to be returned
+     * @return the value, or null if the key is not present
+     */
+    @SuppressWarnings("unchecked")
+    public V get(K key) {
+        int hash = spread(key.hashCode());
+        if (statsEnabled) {
+            getCount++;
+            getProbeCount += countProbes(key, hash);
+        }
+        int slot = findSlot(key, hash);
+        return (slot == -1) ? null : (V) values[slot];
+    }
+
+    /**
+     * Function to check whether a key is present in the table
+     *
+     * @param key the key to look for
+     * @return a boolean representing whether the key is present
+     */
+    public boolean containsKey(K key) {
+        return findSlot(key, spread(key.hashCode())) != -1;
+    }
+
+    /**
+     * Function to perform an action on every key and value stored in the table.
+     * The map must not be changed by the action
+     *
+     * @param action the action to perform on each key and value
+     */
+    @SuppressWarnings("unchecked")
+    public void forEachEntry(BiConsumer<? super K, ? super V> action) {
+        for (int slot = 0; slot < capacity; slot++) {
+            if (keys[slot] != null) {
+                action.accept((K) keys[slot], (V) values[slot]);
+            }
+        }
+    }
+
+    /**
+     * Function to return a cursor over the entries stored in the table. The map
+     * must not be changed while the cursor is in use
+     *
+     * @return a cursor positioned before the first entry
+     */
+    public EntryCursor<K, V> cursor() {
+        return new EntryCursor<K, V>() {
+            private int slot = -1;
+
+            @Override
+            public boolean advance() {
+                slot++;
+                while (slot < capacity && keys[slot] == null) {
+                    slot++;
+                }
+                return slot < capacity;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public K getKey() {
+                return (K) keys[slot];
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public V getValue() {
+                return (V) values[slot];
+            }
+        };
+    }
+
+    /**
+     * Function to return the capacity (number of slots) of the table
+     *
+     * @return capacity of the table
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Function to return the number of entries in the table
+     *
+     * @return size of the table
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Function to switch the collection of health statistics on or off. The
+     * counts collected so far are kept
+     *
+     * @param enabled whether to collect statistics
+     */
+    public void setStatsEnabled(boolean enabled) {
+        this.statsEnabled = enabled;
+    }
+
+    /**
+     * Function to return a snapshot of the health of the table. Each entry's
+     * probe length (its distance from home plus one) is measured now, the resize
+     * and get counts are those collected while stats were enabled
+     *
+     * @param name the name of the table, for reports
+     * @return the statistics of the table
+     */
+    public HashTableStats getStats(String name) {
+        int[] histogram = new int[HashTableStats.HISTOGRAM_BUCKETS];
+        int maxProbeLength = 0;
+        for (int slot = 0; slot < capacity; slot++) {
+            if (keys[slot] != null) {
+                maxProbeLength = HashTableStats.record(histogram, distance(slot) + 1, maxProbeLength);
+            }
+        }
+        return new HashTableStats(name, capacity, size, histogram, maxProbeLength, resizeCount, resizeNanos,
+                getCount, getProbeCount);
+    }
+
+    /**
+     * Function to find the slot holding a key. The search stops at an empty slot,
+     * or at an entry closer to its home than the key would be at that slot, as
+     * Robin Hood insertion would have placed the key before it
+     *
+     * @param key  the key to look for
+     * @param hash the spread hash of the key
+     * @return the slot index, or -1 if the key is not present
+     */
+    private int findSlot(Object key, int hash) {
+        int slot = hash >>> shift;
+        for (int dist = 0; keys[slot] != null && distance(slot) >= dist; dist++) {
+            if (hashes[slot] == hash && keys[slot].equals(key)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Function to count the slots a get of a key checks, following the same
+     * search as findSlot
+     *
+     * @param key  the key being looked up
+     * @param hash the spread hash of the key
+     * @return the number of slots checked
+     */
+    private int countProbes(Object key, int hash) {
+        int probes = 1;
+        int slot = hash >>> shift;
+        for (int dist = 0; keys[slot] != null && distance(slot) >= dist; dist++) {
+            if (hashes[slot] == hash && keys[slot].equals(key)) {
+                return probes;
+            }
+            slot = (slot + 1) & mask;
+            probes++;
+        }
+        return probes;
+    }
+
+    /**
+     * Function to place an entry known not to be in the table, swapping it with
+     * any entry it meets that is closer to home, and carrying that entry on
+     *
+     * @param key   the key to place
+     * @param value the value to place
+     * @param hash  the spread hash of the key
+     * @return the furthest distance from home any entry was carried
+     */
+    private int insert(Object key, Object value, int hash) {
+        int slot = hash >>> shift;
+        int dist = 0;
+        int maxDistance = 0;
+        while (keys[slot] != null) {
+            int residentDistance = distance(slot);
+            if (residentDistance < dist) {
+                // Take the slot from the richer entry, and carry it on instead
+                Object displacedKey = keys[slot];
+                Object displacedValue = values[slot];
+                int displacedHash = hashes[slot];
+                keys[slot] = key;
+                values[slot] = value;
+                hashes[slot] = hash;
+                key = displacedKey;
+                value = displacedValue;
+                hash = displacedHash;
+                dist = residentDistance;
+            }
+            slot = (slot + 1) & mask;
+            dist++;
+            maxDistance = Math.max(maxDistance, dist);
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        hashes[slot] = hash;
+        return maxDistance;
+    }
+
+    /**
+     * Function to return how far the entry in a slot is from its home slot
+     *
+     * @param slot the slot of the entry
+     * @return the probe distance of the entry
+     */
+    private int distance(int slot) {
+        return (slot - (hashes[slot] >>> shift)) & mask;
+    }
+
+    /**
+     * Function to spread a hash code over all 32 bits (Fibonacci hashing), so the
+     * top bits used to pick a home slot depend on every bit of the hash code
+     *
+     * @param hashCode the hash code of the key
+     * @return the spread hash
+     */
+    private static int spread(int hashCode) {
+        return hashCode * 0x9E3779B9;
+    }
+
+    /**
+     * Function to resize the table and reinsert every entry
+     *
+     * @param newCapacity the new capacity (a power of two)
+     */
+    private void resize(int newCapacity) {
+        long start = statsEnabled ? System.nanoTime() : 0;
+        Object[] oldKeys = keys;
+        Object[] oldValues = values;
+        int[] oldHashes = hashes;
+        allocate(newCapacity);
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                insert(oldKeys[i], oldValues[i], oldHashes[i]);
+            }
+        }
+
+        if (statsEnabled) {
+            resizeCount++;
+            resizeNanos += System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * Function to allocate empty arrays of a given capacity
+     *
+     * @param newCapacity the capacity (a power of two)
+     */
+    private void allocate(int newCapacity) {
+        this.keys = new Object[newCapacity];
+        this.values = new Object[newCapacity];
+        this.hashes = new int[newCapacity];
+        this.capacity = newCapacity;
+        this.mask = newCapacity - 1;
+        this.shift = 32 - Integer.numberOfTrailingZeros(newCapacity);
+        this.resizeThreshold = (int) (newCapacity * MAX_LOAD_FACTOR);
+    }
+}
@@ -0,0 +1,313 @@
+package structures;
+
+import java.time.LocalDate;
+import java.util.function.Consumer;
+
+/**
+ *
+ * An index of running aggregates (a count and a sum per key) partitioned by
+ * time, so the aggregates over a window of days can be put together without
+ * looking at every value added. Each value goes into two buckets: one for its
+ * UTC day and one for its calendar month. A window is covered by the month
+ * buckets of the months it spans whole, and the day buckets of the part months
+ * at either end, so it costs a few dozen buckets at most plus one per month
+ *
+ * Buckets are small IntLongOpenHashMaps on the Java heap, created on the
+ * first value of their day or month and dropped once they are empty again.
+ * There is one per day with values in it, so keeping them on the heap means
+ * their memory is bounded by -Xmx and freed by the garbage collector like any
+ * other array, rather than being thousands of direct buffers. Days are counted from the epoch in an int, so values more than a
+ * few million years either side of 1970 are not indexed
+ */
+public class TimeBucketIndex {
+    private static final int SECONDS_PER_DAY = 86400;
+
+    private final IntObjectOpenHashMap<Bucket> days; // Epoch day -> aggregates
+    private final IntObjectOpenHashMap<Bucket> months; // Month number -> aggregates
+    private int minDay; // The earliest and latest days ever indexed, so a window can be
+    private int maxDay; // trimmed to them rather than walked over empty years
+
+    /**
+     * Constructor for the index
+     */
+    public TimeBucketIndex() {
+        this.days = new IntObjectOpenHashMap<>(1024);
+        this.months = new IntObjectOpenHashMap<>(64);
+        this.minDay = Integer.MAX_VALUE;
+        this.maxDay = Integer.MIN_VALUE;
+    }
+
+    /**
+     * Function to add a value to the aggregates of a key at a given time
+     *
+     * @param epochSecond the time of the value, in seconds since the epoch (UTC)
+     * @param key         the integer key
+     * @param value       the value to add
+     */
+    public void add(long epochSecond, int key, float value) {
+        long day = Math.floorDiv(epochSecond, SECONDS_PER_DAY);
+        if (!isIndexable(day)) {
+            return;
+        }
+        minDay = Math.min(minDay, (int) day);
+        maxDay = Math.max(maxDay, (int) day);
+        bucket(days, (int) day).add(key, value);
+        bucket(months, monthOf(day)).add(key, value);
+    }
+
+    /**
+     * Function to take a value added at a given time back out of the aggregates
+     * of a key
+     *
+     * @param epochSecond the time the value was added with
+     * @param key         the integer key
+     * @param value       the value to take out
+     */
+    public void remove(long epochSecond, int key, float value) {
+        long day = Math.floorDiv(epochSecond, SECONDS_PER_DAY);
+        if (!isIndexable(day)) {
+            return;
+        }
+        unbucket(days, (int) day, key, value);
+        unbucket(months, monthOf(day), key, value);
+    }
+
+    /**
+     * Function to perform an action on each bucket that together cover a window
+     * of days, whole months as their month bucket and any part months day by
+     * day. Every value added in the window is in exactly one of the buckets
+     * visited. The buckets must not be changed by the action
+     *
+     * @param from   the first day of the window
+     * @param to     the last day of the window (inclusive)
+     * @param action the action to perform on each bucket
+     */
+    public void forEachBucket(LocalDate from, LocalDate to, Consumer<Bucket> action) {
+        long day = Math.max(from.toEpochDay(), minDay);
+        long lastDay = Math.min(to.toEpochDay(), maxDay);
+        while (day <= lastDay) {
+            LocalDate date = LocalDate.ofEpochDay(day);
+            long monthEnd = date.withDayOfMonth(date.lengthOfMonth()).toEpochDay();
+            if (date.getDayOfMonth() == 1 && monthEnd <= lastDay) {
+                visit(months, monthOf(day), action);
+                day = monthEnd + 1;
+            } else {
+                long stop = Math.min(monthEnd, lastDay);
+                for (; day <= stop; day++) {
+                    visit(days, (int) day, action);
+                }
+            }
+        }
+    }
+
+    /**
+     * Function to return the bucket of a day or month, creating it if it does not
+     * exist yet
+     *
+     * @param buckets the day or month buckets
+     * @param number  the day or month number
+     * @return the bucket
+     */
+    private static Bucket bucket(IntObjectOpenHashMap<Bucket> buckets, int number) {
+        Bucket bucket = buckets.get(number);
+        if (bucket == null) {
+            bucket = new Bucket();
+            buckets.add(number, bucket);
+        }
+        return bucket;
+    }
+
+    /**
+     * Function to take a value out of the bucket of a day or month, dropping the
+     * bucket once it is empty
+     *
+     * @param buckets the day or month buckets
+     * @param number  the day or month number
+     * @param key     the integer key
+     * @param value   the value to take out
+     */
+    private static void unbucket(IntObjectOpenHashMap<Bucket> buckets, int number, int key, float value) {
+        Bucket bucket = buckets.get(number);
+        if (bucket != null && bucket.remove(key, value) == 0 && bucket.getSize() == 0) {
+            buckets.remove(number);
+        }
+    }
+
+    /**
+     * Function to perform an action on the bucket of a day or month, if there is
+     * one
+     *
+     * @param buckets the day or month buckets
+     * @param number  the day or month number
+     * @param action  the action to perform
+     */
+    private static void visit(IntObjectOpenHashMap<Bucket> buckets, int number, Consumer<Bucket> action) {
+        Bucket bucket = buckets.get(number);
+        if (bucket != null) {
+            action.accept(bucket);
+        }
+    }
+
+    /**
+     * Function to check whether a day can be indexed, as days are held in an int
+     *
+     * @param day the epoch day
+     * @return a boolean representing whether the day fits in an int
+     */
+    private static boolean isIndexable(long day) {
+        return day >= Integer.MIN_VALUE && day <= Integer.MAX_VALUE;
+    }
+
+    /**
+     * Function to return the month number of a day, counting months from year 0
+     *
+     * @param day the epoch day
+     * @return the month number
+     */
+    private static int monthOf(long day) {
+        LocalDate date = LocalDate.ofEpochDay(day);
+        return date.getYear() * 12 + date.getMonthValue() - 1;
+    }
+
+    /**
+     * The aggregates (a count and a sum per key) of one day or month, held in an
+     * IntLongOpenHashMap with each key's count in the high 32 bits of its value
+     * and the bits of its float sum in the low 32 bits. A key is removed once its
+     * count reaches zero, so a value of 0 never stands for a present key
+     */
+    public static final class Bucket {
+        private final IntLongOpenHashMap aggregates;
+
+        /**
+         * Constructor for an empty bucket
+         */
+        Bucket() {
+            this.aggregates = new IntLongOpenHashMap();
+        }
+
+        /**
+         * Function to add a value to the aggregate of a key, inserting the key if
+         * it is not already present
+         *
+         * @param key   the integer key
+         * @param value the value to add to the sum
+         */
+        void add(int key, float value) {
+            long packed = aggregates.getOrDefault(key, 0);
+            if (packed == 0) {
+                aggregates.add(key, pack(1, value));
+            } else {
+                aggregates.replace(key, pack(countOf(packed) + 1, sumOf(packed) + value));
+            }
+        }
+
+        /**
+         * Function to take a value out of the aggregate of a key, deleting the key
+         * once its count reaches zero
+         *
+         * @param key   the integer key
+         * @param value the value to subtract from the sum
+         * @return the count of the key after the removal, or -1 if the key is not
+         *         present
+         */
+        int remove(int key, float value) {
+            long packed = aggregates.getOrDefault(key, 0);
+            if (packed == 0) {
+                return -1;
+            }
+            int count = countOf(packed) - 1;
+            if (count == 0) {
+                aggregates.remove(key);
+            } else {
+                aggregates.replace(key, pack(count, sumOf(packed) - value));
+            }
+            return count;
+        }
+
+        /**
+         * Function to return the count of a key
+         *
+         * @param key the key to look for
+         * @return the number of values added to the key, 0 if it is not present
+         */
+        public int getCount(int key) {
+            return countOf(aggregates.getOrDefault(key, 0));
+        }
+
+        /**
+         * Function to return the sum of a key
+         *
+         * @param key the key to look for
+         * @return the sum of the values added to the key, 0 if it is not present
+         */
+        public float getSum(int key) {
+            return sumOf(aggregates.getOrDefault(key, 0));
+        }
+
+        /**
+         * Function to return a cursor over the keys of the bucket and their counts.
+         * The bucket must not be changed while the cursor is in use
+         *
+         * @return a cursor positioned before the first entry
+         */
+        public IntIntCursor cursor() {
+            IntLongCursor cursor = aggregates.cursor();
+            return new IntIntCursor() {
+                @Override
+                public boolean advance() {
+                    return cursor.advance();
+                }
+
+                @Override
+                public int getKey() {
+                    return cursor.getKey();
+                }
+
+                @Override
+                public int getValue() {
+                    return countOf(cursor.getValue());
+                }
+            };
+        }
+
+        /**
+         * Function to return the number of keys in the bucket
+         *
+         * @return size of the bucket
+         */
+        public int getSize() {
+            return aggregates.getSize();
+        }
+
+        /**
+         * Function to pack a count and a sum into one value
+         *
+         * @param count the count
+         * @param sum   the sum
+         * @return the packed value
+         */
+        private static long pack(int count, float sum) {
+            return ((long) count << 32) | (Float.floatToRawIntBits(sum) & 0xFFFFFFFFL);
+        }
+
+        /**
+         * Function to return the count held in a packed value
+         *
+         * @param packed the packed value
+         * @return the count
+         */
+        private static int countOf(long packed) {
+            return (int) (packed >>> 32);
+        }
+
+        /**
+         * Function to return the sum held in a packed value
+         *
+         * @param packed the packed value
+         * @return the sum
+         */
+        private static float sumOf(long packed) {
+            return Float.intBitsToFloat((int) packed);
+        }
+    }
+}
@@ -7,8 +7,6 @@ import java.nio.file.Files;
 import java.time.Duration;
 import java.time.Instant;
 import java.time.LocalDate;
-import java.time.LocalDateTime;
-import java.time.ZoneOffset;
 import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -30,6 +28,7 @@ import stores.Company;
 import stores.CrewCredit;
 import stores.Genre;
 import stores.Keyword;
+import structures.IntIntOpenHashMap;
 import interfaces.AbstractStores;
 
 public class LoadData implements Runnable {
@@ -126,12 +125,12 @@ public class LoadData implements Runnable {
         int userId;
         int movieId;
         float rating;
-        LocalDateTime timestamp;
-        RatingRecord(int userId, int movieId, float rating, LocalDateTime timestamp){
+        long epochSecond;
+        RatingRecord(int userId, int movieId, float rating, long epochSecond){
             this.userId = userId;
             this.movieId = movieId;
             this.rating = rating;
-            this.timestamp = timestamp;
+            this.epochSecond = epochSecond;
         }
     }
 
@@ -386,6 +385,9 @@ public class LoadData implements Runnable {
             }
         }
 
+        // Grow every store to its final size first, so filling them needs no rehashing
+        presizeStores(stores, movieRecords, creditRecords, keywordRecords, ratingRecords);
+
         populateMovies(movies, movieRecords);
         populateCredits(credits, creditRecords);
         populateKeywords(keywords, keywordRecords);
@@ -400,6 +402,49 @@ public class LoadData implements Runnable {
     }
 
 
+    /**
+     * Tells each store how many records it is about to be given (and, where its
+     * tables are keyed by something other than the movie, how many distinct keys
+     * those records hold), so each can be grown once before it is filled
+     * @param stores The stores about to be populated
+     * @param movieRecords The movie records to be added
+     * @param creditRecords The credit records to be added
+     * @param keywordRecords The keyword records to be added
+     * @param ratingRecords The rating records to be added
+     */
+    private void presizeStores(AbstractStores stores, ArrayList<MovieRecord> movieRecords, ArrayList<CreditRecord> creditRecords,
+                               ArrayList<KeywordRecord> keywordRecords, ArrayList<RatingRecord> ratingRecords){
+        // The distinct IDs are counted in primitive maps used as sets (every ID is
+        // mapped to 0), so counting allocates no boxed Integers or set nodes
+        IntIntOpenHashMap collectionIds = new IntIntOpenHashMap(1024);
+        for (MovieRecord mr : movieRecords){
+            collectionIds.put(mr.collectionID, 0);
+        }
+        stores.getMovies().ensureCapacity(movieRecords.size(), collectionIds.getSize());
+
+        IntIntOpenHashMap castIds = new IntIntOpenHashMap(1024);
+        IntIntOpenHashMap crewIds = new IntIntOpenHashMap(1024);
+        for (CreditRecord cr : creditRecords){
+            for (CastCredit c : cr.cast){
+                castIds.put(c.getID(), 0);
+            }
+            for (CrewCredit c : cr.crew){
+                crewIds.put(c.getID(), 0);
+            }
+        }
+        stores.getCredits().ensureCapacity(creditRecords.size(), castIds.getSize(), crewIds.getSize());
+
+        stores.getKeywords().ensureCapacity(keywordRecords.size());
+
+        IntIntOpenHashMap userIds = new IntIntOpenHashMap(1024);
+        IntIntOpenHashMap ratedMovieIds = new IntIntOpenHashMap(1024);
+        for (RatingRecord rr : ratingRecords){
+            userIds.put(rr.userId, 0);
+            ratedMovieIds.put(rr.movieId, 0);
+        }
+        stores.getRatings().ensureCapacity(ratingRecords.size(), userIds.getSize(), ratedMovieIds.getSize());
+    }
+
     private void populateCredits(ICredits credits, ArrayList<CreditRecord> creditRecords){
         System.out.println("Populating Credits Store...");
         for (CreditRecord cr : creditRecords){
@@ -435,9 +480,20 @@ public class LoadData implements Runnable {
 
     private void populateRatings(IRatings ratings, ArrayList<RatingRecord> ratingRecords){
         System.out.println("Populating Ratings Store...");
-        for (RatingRecord rr : ratingRecords){
-            ratings.add(rr.userId, rr.movieId, rr.rating, rr.timestamp);
-        }
+        // Handed over as one batch, so the store can group the ratings by user and by movie
+        int numRatings = ratingRecords.size();
+        int[] userIds = new int[numRatings];
+        int[] movieIds = new int[numRatings];
+        float[] ratingValues = new float[numRatings];
+        long[] epochSeconds = new long[numRatings];
+        for (int i = 0; i < numRatings; i++){
+            RatingRecord rr = ratingRecords.get(i);
+            userIds[i] = rr.userId;
+            movieIds[i] = rr.movieId;
+            ratingValues[i] = rr.rating;
+            epochSeconds[i] = rr.epochSecond;
+        }
+        ratings.addBatch(userIds, movieIds, ratingValues, epochSeconds);
     }
 
 
@@ -812,10 +868,10 @@ public class LoadData implements Runnable {
                 int userId   = Integer.parseInt(csvRecord.get("userId"));
                 float rating = Float.parseFloat(csvRecord.get("rating"));
 
+                // Kept as epoch seconds, the store only builds a LocalDateTime if one is asked for
                 long ts_in_file = Long.parseLong(csvRecord.get("timestamp"));
-                LocalDateTime time = LocalDateTime.ofEpochSecond(ts_in_file, 0 , ZoneOffset.UTC);
 
-                RatingRecord rr = new RatingRecord(userId, movieId, rating, time);
+                RatingRecord rr = new RatingRecord(userId, movieId, rating, ts_in_file);
 
                 backendRatings.add(rr);
                 if (!backendRatingsByMovieId.containsKey(movieId)){
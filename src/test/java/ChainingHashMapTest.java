@@ -0,0 +1,112 @@
+import structures.ChainingHashMap;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChainingHashMapTest {
+
+    // Starting from 7 buckets, the map grows to 4307, 8623, 17257 and 34537 buckets
+    // once the load factor passes 1.5, so these are the sizes just after each add
+    // that starts a rehash, before any bucket of the old table has been moved
+    private static final int[] REHASH_SIZES = {12, 6462, 12936, 25887};
+    private static final int[] OLD_CAPACITIES = {7, 4307, 8623, 17257};
+
+    @Test void testChainingHashMapIncrementalRehashKeepsEveryKey() {
+        ChainingHashMap<Integer, Integer> map = new ChainingHashMap<>(7, true);
+        map.setStatsEnabled(true);
+        int numKeys = 30000;
+        int step = 0;
+        for (int key = 0; key < numKeys; key++) {
+            assertTrue(map.add(key, key * 2), "A new key should be added");
+            if (step < REHASH_SIZES.length && map.getSize() == REHASH_SIZES[step]) {
+                checkDuringRehash(map, OLD_CAPACITIES[step]);
+                step++;
+            }
+        }
+
+        assertEquals(REHASH_SIZES.length, step, "Every rehash should have been reached");
+        assertEquals(numKeys, map.getSize(), "Every key should be counted once");
+        for (int key = 0; key < numKeys; key++) {
+            assertEquals(key * 2, map.get(key), "Key " + key + " should keep its value");
+        }
+        assertNull(map.get(numKeys), "A key never added should not be found");
+        assertEquals(REHASH_SIZES.length, map.getStats("map").getRehashCount(), "The map should have rehashed once per step");
+    }
+
+    /**
+     * Checks the map while a rehash has just started: a duplicate add, get and
+     * remove of keys whose old buckets have not moved yet, then every key
+     */
+    private void checkDuringRehash(ChainingHashMap<Integer, Integer> map, int oldCapacity) {
+        int size = map.getSize();
+        // The key in the last old bucket is the last to move, so every call below
+        // finds it in the old table
+        int last = size - 1 - ((size - 1) % oldCapacity) + (oldCapacity - 1);
+        if (last >= size) {
+            last -= oldCapacity;
+        }
+        assertFalse(map.add(last, -1), "A key still in the old table should not be added twice");
+        assertEquals(last * 2, map.get(last), "A key still in the old table should be found");
+        assertTrue(map.remove(last), "A key still in the old table should be removed");
+        assertNull(map.get(last), "A removed key should not be found");
+        assertFalse(map.remove(last), "A removed key should not be removed twice");
+        assertTrue(map.add(last, last * 2), "A removed key should be added again into the new table");
+        assertEquals(size, map.getSize(), "The size should be back where it was");
+
+        // Reads from the highest keys down, so the first reads hit old buckets
+        // that have not moved, and the later ones buckets that have
+        for (int key = size - 1; key >= 0; key--) {
+            assertEquals(key * 2, map.get(key), "Key " + key + " should be found during the rehash");
+        }
+    }
+
+    @Test void testChainingHashMapIncrementalRehashMatchesHashMap() {
+        ChainingHashMap<Integer, Integer> map = new ChainingHashMap<>(7, true);
+        Map<Integer, Integer> expected = new HashMap<>();
+        Random random = new Random(3);
+        for (int i = 0; i < 100000; i++) {
+            // Favours adds, so the map keeps growing through several rehashes
+            int key = random.nextInt(40000);
+            int operation = random.nextInt(10);
+            if (operation < 6) {
+                assertEquals(!expected.containsKey(key), map.add(key, i), "add should agree on key " + key);
+                expected.putIfAbsent(key, i);
+            } else if (operation < 8) {
+                assertEquals(expected.remove(key) != null, map.remove(key), "remove should agree on key " + key);
+            } else {
+                assertEquals(expected.get(key), map.get(key), "get should agree on key " + key);
+            }
+        }
+
+        assertEquals(expected.size(), map.getSize(), "The sizes should agree");
+        for (Map.Entry<Integer, Integer> entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), map.get(entry.getKey()), "Key " + entry.getKey() + " should keep its value");
+        }
+    }
+
+    @Test void testChainingHashMapIncrementalRehashSplitsLongChains() {
+        // Multiples of 7 all land in one bucket of the starting table, so the
+        // rehash meets a chain longer than one step moves, and the rest of it has
+        // to stay findable in the old table between steps
+        ChainingHashMap<Integer, Integer> map = new ChainingHashMap<>(7, true);
+        int numKeys = REHASH_SIZES[0];
+        for (int i = 0; i < numKeys; i++) {
+            assertTrue(map.add(i * 7, i), "A new key should be added");
+        }
+        for (int i = numKeys - 1; i >= 0; i--) {
+            assertEquals(i, map.get(i * 7), "Key " + (i * 7) + " should be found while its chain is split");
+            assertFalse(map.add(i * 7, -1), "Key " + (i * 7) + " should not be added twice while its chain is split");
+        }
+        for (int i = 0; i < numKeys; i += 2) {
+            assertTrue(map.remove(i * 7), "Key " + (i * 7) + " should be removed");
+        }
+        assertEquals(numKeys / 2, map.getSize(), "Half the keys should be left");
+        for (int i = 0; i < numKeys; i++) {
+            assertEquals(i % 2 == 0 ? null : (Integer) i, map.get(i * 7), "Key " + (i * 7) + " should be found only if kept");
+        }
+    }
+}
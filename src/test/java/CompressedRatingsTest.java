@@ -0,0 +1,129 @@
+import stores.*;
+import structures.IntTopK;
+import structures.ParallelTopK;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+// Runs every RatingsTest against the compressed (CSR) Ratings engine, plus a
+// comparison against the hashed engine over enough changes to force merges
+public class CompressedRatingsTest extends RatingsTest {
+
+    @Override
+    protected Stores createStores() {
+        return new Stores(Stores.RatingsEngine.COMPRESSED);
+    }
+
+    @Test void testCompressedRatingsGetMostRatedUsersParallel() throws Exception {
+        // The compressed engine ranks users with a top-K scan, and more users than
+        // the threshold split the scan across the threads of the pool it runs on
+        Stores compressed = createStores();
+        int numUsers = ParallelTopK.PARALLEL_THRESHOLD * 2;
+        Random random = new Random(17);
+        IntTopK sequential = new IntTopK(100);
+        for (int user = 1; user <= numUsers; user++) {
+            int numRatings = random.nextInt(6) + 1;
+            for (int movie = 1; movie <= numRatings; movie++) {
+                compressed.getRatings().add(user, movie, 3.0f, LocalDateTime.of(2024, 1, 1, 1, 0, 0));
+            }
+            sequential.offer(numRatings, user);
+        }
+
+        // A pool of its own, as the common pool may only have one worker here
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            int[] parallel = pool.submit(() -> compressed.getRatings().getMostRatedUsers(100)).get();
+            assertArrayEquals(sequential.getSortedDescendingIds(), parallel, "The parallel scan should return the same users as a sequential one");
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test void testCompressedRatingsMatchesHashed() {
+        Stores hashed = new Stores();
+        Stores compressed = createStores();
+        Random random = new Random(7);
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 1, 0, 0);
+
+        // Enough operations over a small id space to merge the delta buffer many
+        // times, with plenty of repeated, updated and removed pairs. Times are
+        // drawn from a few hundred days, so many ratings share a time and sets
+        // move ratings both ways along their user's timeline
+        for (int i = 0; i < 60000; i++) {
+            int user = random.nextInt(300);
+            int movie = random.nextInt(200);
+            float rating = random.nextInt(11) / 2.0f;
+            LocalDateTime time = (random.nextInt(50) == 0) ? null : start.plusDays(random.nextInt(400));
+            int op = random.nextInt(10);
+            if (op < 6) {
+                assertEquals(hashed.getRatings().add(user, movie, rating, time), compressed.getRatings().add(user, movie, rating, time), "add should agree");
+            } else if (op < 8) {
+                assertEquals(hashed.getRatings().set(user, movie, rating, time), compressed.getRatings().set(user, movie, rating, time), "set should agree");
+            } else {
+                assertEquals(hashed.getRatings().remove(user, movie), compressed.getRatings().remove(user, movie), "remove should agree");
+            }
+        }
+
+        assertEquals(hashed.getRatings().size(), compressed.getRatings().size(), "Both engines should hold the same number of ratings");
+        LocalDateTime windowStart = start.plusDays(100);
+        LocalDateTime windowEnd = start.plusDays(250);
+        for (int user = 0; user < 300; user++) {
+            // Both engines list a user's ratings in time order, then by movie
+            assertArrayEquals(hashed.getRatings().getUserRatings(user), compressed.getRatings().getUserRatings(user), "User " + user + " should have the same ratings in the same order");
+            assertSameTimeline(hashed.getRatings().getUserTimeline(user, null, null), compressed.getRatings().getUserTimeline(user, null, null), "User " + user + " should have the same timeline");
+            assertSameTimeline(hashed.getRatings().getUserTimeline(user, windowStart, windowEnd), compressed.getRatings().getUserTimeline(user, windowStart, windowEnd), "User " + user + " should have the same ratings in the window");
+            assertEquals(hashed.getRatings().getUserAverageRating(user), compressed.getRatings().getUserAverageRating(user), 1e-4f, "User " + user + " should have the same average");
+        }
+        for (int movie = 0; movie < 200; movie++) {
+            float[] expected = hashed.getRatings().getMovieRatings(movie);
+            float[] result = compressed.getRatings().getMovieRatings(movie);
+            Arrays.sort(expected);
+            Arrays.sort(result);
+            assertArrayEquals(expected, result, "Movie " + movie + " should have the same ratings");
+            assertEquals(hashed.getRatings().getNumRatings(movie), compressed.getRatings().getNumRatings(movie), "Movie " + movie + " should have the same number of ratings");
+        }
+
+        LocalDate firstDay = windowStart.toLocalDate();
+        LocalDate lastDay = windowEnd.toLocalDate();
+        for (int movie = 0; movie < 200; movie++) {
+            assertEquals(hashed.getRatings().getMovieAverageRatingBetween(movie, firstDay, lastDay), compressed.getRatings().getMovieAverageRatingBetween(movie, firstDay, lastDay), 1e-4f, "Movie " + movie + " should have the same average in the window");
+        }
+        assertArrayEquals(hashed.getRatings().getMostRatedMoviesBetween(firstDay, lastDay, 20), compressed.getRatings().getMostRatedMoviesBetween(firstDay, lastDay, 20), "Both engines should return the same most rated movies in the window");
+
+        // Ties are broken on ID, so both engines should give exactly the same order
+        assertArrayEquals(hashed.getRatings().getMostRatedUsers(20), compressed.getRatings().getMostRatedUsers(20), "Both engines should return the same most rated users");
+        assertArrayEquals(hashed.getRatings().getMostRatedMovies(20), compressed.getRatings().getMostRatedMovies(20), "Both engines should return the same most rated movies");
+
+        // The weighted rankings are kept up to date as ratings change, so they
+        // should still agree after more changes once the settings are made
+        assertArrayEquals(hashed.getRatings().getTopWeightedRatedMovies(20), compressed.getRatings().getTopWeightedRatedMovies(20), "Both engines should return the same default weighted ranking");
+        hashed.getRatings().setWeightedRanking(150, 10, 2.5f);
+        compressed.getRatings().setWeightedRanking(150, 10, 2.5f);
+        for (int i = 0; i < 5000; i++) {
+            int user = random.nextInt(300);
+            int movie = random.nextInt(200);
+            float rating = random.nextInt(11) / 2.0f;
+            if (random.nextBoolean()) {
+                assertEquals(hashed.getRatings().set(user, movie, rating, start), compressed.getRatings().set(user, movie, rating, start), "set should agree");
+            } else {
+                assertEquals(hashed.getRatings().remove(user, movie), compressed.getRatings().remove(user, movie), "remove should agree");
+            }
+        }
+        assertArrayEquals(hashed.getRatings().getTopWeightedRatedMovies(200), compressed.getRatings().getTopWeightedRatedMovies(200), "Both engines should return the same weighted ranking after more changes");
+    }
+
+    private static void assertSameTimeline(Rating[] expected, Rating[] result, String message) {
+        assertEquals(expected.length, result.length, message);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i].getMovieID(), result[i].getMovieID(), message + ", movie at " + i);
+            assertEquals(expected[i].getRating(), result[i].getRating(), message + ", rating at " + i);
+            assertEquals(expected[i].getTimestamp(), result[i].getTimestamp(), message + ", time at " + i);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+import structures.ConcurrentChainingHashMap;
+import structures.IntIterator;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConcurrentChainingHashMapTest {
+    private static final int NUM_WRITERS = 8;
+    private static final int NUM_KEYS = 200000;
+    private static final int NUM_RUNS = 3;
+
+    @Test void testConcurrentChainingHashMapSingleThread() {
+        ConcurrentChainingHashMap<Integer, String> map = new ConcurrentChainingHashMap<>(2);
+        for (int key = 0; key < 1000; key++) {
+            assertTrue(map.add(key, "v" + key), "A new key should be added");
+        }
+        assertFalse(map.add(5, "other"), "A key already present should not be added again");
+        assertEquals("v5", map.get(5), "A duplicate add should not change the value");
+        assertTrue(map.remove(5), "A present key should be removed");
+        assertFalse(map.remove(5), "A removed key should not be removed twice");
+        assertNull(map.get(5), "A removed key should not be found");
+        assertEquals(999, map.getSize(), "The size should count every key left");
+        assertTrue(map.getCapacity() >= 999 / 0.75, "The table should have grown from 2 slots");
+
+        int[] keys = ConcurrentChainingHashMap.getKeysAsInt(map);
+        Arrays.sort(keys);
+        assertEquals(999, keys.length, "Every key left should be listed once");
+        assertEquals(4, keys[4], "Keys below the removed one should be listed");
+        assertEquals(6, keys[5], "The removed key should not be listed");
+        IntIterator iterator = ConcurrentChainingHashMap.keyIterator(map);
+        int[] iterated = new int[999];
+        for (int i = 0; i < iterated.length; i++) {
+            assertTrue(iterator.hasNext(), "The iterator should reach every key left");
+            iterated[i] = iterator.nextInt();
+        }
+        assertFalse(iterator.hasNext(), "The iterator should stop after the last key");
+        Arrays.sort(iterated);
+        assertArrayEquals(keys, iterated, "The iterator should see the same keys as the listing");
+        assertThrows(IllegalArgumentException.class, () -> map.add(null, "v"), "Null keys cannot be stored");
+        assertThrows(IllegalArgumentException.class, () -> map.add(1, null), "Null values cannot be stored");
+    }
+
+    @Test void testConcurrentChainingHashMapWritersReaderAndTraverser() throws InterruptedException {
+        for (int run = 0; run < NUM_RUNS; run++) {
+            stressRun(run);
+        }
+    }
+
+    /**
+     * Runs writers adding, reading and removing their own keys through every
+     * resize from a 2-slot table, while a reader and a traverser run over the
+     * whole map, then checks the final contents. Each writer keeps its keys that
+     * are not multiples of 3 (counting within its own keys)
+     */
+    private void stressRun(int run) throws InterruptedException {
+        ConcurrentChainingHashMap<Integer, Integer> map = new ConcurrentChainingHashMap<>(2);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        AtomicBoolean writing = new AtomicBoolean(true);
+        CountDownLatch start = new CountDownLatch(1);
+
+        Thread[] writers = new Thread[NUM_WRITERS];
+        for (int w = 0; w < NUM_WRITERS; w++) {
+            int writer = w;
+            writers[w] = new Thread(() -> guard(failure, () -> {
+                start.await();
+                for (int key = writer; key < NUM_KEYS; key += NUM_WRITERS) {
+                    check(map.add(key, valueOf(key)), "add of a new key " + key);
+                    check(!map.add(key, -1), "add of a duplicate key " + key);
+                    check(Integer.valueOf(valueOf(key)).equals(map.get(key)), "get of an added key " + key);
+                    if ((key / NUM_WRITERS) % 3 == 0) {
+                        check(map.remove(key), "remove of an added key " + key);
+                        check(map.get(key) == null, "get of a removed key " + key);
+                    }
+                }
+            }));
+        }
+
+        // Any value seen must be the one its key was added with
+        Thread reader = new Thread(() -> guard(failure, () -> {
+            start.await();
+            Random random = new Random(run);
+            while (writing.get()) {
+                int key = random.nextInt(NUM_KEYS);
+                Integer value = map.get(key);
+                check(value == null || value == valueOf(key), "value read for key " + key);
+            }
+        }));
+
+        // A traversal must never see a key twice, even across a resize
+        Thread traverser = new Thread(() -> guard(failure, () -> {
+            start.await();
+            while (writing.get()) {
+                Set<Integer> seen = new HashSet<>();
+                map.forEachEntry((key, value) -> {
+                    check(seen.add(key), "key " + key + " visited once");
+                    check(value == valueOf(key), "value traversed for key " + key);
+                });
+            }
+        }));
+
+        for (Thread writer : writers) {
+            writer.start();
+        }
+        reader.start();
+        traverser.start();
+        start.countDown();
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        writing.set(false);
+        reader.join();
+        traverser.join();
+        if (failure.get() != null) {
+            fail("Run " + run + " failed: " + failure.get().getMessage(), failure.get());
+        }
+
+        int expectedSize = 0;
+        for (int key = 0; key < NUM_KEYS; key++) {
+            if ((key / NUM_WRITERS) % 3 == 0) {
+                assertNull(map.get(key), "Removed key " + key + " should not be found");
+            } else {
+                assertEquals(valueOf(key), map.get(key), "Kept key " + key + " should keep its value");
+                expectedSize++;
+            }
+        }
+        assertEquals(expectedSize, map.getSize(), "The size should count every kept key");
+        int[] keys = ConcurrentChainingHashMap.getKeysAsInt(map);
+        assertEquals(expectedSize, keys.length, "Every kept key should be listed once");
+        assertEquals(expectedSize, Arrays.stream(keys).distinct().count(), "No key should be listed twice");
+    }
+
+    private static int valueOf(int key) {
+        return key * 31 + 7;
+    }
+
+    private static void check(boolean condition, String what) {
+        if (!condition) {
+            throw new AssertionError("Failed " + what);
+        }
+    }
+
+    /**
+     * A task of a test thread, which may throw
+     */
+    private interface ThreadTask {
+        void run() throws Exception;
+    }
+
+    /**
+     * Runs a task, keeping the first failure of any thread for the test to report
+     */
+    private static void guard(AtomicReference<Throwable> failure, ThreadTask task) {
+        try {
+            task.run();
+        } catch (Throwable e) {
+            failure.compareAndSet(null, e);
+        }
+    }
+}
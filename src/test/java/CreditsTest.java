@@ -945,6 +945,27 @@ public class CreditsTest {
         assertTrue(checkContentsOfArray(expected, store.getCredits().getCastFilms(1001)), "The cast member has been in 2 movies, so those movies should be returned");
     }
 
+    @Test void testCreditsGetSharedCastFilms() {
+        CastCredit[] both = new CastCredit[2];
+        CastCredit[] first = new CastCredit[1];
+        CrewCredit[] crew = new CrewCredit[1];
+
+        both[0] = new CastCredit(101, "Test cast character", "Test cast creditID1", 1001, "Test cast name", 1, "Test cast profile path");
+        both[1] = new CastCredit(102, "Test cast character2", "Test cast creditID2", 1002, "Test cast name2", 2, "Test cast profile path2");
+        first[0] = both[0];
+        crew[0] = new CrewCredit("201", "Test crew department", 2001, "Test crew job", "Test crew name", "Test crew profile path");
+
+        store.getCredits().add(both, crew, 3);
+        store.getCredits().add(first, crew, 2);
+        store.getCredits().add(both, crew, 1);
+
+        assertArrayEquals(new int[]{1, 3}, store.getCredits().getSharedCastFilms(1001, 1002), "Only the films with both cast members should be returned, in ascending order");
+        assertArrayEquals(new int[0], store.getCredits().getSharedCastFilms(1001, 1003), "A cast member that does not exist shares no films");
+
+        store.getCredits().remove(3);
+        assertArrayEquals(new int[]{1}, store.getCredits().getSharedCastFilms(1001, 1002), "A removed film should no longer be shared");
+    }
+
     @Test void testCreditsGetCastFilmsNeg() {
         CastCredit[] cast = new CastCredit[1];
         CrewCredit[] crew = new CrewCredit[1];
@@ -0,0 +1,84 @@
+import structures.ChainingHashMap;
+import structures.FrozenIntMap;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+class FrozenIntMapTest {
+
+    @Test void testFrozenIntMapEmpty() {
+        FrozenIntMap<String> frozen = ChainingHashMap.freeze(new ChainingHashMap<Integer, String>(7));
+        assertEquals(0, frozen.getSize(), "A frozen empty map should be empty");
+        assertNull(frozen.get(0), "An empty map should find no key");
+        assertFalse(frozen.containsKey(Integer.MIN_VALUE), "An empty map should contain no key");
+        assertEquals(0, frozen.getKeysAsInt().length, "An empty map should list no keys");
+    }
+
+    @Test void testFrozenIntMapEveryTreeShape() {
+        // Every size up to 130 covers full trees and every way of filling the
+        // last level, from one node to all but one
+        for (int size = 1; size <= 130; size++) {
+            ChainingHashMap<Integer, String> map = new ChainingHashMap<>(7);
+            // Even keys from -size, so each key has a missing neighbour on both sides
+            for (int i = size - 1; i >= 0; i--) {
+                int key = 2 * (i - size / 2);
+                map.add(key, "v" + key);
+            }
+            FrozenIntMap<String> frozen = ChainingHashMap.freeze(map);
+
+            assertEquals(size, frozen.getSize(), "The frozen map should hold every key, size " + size);
+            for (int i = 0; i < size; i++) {
+                int key = 2 * (i - size / 2);
+                assertEquals("v" + key, frozen.get(key), "Key " + key + " should be found, size " + size);
+                assertTrue(frozen.containsKey(key), "Key " + key + " should be contained, size " + size);
+                assertNull(frozen.get(key - 1), "Key " + (key - 1) + " should be missing, size " + size);
+                assertFalse(frozen.containsKey(key + 1), "Key " + (key + 1) + " should be missing, size " + size);
+            }
+            assertNull(frozen.get(Integer.MIN_VALUE), "A key below every key should be missing, size " + size);
+            assertNull(frozen.get(Integer.MAX_VALUE), "A key above every key should be missing, size " + size);
+
+            int[] keys = frozen.getKeysAsInt();
+            assertEquals(size, keys.length, "Every key should be listed once, size " + size);
+            for (int i = 0; i < size; i++) {
+                assertEquals(2 * (i - size / 2), keys[i], "Keys should be listed in ascending order, size " + size);
+            }
+        }
+    }
+
+    @Test void testFrozenIntMapMatchesChainingHashMap() {
+        ChainingHashMap<Integer, Integer> map = new ChainingHashMap<>(7);
+        Random random = new Random(14);
+        while (map.getSize() < 5000) {
+            int key = random.nextInt();
+            map.add(key, key ^ 0x5555);
+        }
+        map.add(Integer.MIN_VALUE + 1, 1);
+        map.add(Integer.MAX_VALUE, 2);
+        FrozenIntMap<Integer> frozen = ChainingHashMap.freeze(map);
+
+        int[] expected = map.getKeysAsInt();
+        Arrays.sort(expected);
+        assertArrayEquals(expected, frozen.getKeysAsInt(), "The keys should be those of the map, in ascending order");
+        for (int key : expected) {
+            assertEquals(map.get(key), frozen.get(key), "Key " + key + " should have the value it had in the map");
+        }
+        for (int i = 0; i < 20000; i++) {
+            int key = random.nextInt();
+            assertEquals(map.get(key) != null, frozen.containsKey(key), "containsKey should agree with the map on " + key);
+        }
+
+        // Later changes to the map are not seen by the frozen copy
+        int added = 7;
+        while (map.get(added) != null) {
+            added++;
+        }
+        map.remove(expected[0]);
+        map.add(added, 0);
+        assertEquals(expected.length, frozen.getSize(), "The frozen map should keep its size");
+        assertTrue(frozen.containsKey(expected[0]), "A key removed from the map should stay in the frozen copy");
+        assertFalse(frozen.containsKey(added), "A key added to the map should not be in the frozen copy");
+    }
+}
@@ -1033,4 +1033,26 @@ class MoviesTest {
         assertEquals(2, stores.getMovies().size(), "Size not equal.");
     }
  
+    @Test void testMoviesDiagnostics(){
+        Stores diagnosticStores = new Stores();
+        diagnosticStores.setDiagnosticsEnabled(true);
+        for (int i = 0; i < batchSize; i++){
+            diagnosticStores.getMovies().add(IDs.get(i), titles.get(i), originalTitles.get(i), overviews.get(i),
+                taglines.get(i), statuses.get(i), genresList.get(i), releases.get(i),
+                budgets.get(i), revenues.get(i), languagesList.get(i), originalLanguages.get(i),
+                runtimes.get(i), homepages.get(i), adults.get(i), videos.get(i), posters.get(i));
+        }
+        diagnosticStores.getMovies().getTitle(IDs.get(0));
+
+        structures.HashTableStats moviesStats = null;
+        for (structures.HashTableStats tableStats : diagnosticStores.getDiagnostics()){
+            if (tableStats.getName().equals("Movies.movies")){
+                moviesStats = tableStats;
+            }
+        }
+        assertNotNull(moviesStats, "Movies table should be reported.");
+        assertEquals(diagnosticStores.getMovies().size(), moviesStats.getSize(), "Reported size not equal.");
+        assertTrue(moviesStats.getGetCount() > 0, "Gets should be counted when diagnostics are enabled.");
+    }
+
 }
@@ -0,0 +1,78 @@
+import structures.FloatTopK;
+import structures.IntTopK;
+import structures.ParallelTopK;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParallelTopKTest {
+
+    // Above the threshold, so the scan is split into segments
+    private static final int NUM_ENTRIES = ParallelTopK.PARALLEL_THRESHOLD * 2 + 123;
+
+    @Test void testParallelTopKSelectIntMatchesSequential() throws Exception {
+        // Few distinct scores, so many ties have to be broken by ID the same way
+        int[] scores = new int[NUM_ENTRIES];
+        Random random = new Random(7);
+        for (int i = 0; i < NUM_ENTRIES; i++) {
+            scores[i] = random.nextInt(50);
+        }
+
+        for (int k : new int[] {1, 10, 1000, NUM_ENTRIES}) {
+            IntTopK sequential = new IntTopK(k);
+            for (int i = 0; i < NUM_ENTRIES; i++) {
+                sequential.offer(scores[i], i);
+            }
+
+            // A pool of its own, as the common pool may only have one worker here
+            AtomicInteger segments = new AtomicInteger();
+            ForkJoinPool pool = new ForkJoinPool(4);
+            try {
+                int[] parallel = pool.submit(() -> ParallelTopK.selectInt(NUM_ENTRIES, NUM_ENTRIES, k, (from, to, topK) -> {
+                    segments.incrementAndGet();
+                    for (int i = from; i < to; i++) {
+                        topK.offer(scores[i], i);
+                    }
+                })).get();
+                assertTrue(segments.get() > 1, "The scan should have been split into segments, k " + k);
+                assertArrayEquals(sequential.getSortedDescendingIds(), parallel, "The parallel scan should match a sequential one, k " + k);
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
+
+    @Test void testParallelTopKSelectFloatMatchesSequential() throws Exception {
+        float[] scores = new float[NUM_ENTRIES];
+        Random random = new Random(17);
+        for (int i = 0; i < NUM_ENTRIES; i++) {
+            scores[i] = random.nextInt(10) * 0.5f;
+        }
+
+        for (int k : new int[] {1, 10, 1000, NUM_ENTRIES}) {
+            FloatTopK sequential = new FloatTopK(k);
+            for (int i = 0; i < NUM_ENTRIES; i++) {
+                sequential.offer(scores[i], i);
+            }
+
+            AtomicInteger segments = new AtomicInteger();
+            ForkJoinPool pool = new ForkJoinPool(4);
+            try {
+                int[] parallel = pool.submit(() -> ParallelTopK.selectFloat(NUM_ENTRIES, NUM_ENTRIES, k, (from, to, topK) -> {
+                    segments.incrementAndGet();
+                    for (int i = from; i < to; i++) {
+                        topK.offer(scores[i], i);
+                    }
+                })).get();
+                assertTrue(segments.get() > 1, "The scan should have been split into segments, k " + k);
+                assertArrayEquals(sequential.getSortedDescendingIds(), parallel, "The parallel scan should match a sequential one, k " + k);
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
+}
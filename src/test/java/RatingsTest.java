@@ -2,6 +2,10 @@ import stores.*;
 
 import java.time.LocalDateTime;
 import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
 
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.BeforeEach;
@@ -10,11 +14,16 @@ import static org.junit.jupiter.api.Assertions.*;
 
 @TestInstance(TestInstance.Lifecycle.PER_CLASS)
 public class RatingsTest {
-    private Stores store = new Stores();
+    private Stores store = createStores();
+
+    // Overridden to run the same tests against another Ratings implementation
+    protected Stores createStores() {
+        return new Stores();
+    }
 
     @BeforeEach
     void setup() {
-        store = new Stores();
+        store = createStores();
     }
 
     boolean checkContentsOfArray(float[] test, float[] result) {
@@ -77,6 +86,14 @@ public class RatingsTest {
         assertFalse(store.getRatings().add(1, 2, 4.0f, LocalDateTime.of(2025, 2, 2, 2, 0, 0)), "Data cannot be added, as there is already an entry with this unique combination of user and movie IDs");
     }
 
+    @Test void testRatingsAddRejectsNonHalfStar() {
+        assertFalse(store.getRatings().add(1, 2, 3.3f, LocalDateTime.of(2024, 1, 1, 1, 0, 0)), "Ratings that are not a multiple of 0.5 cannot be stored");
+        assertFalse(store.getRatings().add(1, 2, 5.5f, LocalDateTime.of(2024, 1, 1, 1, 0, 0)), "Ratings above 5 cannot be stored");
+        assertFalse(store.getRatings().add(1, 2, -0.5f, 1704070800L), "Ratings below 0 cannot be stored");
+        assertEquals(0, store.getRatings().size(), "Nothing should have been added");
+        assertTrue(store.getRatings().add(1, 2, 3.5f, LocalDateTime.of(2024, 1, 1, 1, 0, 0)), "A multiple of 0.5 should be stored once the others were turned away");
+    }
+
     @Test void testRatingsRemoveDefault() {
         assertFalse(store.getRatings().remove(1, 2), "Data cannot be removed when there is no data in the store");
     }
@@ -101,6 +118,29 @@ public class RatingsTest {
         assertFalse(store.getRatings().remove(3, 2), "Data cannot be removed as the unique combination of user and movie ID is not in the store (though the movie does have a rating in the store)");
     }
 
+    @Test void testRatingsRemoveThenStatsUpdated() {
+        store.getRatings().add(1, 2, 3.0f, LocalDateTime.of(2024, 1, 1, 1, 0, 0));
+        store.getRatings().add(1, 3, 4.0f, LocalDateTime.of(2025, 2, 2, 2, 0, 0));
+        store.getRatings().add(4, 3, 2.0f, LocalDateTime.of(2025, 2, 2, 2, 0, 0));
+        store.getRatings().remove(1, 3);
+
+        assertEquals(3.0f, store.getRatings().getUserAverageRating(1), "User 1 only has the rating of 3.0f left after the removal");
+        assertEquals(2.0f, store.getRatings().getMovieAverageRating(3), "Movie 3 only has the rating of 2.0f left after the removal");
+        assertEquals(1, store.getRatings().getNumRatings(3), "Movie 3 only has 1 rating left after the removal");
+    }
+
+    @Test void testRatingsRemoveLastRating() {
+        store.getRatings().add(1, 2, 3.0f, LocalDateTime.of(2024, 1, 1, 1, 0, 0));
+        store.getRatings().remove(1, 2);
+
+        assertEquals(-1.0f, store.getRatings().getUserAverageRating(1), "User 1 has no ratings left, so cannot be found in Ratings");
+        assertEquals(-1, store.getRatings().getNumRatings(2), "Movie 2 has no ratings left and is not in Movies");
+        assertArrayEquals(new int[0], store.getRatings().getMostRatedUsers(1), "There are no users with ratings left");
+        assertArrayEquals(new int[0], store.getRatings().getMostRatedMovies(1), "There are no movies with ratings left");
+        assertTrue(store.getRatings().add(1, 2, 4.0f, LocalDateTime.of(2025, 2, 2, 2, 0, 0)), "The rating was removed, so can be added again");
+        assertEquals(4.0f, store.getRatings().getUserAverageRating(1), "Only the re-added rating should count");
+    }
+
     @Test void testRatingsSetDefault() {
         assertTrue(store.getRatings().set(1, 2, 3.0f, LocalDateTime.of(2024, 1, 1, 1, 0, 0)), "Data should be able to be set (in this case, added) when the store is empty");
     }
@@ -520,6 +560,301 @@ public class RatingsTest {
         assertArrayEquals(expected, result, "The store should have ratings for 2 users, despite the function asking for 3 users. The UserID 1 has 2 ratings, and the UserID 4 has 1 rating. Therefore, the result should be an array of 1, then 4 only");
     }
 
+    @Test void testRatingsGetMostRatedUsersTieBreak() {
+        store.getRatings().add(3, 1, 3.0f, LocalDateTime.of(2024, 1, 1, 1, 0, 0));
+        store.getRatings().add(1, 1, 3.0f, LocalDateTime.of(2024, 1, 1, 1, 0, 0));
+        store.getRatings().add(2, 1, 3.0f, LocalDateTime.of(2024, 1, 1, 1, 0, 0));
+
+        assertArrayEquals(new int[]{1, 2}, store.getRatings().getMostRatedUsers(2), "All users have the same number of ratings, so the lowest IDs should come first");
+    }
+
+    @Test void testRatingsEnsureCapacity() {
+        store.getRatings().add(1, 1, 4.0f, LocalDateTime.of(2024, 1, 1, 1, 0, 0));
+        store.getRatings().ensureCapacity(20000, 10000, 5000);
+        for (int user = 2; user <= 10000; user++) {
+            store.getRatings().add(user, (user % 5000) + 1, 2.0f, LocalDateTime.of(2024, 1, 1, 1, 0, 0));
+        }
+
+        assertEquals(10000, store.getRatings().size(), "Size not equal after adding to a presized store");
+        assertEquals(4.0f, store.getRatings().getUserAverageRating(1), "Ratings added before presizing should be kept");
+        assertEquals(2.0f, store.getRatings().getUserAverageRating(10000), "Incorrect average after adding to a presized store");
+    }
+
+    @Test void testRatingsGetTopAverageRatedMoviesAfterSetAndRemove() {
+        store.getRatings().add(1, 1, 3.5f, LocalDateTime.of(2024, 1, 1, 1, 0, 0));
+        store.getRatings().add(1, 2, 3.0f, LocalDateTime.of(2024, 1, 1, 1, 0, 0));
+        store.getRatings().add(2, 2, 3.0f, LocalDateTime.of(2024, 1, 1, 1, 0, 0));
+        assertArrayEquals(new int[] {1, 2}, store.getRatings().getTopAverageRatedMovies(2), "Movie 1 has the higher average");
+
+        store.getRatings().set(1, 2, 5.0f, LocalDateTime.of(2024, 2, 2, 2, 0, 0));
+        assertArrayEquals(new int[] {2, 1}, store.getRatings().getTopAverageRatedMovies(2), "The ranking should follow a set rating");
+
+        store.getRatings().remove(1, 2);
+        store.getRatings().remove(2, 2);
+        assertArrayEquals(new int[] {1}, store.getRatings().getTopAverageRatedMovies(2), "A movie with no ratings left should drop out of the ranking");
+        assertArrayEquals(new int[] {1}, store.getRatings().getMostRatedUsers(2), "A user with no ratings left should drop out of the ranking");
+    }
+
+    @Test void testRatingsGetTopWeightedRatedMovies() {
+        store.getRatings().add(1, 1, 5.0f, LocalDateTime.of(2024, 1, 1, 1, 0, 0));
+        for (int user = 1; user <= 10; user++) {
+            store.getRatings().add(user, 2, 4.5f, LocalDateTime.of(2024, 1, 1, 1, 0, 0));
+        }
+        assertArrayEquals(new int[] {1, 2}, store.getRatings().getTopWeightedRatedMovies(2), "Without a prior, the ranking should match the plain average");
+
+        store.getRatings().setWeightedRanking(0, 5, 3.0f);
+        assertArrayEquals(new int[] {2, 1}, store.getRatings().getTopWeightedRatedMovies(2), "A single high rating should be pulled down towards the prior");
+
+        store.getRatings().setWeightedRanking(2, 5, 3.0f);
+        assertArrayEquals(new int[] {2}, store.getRatings().getTopWeightedRatedMovies(2), "Movies with fewer than the minimum ratings should not be ranked");
+
+        store.getRatings().add(2, 1, 5.0f, LocalDateTime.of(2024, 1, 1, 1, 0, 0));
+        assertArrayEquals(new int[] {2, 1}, store.getRatings().getTopWeightedRatedMovies(2), "A movie reaching the minimum ratings should be ranked");
+    }
+
+    @Test void testRatingsGetMostRatedMoviesBetween() {
+        store.getRatings().add(1, 1, 3.0f, LocalDateTime.of(2015, 1, 31, 23, 0, 0));
+        store.getRatings().add(2, 1, 3.0f, LocalDateTime.of(2015, 2, 1, 1, 0, 0));
+        store.getRatings().add(3, 2, 3.0f, LocalDateTime.of(2015, 3, 1, 1, 0, 0));
+        store.getRatings().add(4, 2, 3.0f, LocalDateTime.of(2015, 3, 2, 1, 0, 0));
+        store.getRatings().add(5, 2, 3.0f, LocalDateTime.of(2015, 12, 31, 23, 0, 0));
+        store.getRatings().add(6, 1, 3.0f, LocalDateTime.of(2016, 1, 1, 1, 0, 0));
+
+        assertArrayEquals(new int[] {2, 1}, store.getRatings().getMostRatedMoviesBetween(LocalDate.of(2015, 1, 1), LocalDate.of(2015, 12, 31), 5), "Only the ratings made in 2015 should be counted");
+        assertArrayEquals(new int[] {1, 2}, store.getRatings().getMostRatedMoviesBetween(LocalDate.of(2015, 1, 31), LocalDate.of(2015, 3, 1), 5), "Both ends of the window should be included");
+
+        store.getRatings().set(3, 2, 4.0f, LocalDateTime.of(2017, 1, 1, 1, 0, 0));
+        store.getRatings().remove(4, 2);
+        assertArrayEquals(new int[] {1, 2}, store.getRatings().getMostRatedMoviesBetween(LocalDate.of(2015, 1, 1), LocalDate.of(2015, 12, 31), 5), "Set and removed ratings should leave the window");
+    }
+
+    @Test void testRatingsGetMovieAverageRatingBetween() {
+        store.getRatings().add(1, 1, 2.0f, LocalDateTime.of(2015, 6, 1, 1, 0, 0));
+        store.getRatings().add(2, 1, 4.0f, LocalDateTime.of(2015, 7, 15, 1, 0, 0));
+        store.getRatings().add(3, 1, 5.0f, LocalDateTime.of(2016, 1, 1, 1, 0, 0));
+
+        assertEquals(3.0f, store.getRatings().getMovieAverageRatingBetween(1, LocalDate.of(2015, 1, 1), LocalDate.of(2015, 12, 31)), "Only the ratings made in 2015 should be averaged");
+        assertEquals(0.0f, store.getRatings().getMovieAverageRatingBetween(1, LocalDate.of(2014, 1, 1), LocalDate.of(2014, 12, 31)), "The film has no ratings in the window, so should return 0.0f");
+        assertEquals(-1.0f, store.getRatings().getMovieAverageRatingBetween(999, LocalDate.of(2015, 1, 1), LocalDate.of(2015, 12, 31)), "The film is in neither store, so should return -1.0f");
+    }
+
+    @Test void testRatingsAddBatch() {
+        store.getRatings().add(1, 1, 4.0f, LocalDateTime.of(2024, 1, 1, 1, 0, 0));
+        long time = LocalDateTime.of(2024, 2, 2, 2, 0, 0).toEpochSecond(ZoneOffset.UTC);
+
+        // (1, 1) is already in the store, and (2, 3) appears twice in the batch
+        int added = store.getRatings().addBatch(new int[] {3, 1, 2, 2, 2}, new int[] {1, 1, 3, 1, 3},
+                new float[] {3.0f, 1.0f, 2.0f, 5.0f, 1.0f}, new long[] {time, time, time, time, time});
+
+        assertEquals(3, added, "Only the ratings with a new user and movie pair should be added");
+        assertEquals(4, store.getRatings().size(), "Size not equal after adding a batch");
+        assertEquals(4.0f, store.getRatings().getMovieAverageRating(1), "Average of movie 1 should include the batch ratings");
+        assertEquals(2.0f, store.getRatings().getMovieAverageRating(3), "The first of a duplicated pair in the batch should be kept");
+        assertEquals(2, store.getRatings().getMostRatedUsers(1)[0], "User 2 has the most ratings after the batch");
+    }
+
+    @Test void testRatingsGetSimilarMovies() {
+        LocalDateTime time = LocalDateTime.of(2024, 1, 1, 1, 0, 0);
+        store.getRatings().add(1, 1, 5.0f, time);
+        store.getRatings().add(1, 2, 5.0f, time);
+        store.getRatings().add(1, 3, 1.0f, time);
+        store.getRatings().add(2, 1, 4.0f, time);
+        store.getRatings().add(2, 2, 4.0f, time);
+        store.getRatings().add(2, 3, 1.0f, time);
+        store.getRatings().add(3, 1, 2.0f, time);
+        store.getRatings().add(3, 2, 2.0f, time);
+        store.getRatings().add(3, 3, 5.0f, time);
+
+        assertArrayEquals(new int[] {2}, store.getRatings().getSimilarMovies(1, 5), "Films 1 and 2 are rated alike by every user");
+        assertArrayEquals(new int[0], store.getRatings().getSimilarMovies(3, 5), "Film 3 is rated against the others, so has no similar films");
+        assertArrayEquals(new int[0], store.getRatings().getSimilarMovies(1, 0), "Asking for no results should return an empty array");
+        assertArrayEquals(new int[0], store.getRatings().getSimilarMovies(9, 5), "A film with no ratings has no similar films");
+
+        store.getRatings().add(1, 4, 1.0f, time);
+        store.getRatings().add(2, 4, 1.0f, time);
+        store.getRatings().add(3, 4, 5.0f, time);
+        assertArrayEquals(new int[] {4}, store.getRatings().getSimilarMovies(3, 5), "New ratings should be taken in by the next query");
+        assertArrayEquals(new int[] {2}, store.getRatings().getSimilarMovies(1, 5), "Films 1 and 4 are rated against each other");
+
+        store.getRatings().remove(3, 4);
+        assertArrayEquals(new int[0], store.getRatings().getSimilarMovies(3, 5), "Films 3 and 4 now share too few raters to be compared");
+    }
+
+    @Test void testRatingsGetSimilarMoviesAfterChangesMatchesRebuild() {
+        LocalDateTime time = LocalDateTime.of(2024, 1, 1, 1, 0, 0);
+        Map<Long, Float> ratings = new HashMap<>(); // <userID << 32 | movieID, rating>
+        Random random = new Random(22);
+        for (int i = 0; i < 3000; i++) {
+            int userid = random.nextInt(100);
+            int movieid = random.nextInt(40);
+            float rating = random.nextInt(11) / 2.0f;
+            if (store.getRatings().add(userid, movieid, rating, time)) {
+                ratings.put(((long) userid << 32) | movieid, rating);
+            }
+        }
+        store.getRatings().refreshSimilarities();
+
+        // Changes new and existing users and films, so the next query patches the
+        // index rather than building it again
+        for (int i = 0; i < 300; i++) {
+            int userid = random.nextInt(110);
+            int movieid = random.nextInt(45);
+            long key = ((long) userid << 32) | movieid;
+            if (random.nextInt(3) == 0) {
+                store.getRatings().remove(userid, movieid);
+                ratings.remove(key);
+            } else {
+                float rating = random.nextInt(11) / 2.0f;
+                store.getRatings().set(userid, movieid, rating, time);
+                ratings.put(key, rating);
+            }
+        }
+
+        // A store given the same ratings from scratch builds its index in one go
+        Stores rebuilt = createStores();
+        for (Map.Entry<Long, Float> entry : ratings.entrySet()) {
+            rebuilt.getRatings().add((int) (entry.getKey() >>> 32), (int) (long) entry.getKey(), entry.getValue(), time);
+        }
+        for (int movieid = 0; movieid < 45; movieid++) {
+            assertArrayEquals(rebuilt.getRatings().getSimilarMovies(movieid, 50), store.getRatings().getSimilarMovies(movieid, 50), "Film " + movieid + " should have the same similar films as after a rebuild");
+        }
+    }
+
+    @Test void testRatingsGetSimilarUsers() {
+        LocalDateTime time = LocalDateTime.of(2024, 1, 1, 1, 0, 0);
+        for (int movie = 1; movie <= 10; movie++) {
+            store.getRatings().add(1, movie, 4.0f, time);
+            store.getRatings().add(2, movie, 2.0f, time);
+            store.getRatings().add(3, movie + 10, 4.0f, time);
+        }
+
+        assertArrayEquals(new int[] {2}, store.getRatings().getSimilarUsers(1, 5), "Users 1 and 2 rated the same films, user 3 rated none of them");
+        assertArrayEquals(new int[0], store.getRatings().getSimilarUsers(1, 0), "Asking for no results should return an empty array");
+        assertArrayEquals(new int[0], store.getRatings().getSimilarUsers(9, 5), "A user with no ratings has no similar users");
+
+        for (int movie = 1; movie <= 9; movie++) {
+            store.getRatings().add(4, movie, 3.0f, time);
+        }
+        store.getRatings().add(4, 11, 3.0f, time);
+        for (int movie = 1; movie <= 5; movie++) {
+            store.getRatings().remove(2, movie);
+        }
+        int[] similar = store.getRatings().getSimilarUsers(1, 5);
+        assertEquals(4, similar[0], "User 4 now shares 9 of 11 films with user 1, more than user 2 does");
+
+        for (int movie = 11; movie <= 20; movie++) {
+            store.getRatings().remove(3, movie);
+        }
+        assertArrayEquals(new int[0], store.getRatings().getSimilarUsers(3, 5), "A user whose ratings are all removed has no similar users");
+    }
+
+    @Test void testRatingsTrainRecommender() {
+        LocalDateTime time = LocalDateTime.of(2024, 1, 1, 1, 0, 0);
+        assertEquals(-1.0f, store.getRatings().predictRating(1, 1), "Without a trained model there is no prediction");
+        assertArrayEquals(new int[0], store.getRatings().getRecommendedMovies(1, 5), "Without a trained model there are no recommendations");
+
+        // Odd users love films 1 to 5 and hate 6 to 10, even users the opposite, and
+        // each user leaves out one film of each half
+        for (int user = 1; user <= 20; user++) {
+            for (int movie = 1; movie <= 10; movie++) {
+                if (movie % 5 != user % 5) {
+                    boolean loved = (user % 2 == 1) == (movie <= 5);
+                    store.getRatings().add(user, movie, loved ? 5.0f : 1.0f, time);
+                }
+            }
+        }
+
+        float error = store.getRatings().trainRecommender(4, 300, 0.02f, 0.01f);
+        assertTrue(error < 0.5f, "The model should fit the ratings it was trained on");
+        assertTrue(store.getRatings().predictRating(1, 1) > 3.0f, "User 1 should be predicted to like the film it left out of the loved half");
+        assertTrue(store.getRatings().predictRating(1, 6) < 3.0f, "User 1 should be predicted to dislike the film it left out of the hated half");
+        assertTrue(store.getRatings().predictRating(2, 7) > 3.0f, "User 2 should be predicted to like the film it left out of the loved half");
+        assertArrayEquals(new int[] {1, 6}, store.getRatings().getRecommendedMovies(1, 5), "Only films the user has not rated are recommended, best first");
+        assertArrayEquals(new int[] {7}, store.getRatings().getRecommendedMovies(2, 1), "Recommendations are limited to the number asked for");
+        assertArrayEquals(new int[0], store.getRatings().getRecommendedMovies(1, 0), "Asking for no results should return an empty array");
+        assertEquals(-1.0f, store.getRatings().predictRating(99, 1), "A user with no ratings has no prediction");
+        assertArrayEquals(new int[0], store.getRatings().getRecommendedMovies(99, 5), "A user with no ratings has no recommendations");
+        assertThrows(IllegalArgumentException.class, () -> store.getRatings().trainRecommender(0, 10, 0.01f, 0.02f), "A model needs at least one factor");
+    }
+
+    @Test void testRatingsGetUserTimeline() {
+        store.getRatings().add(1, 3, 3.0f, LocalDateTime.of(2015, 3, 1, 12, 0, 0));
+        store.getRatings().add(1, 1, 1.0f, LocalDateTime.of(2015, 1, 1, 12, 0, 0));
+        store.getRatings().add(1, 2, 2.0f, LocalDateTime.of(2015, 2, 1, 12, 0, 0));
+        store.getRatings().addBatch(new int[] {1, 1, 2}, new int[] {5, 4, 1}, new float[] {5.0f, 4.0f, 2.5f},
+                new long[] {LocalDateTime.of(2015, 5, 1, 12, 0, 0).toEpochSecond(ZoneOffset.UTC),
+                        LocalDateTime.of(2015, 2, 15, 12, 0, 0).toEpochSecond(ZoneOffset.UTC),
+                        LocalDateTime.of(2015, 2, 15, 12, 0, 0).toEpochSecond(ZoneOffset.UTC)});
+
+        assertArrayEquals(new float[] {1.0f, 2.0f, 4.0f, 3.0f, 5.0f}, store.getRatings().getUserRatings(1), "A user's ratings should be listed in the order they were made");
+        Rating[] timeline = store.getRatings().getUserTimeline(1, LocalDateTime.of(2015, 2, 1, 12, 0, 0), LocalDateTime.of(2015, 3, 1, 12, 0, 0));
+        assertEquals(3, timeline.length, "Both ends of the window should be included");
+        assertEquals(2, timeline[0].getMovieID(), "The earliest rating in the window should come first");
+        assertEquals(4, timeline[1].getMovieID(), "Ratings added in a batch should be merged into time order");
+        assertEquals(3.0f, timeline[2].getRating(), "Each rating should keep its value");
+        assertEquals(LocalDateTime.of(2015, 3, 1, 12, 0, 0), timeline[2].getTimestamp(), "Each rating should keep its time");
+        assertEquals(0, store.getRatings().getUserTimeline(1, LocalDateTime.of(2016, 1, 1, 0, 0, 0), LocalDateTime.of(2016, 12, 31, 0, 0, 0)).length, "A window with no ratings should be empty");
+        assertEquals(0, store.getRatings().getUserTimeline(9, null, null).length, "A user with no ratings has an empty timeline");
+
+        store.getRatings().set(1, 1, 1.5f, LocalDateTime.of(2015, 4, 1, 12, 0, 0));
+        store.getRatings().set(1, 5, 4.5f, LocalDateTime.of(2014, 12, 1, 12, 0, 0));
+        store.getRatings().remove(1, 2);
+        timeline = store.getRatings().getUserTimeline(1, null, null);
+        int[] movies = new int[timeline.length];
+        for (int i = 0; i < timeline.length; i++) {
+            movies[i] = timeline[i].getMovieID();
+        }
+        assertArrayEquals(new int[] {5, 4, 3, 1}, movies, "Set should move a rating to its new time, and remove should take it out");
+        assertEquals(4.5f, timeline[0].getRating(), "Set should change the rating as it moves");
+    }
+
+    @Test void testRatingsGetMovieRatingHistogramAndMedian() {
+        store.getRatings().add(1, 1, 1.0f, LocalDateTime.of(2024, 1, 1, 1, 0, 0));
+        store.getRatings().add(2, 1, 3.5f, LocalDateTime.of(2024, 1, 1, 1, 0, 0));
+        store.getRatings().add(3, 1, 4.0f, LocalDateTime.of(2024, 1, 1, 1, 0, 0));
+        store.getRatings().add(4, 1, 5.0f, LocalDateTime.of(2024, 1, 1, 1, 0, 0));
+
+        assertArrayEquals(new int[] {0, 0, 1, 0, 0, 0, 0, 1, 1, 0, 1}, store.getRatings().getMovieRatingHistogram(1), "Each rating should be counted in its half star bin");
+        assertEquals(3.75f, store.getRatings().getMovieMedianRating(1), "With an even number of ratings, the median is the average of the middle two");
+        assertEquals(1.0f, store.getRatings().getMovieRatingPercentile(1, 25.0f), "The 25th percentile of 4 ratings is the lowest rating");
+        assertEquals(5.0f, store.getRatings().getMovieRatingPercentile(1, 100.0f), "The 100th percentile is the highest rating");
+
+        store.getRatings().set(4, 1, 0.5f, LocalDateTime.of(2024, 2, 2, 2, 0, 0));
+        store.getRatings().remove(1, 1);
+        assertArrayEquals(new int[] {0, 1, 0, 0, 0, 0, 0, 1, 1, 0, 0}, store.getRatings().getMovieRatingHistogram(1), "The histogram should follow set and removed ratings");
+        assertEquals(3.5f, store.getRatings().getMovieMedianRating(1), "With an odd number of ratings, the median is the middle rating");
+        assertArrayEquals(new int[0], store.getRatings().getMovieRatingHistogram(2), "A film with no ratings has no histogram");
+        assertEquals(-1.0f, store.getRatings().getMovieMedianRating(2), "The film is in neither store, so should return -1.0f");
+        assertThrows(IllegalArgumentException.class, () -> store.getRatings().getMovieRatingPercentile(1, 101.0f), "Percentiles above 100 are not valid");
+    }
+
+    @Test void testRatingsGetMostRatedUsersOrderAfterChanges() {
+        // Many users, whose counts are then changed, so the ranking has to follow
+        // users moving up and down past ties
+        int numUsers = 5000;
+        for (int user = 1; user <= numUsers; user++) {
+            for (int movie = 1; movie <= (user % 5) + 1; movie++) {
+                store.getRatings().add(user, movie, 3.0f, LocalDateTime.of(2024, 1, 1, 1, 0, 0));
+            }
+        }
+
+        // Users 4, 9, 14, ... have the most ratings (5), lowest IDs first
+        int[] expected = new int[10];
+        for (int i = 0; i < expected.length; i++) {
+            expected[i] = 5 * i + 4;
+        }
+        assertArrayEquals(expected, store.getRatings().getMostRatedUsers(10), "Users with the most ratings should come first, lowest IDs first on ties");
+
+        // User 4 drops from 5 ratings to 4, and user 4998 rises from 4 to 6
+        store.getRatings().remove(4, 5);
+        for (int movie = 5; movie <= 6; movie++) {
+            store.getRatings().add(4998, movie, 3.0f, LocalDateTime.of(2024, 1, 1, 1, 0, 0));
+        }
+        int[] moved = store.getRatings().getMostRatedUsers(3);
+        assertArrayEquals(new int[] {4998, 9, 14}, moved, "The ranking should follow users whose counts have changed");
+        assertEquals(6, store.getRatings().getUserRatings(4998).length, "User 4998 should have 6 ratings");
+    }
+
     @Test void testRatingsGetNumRatingsDefault() {
         assertEquals(-1, store.getRatings().getNumRatings(1), "The stores are empty, so there are no ratings or movies to check against. Therefore, return -1");
     }
@@ -751,4 +1086,22 @@ public class RatingsTest {
 
         assertEquals(0, store.getRatings().size(), "Removing an element from an empty store will result in an empty store. Therefore, the size should be 0");
     }
+
+    @Test void testRatingConstructAndUpdate() {
+        LocalDateTime time = LocalDateTime.of(2015, 6, 1, 12, 30, 15, 500);
+        Rating rating = new Rating(1, 2, 3.5f, time);
+        assertEquals(1, rating.getUserID(), "The user ID should be kept");
+        assertEquals(2, rating.getMovieID(), "The movie ID should be kept");
+        assertEquals(3.5f, rating.getRating(), "The rating should be kept");
+        assertEquals(time.withNano(0), rating.getTimestamp(), "The timestamp should be kept to the second");
+
+        assertTrue(rating.updateRating(0.5f, null), "A storable rating should be updated");
+        assertEquals(0.5f, rating.getRating(), "The rating should be updated");
+        assertNull(rating.getTimestamp(), "A null timestamp should be kept");
+        assertFalse(rating.updateRating(3.3f, time), "A rating that is not a multiple of 0.5 cannot be stored");
+        assertFalse(rating.updateRating(5.5f, time), "A rating above 5 cannot be stored");
+        assertEquals(0.5f, rating.getRating(), "A failed update should leave the rating unchanged");
+
+        assertThrows(IllegalArgumentException.class, () -> new Rating(1, 2, -1.0f, time), "A rating below 0 cannot be constructed");
+    }
 }
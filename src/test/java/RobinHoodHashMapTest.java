@@ -0,0 +1,171 @@
+import structures.EntryCursor;
+import structures.RobinHoodHashMap;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+class RobinHoodHashMapTest {
+
+    /**
+     * A key with a chosen hash code, so tests can pick which slot it calls home
+     */
+    private static class PlacedKey {
+        private final int id;
+        private final int hashCode;
+
+        PlacedKey(int id, int hashCode) {
+            this.id = id;
+            this.hashCode = hashCode;
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof PlacedKey && ((PlacedKey) other).id == id;
+        }
+    }
+
+    /**
+     * Makes a key whose home slot, in a table of the given capacity, is the given
+     * slot. The map spreads hash codes by multiplying by 0x9E3779B9 and takes the
+     * top bits, so the hash code is the wanted spread hash times the inverse of
+     * that multiplier
+     */
+    private static PlacedKey keyHomedAt(int id, int slot, int capacity, int lowBits) {
+        int shift = 32 - Integer.numberOfTrailingZeros(capacity);
+        int inverse = 0x9E3779B9; // Newton's iteration for the inverse modulo 2^32
+        for (int i = 0; i < 5; i++) {
+            inverse *= 2 - 0x9E3779B9 * inverse;
+        }
+        int spread = (slot << shift) | (lowBits & ((1 << shift) - 1));
+        return new PlacedKey(id, spread * inverse);
+    }
+
+    @Test void testRobinHoodHashMapAddGetRemove() {
+        RobinHoodHashMap<Integer, String> map = new RobinHoodHashMap<>(4);
+        for (int key = 0; key < 1000; key++) {
+            assertTrue(map.add(key, "v" + key), "A new key should be added");
+        }
+        assertFalse(map.add(7, "other"), "A key already present should not be added again");
+        assertEquals("v7", map.get(7), "A duplicate add should not change the value");
+        assertEquals(1000, map.getSize(), "Every key should be counted once");
+
+        for (int key = 0; key < 1000; key += 2) {
+            assertTrue(map.remove(key), "A present key should be removed");
+        }
+        assertFalse(map.remove(0), "A removed key should not be removed twice");
+        for (int key = 0; key < 1000; key++) {
+            assertEquals((key % 2 == 0) ? null : "v" + key, map.get(key), "Key " + key + " should be found only if kept");
+            assertEquals(key % 2 == 1, map.containsKey(key), "containsKey should agree with get");
+        }
+        assertEquals(500, map.getSize(), "Only the kept keys should be counted");
+        assertThrows(IllegalArgumentException.class, () -> map.add(null, "v"), "Null keys cannot be stored");
+    }
+
+    @Test void testRobinHoodHashMapMatchesHashMap() {
+        RobinHoodHashMap<Integer, Integer> map = new RobinHoodHashMap<>(16);
+        Map<Integer, Integer> expected = new HashMap<>();
+        Random random = new Random(5);
+        for (int i = 0; i < 200000; i++) {
+            int key = random.nextInt(20000);
+            int operation = random.nextInt(3);
+            if (operation == 0) {
+                assertEquals(!expected.containsKey(key), map.add(key, i), "add should agree on key " + key);
+                expected.putIfAbsent(key, i);
+            } else if (operation == 1) {
+                assertEquals(expected.remove(key) != null, map.remove(key), "remove should agree on key " + key);
+            } else {
+                assertEquals(expected.get(key), map.get(key), "get should agree on key " + key);
+            }
+        }
+        assertEquals(expected.size(), map.getSize(), "The sizes should agree");
+    }
+
+    @Test void testRobinHoodHashMapProbeRunWrapsAroundTheEnd() {
+        RobinHoodHashMap<PlacedKey, Integer> map = new RobinHoodHashMap<>(50);
+        int capacity = map.getCapacity();
+        assertEquals(64, capacity, "50 entries at a load factor of 0.9 need 64 slots");
+
+        // Ten keys homed at the last slot fill it and then slots 0 to 8
+        PlacedKey[] keys = new PlacedKey[10];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = keyHomedAt(i, capacity - 1, capacity, i);
+            assertTrue(map.add(keys[i], i), "A new key should be added");
+        }
+        // One key homed at slot 2 has to be placed after the wrapped run
+        PlacedKey later = keyHomedAt(100, 2, capacity, 0);
+        assertTrue(map.add(later, 100), "A key homed inside the wrapped run should be added");
+
+        assertEquals(capacity, map.getCapacity(), "A run of ten is not long enough to grow the table");
+        assertEquals(10, map.getStats("map").getMaxChainLength(), "The last key of the run sits ten slots from home");
+        for (int i = 0; i < keys.length; i++) {
+            assertEquals(i, map.get(keys[i]), "Key " + i + " should be found across the wrap");
+        }
+        assertEquals(100, map.get(later), "The key after the run should be found");
+        assertNull(map.get(keyHomedAt(50, capacity - 1, capacity, 50)), "A missing key homed at the run should not be found");
+
+        // Removing the key in the last slot shifts the rest of the run back across
+        // the wrap, and the key homed at slot 2 with it
+        assertTrue(map.remove(keys[0]), "The first key of the run should be removed");
+        assertEquals(9, map.getStats("map").getMaxChainLength(), "The run should have moved back one slot");
+        for (int i = 1; i < keys.length; i++) {
+            assertEquals(i, map.get(keys[i]), "Key " + i + " should be found after the shift");
+        }
+        assertEquals(100, map.get(later), "The key after the run should be found after the shift");
+        assertTrue(map.remove(keys[5]), "A key in the middle of the run should be removed");
+        assertTrue(map.add(keys[0], 0), "A removed key should be added again");
+
+        int visited = 0;
+        EntryCursor<PlacedKey, Integer> cursor = map.cursor();
+        while (cursor.advance()) {
+            assertEquals(cursor.getValue(), map.get(cursor.getKey()), "The cursor should give each key its value");
+            visited++;
+        }
+        assertEquals(10, visited, "The cursor should visit every key once");
+    }
+
+    @Test void testRobinHoodHashMapGrowsEarlyOnLongRun() {
+        // Below a quarter full, a long run is left alone rather than growing a
+        // mostly empty table
+        RobinHoodHashMap<PlacedKey, Integer> sparse = new RobinHoodHashMap<>(200);
+        int capacity = sparse.getCapacity();
+        assertEquals(256, capacity, "200 entries at a load factor of 0.9 need 256 slots");
+        for (int i = 0; i < 40; i++) {
+            sparse.add(keyHomedAt(i, 10, capacity, i), i);
+        }
+        assertEquals(capacity, sparse.getCapacity(), "A sparse table should not grow early");
+
+        // Once a quarter full, a key carried more than 32 slots from home grows
+        // the table, long before the load factor is reached
+        RobinHoodHashMap<PlacedKey, Integer> map = new RobinHoodHashMap<>(200);
+        for (int i = 0; i < 64; i++) {
+            map.add(keyHomedAt(i, 128 + i, capacity, i), i);
+        }
+        int added = 64;
+        for (int i = 0; i < 33; i++) {
+            map.add(keyHomedAt(1000 + i, 10, capacity, i << 8), 1000 + i);
+            added++;
+            assertEquals(capacity, map.getCapacity(), "A run of up to 33 keys is within the limit");
+        }
+        map.add(keyHomedAt(1033, 10, capacity, 33 << 8), 1033);
+        added++;
+        assertEquals(capacity * 2, map.getCapacity(), "The 34th key of the run should grow the table early");
+        assertTrue(map.getSize() < capacity * 0.9, "The load factor alone would not have grown the table");
+
+        assertEquals(added, map.getSize(), "Every key should be counted once");
+        for (int i = 0; i < 64; i++) {
+            assertEquals(i, map.get(keyHomedAt(i, 128 + i, capacity, i)), "Key " + i + " should be found after growing");
+        }
+        for (int i = 0; i <= 33; i++) {
+            assertEquals(1000 + i, map.get(keyHomedAt(1000 + i, 10, capacity, i << 8)), "Run key " + i + " should be found after growing");
+        }
+    }
+}